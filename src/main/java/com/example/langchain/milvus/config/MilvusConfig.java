@@ -1,12 +1,23 @@
 package com.example.langchain.milvus.config;
 
+import com.example.langchain.milvus.dto.EmbeddedIndexSettings;
+import com.example.langchain.milvus.service.EmbeddedMilvusClient;
+import io.milvus.client.MilvusClient;
 import io.milvus.client.MilvusServiceClient;
 import io.milvus.param.ConnectParam;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 
+import java.util.LinkedHashSet;
+import java.util.List;
+
+// loadtest profile 下由进程内的 MilvusClient 替换
+@Slf4j
 @Configuration
+@Profile("!loadtest")
 public class MilvusConfig {
 
     @Value("${app.milvus.host:172.16.101.224}")
@@ -15,13 +26,75 @@ public class MilvusConfig {
     @Value("${app.milvus.port:19530}")
     private Integer port;
 
+    @Value("${app.milvus.metric-type:IP}")
+    private String metricType;
+
+    // 进程内 HNSW 索引：off、mirror、standalone
+    @Value("${app.milvus.embedded.mode:off}")
+    private String embeddedMode;
+
+    @Value("${app.milvus.embedded.collections:}")
+    private List<String> embeddedCollections;
+
+    @Value("${app.milvus.embedded.mirror-fields:document_id,chunk_id,metadata,tenant_id,create_time}")
+    private List<String> embeddedMirrorFields;
+
+    @Value("${app.milvus.embedded.snapshot-dir:data/embedded-index/}")
+    private String embeddedSnapshotDir;
+
+    @Value("${app.milvus.embedded.snapshot-interval-seconds:300}")
+    private Integer embeddedSnapshotIntervalSeconds;
+
+    @Value("${app.milvus.embedded.m:16}")
+    private Integer embeddedM;
+
+    @Value("${app.milvus.embedded.ef-construction:200}")
+    private Integer embeddedEfConstruction;
+
+    @Value("${app.search.ef:64}")
+    private Integer searchEf;
+
+    @Value("${app.milvus.embedded.compact-deleted-ratio:0.3}")
+    private Double embeddedCompactDeletedRatio;
+
     @Bean
-    public MilvusServiceClient milvusClient() {
+    public MilvusClient milvusClient() {
+        String mode = embeddedMode == null ? "off" : embeddedMode.trim().toLowerCase();
+        if ("standalone".equals(mode)) {
+            log.info("Milvus 使用进程内 HNSW 索引（standalone），快照目录: {}", embeddedSnapshotDir);
+            return EmbeddedMilvusClient.standalone(embeddedSettings(mode));
+        }
+
         ConnectParam connectParam = ConnectParam.newBuilder()
                 .withHost(host)
                 .withPort(port)
                 .build();
+        MilvusServiceClient client = new MilvusServiceClient(connectParam);
 
-        return new MilvusServiceClient(connectParam);
+        switch (mode) {
+            case "off":
+            case "":
+                return client;
+            case "mirror":
+                log.info("热集合镜像到进程内 HNSW 索引: {}", embeddedCollections);
+                return EmbeddedMilvusClient.mirror(client, embeddedSettings(mode));
+            default:
+                throw new IllegalArgumentException("未知的嵌入式索引模式: " + embeddedMode);
+        }
+    }
+
+    private EmbeddedIndexSettings embeddedSettings(String mode) {
+        return EmbeddedIndexSettings.builder()
+                .mode(mode)
+                .collections(new LinkedHashSet<>(embeddedCollections))
+                .mirrorFields(new LinkedHashSet<>(embeddedMirrorFields))
+                .snapshotDir(embeddedSnapshotDir)
+                .snapshotIntervalSeconds(embeddedSnapshotIntervalSeconds)
+                .m(embeddedM)
+                .efConstruction(embeddedEfConstruction)
+                .efSearch(searchEf)
+                .metricType(metricType)
+                .compactDeletedRatio(embeddedCompactDeletedRatio)
+                .build();
     }
 }
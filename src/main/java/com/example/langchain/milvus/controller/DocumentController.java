@@ -1,14 +1,32 @@
 package com.example.langchain.milvus.controller;
 
+import com.example.langchain.milvus.dto.BulkImportResult;
 import com.example.langchain.milvus.dto.DocumentImportRequest;
 import com.example.langchain.milvus.dto.DocumentImportResult;
+import com.example.langchain.milvus.dto.HybridSearchRequest;
+import com.example.langchain.milvus.dto.ImportJobStatus;
+import com.example.langchain.milvus.dto.IndexTuningResult;
+import com.example.langchain.milvus.dto.SearchRequest;
+import com.example.langchain.milvus.service.BulkImportPipeline;
+import com.example.langchain.milvus.service.EmbeddingCache;
+import com.example.langchain.milvus.service.ImportJobService;
+import com.example.langchain.milvus.service.IndexTuningService;
 import com.example.langchain.milvus.service.MilvusServiceImplV2;
+import com.example.langchain.milvus.utils.TempFileMultipartFile;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
 @RestController
 @RequestMapping("/api/documents")
 @Slf4j
@@ -16,6 +34,10 @@ import org.springframework.web.multipart.MultipartFile;
 public class DocumentController {
 
     private final MilvusServiceImplV2 milvusService;
+    private final ImportJobService importJobService;
+    private final BulkImportPipeline bulkImportPipeline;
+    private final EmbeddingCache embeddingCache;
+    private final IndexTuningService indexTuningService;
 
     /**
      * 导入文档
@@ -24,15 +46,30 @@ public class DocumentController {
     public ResponseEntity<DocumentImportResult> importDocument(
             @RequestParam("file") MultipartFile file,
             @RequestParam(value = "collectionName", defaultValue = "default") String collectionName,
-            @RequestParam(value = "extractImages", defaultValue = "true") Boolean extractImages) {
+            @RequestParam(value = "extractImages", defaultValue = "true") Boolean extractImages,
+            @RequestParam(value = "parseMode", defaultValue = "auto") String parseMode,
+            @RequestParam(value = "chunkStrategy", defaultValue = "semantic") String chunkStrategy,
+            @RequestParam(value = "chunkSize", defaultValue = "5000") Integer chunkSize,
+            @RequestParam(value = "overlapSize", defaultValue = "200") Integer overlapSize,
+            @RequestParam(value = "tenantId", defaultValue = "default") String tenantId) {
 
+        DocumentImportRequest request;
         try {
-            DocumentImportRequest request = new DocumentImportRequest();
-            request.setFile(file);
-            request.setCollectionName(collectionName);
-            request.setExtractImages(extractImages);
+            request = importRequest(collectionName, extractImages, parseMode, chunkStrategy, chunkSize, overlapSize, tenantId);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(DocumentImportResult.builder()
+                            .success(false)
+                            .documentName(file.getOriginalFilename())
+                            .error(e.getMessage())
+                            .build());
+        }
 
-            DocumentImportResult result = milvusService.importDocument(file, request);
+        // 先落盘到临时文件，解析器按 ZIP 随机访问读取，请求结束后删除
+        try (TempFileMultipartFile tempFile = importJobService.spool(file)) {
+            request.setFile(tempFile);
+
+            DocumentImportResult result = milvusService.importDocument(tempFile, request);
             return ResponseEntity.ok(result);
 
         } catch (Exception e) {
@@ -44,4 +81,345 @@ public class DocumentController {
                             .build());
         }
     }
+
+    /**
+     * 异步导入文档，立即返回任务ID
+     */
+    @PostMapping("/import/async")
+    public ResponseEntity<ImportJobStatus> importDocumentAsync(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "collectionName", defaultValue = "default") String collectionName,
+            @RequestParam(value = "extractImages", defaultValue = "true") Boolean extractImages,
+            @RequestParam(value = "parseMode", defaultValue = "auto") String parseMode,
+            @RequestParam(value = "chunkStrategy", defaultValue = "semantic") String chunkStrategy,
+            @RequestParam(value = "chunkSize", defaultValue = "5000") Integer chunkSize,
+            @RequestParam(value = "overlapSize", defaultValue = "200") Integer overlapSize,
+            @RequestParam(value = "tenantId", defaultValue = "default") String tenantId) {
+
+        DocumentImportRequest request;
+        try {
+            request = importRequest(collectionName, extractImages, parseMode, chunkStrategy, chunkSize, overlapSize, tenantId);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(rejectedJob(file.getOriginalFilename(), e.getMessage()));
+        }
+
+        try {
+            ImportJobStatus status = importJobService.submit(file, request);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/documents/jobs/" + status.getJobId()))
+                    .body(status);
+
+        } catch (RejectedExecutionException e) {
+            log.warn("导入任务队列已满: {}", file.getOriginalFilename());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(ImportJobStatus.builder()
+                            .status("REJECTED")
+                            .documentName(file.getOriginalFilename())
+                            .error("导入任务队列已满，请稍后重试")
+                            .build());
+        } catch (Exception e) {
+            log.error("提交导入任务失败", e);
+            return ResponseEntity.internalServerError()
+                    .body(ImportJobStatus.builder()
+                            .status("FAILED")
+                            .documentName(file.getOriginalFilename())
+                            .error(e.getMessage())
+                            .build());
+        }
+    }
+
+    /**
+     * 流式上传大文档：请求体为文件原始字节，通过 NIO 通道直接写入临时文件后异步导入，
+     * 不经过 multipart 解析，堆内存占用与文件大小无关
+     */
+    @PostMapping(value = "/import/stream", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<ImportJobStatus> importDocumentStream(
+            HttpServletRequest httpRequest,
+            @RequestParam("fileName") String fileName,
+            @RequestParam(value = "collectionName", defaultValue = "default") String collectionName,
+            @RequestParam(value = "extractImages", defaultValue = "true") Boolean extractImages,
+            @RequestParam(value = "parseMode", defaultValue = "auto") String parseMode,
+            @RequestParam(value = "chunkStrategy", defaultValue = "semantic") String chunkStrategy,
+            @RequestParam(value = "chunkSize", defaultValue = "5000") Integer chunkSize,
+            @RequestParam(value = "overlapSize", defaultValue = "200") Integer overlapSize,
+            @RequestParam(value = "tenantId", defaultValue = "default") String tenantId) {
+
+        // 参数校验在读取请求体之前，参数错误时不接收上传内容
+        DocumentImportRequest request;
+        try {
+            request = importRequest(collectionName, extractImages, parseMode, chunkStrategy, chunkSize, overlapSize, tenantId);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(rejectedJob(fileName, e.getMessage()));
+        }
+
+        if (httpRequest.getContentLengthLong() > importJobService.getMaxUploadBytes()) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                    .body(ImportJobStatus.builder()
+                            .status("REJECTED")
+                            .documentName(fileName)
+                            .error("上传文件超过大小限制: " + importJobService.getMaxUploadBytes() + " 字节")
+                            .build());
+        }
+
+        try {
+            TempFileMultipartFile tempFile = importJobService.spool(
+                    httpRequest.getInputStream(), fileName, httpRequest.getContentType());
+
+            ImportJobStatus status = importJobService.submitSpooled(tempFile, request);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/documents/jobs/" + status.getJobId()))
+                    .body(status);
+
+        } catch (RejectedExecutionException e) {
+            log.warn("导入任务队列已满: {}", fileName);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(ImportJobStatus.builder()
+                            .status("REJECTED")
+                            .documentName(fileName)
+                            .error("导入任务队列已满，请稍后重试")
+                            .build());
+        } catch (Exception e) {
+            log.error("接收上传文件失败: {}", fileName, e);
+            return ResponseEntity.internalServerError()
+                    .body(ImportJobStatus.builder()
+                            .status("FAILED")
+                            .documentName(fileName)
+                            .error(e.getMessage())
+                            .build());
+        }
+    }
+
+    /**
+     * 批量导入文档（多个文件或 zip 压缩包），经流水线并行处理
+     */
+    @PostMapping("/import/bulk")
+    public ResponseEntity<BulkImportResult> importDocuments(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(value = "collectionName", defaultValue = "default") String collectionName,
+            @RequestParam(value = "extractImages", defaultValue = "true") Boolean extractImages,
+            @RequestParam(value = "parseMode", defaultValue = "auto") String parseMode,
+            @RequestParam(value = "chunkStrategy", defaultValue = "semantic") String chunkStrategy,
+            @RequestParam(value = "chunkSize", defaultValue = "5000") Integer chunkSize,
+            @RequestParam(value = "overlapSize", defaultValue = "200") Integer overlapSize,
+            @RequestParam(value = "tenantId", defaultValue = "default") String tenantId) {
+
+        try {
+            DocumentImportRequest request = importRequest(collectionName, extractImages, parseMode,
+                    chunkStrategy, chunkSize, overlapSize, tenantId);
+
+            return ResponseEntity.ok(bulkImportPipeline.importDocuments(files, request));
+
+        } catch (IllegalArgumentException e) {
+            log.warn("批量导入请求被拒绝: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(BulkImportResult.builder()
+                            .collectionName(collectionName)
+                            .documentCount(0)
+                            .successCount(0)
+                            .failureCount(files.size())
+                            .build());
+        } catch (Exception e) {
+            log.error("批量导入文档失败", e);
+            return ResponseEntity.internalServerError()
+                    .body(BulkImportResult.builder()
+                            .collectionName(collectionName)
+                            .documentCount(0)
+                            .successCount(0)
+                            .failureCount(files.size())
+                            .build());
+        }
+    }
+
+    /**
+     * 组装并校验导入参数，参数错误时抛出 IllegalArgumentException（返回 400）
+     */
+    private DocumentImportRequest importRequest(String collectionName, Boolean extractImages, String parseMode,
+                                                String chunkStrategy, Integer chunkSize, Integer overlapSize,
+                                                String tenantId) {
+        DocumentImportRequest request = new DocumentImportRequest();
+        request.setCollectionName(collectionName);
+        request.setExtractImages(extractImages);
+        request.setParseMode(parseMode);
+        request.setChunkStrategy(chunkStrategy);
+        request.setChunkSize(chunkSize);
+        request.setOverlapSize(overlapSize);
+        request.setTenantId(tenantId);
+        milvusService.validateImportRequest(request);
+        return request;
+    }
+
+    private static ImportJobStatus rejectedJob(String documentName, String error) {
+        return ImportJobStatus.builder()
+                .status("REJECTED")
+                .documentName(documentName)
+                .error(error)
+                .build();
+    }
+
+    /**
+     * 查询导入任务进度
+     */
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<ImportJobStatus> getImportJob(@PathVariable("id") String jobId) {
+        ImportJobStatus status = importJobService.getStatus(jobId);
+        if (status == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(status);
+    }
+
+    /**
+     * 向量检索，默认只返回 document_id、chunk_id、metadata，需要正文时指定 outputFields=text
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> search(
+            @RequestParam("query") String query,
+            @RequestParam(value = "collectionName", defaultValue = "default") String collectionName,
+            @RequestParam(value = "topK", defaultValue = "10") Integer topK,
+            @RequestParam(value = "filter", required = false) String filter,
+            @RequestParam(value = "tenantId", required = false) String tenantId,
+            @RequestParam(value = "outputFields", required = false) List<String> outputFields,
+            @RequestParam(value = "consistencyLevel", required = false) String consistencyLevel,
+            @RequestParam(value = "ef", required = false) Integer ef,
+            @RequestParam(value = "nprobe", required = false) Integer nprobe) {
+
+        SearchRequest request = new SearchRequest();
+        request.setQuery(query);
+        request.setCollectionName(collectionName);
+        request.setTopK(topK);
+        request.setFilter(filter);
+        request.setTenantId(tenantId);
+        request.setOutputFields(outputFields);
+        request.setConsistencyLevel(consistencyLevel);
+        request.setEf(ef);
+        request.setNprobe(nprobe);
+
+        try {
+            return ResponseEntity.ok(milvusService.search(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("检索失败: {}", query, e);
+            return ResponseEntity.internalServerError().body(Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+
+    /**
+     * 稠密 + BM25 稀疏混合检索，请求体为 HybridSearchRequest（至少包含 query、collectionName、topK）
+     */
+    @PostMapping("/hybrid-search")
+    public ResponseEntity<?> hybridSearch(@RequestBody HybridSearchRequest request) {
+        try {
+            return ResponseEntity.ok(milvusService.hybridSearch(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("混合检索失败: {}", request.getQuery(), e);
+            return ResponseEntity.internalServerError().body(Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+
+    /**
+     * 创建集合
+     */
+    @PostMapping("/collections/{name}")
+    public ResponseEntity<Map<String, Object>> createCollection(@PathVariable("name") String collectionName) {
+        try {
+            if (milvusService.hasCollection(collectionName)) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body(Map.of("error", "集合已存在: " + collectionName));
+            }
+            milvusService.createCollection(collectionName);
+            return ResponseEntity.ok(Map.of("collectionName", collectionName, "created", true));
+        } catch (Exception e) {
+            log.error("创建集合失败: {}", collectionName, e);
+            return ResponseEntity.internalServerError().body(Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+
+    /**
+     * 删除集合
+     */
+    @DeleteMapping("/collections/{name}")
+    public ResponseEntity<Map<String, Object>> dropCollection(@PathVariable("name") String collectionName) {
+        try {
+            if (!milvusService.hasCollection(collectionName)) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "集合不存在: " + collectionName));
+            }
+            milvusService.dropCollection(collectionName);
+            return ResponseEntity.ok(Map.of("collectionName", collectionName, "dropped", true));
+        } catch (Exception e) {
+            log.error("删除集合失败: {}", collectionName, e);
+            return ResponseEntity.internalServerError().body(Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+
+    /**
+     * 删除某个文档的全部分块
+     */
+    @DeleteMapping("/collections/{name}/documents/{documentId}")
+    public ResponseEntity<Map<String, Object>> deleteDocument(
+            @PathVariable("name") String collectionName,
+            @PathVariable("documentId") String documentId) {
+        try {
+            long deleted = milvusService.deleteDocument(collectionName, documentId);
+            return ResponseEntity.ok(Map.of("deleted", deleted));
+        } catch (Exception e) {
+            log.error("删除文档失败: {}", documentId, e);
+            return ResponseEntity.internalServerError().body(Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+
+    /**
+     * 按 Milvus 过滤表达式删除，例如 metadata["document_name"] == "a.docx"；
+     * 表达式须为 && 连接的比较条件且至少有一个 == / in 条件，否则返回 400
+     */
+    @DeleteMapping("/collections/{name}/entities")
+    public ResponseEntity<Map<String, Object>> deleteByFilter(
+            @PathVariable("name") String collectionName,
+            @RequestParam("filter") String filter) {
+        try {
+            long deleted = milvusService.deleteByFilter(collectionName, filter);
+            return ResponseEntity.ok(Map.of("deleted", deleted));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("按条件删除失败: {}", filter, e);
+            return ResponseEntity.internalServerError().body(Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+
+    /**
+     * 抽样已存储的向量扫描检索参数（ef / nprobe / search_list），选出达到目标召回率的最低成本取值；
+     * apply 为 true 且达到目标时，该集合后续检索默认使用该取值
+     */
+    @PostMapping("/collections/{name}/index/tune")
+    public ResponseEntity<?> tuneIndex(
+            @PathVariable("name") String collectionName,
+            @RequestParam(value = "targetRecall", defaultValue = "0.95") Double targetRecall,
+            @RequestParam(value = "topK", defaultValue = "10") Integer topK,
+            @RequestParam(value = "sampleSize", defaultValue = "200") Integer sampleSize,
+            @RequestParam(value = "apply", defaultValue = "true") Boolean apply) {
+        try {
+            if (!milvusService.hasCollection(collectionName)) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "集合不存在: " + collectionName));
+            }
+            IndexTuningResult result = indexTuningService.tune(collectionName, targetRecall, topK, sampleSize, apply);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("检索参数调参失败: {}", collectionName, e);
+            return ResponseEntity.internalServerError().body(Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+
+    /**
+     * 向量缓存命中统计
+     */
+    @GetMapping("/embedding-cache/stats")
+    public ResponseEntity<Map<String, Object>> getEmbeddingCacheStats() {
+        return ResponseEntity.ok(embeddingCache.stats());
+    }
 }
@@ -0,0 +1,18 @@
+package com.example.langchain.milvus.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class BulkImportResult {
+    private String collectionName;
+    private Integer documentCount;
+    private Integer successCount;
+    private Integer failureCount;
+    private Long durationMs;
+    private Double docsPerSecond;
+    private List<DocumentImportResult> results;
+}
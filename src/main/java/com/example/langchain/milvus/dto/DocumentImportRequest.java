@@ -12,9 +12,13 @@ public class DocumentImportRequest {
     private MultipartFile file;
     private String collectionName = "default";
     private Boolean extractImages = true;
+    // 分块策略：fixed、sentence、heading、semantic（见 ChunkStrategy）
     private String chunkStrategy = "semantic";
     private Integer chunkSize = 5000;
+    // 相邻分块重叠的字符数，不超过 chunkSize 的一半
     private Integer overlapSize = 200;
     private Map<String, Object> metadata;
     private String tenantId = "default";
+    // 解析模式：auto（按文件大小选择）、dom、streaming
+    private String parseMode = "auto";
 }
@@ -0,0 +1,38 @@
+package com.example.langchain.milvus.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Set;
+
+/**
+ * 进程内 HNSW 索引配置（app.milvus.embedded.*）
+ */
+@Data
+@Builder
+public class EmbeddedIndexSettings {
+
+    // off、mirror（热集合镜像，写入同时落 Milvus）、standalone（不连接 Milvus）
+    private String mode;
+
+    // mirror 模式下镜像的集合；standalone 模式下忽略
+    private Set<String> collections;
+
+    // mirror 模式下本地保存的标量字段，检索请求的返回字段超出时转发给 Milvus
+    private Set<String> mirrorFields;
+
+    private String snapshotDir;
+
+    private Integer snapshotIntervalSeconds;
+
+    private Integer m;
+
+    private Integer efConstruction;
+
+    private Integer efSearch;
+
+    private String metricType;
+
+    // 已删除节点占比超过该值时，快照前重建图
+    private Double compactDeletedRatio;
+}
@@ -0,0 +1,14 @@
+package com.example.langchain.milvus.dto;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class HybridSearchRequest extends SearchRequest {
+    // 融合方式：rrf（倒数排名融合）或 weighted（按权重融合归一化分数）
+    private String ranker = "rrf";
+    private Integer rrfK = 60;
+    private Float denseWeight = 0.5f;
+    private Float sparseWeight = 0.5f;
+}
@@ -0,0 +1,26 @@
+package com.example.langchain.milvus.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+public class ImportJobStatus {
+    private String jobId;
+    // PENDING / RUNNING / SUCCEEDED / FAILED
+    private String status;
+    private String stage;
+    private String documentName;
+    private String collectionName;
+    private Integer parsedParagraphs;
+    private Integer totalChunks;
+    private Integer chunksEmbedded;
+    private Integer rowsInserted;
+    private LocalDateTime submitTime;
+    private LocalDateTime startTime;
+    private LocalDateTime endTime;
+    private String error;
+    private DocumentImportResult result;
+}
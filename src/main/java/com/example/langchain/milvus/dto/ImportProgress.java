@@ -0,0 +1,62 @@
+package com.example.langchain.milvus.dto;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 导入进度：各阶段计数在导入线程中更新，查询线程只读
+ */
+public class ImportProgress {
+
+    public static final String STAGE_PENDING = "pending";
+    public static final String STAGE_PARSING = "parsing";
+    public static final String STAGE_CHUNKING = "chunking";
+    public static final String STAGE_EMBEDDING = "embedding";
+    public static final String STAGE_INSERTING = "inserting";
+    public static final String STAGE_DONE = "done";
+
+    private volatile String stage = STAGE_PENDING;
+    private final AtomicInteger parsedParagraphs = new AtomicInteger();
+    private final AtomicInteger totalChunks = new AtomicInteger();
+    private final AtomicInteger chunksEmbedded = new AtomicInteger();
+    private final AtomicInteger rowsInserted = new AtomicInteger();
+
+    public String getStage() {
+        return stage;
+    }
+
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    public int getParsedParagraphs() {
+        return parsedParagraphs.get();
+    }
+
+    public void setParsedParagraphs(int count) {
+        parsedParagraphs.set(count);
+    }
+
+    public int getTotalChunks() {
+        return totalChunks.get();
+    }
+
+    public void setTotalChunks(int count) {
+        totalChunks.set(count);
+    }
+
+    public int getChunksEmbedded() {
+        return chunksEmbedded.get();
+    }
+
+    public void addChunksEmbedded(int count) {
+        chunksEmbedded.addAndGet(count);
+    }
+
+    public int getRowsInserted() {
+        return rowsInserted.get();
+    }
+
+    public void addRowsInserted(int count) {
+        rowsInserted.addAndGet(count);
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.langchain.milvus.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class IndexTuningResult {
+    private String collectionName;
+    private String indexProfile;
+    // 调整的检索参数名：ef、nprobe 或 search_list
+    private String searchParam;
+    private Double targetRecall;
+    private Integer topK;
+    private Integer sampleSize;
+    // 达到目标召回率的最低成本取值；未达到时为召回率最高的取值
+    private Integer selectedValue;
+    private Double selectedRecall;
+    private Boolean targetMet;
+    private Boolean applied;
+    private List<Trial> trials;
+
+    @Data
+    @Builder
+    public static class Trial {
+        private Integer value;
+        private Double recall;
+        // 单条查询的平均耗时
+        private Double avgLatencyMs;
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.langchain.milvus.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+@Builder
+public class SearchHit {
+    private Long id;
+    private Float score;
+    private Map<String, Object> fields;
+}
@@ -0,0 +1,23 @@
+package com.example.langchain.milvus.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class SearchRequest {
+    private String query;
+    private String collectionName = "default";
+    private Integer topK = 10;
+    // Milvus 布尔过滤表达式，例如 metadata["document_name"] == "a.docx"
+    private String filter;
+    // 租户，指定后只检索该租户的数据（分区键集合只扫描该租户所在分区）
+    private String tenantId;
+    // 返回字段，为空时使用默认字段（不含 text、images）
+    private List<String> outputFields;
+    // 一致性级别：strong、session、bounded、eventually，为空时使用配置值
+    private String consistencyLevel;
+    // HNSW 的 ef、IVF 的 nprobe，为空时使用配置值
+    private Integer ef;
+    private Integer nprobe;
+}
@@ -0,0 +1,21 @@
+package com.example.langchain.milvus.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder(toBuilder = true)
+public class SearchResult {
+    private String collectionName;
+    private String query;
+    private Integer topK;
+    private String consistencyLevel;
+    private List<SearchHit> hits;
+    // 是否命中检索结果缓存
+    private Boolean cached;
+    // 语义近似缓存命中时，与缓存查询向量的余弦相似度
+    private Float cacheSimilarity;
+    private Long durationMs;
+}
@@ -0,0 +1,226 @@
+package com.example.langchain.milvus.service;
+
+import com.example.langchain.milvus.dto.ImportProgress;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量向量化：按分块数和估算 token 数打包调用 embedAll，并发发送多个批次
+ */
+@Component
+@Slf4j
+public class BatchEmbeddingService {
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private EmbeddingCache embeddingCache;
+
+    @Autowired
+    private ImportMetrics importMetrics;
+
+    @Value("${app.milvus.vector-dimension:1024}")
+    private Integer vectorDimension;
+
+    // DashScope text-embedding-v4 单次请求最多 10 条
+    @Value("${app.embedding.batch-size:10}")
+    private Integer batchSize;
+
+    @Value("${app.embedding.batch-max-tokens:8192}")
+    private Integer batchMaxTokens;
+
+    @Value("${app.embedding.concurrency:4}")
+    private Integer concurrency;
+
+    private ExecutorService embeddingExecutor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        embeddingExecutor = Executors.newFixedThreadPool(Math.max(1, concurrency), r -> {
+            Thread t = new Thread(r, "embedding-batch-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        embeddingExecutor.shutdown();
+    }
+
+    /**
+     * 为分块生成向量，返回顺序与输入分块一致
+     */
+    public List<DocumentParserWithStructure.TextEmbedding> embedChunks(List<DocumentParserWithStructure.DocumentChunk> chunks) {
+        return embedChunks(chunks, new ImportProgress());
+    }
+
+    /**
+     * 为分块生成向量，批次在共享线程池（app.embedding.concurrency）上并发发送
+     */
+    public List<DocumentParserWithStructure.TextEmbedding> embedChunks(List<DocumentParserWithStructure.DocumentChunk> chunks,
+                                                                      ImportProgress progress) {
+        return embedChunks(chunks, progress, embeddingExecutor);
+    }
+
+    /**
+     * 为分块生成向量，每完成一个批次累加进度；命中缓存的分块不再请求模型。
+     * 批次在 executor 上发送，传入 Runnable::run 时在调用线程上逐批发送，由调用方的线程数决定在途请求数
+     */
+    public List<DocumentParserWithStructure.TextEmbedding> embedChunks(List<DocumentParserWithStructure.DocumentChunk> chunks,
+                                                                      ImportProgress progress, Executor executor) {
+        DocumentParserWithStructure.TextEmbedding[] resolved = new DocumentParserWithStructure.TextEmbedding[chunks.size()];
+        byte[][] keys = new byte[chunks.size()][];
+        List<Integer> missIndexes = new ArrayList<>();
+
+        for (int i = 0; i < chunks.size(); i++) {
+            DocumentParserWithStructure.DocumentChunk chunk = chunks.get(i);
+            if (embeddingCache.isEnabled()) {
+                keys[i] = embeddingCache.key(chunk.getText());
+                float[] cached = embeddingCache.get(keys[i]);
+                if (cached != null) {
+                    resolved[i] = toTextEmbedding(chunk, cached);
+                    continue;
+                }
+            }
+            missIndexes.add(i);
+        }
+        progress.addChunksEmbedded(chunks.size() - missIndexes.size());
+
+        List<List<Integer>> batches = splitIntoBatches(chunks, missIndexes);
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (List<Integer> batch : batches) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                embedBatch(chunks, keys, batch, resolved);
+                progress.addChunksEmbedded(batch.size());
+            }, executor));
+        }
+        futures.forEach(CompletableFuture::join);
+
+        log.info("向量化完成: 分块数={}, 缓存命中={}, 批次数={}",
+                chunks.size(), chunks.size() - missIndexes.size(), batches.size());
+        return new ArrayList<>(Arrays.asList(resolved));
+    }
+
+    /**
+     * 按分块数和 token 数上限切分批次，返回分块下标
+     */
+    private List<List<Integer>> splitIntoBatches(List<DocumentParserWithStructure.DocumentChunk> chunks, List<Integer> indexes) {
+        List<List<Integer>> batches = new ArrayList<>();
+        List<Integer> current = new ArrayList<>();
+        int currentTokens = 0;
+
+        for (Integer index : indexes) {
+            int tokens = estimateTokens(chunks.get(index).getText());
+
+            if (!current.isEmpty() &&
+                    (current.size() >= batchSize || currentTokens + tokens > batchMaxTokens)) {
+                batches.add(current);
+                current = new ArrayList<>();
+                currentTokens = 0;
+            }
+
+            current.add(index);
+            currentTokens += tokens;
+        }
+
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+
+        return batches;
+    }
+
+    /**
+     * 单个批次向量化并写入缓存，失败时仅对本批次使用零向量兜底（兜底结果不缓存）
+     */
+    private void embedBatch(List<DocumentParserWithStructure.DocumentChunk> chunks,
+                            byte[][] keys,
+                            List<Integer> batch,
+                            DocumentParserWithStructure.TextEmbedding[] resolved) {
+        long start = System.nanoTime();
+        try {
+            List<TextSegment> segments = new ArrayList<>(batch.size());
+            for (Integer index : batch) {
+                String text = chunks.get(index).getText();
+                segments.add(TextSegment.from(text == null || text.isEmpty() ? " " : text));
+            }
+
+            List<Embedding> vectors = embeddingModel.embedAll(segments).content();
+            if (vectors == null || vectors.size() != batch.size()) {
+                throw new IllegalStateException("向量数量与分块数量不一致: " +
+                        (vectors == null ? 0 : vectors.size()) + " != " + batch.size());
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                int index = batch.get(i);
+                Embedding vector = vectors.get(i);
+                resolved[index] = toTextEmbedding(chunks.get(index), vector.vector());
+                if (keys[index] != null) {
+                    embeddingCache.put(keys[index], vector.vector());
+                }
+            }
+            importMetrics.recordEmbeddingBatch(batch.size(), true, start);
+        } catch (Exception e) {
+            importMetrics.recordEmbeddingBatch(batch.size(), false, start);
+            log.warn("批次向量化失败，使用零向量兜底: chunkIds={}",
+                    batch.stream().map(index -> chunks.get(index).getChunkId()).toList(), e);
+
+            for (Integer index : batch) {
+                resolved[index] = toTextEmbedding(chunks.get(index), new float[vectorDimension]);
+            }
+        }
+    }
+
+    private DocumentParserWithStructure.TextEmbedding toTextEmbedding(DocumentParserWithStructure.DocumentChunk chunk, float[] vector) {
+        DocumentParserWithStructure.TextEmbedding embedding = new DocumentParserWithStructure.TextEmbedding();
+        embedding.setText(chunk.getText());
+        embedding.setVector(vector);
+        embedding.setChunkId(chunk.getChunkId());
+        return embedding;
+    }
+
+    /**
+     * 粗略估算 token 数：中日韩字符按 1 个 token，其余字符按 4 个字符 1 个 token
+     */
+    static int estimateTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 1;
+        }
+
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            Character.UnicodeScript script = Character.UnicodeScript.of(text.charAt(i));
+            if (script == Character.UnicodeScript.HAN ||
+                    script == Character.UnicodeScript.HIRAGANA ||
+                    script == Character.UnicodeScript.KATAKANA ||
+                    script == Character.UnicodeScript.HANGUL) {
+                cjk++;
+            } else {
+                other++;
+            }
+        }
+
+        return cjk + (other + 3) / 4;
+    }
+}
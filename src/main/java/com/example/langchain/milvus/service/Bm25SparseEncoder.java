@@ -0,0 +1,363 @@
+package com.example.langchain.milvus.service;
+
+import io.milvus.client.MilvusClient;
+import io.milvus.orm.iterator.QueryIterator;
+import io.milvus.param.R;
+import io.milvus.param.dml.QueryIteratorParam;
+import io.milvus.response.QueryResultsWrapper;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 客户端 BM25 稀疏向量：
+ * 文档侧写入词频饱和 + 长度归一化后的权重，查询侧写入 IDF，两者内积即 BM25 分数。
+ * 分词：字母数字串整体保留（含 - _ . 连接的型号、编号，拉丁字母去掉变音符号），
+ * 中日韩文字按单字 + 相邻二字切分。词项经 32 位哈希映射为稀疏维度下标。
+ * <p>
+ * IDF 所需的文档频率以 Milvus 中已写入的稀疏向量为准：首次查询时从 Milvus 读出统计，
+ * 本实例写入成功后累加，删除后标记过期并重新读取，另按 stats-refresh-interval-ms 定期重读，
+ * 重启、回滚和其他实例的写入都能反映到统计中
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class Bm25SparseEncoder {
+
+    // Milvus 稀疏向量下标须小于 2^32 - 1；最大下标留给无词项文档的占位维度
+    private static final long MAX_INDEX = 0xFFFFFFFEL;
+    static final long EMPTY_DOCUMENT_INDEX = MAX_INDEX;
+    private static final float EMPTY_DOCUMENT_WEIGHT = 1e-6f;
+    private static final long REFRESH_BATCH_SIZE = 1000;
+
+    private final MilvusClient milvusClient;
+
+    @Value("${app.search.sparse.k1:1.2}")
+    private Double k1;
+
+    @Value("${app.search.sparse.b:0.75}")
+    private Double b;
+
+    // 文档平均词数，用于长度归一化（无需全局统计即可在写入时计算权重）
+    @Value("${app.search.sparse.avg-doc-length:400}")
+    private Double avgDocLength;
+
+    // 定期从 Milvus 重新读取统计的间隔，用于同步其他实例的写入和删除
+    @Value("${app.search.sparse.stats-refresh-interval-ms:1800000}")
+    private Long statsRefreshIntervalMs;
+
+    // 删除后重新读取统计的最小间隔，避免连续删除时反复全量读取
+    @Value("${app.search.sparse.stats-min-refresh-interval-ms:60000}")
+    private Long statsMinRefreshIntervalMs;
+
+    // 各集合的文档频率统计
+    private final Map<String, CollectionStatistics> statistics = new ConcurrentHashMap<>();
+
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "bm25-statistics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * 文档侧稀疏向量；没有任何词项时返回只含占位维度的向量（Milvus 不接受空稀疏向量），
+     * 查询不会命中占位维度
+     */
+    public SortedMap<Long, Float> encodeDocument(String text) {
+        Map<Long, Integer> termFrequencies = termFrequencies(text);
+        int length = termFrequencies.values().stream().mapToInt(Integer::intValue).sum();
+
+        SortedMap<Long, Float> vector = new TreeMap<>();
+        double norm = k1 * (1 - b + b * length / avgDocLength);
+        for (Map.Entry<Long, Integer> entry : termFrequencies.entrySet()) {
+            int tf = entry.getValue();
+            vector.put(entry.getKey(), (float) (tf * (k1 + 1) / (tf + norm)));
+        }
+        if (vector.isEmpty()) {
+            vector.put(EMPTY_DOCUMENT_INDEX, EMPTY_DOCUMENT_WEIGHT);
+        }
+        return vector;
+    }
+
+    /**
+     * 查询侧稀疏向量，权重为词项 IDF（同一词项重复出现时累加）；查询没有任何词项时返回空，
+     * 调用方应跳过稀疏一路。统计尚未从 Milvus 读出时按等权重查询
+     */
+    public SortedMap<Long, Float> encodeQuery(String collectionName, String text) {
+        TermStatistics terms = currentStatistics(collectionName);
+        SortedMap<Long, Float> vector = new TreeMap<>();
+        for (Map.Entry<Long, Integer> entry : termFrequencies(text).entrySet()) {
+            float idf = terms == null ? 1f : terms.idf(entry.getKey());
+            vector.put(entry.getKey(), idf * entry.getValue());
+        }
+        return vector;
+    }
+
+    /**
+     * 写入 Milvus 成功后累加文档频率（写入失败、回滚的行不计入）
+     */
+    public void onRowsInserted(String collectionName, List<SortedMap<Long, Float>> vectors) {
+        CollectionStatistics stats = statistics.get(collectionName);
+        if (stats == null) {
+            return;
+        }
+        TermStatistics terms = stats.terms;
+        if (terms != null) {
+            vectors.forEach(vector -> terms.add(vector.keySet()));
+        }
+        // 重新读取期间的写入可能未被读到，读取完成后再读一次
+        if (stats.refreshing.get()) {
+            stats.dirty = true;
+        }
+    }
+
+    /**
+     * 删除行后统计过期，下次查询时从 Milvus 重新读取
+     */
+    public void onRowsDeleted(String collectionName) {
+        CollectionStatistics stats = statistics.get(collectionName);
+        if (stats != null) {
+            stats.dirty = true;
+        }
+    }
+
+    /**
+     * 删除集合时清除统计
+     */
+    public void clear(String collectionName) {
+        statistics.remove(collectionName);
+    }
+
+    /**
+     * 当前统计；缺失、过期或超过刷新间隔时在后台从 Milvus 重新读取，读取完成前沿用旧统计
+     */
+    private TermStatistics currentStatistics(String collectionName) {
+        CollectionStatistics stats = statistics.computeIfAbsent(collectionName, name -> new CollectionStatistics());
+        long sinceRefresh = System.currentTimeMillis() - stats.refreshedAt;
+        boolean due = stats.refreshedAt == 0 || sinceRefresh > statsRefreshIntervalMs
+                || (stats.dirty && sinceRefresh > statsMinRefreshIntervalMs);
+        if (due && stats.refreshing.compareAndSet(false, true)) {
+            try {
+                refresher.execute(() -> refresh(collectionName, stats));
+            } catch (RejectedExecutionException e) {
+                stats.refreshing.set(false);
+            }
+        }
+        return stats.terms;
+    }
+
+    /**
+     * 用 queryIterator 读出集合中全部稀疏向量，按各行的词项重新计算文档数和文档频率
+     */
+    private void refresh(String collectionName, CollectionStatistics stats) {
+        long start = System.currentTimeMillis();
+        stats.dirty = false;
+        try {
+            R<QueryIterator> response = milvusClient.queryIterator(QueryIteratorParam.newBuilder()
+                    .withCollectionName(collectionName)
+                    .withOutFields(List.of(MilvusServiceImplV2.FIELD_SPARSE_VECTOR))
+                    .withBatchSize(REFRESH_BATCH_SIZE)
+                    .build());
+            if (response.getStatus() != R.Status.Success.getCode()) {
+                throw new IllegalStateException(response.getMessage());
+            }
+            TermStatistics terms = new TermStatistics();
+            QueryIterator iterator = response.getData();
+            try {
+                while (true) {
+                    List<QueryResultsWrapper.RowRecord> batch = iterator.next();
+                    if (batch.isEmpty()) {
+                        break;
+                    }
+                    for (QueryResultsWrapper.RowRecord record : batch) {
+                        Object vector = record.get(MilvusServiceImplV2.FIELD_SPARSE_VECTOR);
+                        terms.add(vector instanceof Map ? ((Map<?, ?>) vector).keySet() : List.of());
+                    }
+                }
+            } finally {
+                iterator.close();
+            }
+            stats.terms = terms;
+            log.info("BM25 统计已从 Milvus 读取: 集合={}, 文档数={}, 词项数={}, 耗时={}ms", collectionName,
+                    terms.documents.get(), terms.documentFrequencies.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            stats.dirty = true;
+            log.warn("读取 BM25 统计失败，沿用当前统计: 集合={}, 原因={}", collectionName, e.getMessage());
+        } finally {
+            stats.refreshedAt = System.currentTimeMillis();
+            stats.refreshing.set(false);
+        }
+    }
+
+    private static Map<Long, Integer> termFrequencies(String text) {
+        Map<Long, Integer> frequencies = new HashMap<>();
+        for (String token : tokenize(text)) {
+            frequencies.merge(termIndex(token), 1, Integer::sum);
+        }
+        return frequencies;
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase();
+        int i = 0;
+        while (i < normalized.length()) {
+            int c = normalized.codePointAt(i);
+            if (isWordChar(c)) {
+                int end = i;
+                while (end < normalized.length()) {
+                    int ch = normalized.codePointAt(end);
+                    if (isWordChar(ch)) {
+                        end += Character.charCount(ch);
+                    } else if (isJoiner(ch) && end + 1 < normalized.length() && isWordChar(normalized.codePointAt(end + 1))) {
+                        end++;
+                    } else {
+                        break;
+                    }
+                }
+                tokens.add(foldDiacritics(normalized.substring(i, end)));
+                i = end;
+            } else if (isCjk(c)) {
+                int end = i;
+                List<String> chars = new ArrayList<>();
+                while (end < normalized.length() && isCjk(normalized.codePointAt(end))) {
+                    int ch = normalized.codePointAt(end);
+                    chars.add(new String(Character.toChars(ch)));
+                    end += Character.charCount(ch);
+                }
+                for (int k = 0; k < chars.size(); k++) {
+                    tokens.add(chars.get(k));
+                    if (k + 1 < chars.size()) {
+                        tokens.add(chars.get(k) + chars.get(k + 1));
+                    }
+                }
+                i = end;
+            } else {
+                i += Character.charCount(c);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 字母、数字（中日韩文字除外）及其后的组合符号
+     */
+    private static boolean isWordChar(int c) {
+        if (isCjk(c)) {
+            return false;
+        }
+        int type = Character.getType(c);
+        return Character.isLetterOrDigit(c) || type == Character.NON_SPACING_MARK
+                || type == Character.COMBINING_SPACING_MARK;
+    }
+
+    /**
+     * 去掉变音符号（café 与 cafe 为同一词项），非拉丁文字保持不变
+     */
+    private static String foldDiacritics(String token) {
+        boolean ascii = token.chars().allMatch(c -> c < 0x80);
+        if (ascii) {
+            return token;
+        }
+        String decomposed = Normalizer.normalize(token, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); ) {
+            int c = decomposed.codePointAt(i);
+            i += Character.charCount(c);
+            if (Character.getType(c) == Character.NON_SPACING_MARK && folded.length() > 0
+                    && Character.UnicodeScript.of(folded.codePointBefore(folded.length())) == Character.UnicodeScript.LATIN) {
+                continue;
+            }
+            folded.appendCodePoint(c);
+        }
+        return Normalizer.normalize(folded, Normalizer.Form.NFC);
+    }
+
+    private static boolean isJoiner(int c) {
+        return c == '-' || c == '_' || c == '.' || c == '/';
+    }
+
+    private static boolean isCjk(int c) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(c);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    /**
+     * FNV-1a 32 位哈希
+     */
+    static long termIndex(String token) {
+        int hash = 0x811C9DC5;
+        for (byte value : token.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= value & 0xFF;
+            hash *= 0x01000193;
+        }
+        return Math.min(hash & 0xFFFFFFFFL, MAX_INDEX - 1);
+    }
+
+    /**
+     * 单个集合的统计及其刷新状态
+     */
+    private static final class CollectionStatistics {
+        // 尚未从 Milvus 读出时为 null
+        private volatile TermStatistics terms;
+        private volatile long refreshedAt;
+        // 有删除或刷新期间有写入，需重新读取
+        private volatile boolean dirty;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+    }
+
+    /**
+     * 文档数与各词项的文档频率（占位维度不计入文档频率）
+     */
+    static final class TermStatistics {
+        private final AtomicLong documents = new AtomicLong();
+        private final Map<Long, AtomicLong> documentFrequencies = new ConcurrentHashMap<>();
+
+        void add(Collection<?> terms) {
+            documents.incrementAndGet();
+            for (Object term : terms) {
+                long index = ((Number) term).longValue();
+                if (index != EMPTY_DOCUMENT_INDEX) {
+                    documentFrequencies.computeIfAbsent(index, t -> new AtomicLong()).incrementAndGet();
+                }
+            }
+        }
+
+        float idf(long term) {
+            long n = documents.get();
+            AtomicLong df = documentFrequencies.get(term);
+            long frequency = df == null ? 0 : df.get();
+            return (float) Math.log(1 + (n - frequency + 0.5) / (frequency + 0.5));
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package com.example.langchain.milvus.service;
+
+import com.example.langchain.milvus.dto.BulkImportResult;
+import com.example.langchain.milvus.dto.DocumentImportRequest;
+import com.example.langchain.milvus.dto.DocumentImportResult;
+import com.example.langchain.milvus.dto.ImportProgress;
+import com.example.langchain.milvus.utils.TempFileMultipartFile;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * 批量导入流水线：解析(CPU) → 分块 → 向量化(I/O) → 批量写入
+ * <p>
+ * 按 parseMode 与大小需要流式解析的文档不进入分阶段流水线，在解析线程上整体完成流式导入
+ * <p>
+ * 各阶段线程数和队列长度独立配置，下游队列满时上游提交阻塞，形成背压
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class BulkImportPipeline {
+
+    private final MilvusServiceImplV2 milvusService;
+
+    // 0 表示使用 CPU 核数
+    @Value("${app.pipeline.parse-threads:0}")
+    private Integer parseThreads;
+
+    @Value("${app.pipeline.chunk-threads:2}")
+    private Integer chunkThreads;
+
+    @Value("${app.pipeline.embed-threads:8}")
+    private Integer embedThreads;
+
+    @Value("${app.pipeline.insert-writers:1}")
+    private Integer insertWriters;
+
+    @Value("${app.pipeline.queue-capacity:16}")
+    private Integer queueCapacity;
+
+    // 单次合并写入的最大行数
+    @Value("${app.pipeline.insert-batch-rows:2000}")
+    private Integer insertBatchRows;
+
+    @Value("${app.import.temp-dir:uploads/tmp/}")
+    private String tempDir;
+
+    // 单个 zip 的条目数 / 解压后总字节数上限，防止压缩炸弹
+    @Value("${app.import.zip.max-entries:1000}")
+    private Integer zipMaxEntries;
+
+    @Value("${app.import.zip.max-uncompressed-bytes:2147483648}")
+    private Long zipMaxUncompressedBytes;
+
+    private ThreadPoolExecutor parseExecutor;
+    private ThreadPoolExecutor chunkExecutor;
+    private ThreadPoolExecutor embedExecutor;
+    private BlockingQueue<PipelineItem> insertQueue;
+    private final List<Thread> writerThreads = new ArrayList<>();
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void init() {
+        int cpuThreads = parseThreads > 0 ? parseThreads : Runtime.getRuntime().availableProcessors();
+        parseExecutor = newStageExecutor("pipeline-parse", cpuThreads);
+        chunkExecutor = newStageExecutor("pipeline-chunk", chunkThreads);
+        embedExecutor = newStageExecutor("pipeline-embed", embedThreads);
+        insertQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+        for (int i = 0; i < insertWriters; i++) {
+            Thread writer = new Thread(this::runInsertWriter, "pipeline-insert-" + (i + 1));
+            writer.setDaemon(true);
+            writer.start();
+            writerThreads.add(writer);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        parseExecutor.shutdown();
+        chunkExecutor.shutdown();
+        embedExecutor.shutdown();
+        writerThreads.forEach(Thread::interrupt);
+    }
+
+    /**
+     * 批量导入多个文件，zip 文件会被展开为其中的文档
+     */
+    public BulkImportResult importDocuments(List<MultipartFile> files, DocumentImportRequest template) throws Exception {
+        long start = System.currentTimeMillis();
+        String collectionName = template.getCollectionName();
+        milvusService.ensureCollectionExists(collectionName);
+
+        List<TempFileMultipartFile> extracted = new ArrayList<>();
+        List<CompletableFuture<DocumentImportResult>> futures = new ArrayList<>();
+
+        try {
+            // 先解压全部 zip，超出限制时不提交任何文档
+            List<MultipartFile> documents = new ArrayList<>();
+            for (MultipartFile file : files) {
+                String name = file.getOriginalFilename() == null ? "" : file.getOriginalFilename().toLowerCase();
+                if (name.endsWith(".zip")) {
+                    List<TempFileMultipartFile> entries = extractZip(file);
+                    extracted.addAll(entries);
+                    documents.addAll(entries);
+                } else {
+                    documents.add(file);
+                }
+            }
+            for (MultipartFile document : documents) {
+                futures.add(submit(document, template));
+            }
+
+            List<DocumentImportResult> results = new ArrayList<>();
+            for (CompletableFuture<DocumentImportResult> future : futures) {
+                results.add(future.join());
+            }
+
+            long duration = System.currentTimeMillis() - start;
+            int success = (int) results.stream().filter(r -> Boolean.TRUE.equals(r.getSuccess())).count();
+
+            log.info("批量导入完成: 文档数={}, 成功={}, 耗时={}ms", results.size(), success, duration);
+            return BulkImportResult.builder()
+                    .collectionName(collectionName)
+                    .documentCount(results.size())
+                    .successCount(success)
+                    .failureCount(results.size() - success)
+                    .durationMs(duration)
+                    .docsPerSecond(duration > 0 ? results.size() * 1000.0 / duration : results.size())
+                    .results(results)
+                    .build();
+        } finally {
+            extracted.forEach(TempFileMultipartFile::close);
+        }
+    }
+
+    /**
+     * 提交单个文档到流水线，解析队列满时阻塞调用方
+     */
+    private CompletableFuture<DocumentImportResult> submit(MultipartFile file, DocumentImportRequest template) {
+        DocumentImportRequest request = copyRequest(template, file);
+        MilvusServiceImplV2.ImportContext context = milvusService.startImport(file, request, new ImportProgress());
+        PipelineItem item = new PipelineItem(context);
+
+        // 大文档与单文档导入一样走流式解析，在解析线程上完成分块、向量化和写入，内存占用有界
+        if (milvusService.useStreamingParse(file, request)) {
+            parseExecutor.execute(() -> {
+                try {
+                    milvusService.importDocument(context);
+                } catch (Exception e) {
+                    // 失败信息已由 importDocument 写入 context 的结果
+                }
+                item.future.complete(context.getResult());
+            });
+            return item.future;
+        }
+
+        parseExecutor.execute(() -> runStage(item, () -> {
+            milvusService.parseStage(context);
+            chunkExecutor.execute(() -> runStage(item, () -> {
+                milvusService.chunkStage(context);
+                if (context.getChunks().isEmpty()) {
+                    milvusService.completeImport(context);
+                    item.future.complete(context.getResult());
+                    return;
+                }
+                // 批次在本阶段线程上逐批发送，在途向量化请求数由 embed-threads 决定
+                embedExecutor.execute(() -> runStage(item, () -> {
+                    milvusService.embedStage(context, Runnable::run);
+                    insertQueue.put(item);
+                }));
+            }));
+        }));
+
+        return item.future;
+    }
+
+    private void runStage(PipelineItem item, StageTask task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            milvusService.failImport(item.context, e);
+            item.future.complete(item.context.getResult());
+        }
+    }
+
+    /**
+     * 写入线程：合并同一集合的连续文档，达到行数上限或队列为空时写入
+     */
+    private void runInsertWriter() {
+        PipelineItem carry = null;
+
+        while (running) {
+            try {
+                PipelineItem first = carry != null ? carry : insertQueue.poll(1, TimeUnit.SECONDS);
+                carry = null;
+                if (first == null) {
+                    continue;
+                }
+
+                String collectionName = first.context.getRequest().getCollectionName();
+                List<PipelineItem> batch = new ArrayList<>();
+                batch.add(first);
+                int rows = first.context.getChunks().size();
+
+                while (rows < insertBatchRows) {
+                    PipelineItem next = insertQueue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    if (!collectionName.equals(next.context.getRequest().getCollectionName()) ||
+                            rows + next.context.getChunks().size() > insertBatchRows) {
+                        carry = next;
+                        break;
+                    }
+                    batch.add(next);
+                    rows += next.context.getChunks().size();
+                }
+
+                writeBatch(collectionName, batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void writeBatch(String collectionName, List<PipelineItem> batch) {
+        List<MilvusServiceImplV2.ImportContext> contexts = new ArrayList<>(batch.size());
+        for (PipelineItem item : batch) {
+            contexts.add(item.context);
+        }
+
+        try {
+            milvusService.insertStage(collectionName, contexts);
+            for (PipelineItem item : batch) {
+                milvusService.completeImport(item.context);
+                item.future.complete(item.context.getResult());
+            }
+        } catch (Exception e) {
+            for (PipelineItem item : batch) {
+                milvusService.failImport(item.context, e);
+                item.future.complete(item.context.getResult());
+            }
+        }
+    }
+
+    /**
+     * 展开 zip 中的 docx，条目数或解压后总字节数超出上限时抛出 IllegalArgumentException。
+     * 条目头中的大小可以伪造，按实际写出的字节计数
+     */
+    private List<TempFileMultipartFile> extractZip(MultipartFile zipFile) throws IOException {
+        List<TempFileMultipartFile> entries = new ArrayList<>();
+        Path dir = Paths.get(tempDir);
+        Files.createDirectories(dir);
+        int entryCount = 0;
+        long totalBytes = 0;
+
+        try (ZipInputStream zis = new ZipInputStream(zipFile.getInputStream())) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (++entryCount > zipMaxEntries) {
+                    throw new IllegalArgumentException("压缩包条目数超过上限 " + zipMaxEntries + ": " + zipFile.getOriginalFilename());
+                }
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                // 只取文件名，忽略压缩包内的目录结构
+                String entryName = Paths.get(entry.getName()).getFileName().toString();
+                if (!entryName.toLowerCase().endsWith(".docx") || entryName.startsWith("~$")) {
+                    continue;
+                }
+
+                Path target = Files.createTempFile(dir, "bulk_", ".tmp");
+                entries.add(new TempFileMultipartFile(target, "file", entryName,
+                        "application/vnd.openxmlformats-officedocument.wordprocessingml.document"));
+                totalBytes += copyEntry(zis, target, zipMaxUncompressedBytes - totalBytes, zipFile.getOriginalFilename());
+            }
+        } catch (IOException | RuntimeException e) {
+            entries.forEach(TempFileMultipartFile::close);
+            throw e;
+        }
+
+        log.info("解压完成: {} 包含 {} 个文档", zipFile.getOriginalFilename(), entries.size());
+        return entries;
+    }
+
+    /**
+     * 复制当前条目，最多写出 remaining 字节，超出时抛出 IllegalArgumentException
+     */
+    private long copyEntry(InputStream in, Path target, long remaining, String zipName) throws IOException {
+        byte[] buffer = new byte[8192];
+        long written = 0;
+        try (OutputStream out = Files.newOutputStream(target)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                written += read;
+                if (written > remaining) {
+                    throw new IllegalArgumentException("压缩包解压后大小超过上限 " + zipMaxUncompressedBytes + " 字节: " + zipName);
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+        return written;
+    }
+
+    private DocumentImportRequest copyRequest(DocumentImportRequest template, MultipartFile file) {
+        DocumentImportRequest request = new DocumentImportRequest();
+        request.setFile(file);
+        request.setCollectionName(template.getCollectionName());
+        request.setExtractImages(template.getExtractImages());
+        request.setParseMode(template.getParseMode());
+        request.setChunkStrategy(template.getChunkStrategy());
+        request.setChunkSize(template.getChunkSize());
+        request.setOverlapSize(template.getOverlapSize());
+        request.setMetadata(template.getMetadata());
+        request.setTenantId(template.getTenantId());
+        return request;
+    }
+
+    /**
+     * 阶段线程池：有界队列，队列满时阻塞提交方（背压）
+     */
+    private ThreadPoolExecutor newStageExecutor(String name, int threads) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        RejectedExecutionHandler blockingPut = (r, executor) -> {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException(name + " 已关闭");
+            }
+            try {
+                executor.getQueue().put(r);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(name + " 提交被中断", e);
+            }
+        };
+
+        return new ThreadPoolExecutor(
+                threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, name + "-" + threadIndex.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                blockingPut);
+    }
+
+    @FunctionalInterface
+    private interface StageTask {
+        void run() throws Exception;
+    }
+
+    private static class PipelineItem {
+        private final MilvusServiceImplV2.ImportContext context;
+        private final CompletableFuture<DocumentImportResult> future = new CompletableFuture<>();
+
+        private PipelineItem(MilvusServiceImplV2.ImportContext context) {
+            this.context = context;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.langchain.milvus.service;
+
+import com.example.langchain.milvus.dto.DocumentImportRequest;
+import com.example.langchain.milvus.utils.JsonUtils;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 分块到插入行的转换：图片列表序列化为 JSON，元数据构建为 JsonObject 后追加到列式批次
+ */
+public class ChunkRowMapper {
+
+    private static final Gson GSON = new Gson();
+
+    // 图片未记录保存路径时，按输出目录 + 文件名拼接
+    private final String imageOutputDir;
+
+    public ChunkRowMapper(String imageOutputDir) {
+        this.imageOutputDir = imageOutputDir;
+    }
+
+    /**
+     * 准备Milvus插入数据：每个分块追加为一行
+     */
+    public void appendInsertRows(InsertRowBatch batch,
+                                 List<DocumentParserWithStructure.DocumentChunk> chunks,
+                                 List<DocumentParserWithStructure.TextEmbedding> embeddings,
+                                 String documentId,
+                                 String fileName,
+                                 DocumentImportRequest request) {
+        long createTime = System.currentTimeMillis();
+
+        for (int i = 0; i < chunks.size(); i++) {
+            DocumentParserWithStructure.DocumentChunk chunk = chunks.get(i);
+            DocumentParserWithStructure.TextEmbedding embedding = i < embeddings.size() ? embeddings.get(i) : null;
+
+            batch.addRow(
+                    embedding == null ? null : embedding.getVector(),
+                    chunk.getText(),
+                    documentId,
+                    Objects.toString(chunk.getChunkId(), "0"),
+                    request.getTenantId(),
+                    convertImagesToJson(chunk),
+                    convertMetadataToJson(chunk, documentId, fileName, request),
+                    createTime);
+        }
+    }
+
+    public String convertImagesToJson(DocumentParserWithStructure.DocumentChunk chunk) {
+        if (chunk == null || chunk.getImages() == null || chunk.getImages().isEmpty()) {
+            return "";  // 直接返回空对象
+        }
+
+        List<Map<String, Object>> imageInfoList = new ArrayList<>();
+
+        for (DocumentParserWithStructure.ImageInfo image : chunk.getImages()) {
+            if (image == null) continue;
+
+            Map<String, Object> imageInfo = new HashMap<>();
+
+            // 确保所有字符串字段有值
+            imageInfo.put("file_name",
+                    image.getFileName() != null ? image.getFileName() : "");
+            imageInfo.put("file_path",
+                    image.getFilePath() != null ? image.getFilePath() :
+                            (image.getFileName() != null ? Paths.get(imageOutputDir, image.getFileName()).toString() : ""));
+
+            imageInfo.put("format",
+                    image.getFormat() != null ? image.getFormat() : "");
+
+            if (image.getContentHash() != null) {
+                imageInfo.put("content_hash", image.getContentHash());
+            }
+            if (image.getSize() != null) {
+                imageInfo.put("size", image.getSize());
+            }
+
+            if (image.getPosition() != null) {
+                Map<String, Object> position = new HashMap<>();
+                position.put("paragraph_index", image.getPosition().getParagraphIndex());
+                position.put("char_position", image.getPosition().getCharPosition());
+
+                String paragraphText = image.getPosition().getParagraphText();
+                position.put("paragraph_text",
+                        paragraphText != null ? paragraphText : "");
+
+                imageInfo.put("position", position);
+            }
+
+            imageInfoList.add(imageInfo);
+        }
+
+        if (imageInfoList.isEmpty()) {
+            return "";
+        }
+
+        try {
+            return JsonUtils.toJson(imageInfoList);
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    /**
+     * 元数据直接构建为 JsonObject，无法序列化的值由 Gson 抛出异常，不再静默替换为空对象
+     */
+    public JsonObject convertMetadataToJson(DocumentParserWithStructure.DocumentChunk chunk, String documentId, String fileName,
+                                            DocumentImportRequest request) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("document_id", documentId);
+        metadata.put("document_name", fileName);
+        metadata.put("tenant_id", request.getTenantId());
+        metadata.put("chunk_id", chunk.getChunkId());
+        metadata.put("start_para", chunk.getStartParagraphIndex());
+        metadata.put("end_para", chunk.getEndParagraphIndex());
+        metadata.put("word_count", chunk.getWordCount());
+        metadata.put("char_count", chunk.getCharCount());
+        metadata.put("has_images", chunk.getImages() != null && !chunk.getImages().isEmpty());
+
+        if (chunk.getMetadata() != null) {
+            metadata.putAll(chunk.getMetadata());
+        }
+
+        // 导入请求附带的业务元数据，不覆盖系统字段
+        if (request.getMetadata() != null) {
+            request.getMetadata().forEach(metadata::putIfAbsent);
+        }
+
+        return GSON.toJsonTree(metadata).getAsJsonObject();
+    }
+}
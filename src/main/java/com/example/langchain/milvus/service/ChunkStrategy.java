@@ -0,0 +1,44 @@
+package com.example.langchain.milvus.service;
+
+/**
+ * 分块策略（DocumentImportRequest.chunkStrategy）：
+ * <ul>
+ *     <li>fixed：按字符数定长切分，相邻分块重叠 overlapSize 个字符</li>
+ *     <li>sentence：按句子累积到 chunkSize，重叠部分为上一分块末尾的完整句子</li>
+ *     <li>heading：一二级标题开始新的章节，章节内按段落累积，分块不跨章节</li>
+ *     <li>semantic：按段落累积，一二级标题结束当前分块（默认，与流式导入规则一致）</li>
+ * </ul>
+ * 超出 chunkSize 的段落或句子在句末、空白处切开
+ */
+public enum ChunkStrategy {
+
+    FIXED("fixed"),
+    SENTENCE("sentence"),
+    HEADING("heading"),
+    SEMANTIC("semantic");
+
+    private final String strategyName;
+
+    ChunkStrategy(String strategyName) {
+        this.strategyName = strategyName;
+    }
+
+    public String getStrategyName() {
+        return strategyName;
+    }
+
+    /**
+     * 为空时取 semantic
+     */
+    public static ChunkStrategy of(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return SEMANTIC;
+        }
+        for (ChunkStrategy strategy : values()) {
+            if (strategy.strategyName.equalsIgnoreCase(name.trim()) || strategy.name().equalsIgnoreCase(name.trim())) {
+                return strategy;
+            }
+        }
+        throw new IllegalArgumentException("未知的分块策略: " + name);
+    }
+}
@@ -0,0 +1,351 @@
+package com.example.langchain.milvus.service;
+
+import io.milvus.client.MilvusClient;
+import io.milvus.grpc.GetCollectionStatisticsResponse;
+import io.milvus.grpc.GetLoadStateResponse;
+import io.milvus.grpc.LoadState;
+import io.milvus.grpc.ShowCollectionsResponse;
+import io.milvus.param.R;
+import io.milvus.param.RpcStatus;
+import io.milvus.param.collection.GetCollectionStatisticsParam;
+import io.milvus.param.collection.GetLoadStateParam;
+import io.milvus.param.collection.LoadCollectionParam;
+import io.milvus.param.collection.ReleaseCollectionParam;
+import io.milvus.param.collection.ShowCollectionsParam;
+import io.milvus.response.GetCollStatResponseWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 集合加载管理：检索前按需加载集合并记录最近访问时间，
+ * 已加载集合的估算内存超出预算时，按最近最少使用释放没有在途请求的集合；启动时预热配置的集合。
+ * 内存按 行数 × 每行估算字节数 计算（向量部分按集合的索引配置档估算），导入后按新增行数累加。
+ */
+@Component
+@Slf4j
+public class CollectionLoadManager {
+
+    @Autowired
+    private MilvusClient milvusClient;
+
+    // 检索服务依赖本类，延迟注入以解开循环依赖；仅用于获取集合的索引配置档
+    @Autowired
+    @Lazy
+    private MilvusServiceImplV2 milvusService;
+
+    // 查询节点可用于已加载集合的内存预算，0 表示不限制
+    @Value("${app.milvus.load.memory-budget-bytes:8589934592}")
+    private Long memoryBudgetBytes;
+
+    // 每行标量字段（text、images、metadata 等）的估算字节数
+    @Value("${app.milvus.load.scalar-bytes-per-row:16384}")
+    private Long scalarBytesPerRow;
+
+    @Value("${app.milvus.load.warmup-collections:}")
+    private List<String> warmupCollections;
+
+    @Value("${app.milvus.vector-dimension:1024}")
+    private Integer vectorDimension;
+
+    private final Map<String, Resident> residents = new HashMap<>();
+    // 已选中释放、释放请求尚未完成的集合
+    private final Map<String, CompletableFuture<Void>> releasing = new HashMap<>();
+    private long usedBytes;
+
+    /**
+     * 启动后识别已加载的集合计入预算，再预热配置的集合；失败只告警，不影响启动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            R<ShowCollectionsResponse> response = milvusClient.showCollections(ShowCollectionsParam.newBuilder().build());
+            if (response.getStatus() == R.Status.Success.getCode()) {
+                for (String name : response.getData().getCollectionNamesList()) {
+                    if (isLoadedOnServer(name)) {
+                        register(name, estimateBytes(name));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("获取已加载集合失败", e);
+        }
+
+        for (String name : warmupCollections) {
+            if (name == null || name.isBlank()) {
+                continue;
+            }
+            try (Lease ignored = acquire(name.trim())) {
+                log.info("集合预热完成: {}", name.trim());
+            } catch (Exception e) {
+                log.warn("集合预热失败: {}", name.trim(), e);
+            }
+        }
+    }
+
+    /**
+     * 确保集合已加载并登记一次访问；在租约关闭前该集合不会被释放
+     */
+    public Lease acquire(String collectionName) throws Exception {
+        while (true) {
+            Resident resident;
+            CompletableFuture<Void> pendingRelease;
+            synchronized (this) {
+                resident = residents.get(collectionName);
+                pendingRelease = releasing.get(collectionName);
+            }
+            // 正在释放的集合须等释放完成后再重新加载，否则释放请求可能晚于加载请求到达
+            if (pendingRelease != null) {
+                pendingRelease.join();
+                continue;
+            }
+            long bytes = resident == null ? estimateBytes(collectionName) : 0;
+
+            boolean loader = false;
+            Map<String, Resident> victims = Map.of();
+            synchronized (this) {
+                if (releasing.containsKey(collectionName)) {
+                    continue;
+                }
+                resident = residents.get(collectionName);
+                if (resident == null) {
+                    resident = new Resident(bytes);
+                    resident.loading = new CompletableFuture<>();
+                    residents.put(collectionName, resident);
+                    usedBytes += bytes;
+                    victims = selectVictims(collectionName);
+                    loader = true;
+                }
+                resident.inFlight++;
+                resident.lastAccess = System.nanoTime();
+            }
+
+            for (Map.Entry<String, Resident> victim : victims.entrySet()) {
+                boolean released = false;
+                try {
+                    released = release(victim.getKey());
+                } finally {
+                    synchronized (this) {
+                        // 释放失败时集合仍在查询节点上，重新计入预算，下次超出预算时再尝试释放
+                        if (!released && !residents.containsKey(victim.getKey())) {
+                            residents.put(victim.getKey(), victim.getValue());
+                            usedBytes += victim.getValue().bytes;
+                        }
+                        releasing.remove(victim.getKey()).complete(null);
+                    }
+                }
+            }
+
+            if (loader) {
+                try {
+                    load(collectionName);
+                    resident.loading.complete(null);
+                } catch (Exception e) {
+                    synchronized (this) {
+                        residents.remove(collectionName);
+                        usedBytes -= resident.bytes;
+                    }
+                    resident.loading.completeExceptionally(e);
+                    throw e;
+                }
+            } else {
+                try {
+                    resident.loading.join();
+                } catch (Exception e) {
+                    synchronized (this) {
+                        resident.inFlight--;
+                    }
+                    throw new Exception("加载集合失败: " + collectionName, e.getCause());
+                }
+            }
+            return new Lease(resident);
+        }
+    }
+
+    /**
+     * 导入后按新增行数累加估算内存
+     */
+    public void onRowsInserted(String collectionName, long rows) {
+        long added = rows * bytesPerRow(collectionName);
+        synchronized (this) {
+            Resident resident = residents.get(collectionName);
+            if (resident != null) {
+                resident.bytes += added;
+                usedBytes += added;
+            }
+        }
+    }
+
+    /**
+     * 集合被删除后不再计入预算
+     */
+    public synchronized void forget(String collectionName) {
+        Resident resident = residents.remove(collectionName);
+        if (resident != null) {
+            usedBytes -= resident.bytes;
+        }
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int getLoadedCollections() {
+        return residents.size();
+    }
+
+    /**
+     * 超出预算时按最近访问时间从旧到新挑选可释放的集合（无在途请求、未在加载中），
+     * 先从预算中扣除，释放失败时由调用方重新计入
+     */
+    private Map<String, Resident> selectVictims(String loading) {
+        Map<String, Resident> victims = new LinkedHashMap<>();
+        if (memoryBudgetBytes <= 0 || usedBytes <= memoryBudgetBytes) {
+            return victims;
+        }
+
+        List<Map.Entry<String, Resident>> candidates = new ArrayList<>();
+        for (Map.Entry<String, Resident> entry : residents.entrySet()) {
+            Resident resident = entry.getValue();
+            if (!entry.getKey().equals(loading) && resident.inFlight == 0 && resident.loading.isDone()) {
+                candidates.add(entry);
+            }
+        }
+        candidates.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+
+        for (Map.Entry<String, Resident> entry : candidates) {
+            if (usedBytes <= memoryBudgetBytes) {
+                break;
+            }
+            residents.remove(entry.getKey());
+            releasing.put(entry.getKey(), new CompletableFuture<>());
+            usedBytes -= entry.getValue().bytes;
+            victims.put(entry.getKey(), entry.getValue());
+        }
+
+        if (usedBytes > memoryBudgetBytes) {
+            log.warn("已加载集合估算内存 {} 字节超出预算 {} 字节，没有可释放的集合", usedBytes, memoryBudgetBytes);
+        }
+        return victims;
+    }
+
+    private synchronized void register(String collectionName, long bytes) {
+        if (!residents.containsKey(collectionName)) {
+            Resident resident = new Resident(bytes);
+            resident.loading = CompletableFuture.completedFuture(null);
+            residents.put(collectionName, resident);
+            usedBytes += bytes;
+        }
+    }
+
+    private void load(String collectionName) throws Exception {
+        long start = System.currentTimeMillis();
+        R<RpcStatus> response = milvusClient.loadCollection(LoadCollectionParam.newBuilder()
+                .withCollectionName(collectionName)
+                .withSyncLoad(true)
+                .build());
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            throw new Exception("加载集合失败: " + response.getMessage());
+        }
+        log.info("集合已加载: {}, 耗时={}ms", collectionName, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 释放集合，返回是否成功
+     */
+    private boolean release(String collectionName) {
+        try {
+            R<RpcStatus> response = milvusClient.releaseCollection(ReleaseCollectionParam.newBuilder()
+                    .withCollectionName(collectionName)
+                    .build());
+            if (response.getStatus() != R.Status.Success.getCode()) {
+                log.warn("释放集合失败: {}, {}", collectionName, response.getMessage());
+                return false;
+            }
+            log.info("集合已释放（超出内存预算）: {}", collectionName);
+            return true;
+        } catch (Exception e) {
+            log.warn("释放集合失败: {}", collectionName, e);
+            return false;
+        }
+    }
+
+    private boolean isLoadedOnServer(String collectionName) {
+        R<GetLoadStateResponse> response = milvusClient.getLoadState(GetLoadStateParam.newBuilder()
+                .withCollectionName(collectionName)
+                .build());
+        return response.getStatus() == R.Status.Success.getCode()
+                && response.getData().getState() == LoadState.LoadStateLoaded;
+    }
+
+    private long estimateBytes(String collectionName) {
+        try {
+            R<GetCollectionStatisticsResponse> response = milvusClient.getCollectionStatistics(
+                    GetCollectionStatisticsParam.newBuilder()
+                            .withCollectionName(collectionName)
+                            .build());
+            if (response.getStatus() != R.Status.Success.getCode()) {
+                log.warn("获取集合行数失败: {}, {}", collectionName, response.getMessage());
+                return 0;
+            }
+            return new GetCollStatResponseWrapper(response.getData()).getRowCount() * bytesPerRow(collectionName);
+        } catch (Exception e) {
+            log.warn("获取集合行数失败: {}", collectionName, e);
+            return 0;
+        }
+    }
+
+    /**
+     * 每行估算字节数：按集合索引配置档估算的向量索引 + 标量字段；索引类型未知时按 HNSW 估算
+     */
+    private long bytesPerRow(String collectionName) {
+        IndexProfile profile = milvusService.getIndexProfile(collectionName);
+        return (profile == null ? IndexProfile.LOW_LATENCY : profile).indexBytesPerRow(vectorDimension) + scalarBytesPerRow;
+    }
+
+    private static final class Resident {
+        private long bytes;
+        private long lastAccess;
+        private int inFlight;
+        private CompletableFuture<Void> loading;
+
+        Resident(long bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * 集合使用租约，检索结束后关闭
+     */
+    public final class Lease implements AutoCloseable {
+        private final Resident resident;
+        private boolean closed;
+
+        private Lease(Resident resident) {
+            this.resident = resident;
+        }
+
+        @Override
+        public void close() {
+            synchronized (CollectionLoadManager.this) {
+                if (!closed) {
+                    closed = true;
+                    resident.inFlight--;
+                    resident.lastAccess = System.nanoTime();
+                }
+            }
+        }
+    }
+}
@@ -1,23 +1,27 @@
 package com.example.langchain.milvus.service;
 
+import com.example.langchain.milvus.utils.TempFileMultipartFile;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.poi.ooxml.POIXMLDocumentPart;
-import org.apache.poi.openxml4j.opc.PackagePart;
-import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.xwpf.usermodel.UnderlinePatterns;
 import org.apache.poi.xwpf.usermodel.XWPFDocument;
 import org.apache.poi.xwpf.usermodel.XWPFParagraph;
 import org.apache.poi.xwpf.usermodel.XWPFPicture;
 import org.apache.poi.xwpf.usermodel.XWPFPictureData;
 import org.apache.poi.xwpf.usermodel.XWPFRun;
-import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTP;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -25,13 +29,32 @@ import java.util.Map;
 
 @Component
 @Slf4j
+@RequiredArgsConstructor
 public class DocumentParserWithStructure {
 
+    private final ImageExtractorWithPosition imageExtractorWithPosition;
+
     public DocumentContent parseDocumentWithStructure(MultipartFile file) throws Exception {
+        return parseDocumentWithImages(file, null, false);
+    }
+
+    /**
+     * 单次解析：只构建一次 XWPFDocument，同时得到段落、结构、图片数据及图片位置
+     */
+    public DocumentContent parseDocumentWithImages(MultipartFile file, String imageOutputDir, boolean extractImages) throws Exception {
         String fileName = file.getOriginalFilename().toLowerCase();
 
         if (fileName.endsWith(".docx")) {
-            return parseDocxWithStructure(file);
+            try (XWPFDocument doc = openDocx(file)) {
+                // 图片字节直接从包内流式写盘，解析结果中只保留句柄
+                ImageExtractorWithPosition.ImageIndex imageIndex = extractImages
+                        ? imageExtractorWithPosition.saveDocumentImages(doc, imageOutputDir)
+                        : null;
+
+                DocumentContent content = parseDocxWithStructure(doc, imageIndex);
+                content.setExtractedImages(imageIndex == null ? new ArrayList<>() : imageIndex.getImages());
+                return content;
+            }
         }
         else {
             throw new UnsupportedOperationException("不支持的文件格式: " + fileName);
@@ -39,52 +62,27 @@ public class DocumentParserWithStructure {
     }
 
     /**
-     * 检查图片是否在段落中
+     * 已落盘的上传文件按 ZIP 随机访问打开，只解压用到的部件，不把整个包读入内存
      */
-    private boolean isPictureInParagraph(XWPFPictureData picData, List<XWPFParagraph> paragraphs) {
-        try {
-            // 获取图片的关系ID
-            POIXMLDocumentPart part = (POIXMLDocumentPart) picData;
-            PackagePart packagePart = part.getPackagePart();
-
-            // 获取关系ID
-            String picRelationshipId = null;
-            for (PackageRelationship rel : packagePart.getRelationships()) {
-                picRelationshipId = rel.getId();
-                break;
-            }
-
-            if (picRelationshipId == null) {
-                return false;
+    private XWPFDocument openDocx(MultipartFile file) throws Exception {
+        if (file instanceof TempFileMultipartFile) {
+            Path path = ((TempFileMultipartFile) file).getPath();
+            OPCPackage pkg = OPCPackage.open(path.toFile(), PackageAccess.READ);
+            try {
+                return new XWPFDocument(pkg);
+            } catch (Exception e) {
+                pkg.revert();
+                throw e;
             }
-
-            // 在段落中查找此关系ID
-            for (XWPFParagraph paragraph : paragraphs) {
-                try {
-                    CTP ctP = paragraph.getCTP();
-                    String xml = ctP.toString();
-
-                    // 在XML中查找关系ID
-                    if (xml.contains("r:embed=\"" + picRelationshipId + "\"") ||
-                            xml.contains("r:link=\"" + picRelationshipId + "\"") ||
-                            xml.contains("r:id=\"" + picRelationshipId + "\"")) {
-                        return true;
-                    }
-                } catch (Exception e) {
-                    // 忽略此段落的错误
-                }
-            }
-        } catch (Exception e) {
-            log.debug("检查图片位置失败: {}", e.getMessage());
         }
-
-        return false;
+        return new XWPFDocument(file.getInputStream());
     }
 
     /**
      * 从run中提取图片
      */
-    private List<ImageInfo> extractImagesFromRuns(XWPFParagraph paragraph, int paraIndex, int charPosition) {
+    private List<ImageInfo> extractImagesFromRuns(XWPFParagraph paragraph, int paraIndex, int charPosition,
+                                                  ImageExtractorWithPosition.ImageIndex imageIndex) {
         List<ImageInfo> images = new ArrayList<>();
 
         try {
@@ -103,14 +101,12 @@ public class DocumentParserWithStructure {
                     if (embeddedPictures != null && !embeddedPictures.isEmpty()) {
                         for (XWPFPicture picture : embeddedPictures) {
                             XWPFPictureData pictureData = picture.getPictureData();
-                            if (pictureData != null && pictureData.getData() != null) {
-                                ImageInfo imageInfo = new ImageInfo();
+                            if (pictureData != null) {
+                                ImageInfo imageInfo = imageHandle(pictureData, imageIndex);
                                 imageInfo.setIndex(images.size());
-                                imageInfo.setData(pictureData.getData());
-                                imageInfo.setFormat(pictureData.suggestFileExtension());
 
                                 // 获取文件名
-                                String fileName = pictureData.getFileName();
+                                String fileName = imageInfo.getFileName();
                                 if (fileName == null || fileName.isEmpty()) {
                                     fileName = "para_" + paraIndex + "_run_" + runIndex +
                                             "_img_" + images.size() + "." + pictureData.suggestFileExtension();
@@ -132,7 +128,7 @@ public class DocumentParserWithStructure {
                                 images.add(imageInfo);
 
                                 log.info("从run获取到图片: 段落={}, run={}, 图片={}, 大小={}字节",
-                                        paraIndex, runIndex, fileName, pictureData.getData().length);
+                                        paraIndex, runIndex, fileName, imageInfo.getSize());
                             }
                         }
                     }
@@ -148,140 +144,170 @@ public class DocumentParserWithStructure {
         return images;
     }
 
-    private DocumentContent parseDocxWithStructure(MultipartFile file) throws Exception {
-        try (XWPFDocument doc = new XWPFDocument(file.getInputStream())) {
-            DocumentContent content = new DocumentContent();
-            List<Paragraph> paragraphs = new ArrayList<>();
-            List<ImageInfo> allImages = new ArrayList<>();
+    private DocumentContent parseDocxWithStructure(XWPFDocument doc,
+                                                   ImageExtractorWithPosition.ImageIndex imageIndex) {
+        DocumentContent content = new DocumentContent();
+        List<Paragraph> paragraphs = new ArrayList<>();
+        List<ImageInfo> allImages = new ArrayList<>();
 
-            StringBuilder fullText = new StringBuilder();
-            int charPosition = 0;
-            int paraIndex = 0;
+        StringBuilder fullText = new StringBuilder();
+        int charPosition = 0;
+        int paraIndex = 0;
 
-            // 1. 首先获取文档中的所有图片
-            List<XWPFPictureData> allPictureData = doc.getAllPictures();
-            log.info("文档包含 {} 张图片", allPictureData.size());
+        // 1. 首先获取文档中的所有图片
+        List<XWPFPictureData> allPictureData = doc.getAllPictures();
+        log.info("文档包含 {} 张图片", allPictureData.size());
 
-            // 2. 按顺序编号图片
-            Map<Integer, XWPFPictureData> pictureMap = new HashMap<>();
-            for (int i = 0; i < allPictureData.size(); i++) {
-                pictureMap.put(i, allPictureData.get(i));
-            }
-
-            // 3. 解析段落
-            List<XWPFParagraph> allParagraphs = doc.getParagraphs();
-
-            for (int i = 0; i < allParagraphs.size(); i++) {
-                XWPFParagraph xwpfPara = allParagraphs.get(i);
-                String text = xwpfPara.getText();
-                if (text == null) {
-                    text = "";
-                }
-                text = text.trim();
+        // 2. 建立关系ID索引：图片序号 ↔ 段落，避免逐段序列化 XML 查找
+        PictureRelationIndex pictureIndex = PictureRelationIndex.build(doc, allPictureData);
 
-                Paragraph para = new Paragraph();
-                para.setId(paraIndex++);
-                para.setText(text);
-                para.setStartPos(charPosition);
-                para.setEndPos(charPosition + text.length());
+        // 3. 解析段落
+        List<XWPFParagraph> allParagraphs = doc.getParagraphs();
 
-                // 检测段落类型
-                para.setType(detectParagraphType(xwpfPara, text));
-                para.setLevel(detectHeadingLevel(xwpfPara, text));
-                para.setStyle(extractParagraphStyle(xwpfPara));
-                para.setRuns(extractRunInfo(xwpfPara));
+        for (int i = 0; i < allParagraphs.size(); i++) {
+            XWPFParagraph xwpfPara = allParagraphs.get(i);
+            String text = xwpfPara.getText();
+            if (text == null) {
+                text = "";
+            }
+            text = text.trim();
+
+            Paragraph para = new Paragraph();
+            para.setId(paraIndex++);
+            para.setText(text);
+            para.setStartPos(charPosition);
+            para.setEndPos(charPosition + text.length());
+
+            // 检测段落类型
+            para.setType(detectParagraphType(xwpfPara, text));
+            para.setLevel(detectHeadingLevel(xwpfPara, text));
+            para.setStyle(extractParagraphStyle(xwpfPara));
+            para.setRuns(extractRunInfo(xwpfPara));
+
+            // 提取当前段落中的图片
+            List<ImageInfo> paraImages = new ArrayList<>();
+
+            // 方法1: 通过关系ID索引查找此段落引用的图片
+            try {
+                for (Integer picIndex : pictureIndex.picturesInParagraph(xwpfPara)) {
+                    XWPFPictureData picData = allPictureData.get(picIndex);
+                    ImageInfo imageInfo = imageHandle(picData, imageIndex);
+                    imageInfo.setIndex(picIndex);
+
+                    // 获取文件名
+                    String fileName = imageInfo.getFileName();
+                    if (fileName == null || fileName.isEmpty()) {
+                        fileName = "image_" + (picIndex + 1) + "." + picData.suggestFileExtension();
+                    }
+                    imageInfo.setFileName(fileName);
 
-                // 提取当前段落中的图片
-                List<ImageInfo> paraImages = new ArrayList<>();
+                    ImagePosition position = new ImagePosition();
+                    position.setParagraphIndex(i);
+                    position.setParagraphId(i);
+                    position.setCharPosition(charPosition);
+                    position.setRunIndex(-1);
 
-                // 方法1: 使用正确的POI API提取段落中的图片
-                try {
-                    List<XWPFParagraph> pictureParagraphs = new ArrayList<>();
-                    pictureParagraphs.add(xwpfPara);
-
-                    // 遍历所有图片，检查是否在此段落中
-                    for (Map.Entry<Integer, XWPFPictureData> entry : pictureMap.entrySet()) {
-                        Integer picIndex = entry.getKey();
-                        XWPFPictureData picData = entry.getValue();
-
-                        // 检查图片是否在此段落中
-                        boolean pictureInParagraph = isPictureInParagraph(picData, pictureParagraphs);
-                        if (pictureInParagraph) {
-                            ImageInfo imageInfo = new ImageInfo();
-                            imageInfo.setIndex(picIndex);
-                            imageInfo.setData(picData.getData());
-                            imageInfo.setFormat(picData.suggestFileExtension());
-
-                            // 获取文件名
-                            String fileName = picData.getFileName();
-                            if (fileName == null || fileName.isEmpty()) {
-                                fileName = "image_" + (picIndex + 1) + "." + picData.suggestFileExtension();
-                            }
-                            imageInfo.setFileName(fileName);
+                    imageInfo.setPosition(position);
+                    paraImages.add(imageInfo);
 
-                            ImagePosition position = new ImagePosition();
-                            position.setParagraphIndex(i);
-                            position.setParagraphId(i);
-                            position.setCharPosition(charPosition);
-                            position.setRunIndex(-1);
+                    log.debug("段落 {} 找到图片: {}", i, fileName);
+                }
+            } catch (Exception e) {
+                log.warn("检查图片位置失败: {}", e.getMessage());
+            }
 
-                            imageInfo.setPosition(position);
-                            paraImages.add(imageInfo);
+            // 方法2: 遍历run获取嵌入式图片
+            if (paraImages.isEmpty()) {
+                paraImages = extractImagesFromRuns(xwpfPara, i, charPosition, imageIndex);
+            }
 
-                            log.debug("段落 {} 找到图片: {}", i, fileName);
-                        }
+            // 同一次遍历中记录已保存图片的位置
+            if (imageIndex != null) {
+                List<XWPFRun> runs = xwpfPara.getRuns();
+                for (int runIndex = 0; runIndex < runs.size(); runIndex++) {
+                    for (XWPFPicture picture : runs.get(runIndex).getEmbeddedPictures()) {
+                        imageExtractorWithPosition.recordImagePosition(imageIndex, picture.getPictureData(),
+                                i, runIndex, xwpfPara.getText());
                     }
-                } catch (Exception e) {
-                    log.warn("检查图片位置失败: {}", e.getMessage());
-                }
-
-                // 方法2: 遍历run获取嵌入式图片
-                if (paraImages.isEmpty()) {
-                    paraImages = extractImagesFromRuns(xwpfPara, i, charPosition);
                 }
-
-                para.setImages(paraImages);
-                allImages.addAll(paraImages);
-
-                paragraphs.add(para);
-                fullText.append(text).append("\n");
-                charPosition = fullText.length();
             }
 
-            // 4. 处理剩余的未分配图片
-            if (allImages.size() < allPictureData.size()) {
-                for (int i = allImages.size(); i < allPictureData.size(); i++) {
-                    XWPFPictureData picData = allPictureData.get(i);
-                    ImageInfo imageInfo = new ImageInfo();
-                    imageInfo.setIndex(i);
-                    imageInfo.setData(picData.getData());
-                    imageInfo.setFormat(picData.suggestFileExtension());
+            para.setImages(paraImages);
+            allImages.addAll(paraImages);
 
-                    String fileName = picData.getFileName();
-                    if (fileName == null || fileName.isEmpty()) {
-                        fileName = "image_" + (i + 1) + "." + picData.suggestFileExtension();
-                    }
-                    imageInfo.setFileName(fileName);
+            paragraphs.add(para);
+            fullText.append(text).append("\n");
+            charPosition = fullText.length();
+        }
 
-                    ImagePosition position = new ImagePosition();
-                    position.setParagraphIndex(-1); // 未分配
-                    position.setCharPosition(fullText.length());
+        // 4. 处理剩余的未分配图片
+        if (allImages.size() < allPictureData.size()) {
+            for (int i = allImages.size(); i < allPictureData.size(); i++) {
+                XWPFPictureData picData = allPictureData.get(i);
+                ImageInfo imageInfo = imageHandle(picData, imageIndex);
+                imageInfo.setIndex(i);
 
-                    imageInfo.setPosition(position);
-                    allImages.add(imageInfo);
+                String fileName = imageInfo.getFileName();
+                if (fileName == null || fileName.isEmpty()) {
+                    fileName = "image_" + (i + 1) + "." + picData.suggestFileExtension();
                 }
+                imageInfo.setFileName(fileName);
+
+                ImagePosition position = new ImagePosition();
+                position.setParagraphIndex(-1); // 未分配
+                position.setCharPosition(fullText.length());
+
+                imageInfo.setPosition(position);
+                allImages.add(imageInfo);
             }
+        }
+
+        content.setText(fullText.toString());
+        content.setParagraphs(paragraphs);
+        content.setImages(allImages);
+
+        DocumentStructure structure = new DocumentStructure();
+        structure.setParagraphs(paragraphs);
+        structure.getProperties().put("paragraph_count", paragraphs.size());
+        structure.getProperties().put("image_count", allPictureData.size());
+        content.setStructure(structure);
 
-            content.setText(fullText.toString());
-            content.setParagraphs(paragraphs);
-            content.setImages(allImages);
+        log.info("解析完成: 段落数={}, 图片数={}", paragraphs.size(), allImages.size());
+        return content;
+    }
 
-            log.info("解析完成: 段落数={}, 图片数={}", paragraphs.size(), allImages.size());
-            return content;
+    /**
+     * 图片句柄：已保存的图片引用保存位置和内容哈希，不携带图片字节
+     */
+    private ImageInfo imageHandle(XWPFPictureData picData, ImageExtractorWithPosition.ImageIndex imageIndex) {
+        ImageInfo imageInfo = new ImageInfo();
+        imageInfo.setFormat(picData.suggestFileExtension());
+
+        ImageInfo saved = imageIndex == null ? null : imageIndex.handleOf(picData);
+        if (saved != null) {
+            imageInfo.setFileName(saved.getFileName());
+            imageInfo.setFilePath(saved.getFilePath());
+            imageInfo.setContentHash(saved.getContentHash());
+            imageInfo.setSize(saved.getSize());
+        } else {
+            imageInfo.setFileName(picData.getFileName());
+            imageInfo.setSize(picData.getPackagePart().getSize());
         }
+        return imageInfo;
     }
 
     private String detectParagraphType(XWPFParagraph para, String text) {
+        return detectParagraphType(para.getStyle(), text);
+    }
+
+    private int detectHeadingLevel(XWPFParagraph para, String text) {
+        return detectHeadingLevel(para.getStyle(), text);
+    }
+
+    /**
+     * 按样式ID和文本判断段落类型（DOM 解析与流式解析共用）
+     */
+    static String detectParagraphType(String style, String text) {
         if (text.trim().length() < 150 && (text.trim().endsWith(":") || text.trim().endsWith("："))) {
             return "heading";
         }
@@ -291,7 +317,6 @@ public class DocumentParserWithStructure {
             return "list_item";
         }
 
-        String style = para.getStyle();
         if (style != null) {
             return "heading";
         }
@@ -299,10 +324,13 @@ public class DocumentParserWithStructure {
         return "normal";
     }
 
-    private int detectHeadingLevel(XWPFParagraph para, String text) {
-        String style = para.getStyle();
+    static int detectHeadingLevel(String style, String text) {
         if (style != null) {
-            return Integer.parseInt(style) - 1;
+            try {
+                return Integer.parseInt(style) - 1;
+            } catch (NumberFormatException e) {
+                // 非数字样式ID（如 Heading1、Normal），按文本规则判断
+            }
         }
 
         String trimmed = text.trim();
@@ -375,10 +403,13 @@ public class DocumentParserWithStructure {
     @NoArgsConstructor
     @AllArgsConstructor
     public static class DocumentContent {
+        // 全文（段落以换行分隔），段落的 startPos/endPos 和分块的偏移区间均指向该文本
         private String text;
         private List<Paragraph> paragraphs;
         private List<ImageInfo> images;
         private DocumentStructure structure;
+        // 图片提取结果（已保存到输出目录，带文件路径）
+        private List<ImageInfo> extractedImages;
     }
 
     @Data
@@ -427,7 +458,9 @@ public class DocumentParserWithStructure {
         @JsonProperty("file_path")
         private String filePath;
         private String format;
-        private byte[] data;
+        @JsonProperty("content_hash")
+        private String contentHash;
+        private Long size;
         private ImagePosition position;
     }
 
@@ -449,9 +482,12 @@ public class DocumentParserWithStructure {
         private Integer offsetInRun;
     }
 
+    // 按字段比较和打印，不经过 getText()，避免提前截取文本
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
+    @ToString(doNotUseGetters = true)
+    @EqualsAndHashCode(doNotUseGetters = true)
     public static class DocumentChunk {
         private Integer chunkId;
         private String text;
@@ -461,6 +497,26 @@ public class DocumentParserWithStructure {
         private Integer wordCount;
         private Integer charCount;
         private Map<String, Object> metadata = new HashMap<>();
+        // 分块在共享全文中的区间 [startOffset, endOffset)，text 为空时在首次读取（向量化）时截取
+        @JsonIgnore
+        @ToString.Exclude
+        @EqualsAndHashCode.Exclude
+        private CharSequence source;
+        private Integer startOffset;
+        private Integer endOffset;
+
+        public DocumentChunk(CharSequence source, int startOffset, int endOffset) {
+            this.source = source;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+        }
+
+        public String getText() {
+            if (text == null && source != null) {
+                text = source.subSequence(startOffset, endOffset).toString();
+            }
+            return text;
+        }
     }
 
     @Data
@@ -468,7 +524,7 @@ public class DocumentParserWithStructure {
     @AllArgsConstructor
     public static class TextEmbedding {
         private String text;
-        private List<Float> vector;
+        private float[] vector;
         private Integer chunkId;
     }
 }
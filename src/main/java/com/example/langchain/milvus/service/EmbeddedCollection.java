@@ -0,0 +1,766 @@
+package com.example.langchain.milvus.service;
+
+import com.example.langchain.milvus.utils.MilvusFilterExpression;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.protobuf.ByteString;
+import io.milvus.grpc.BoolArray;
+import io.milvus.grpc.CollectionSchema;
+import io.milvus.grpc.DataType;
+import io.milvus.grpc.DescribeCollectionResponse;
+import io.milvus.grpc.DescribeIndexResponse;
+import io.milvus.grpc.DoubleArray;
+import io.milvus.grpc.FieldData;
+import io.milvus.grpc.FieldSchema;
+import io.milvus.grpc.FloatArray;
+import io.milvus.grpc.IDs;
+import io.milvus.grpc.IndexDescription;
+import io.milvus.grpc.IntArray;
+import io.milvus.grpc.JSONArray;
+import io.milvus.grpc.KeyValuePair;
+import io.milvus.grpc.LongArray;
+import io.milvus.grpc.QueryResults;
+import io.milvus.grpc.ScalarField;
+import io.milvus.grpc.SearchResultData;
+import io.milvus.grpc.SearchResults;
+import io.milvus.grpc.StringArray;
+import io.milvus.grpc.VectorField;
+import io.milvus.param.collection.FieldType;
+import io.milvus.param.dml.InsertParam;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+
+/**
+ * 进程内索引中的一个集合：HnswIndex 保存主键和向量（堆外），标量字段按主键保存在堆内，
+ * 另按 document_id、租户建反向索引，按文档删除、按小租户检索时不必扫描全部行或遍历整张图。
+ * 快照由 {集合名}.hnsw（图和向量）和 {集合名}.rows（schema 与标量行，JSON Lines）组成
+ */
+@Slf4j
+final class EmbeddedCollection {
+
+    static final String GRAPH_SUFFIX = ".hnsw";
+    static final String ROWS_SUFFIX = ".rows";
+    // 过滤检索时候选行不超过该数量（或 sqrt(ef * 行数)）就直接精确计算
+    static final int BRUTE_FORCE_MIN_ROWS = 1024;
+    private static final String TENANT_KEY = "tenant_id";
+
+    private static final Gson GSON = new Gson();
+
+    /**
+     * 字段定义，可由建表参数、Milvus 返回的 schema 或快照还原
+     */
+    static final class Field {
+        private final String name;
+        private final DataType dataType;
+        private final boolean primaryKey;
+        private final boolean autoId;
+        private final boolean partitionKey;
+        private final int dimension;
+
+        Field(String name, DataType dataType, boolean primaryKey, boolean autoId, boolean partitionKey, int dimension) {
+            this.name = name;
+            this.dataType = dataType;
+            this.primaryKey = primaryKey;
+            this.autoId = autoId;
+            this.partitionKey = partitionKey;
+            this.dimension = dimension;
+        }
+
+        static Field of(FieldType type) {
+            return new Field(type.getName(), type.getDataType(), type.isPrimaryKey(), type.isAutoID(),
+                    type.isPartitionKey(), type.getDimension() == null ? 0 : type.getDimension());
+        }
+
+        static Field of(FieldSchema schema) {
+            int dimension = 0;
+            for (KeyValuePair param : schema.getTypeParamsList()) {
+                if ("dim".equals(param.getKey())) {
+                    dimension = Integer.parseInt(param.getValue());
+                }
+            }
+            return new Field(schema.getName(), schema.getDataType(), schema.getIsPrimaryKey(), schema.getAutoID(),
+                    schema.getIsPartitionKey(), dimension);
+        }
+
+        JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("name", name);
+            json.addProperty("dataType", dataType.name());
+            json.addProperty("primaryKey", primaryKey);
+            json.addProperty("autoId", autoId);
+            json.addProperty("partitionKey", partitionKey);
+            json.addProperty("dimension", dimension);
+            return json;
+        }
+
+        static Field fromJson(JsonObject json) {
+            return new Field(json.get("name").getAsString(), DataType.valueOf(json.get("dataType").getAsString()),
+                    json.get("primaryKey").getAsBoolean(), json.get("autoId").getAsBoolean(),
+                    json.get("partitionKey").getAsBoolean(), json.get("dimension").getAsInt());
+        }
+
+        boolean isScalar() {
+            return dataType != DataType.FloatVector && dataType != DataType.SparseFloatVector
+                    && dataType != DataType.BinaryVector && dataType != DataType.Float16Vector
+                    && dataType != DataType.BFloat16Vector;
+        }
+    }
+
+    private final String name;
+    private final Map<String, Field> fields = new LinkedHashMap<>();
+    private final String primaryKey;
+    private final String vectorField;
+    private final int dimension;
+    private final int m;
+    private final int efConstruction;
+    // 为 null 时保存全部标量字段
+    private final Set<String> storedFields;
+
+    private final Map<String, String> indexTypes = new ConcurrentHashMap<>();
+    private final Map<Long, Map<String, Object>> rows = new ConcurrentHashMap<>();
+    // 等值过滤常用字段的倒排：按文档删除、按租户检索时直接定位候选行
+    private final Map<String, Set<Long>> idsByDocument = new ConcurrentHashMap<>();
+    private final Map<String, Set<Long>> idsByTenant = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final AtomicLong modifications = new AtomicLong();
+    private volatile HnswIndex index;
+    private volatile boolean loaded;
+    private volatile long snapshotModifications = -1;
+
+    // mirror 模式：快照时 Milvus 中的行数，重启时用于判断快照是否仍与 Milvus 一致
+    private volatile long sourceRowCount = -1;
+
+    EmbeddedCollection(String name, List<Field> fieldList, HnswIndex.Metric metric, int m, int efConstruction,
+                       Set<String> storedFields) {
+        this.name = name;
+        String pk = null;
+        Field vector = null;
+        for (Field field : fieldList) {
+            // 本地不保存稀疏向量：不登记该字段，describe 不返回，服务层据此按没有 BM25 字段处理（不发送混合检索）
+            if (field.dataType == DataType.SparseFloatVector) {
+                continue;
+            }
+            fields.put(field.name, field);
+            if (field.primaryKey) {
+                pk = field.name;
+            }
+            if (field.dataType == DataType.FloatVector && vector == null) {
+                vector = field;
+            }
+        }
+        if (pk == null || vector == null) {
+            throw new IllegalArgumentException("集合缺少主键或稠密向量字段: " + name);
+        }
+        this.primaryKey = pk;
+        this.vectorField = vector.name;
+        this.dimension = vector.dimension;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.storedFields = storedFields;
+        this.index = new HnswIndex(dimension, m, efConstruction, metric);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getVectorField() {
+        return vectorField;
+    }
+
+    HnswIndex.Metric getMetric() {
+        return index.getMetric();
+    }
+
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    void setLoaded(boolean loaded) {
+        this.loaded = loaded;
+    }
+
+    long getSourceRowCount() {
+        return sourceRowCount;
+    }
+
+    long size() {
+        return rows.size();
+    }
+
+    long offHeapBytes() {
+        return index.offHeapBytes();
+    }
+
+    /**
+     * 建索引时指定的度量类型与当前不同：集合为空时按新度量重建，否则拒绝
+     */
+    synchronized void createIndex(String fieldName, String indexType, String metricType) {
+        if (!fields.containsKey(fieldName)) {
+            return;
+        }
+        if (fieldName.equals(vectorField) && metricType != null && !"null".equals(metricType)) {
+            HnswIndex.Metric metric = HnswIndex.Metric.of(metricType);
+            if (metric != index.getMetric()) {
+                if (!rows.isEmpty()) {
+                    throw new IllegalArgumentException("集合已有数据，不能修改度量类型: " + name);
+                }
+                index = new HnswIndex(dimension, m, efConstruction, metric);
+            }
+        }
+        indexTypes.put(fieldName, indexType);
+    }
+
+    /**
+     * 返回的字段是否都在本地保存（主键和向量始终可用）
+     */
+    boolean covers(List<String> outFields) {
+        if (outFields == null || storedFields == null) {
+            return true;
+        }
+        for (String field : outFields) {
+            if (!field.equals(primaryKey) && !field.equals(vectorField) && !storedFields.contains(field)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ---------------------------------------------------------------- 写入
+
+    /**
+     * 按列写入；ids 为 null 时使用主键列，主键为 autoID 时本地生成
+     */
+    synchronized List<Long> insert(List<InsertParam.Field> columns, List<Long> ids) {
+        int count = columns.isEmpty() ? 0 : columns.get(0).getValues().size();
+        boolean hasVectors = columns.stream().anyMatch(column -> column.getName().equals(vectorField));
+        if (!hasVectors) {
+            throw new IllegalArgumentException("写入缺少向量字段: " + vectorField);
+        }
+
+        List<Long> assigned = new ArrayList<>(count);
+        for (int row = 0; row < count; row++) {
+            Map<String, Object> record = new HashMap<>();
+            for (InsertParam.Field column : columns) {
+                record.put(column.getName(), column.getValues().get(row));
+            }
+            if (ids != null) {
+                record.put(primaryKey, ids.get(row));
+            } else if (!(record.get(primaryKey) instanceof Number)) {
+                record.put(primaryKey, nextId.getAndIncrement());
+            }
+            assigned.add(put(record));
+        }
+        modifications.incrementAndGet();
+        return assigned;
+    }
+
+    /**
+     * 写入 Milvus 查询返回的一行（字段名到值），用于 mirror 模式从 Milvus 回填
+     */
+    synchronized void putRecord(Map<String, Object> record) {
+        put(record);
+        modifications.incrementAndGet();
+    }
+
+    /**
+     * 先写行再写图：并发检索命中新节点时总能取到标量字段
+     */
+    private long put(Map<String, Object> record) {
+        long id = ((Number) record.get(primaryKey)).longValue();
+        Map<String, Object> values = new HashMap<>();
+        values.put(primaryKey, id);
+        for (Map.Entry<String, Object> entry : record.entrySet()) {
+            Field field = fields.get(entry.getKey());
+            if (field != null && field.isScalar() && isStored(field.name) && entry.getValue() != null) {
+                values.put(field.name, normalize(field, entry.getValue()));
+            }
+        }
+
+        remove(id);
+        rows.put(id, values);
+        index.add(id, toFloatArray(record.get(vectorField)));
+        addPostings(id, values);
+        nextId.accumulateAndGet(id + 1, Math::max);
+        return id;
+    }
+
+    /**
+     * 回填时需要从 Milvus 读取的字段：主键、向量和本地保存的标量字段
+     */
+    List<String> recordFields() {
+        List<String> names = new ArrayList<>();
+        for (Field field : fields.values()) {
+            if (field.name.equals(primaryKey) || field.name.equals(vectorField) || (field.isScalar() && isStored(field.name))) {
+                names.add(field.name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 按主键、document_id 或租户的等值条件直接定位候选行，其余条件逐行求值；都没有时扫描全部行
+     */
+    synchronized long delete(MilvusFilterExpression filter) {
+        Set<Long> candidates = candidateIds(filter);
+        if (candidates == null) {
+            candidates = new HashSet<>(rows.keySet());
+        }
+
+        long deleted = 0;
+        for (Long id : candidates) {
+            Map<String, Object> row = rows.get(id);
+            if (row != null && filter.test(row) && remove(id)) {
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            modifications.incrementAndGet();
+        }
+        return deleted;
+    }
+
+    private boolean remove(long id) {
+        Map<String, Object> row = rows.remove(id);
+        if (row == null) {
+            return false;
+        }
+        index.remove(id);
+        removePosting(idsByDocument, row.get(MilvusServiceImplV2.FIELD_DOCUMENT_ID), id);
+        removePosting(idsByTenant, tenantOf(row), id);
+        return true;
+    }
+
+    private void addPostings(long id, Map<String, Object> row) {
+        Object documentId = row.get(MilvusServiceImplV2.FIELD_DOCUMENT_ID);
+        if (documentId != null) {
+            idsByDocument.computeIfAbsent(documentId.toString(), key -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+        String tenant = tenantOf(row);
+        if (tenant != null) {
+            idsByTenant.computeIfAbsent(tenant, key -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    private static void removePosting(Map<String, Set<Long>> postings, Object value, long id) {
+        if (value == null) {
+            return;
+        }
+        Set<Long> ids = postings.get(value.toString());
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                postings.remove(value.toString());
+            }
+        }
+    }
+
+    /**
+     * 分区键集合取 tenant_id 字段，否则取 metadata JSON 中的 tenant_id
+     */
+    private static String tenantOf(Map<String, Object> row) {
+        Object tenant = row.get(MilvusServiceImplV2.FIELD_TENANT_ID);
+        if (tenant != null) {
+            return tenant.toString();
+        }
+        Object metadata = row.get(MilvusServiceImplV2.FIELD_METADATA);
+        if (!(metadata instanceof String) || !((String) metadata).contains(TENANT_KEY)) {
+            return null;
+        }
+        try {
+            JsonElement json = JsonParser.parseString((String) metadata);
+            if (json.isJsonObject() && json.getAsJsonObject().has(TENANT_KEY)
+                    && json.getAsJsonObject().get(TENANT_KEY).isJsonPrimitive()) {
+                return json.getAsJsonObject().get(TENANT_KEY).getAsString();
+            }
+        } catch (RuntimeException e) {
+            log.debug("metadata 不是合法 JSON，不建立租户倒排: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 由主键、document_id、租户的等值条件得到的最小候选集（未按其余条件过滤）；没有这类条件时返回 null
+     */
+    private Set<Long> candidateIds(MilvusFilterExpression filter) {
+        Set<Long> best = null;
+        List<Object> ids = filter.equalityValues(primaryKey);
+        if (ids != null) {
+            best = new HashSet<>();
+            for (Object id : ids) {
+                if (id instanceof Number) {
+                    best.add(((Number) id).longValue());
+                }
+            }
+        }
+        best = smaller(best, postings(idsByDocument, filter.equalityValues(MilvusServiceImplV2.FIELD_DOCUMENT_ID)));
+        best = smaller(best, postings(idsByTenant, filter.equalityValues(MilvusServiceImplV2.FIELD_TENANT_ID)));
+        best = smaller(best, postings(idsByTenant, filter.equalityValues(MilvusServiceImplV2.FIELD_METADATA, TENANT_KEY)));
+        return best;
+    }
+
+    private static Set<Long> postings(Map<String, Set<Long>> postings, List<Object> values) {
+        if (values == null) {
+            return null;
+        }
+        Set<Long> ids = new HashSet<>();
+        for (Object value : values) {
+            Set<Long> matched = postings.get(String.valueOf(value));
+            if (matched != null) {
+                ids.addAll(matched);
+            }
+        }
+        return ids;
+    }
+
+    private static Set<Long> smaller(Set<Long> a, Set<Long> b) {
+        if (a == null) {
+            return b;
+        }
+        return b == null || a.size() <= b.size() ? a : b;
+    }
+
+    // ---------------------------------------------------------------- 检索
+
+    /**
+     * 等值条件能把候选缩小到 max(BRUTE_FORCE_MIN_ROWS, sqrt(ef * 行数)) 以内时（如小租户、单个文档），
+     * 在候选中精确计算，不走图；否则带过滤条件在图上检索
+     */
+    SearchResults search(List<?> queries, long topK, int ef, MilvusFilterExpression filter, List<String> outFields) {
+        LongPredicate accept = filter.isEmpty() ? null : id -> {
+            Map<String, Object> row = rows.get(id);
+            return row != null && filter.test(row);
+        };
+        long[] candidates = null;
+        if (accept != null) {
+            Set<Long> ids = candidateIds(filter);
+            if (ids != null && ids.size() <= Math.max(BRUTE_FORCE_MIN_ROWS, Math.sqrt((double) ef * rows.size()))) {
+                candidates = ids.stream().filter(accept::test).mapToLong(Long::longValue).toArray();
+            }
+        }
+
+        HnswIndex current = index;
+        List<Long> ids = new ArrayList<>();
+        List<Float> scores = new ArrayList<>();
+        List<Long> topks = new ArrayList<>();
+        for (Object query : queries) {
+            List<HnswIndex.Hit> hits = candidates != null
+                    ? current.searchLabels(toFloatArray(query), (int) topK, candidates)
+                    : current.search(toFloatArray(query), (int) topK, ef, accept);
+            for (HnswIndex.Hit hit : hits) {
+                ids.add(hit.getLabel());
+                scores.add(hit.getScore());
+            }
+            topks.add((long) hits.size());
+        }
+
+        List<String> outputFields = outFields == null ? List.of() : outFields;
+        return SearchResults.newBuilder()
+                .setResults(SearchResultData.newBuilder()
+                        .setNumQueries(queries.size())
+                        .setTopK(topK)
+                        .setIds(IDs.newBuilder().setIntId(LongArray.newBuilder().addAllData(ids)))
+                        .addAllScores(scores)
+                        .addAllTopks(topks)
+                        .addAllFieldsData(fieldsData(ids, outputFields))
+                        .addAllOutputFields(outputFields))
+                .build();
+    }
+
+    QueryResults query(MilvusFilterExpression filter, List<String> outFields, long limit) {
+        List<Long> matched = new ArrayList<>();
+        for (Map.Entry<Long, Map<String, Object>> entry : rows.entrySet()) {
+            if (limit > 0 && matched.size() >= limit) {
+                break;
+            }
+            if (filter.test(entry.getValue())) {
+                matched.add(entry.getKey());
+            }
+        }
+
+        List<String> outputFields = new ArrayList<>(outFields == null ? List.of() : outFields);
+        if (!outputFields.contains(primaryKey)) {
+            outputFields.add(primaryKey);
+        }
+        return QueryResults.newBuilder()
+                .addAllFieldsData(fieldsData(matched, outputFields))
+                .addAllOutputFields(outputFields)
+                .build();
+    }
+
+    DescribeCollectionResponse describe() {
+        CollectionSchema.Builder schema = CollectionSchema.newBuilder().setName(name);
+        for (Field field : fields.values()) {
+            FieldSchema.Builder builder = FieldSchema.newBuilder()
+                    .setName(field.name)
+                    .setDataType(field.dataType)
+                    .setIsPrimaryKey(field.primaryKey)
+                    .setAutoID(field.autoId)
+                    .setIsPartitionKey(field.partitionKey);
+            if (field.dimension > 0) {
+                builder.addTypeParams(KeyValuePair.newBuilder().setKey("dim").setValue(Integer.toString(field.dimension)));
+            }
+            schema.addFields(builder);
+        }
+        return DescribeCollectionResponse.newBuilder().setCollectionName(name).setSchema(schema).build();
+    }
+
+    DescribeIndexResponse describeIndex() {
+        DescribeIndexResponse.Builder response = DescribeIndexResponse.newBuilder();
+        for (Map.Entry<String, String> entry : indexTypes.entrySet()) {
+            response.addIndexDescriptions(IndexDescription.newBuilder()
+                    .setIndexName(entry.getKey())
+                    .setFieldName(entry.getKey())
+                    .addParams(KeyValuePair.newBuilder().setKey("index_type").setValue(entry.getValue())));
+        }
+        return response.build();
+    }
+
+    /**
+     * 按字段类型生成列数据；行在检索后被删除时按默认值补齐，保证各列与 ids 对齐
+     */
+    private List<FieldData> fieldsData(List<Long> ids, List<String> outFields) {
+        List<Map<String, Object>> selected = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            selected.add(rows.getOrDefault(id, Map.of(primaryKey, id)));
+        }
+
+        List<FieldData> data = new ArrayList<>();
+        for (String fieldName : outFields) {
+            Field field = fields.get(fieldName);
+            if (field == null) {
+                continue;
+            }
+            FieldData.Builder builder = FieldData.newBuilder().setFieldName(fieldName).setType(field.dataType);
+            switch (field.dataType) {
+                case Int64: {
+                    LongArray.Builder values = LongArray.newBuilder();
+                    selected.forEach(row -> values.addData(row.get(fieldName) instanceof Number
+                            ? ((Number) row.get(fieldName)).longValue() : 0L));
+                    builder.setScalars(ScalarField.newBuilder().setLongData(values));
+                    break;
+                }
+                case Int8:
+                case Int16:
+                case Int32: {
+                    IntArray.Builder values = IntArray.newBuilder();
+                    selected.forEach(row -> values.addData(row.get(fieldName) instanceof Number
+                            ? ((Number) row.get(fieldName)).intValue() : 0));
+                    builder.setScalars(ScalarField.newBuilder().setIntData(values));
+                    break;
+                }
+                case Float:
+                case Double: {
+                    DoubleArray.Builder values = DoubleArray.newBuilder();
+                    selected.forEach(row -> values.addData(row.get(fieldName) instanceof Number
+                            ? ((Number) row.get(fieldName)).doubleValue() : 0d));
+                    builder.setScalars(ScalarField.newBuilder().setDoubleData(values));
+                    break;
+                }
+                case Bool: {
+                    BoolArray.Builder values = BoolArray.newBuilder();
+                    selected.forEach(row -> values.addData(Boolean.TRUE.equals(row.get(fieldName))));
+                    builder.setScalars(ScalarField.newBuilder().setBoolData(values));
+                    break;
+                }
+                case VarChar: {
+                    StringArray.Builder values = StringArray.newBuilder();
+                    selected.forEach(row -> values.addData(row.get(fieldName) == null ? "" : row.get(fieldName).toString()));
+                    builder.setScalars(ScalarField.newBuilder().setStringData(values));
+                    break;
+                }
+                case JSON: {
+                    JSONArray.Builder values = JSONArray.newBuilder();
+                    selected.forEach(row -> values.addData(ByteString.copyFromUtf8(
+                            row.get(fieldName) == null ? "{}" : row.get(fieldName).toString())));
+                    builder.setScalars(ScalarField.newBuilder().setJsonData(values));
+                    break;
+                }
+                case FloatVector: {
+                    FloatArray.Builder values = FloatArray.newBuilder();
+                    for (Long id : ids) {
+                        float[] vector = index.getVector(id);
+                        for (int i = 0; i < dimension; i++) {
+                            values.addData(vector == null ? 0f : vector[i]);
+                        }
+                    }
+                    builder.setVectors(VectorField.newBuilder().setDim(dimension).setFloatVector(values));
+                    break;
+                }
+                default:
+                    // 稀疏向量等本地不保存的类型不返回
+                    continue;
+            }
+            data.add(builder.build());
+        }
+        return data;
+    }
+
+    // ---------------------------------------------------------------- 快照
+
+    /**
+     * 自上次快照以来是否有写入
+     */
+    boolean isDirty() {
+        return modifications.get() != snapshotModifications;
+    }
+
+    /**
+     * 写入快照；已删除节点占比超过 compactRatio 时先重建图。持集合锁，期间本地写入等待
+     */
+    synchronized void save(Path dir, double compactRatio, long sourceRowCount) throws IOException {
+        if (index.deletedRatio() > compactRatio) {
+            long start = System.currentTimeMillis();
+            index = index.compact();
+            log.info("嵌入式索引已重建: 集合={}, 行数={}, 耗时={}ms", name, rows.size(), System.currentTimeMillis() - start);
+        }
+        this.sourceRowCount = sourceRowCount;
+        long snapshotAt = modifications.get();
+
+        Files.createDirectories(dir);
+        Path rowsFile = dir.resolve(name + ROWS_SUFFIX);
+        Path temp = dir.resolve(name + ROWS_SUFFIX + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            JsonObject header = new JsonObject();
+            header.addProperty("name", name);
+            header.addProperty("nextId", nextId.get());
+            header.addProperty("sourceRowCount", sourceRowCount);
+            header.addProperty("loaded", loaded);
+            JsonArray fieldArray = new JsonArray();
+            fields.values().forEach(field -> fieldArray.add(field.toJson()));
+            header.add("fields", fieldArray);
+            header.add("indexTypes", GSON.toJsonTree(indexTypes));
+            writer.write(header.toString());
+            writer.newLine();
+            for (Map<String, Object> row : rows.values()) {
+                writer.write(GSON.toJson(row));
+                writer.newLine();
+            }
+        }
+        // 先写图再替换行文件：中途失败时加载以行文件为准，图中多出的节点会被删除
+        index.save(dir.resolve(name + GRAPH_SUFFIX));
+        Files.move(temp, rowsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        snapshotModifications = snapshotAt;
+    }
+
+    static EmbeddedCollection load(Path dir, String name, int m, int efConstruction, Set<String> storedFields)
+            throws IOException {
+        Path rowsFile = dir.resolve(name + ROWS_SUFFIX);
+        HnswIndex graph = HnswIndex.load(dir.resolve(name + GRAPH_SUFFIX));
+
+        try (BufferedReader reader = Files.newBufferedReader(rowsFile, StandardCharsets.UTF_8)) {
+            JsonObject header = JsonParser.parseString(reader.readLine()).getAsJsonObject();
+            List<Field> fieldList = new ArrayList<>();
+            for (JsonElement element : header.getAsJsonArray("fields")) {
+                fieldList.add(Field.fromJson(element.getAsJsonObject()));
+            }
+            EmbeddedCollection collection = new EmbeddedCollection(name, fieldList, graph.getMetric(), m,
+                    efConstruction, storedFields);
+            if (graph.getDimension() != collection.dimension) {
+                throw new IOException("快照向量维度与 schema 不一致: " + name);
+            }
+            collection.index = graph;
+            collection.nextId.set(header.get("nextId").getAsLong());
+            collection.sourceRowCount = header.get("sourceRowCount").getAsLong();
+            collection.loaded = header.get("loaded").getAsBoolean();
+            for (Map.Entry<String, JsonElement> entry : header.getAsJsonObject("indexTypes").entrySet()) {
+                collection.indexTypes.put(entry.getKey(), entry.getValue().getAsString());
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonObject json = JsonParser.parseString(line).getAsJsonObject();
+                Map<String, Object> row = new HashMap<>();
+                for (Map.Entry<String, JsonElement> entry : json.entrySet()) {
+                    Field field = collection.fields.get(entry.getKey());
+                    if (field != null && !entry.getValue().isJsonNull()) {
+                        row.put(entry.getKey(), fromJson(field, entry.getValue()));
+                    }
+                }
+                long id = ((Number) row.get(collection.primaryKey)).longValue();
+                if (!graph.contains(id)) {
+                    continue;
+                }
+                collection.rows.put(id, row);
+                collection.addPostings(id, row);
+            }
+            int orphans = graph.retainAll(collection.rows::containsKey);
+            if (orphans > 0) {
+                log.warn("快照中的图比行文件新，已删除多出的 {} 个节点: 集合={}", orphans, name);
+            }
+            collection.snapshotModifications = collection.modifications.get();
+            return collection;
+        }
+    }
+
+    static void deleteSnapshot(Path dir, String name) throws IOException {
+        Files.deleteIfExists(dir.resolve(name + GRAPH_SUFFIX));
+        Files.deleteIfExists(dir.resolve(name + ROWS_SUFFIX));
+    }
+
+    // ---------------------------------------------------------------- 类型转换
+
+    private boolean isStored(String fieldName) {
+        return storedFields == null || storedFields.contains(fieldName) || fieldName.equals(primaryKey);
+    }
+
+    /**
+     * JSON 字段统一保存为字符串（过滤时按需解析），其余保持原类型
+     */
+    private static Object normalize(Field field, Object value) {
+        if (field.dataType == DataType.JSON) {
+            return value instanceof String ? value : value.toString();
+        }
+        return value;
+    }
+
+    private static Object fromJson(Field field, JsonElement value) {
+        switch (field.dataType) {
+            case Int64:
+                return value.getAsLong();
+            case Int8:
+            case Int16:
+            case Int32:
+                return value.getAsInt();
+            case Float:
+            case Double:
+                return value.getAsDouble();
+            case Bool:
+                return value.getAsBoolean();
+            default:
+                return value.getAsString();
+        }
+    }
+
+    static float[] toFloatArray(Object value) {
+        if (value instanceof float[]) {
+            return (float[]) value;
+        }
+        List<?> list = (List<?>) value;
+        float[] vector = new float[list.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = ((Number) list.get(i)).floatValue();
+        }
+        return vector;
+    }
+}
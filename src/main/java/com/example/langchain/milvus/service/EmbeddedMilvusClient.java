@@ -0,0 +1,843 @@
+package com.example.langchain.milvus.service;
+
+import com.example.langchain.milvus.dto.EmbeddedIndexSettings;
+import com.example.langchain.milvus.utils.MilvusFilterExpression;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.milvus.client.MilvusClient;
+import io.milvus.common.clientenum.ConsistencyLevelEnum;
+import io.milvus.grpc.DescribeCollectionResponse;
+import io.milvus.grpc.FieldSchema;
+import io.milvus.grpc.GetCollectionStatisticsResponse;
+import io.milvus.grpc.GetLoadStateResponse;
+import io.milvus.grpc.IDs;
+import io.milvus.grpc.KeyValuePair;
+import io.milvus.grpc.LoadState;
+import io.milvus.grpc.LongArray;
+import io.milvus.grpc.MutationResult;
+import io.milvus.grpc.QueryResults;
+import io.milvus.grpc.SearchResults;
+import io.milvus.grpc.ShowCollectionsResponse;
+import io.milvus.orm.iterator.QueryIterator;
+import io.milvus.param.R;
+import io.milvus.param.RpcStatus;
+import io.milvus.param.collection.CreateCollectionParam;
+import io.milvus.param.collection.DescribeCollectionParam;
+import io.milvus.param.collection.FieldType;
+import io.milvus.param.collection.HasCollectionParam;
+import io.milvus.param.dml.AnnSearchParam;
+import io.milvus.param.dml.DeleteParam;
+import io.milvus.param.dml.HybridSearchParam;
+import io.milvus.param.dml.InsertParam;
+import io.milvus.param.dml.QueryIteratorParam;
+import io.milvus.param.dml.QueryParam;
+import io.milvus.param.dml.SearchParam;
+import io.milvus.param.index.CreateIndexParam;
+import io.milvus.response.QueryResultsWrapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 进程内 HNSW 索引，以动态代理实现 MilvusClient，服务层无需区分后端：
+ * <ul>
+ * <li>standalone：不连接 Milvus，建表、写入、删除、检索全部在本地完成，用于开发和离线部署</li>
+ * <li>mirror：热集合的写入、删除先落 Milvus，成功后同步到本地；过滤条件和返回字段本地能满足的检索直接由本地返回，
+ * 其余请求（混合检索、query、非热集合）转发给 Milvus</li>
+ * </ul>
+ * 集合定期及关闭时写快照，重启时映射快照文件恢复。mirror 模式下快照行数与 Milvus 不一致时丢弃快照，
+ * 用 queryIterator 从 Milvus 回填，回填完成前检索转发给 Milvus。假定热集合只由本实例写入
+ */
+@Slf4j
+public final class EmbeddedMilvusClient implements InvocationHandler {
+
+    private static final int BOOTSTRAP_BATCH_SIZE = 1000;
+    private static final int APPLY_QUEUE_CAPACITY = 256;
+
+    // 为 null 时为 standalone 模式
+    private final MilvusClient delegate;
+    private final EmbeddedIndexSettings settings;
+    private final Path snapshotDir;
+    private final HnswIndex.Metric defaultMetric;
+    private final Set<String> mirrorFields;
+
+    private final Map<String, EmbeddedCollection> collections = new ConcurrentHashMap<>();
+    // mirror 模式下可由本地提供检索的集合（快照已校验或回填完成）
+    private final Set<String> ready = ConcurrentHashMap.newKeySet();
+    private final Set<String> warming = ConcurrentHashMap.newKeySet();
+    // 回填期间发生删除的集合：回填读到的可能是删除前的行，需重新回填
+    private final Set<String> deletedWhileWarming = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "embedded-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // mirror 模式：写入、删除按集合排队，按提交顺序同步到本地，HNSW 建图不占用导入线程和 gRPC 回调线程
+    private final ExecutorService applier;
+    private final Map<String, ApplyLane> lanes = new ConcurrentHashMap<>();
+    private final AtomicBoolean loggedIgnoredOptions = new AtomicBoolean();
+
+    private final MilvusClient client;
+
+    private EmbeddedMilvusClient(MilvusClient delegate, EmbeddedIndexSettings settings) {
+        this.delegate = delegate;
+        this.settings = settings;
+        this.snapshotDir = Paths.get(settings.getSnapshotDir());
+        this.defaultMetric = HnswIndex.Metric.of(settings.getMetricType());
+        this.mirrorFields = delegate == null ? null : settings.getMirrorFields();
+        // 每个集合同一时刻只有一个排空任务，线程数不超过集合数，繁忙的集合不会拖慢其他集合
+        int applyThreads = Math.max(1, Math.min(settings.getCollections().size(), Runtime.getRuntime().availableProcessors()));
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.applier = delegate == null ? null : Executors.newFixedThreadPool(applyThreads, runnable -> {
+            Thread thread = new Thread(runnable, "embedded-index-apply-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.client = (MilvusClient) Proxy.newProxyInstance(MilvusClient.class.getClassLoader(),
+                new Class<?>[]{MilvusClient.class}, this);
+    }
+
+    /**
+     * 不连接 Milvus 的本地客户端，启动时加载快照目录中的全部集合
+     */
+    public static MilvusClient standalone(EmbeddedIndexSettings settings) {
+        EmbeddedMilvusClient embedded = new EmbeddedMilvusClient(null, settings);
+        embedded.start();
+        return embedded.client;
+    }
+
+    /**
+     * 镜像 settings.collections 中的热集合，其余请求原样转发给 delegate。
+     * 写入在 Milvus 返回成功后异步同步到本地，本地检索的可见性与 bounded 一致性相当；strong 检索在该集合有未同步写入时转发给 Milvus
+     */
+    public static MilvusClient mirror(MilvusClient delegate, EmbeddedIndexSettings settings) {
+        EmbeddedMilvusClient embedded = new EmbeddedMilvusClient(delegate, settings);
+        embedded.start();
+        return embedded.client;
+    }
+
+    private void start() {
+        if (delegate == null) {
+            loadAllSnapshots();
+        } else {
+            if (settings.getCollections().isEmpty()) {
+                log.warn("嵌入式索引为 mirror 模式，但未配置镜像的集合（app.milvus.embedded.collections）");
+            }
+            for (String name : settings.getCollections()) {
+                scheduler.execute(() -> prepareMirror(name));
+            }
+        }
+        long interval = settings.getSnapshotIntervalSeconds();
+        if (interval > 0) {
+            scheduler.scheduleWithFixedDelay(this::maintain, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        return dispatch(proxy, delegate, method, args);
+    }
+
+    /**
+     * target 为转发 Milvus 请求所用的客户端：withTimeout、withRetry 返回的视图与本实例共享本地集合，只替换 target
+     */
+    private Object dispatch(Object proxy, MilvusClient target, Method method, Object[] args) throws Throwable {
+        Object param = args == null || args.length == 0 ? null : args[0];
+        switch (method.getName()) {
+            case "close":
+                close();
+                return delegate == null ? null : invokeDelegate(target, method, args);
+            case "toString":
+                return "EmbeddedMilvusClient(" + (delegate == null ? "standalone" : "mirror") + ")";
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == param;
+            default:
+                break;
+        }
+        if (MilvusClient.class.isAssignableFrom(method.getReturnType())) {
+            // withTimeout、withRetry 等：mirror 模式下作用于 Milvus 客户端，返回共享镜像的视图；standalone 模式没有远程调用
+            if (delegate == null) {
+                if (loggedIgnoredOptions.compareAndSet(false, true)) {
+                    log.info("嵌入式索引为 standalone 模式，{} 等客户端设置不生效", method.getName());
+                }
+                return proxy;
+            }
+            MilvusClient configured = (MilvusClient) invokeDelegate(target, method, args);
+            return Proxy.newProxyInstance(MilvusClient.class.getClassLoader(), new Class<?>[]{MilvusClient.class},
+                    (view, viewMethod, viewArgs) -> dispatch(view, configured, viewMethod, viewArgs));
+        }
+        return delegate == null ? invokeStandalone(method, param) : invokeMirror(target, method, args, param);
+    }
+
+    // ---------------------------------------------------------------- standalone
+
+    private Object invokeStandalone(Method method, Object param) {
+        switch (method.getName()) {
+            case "hasCollection":
+                return R.success(collections.containsKey(collectionName(param)));
+            case "createCollection":
+                return createLocal((CreateCollectionParam) param);
+            case "dropCollection":
+                dropLocal(collectionName(param));
+                return success();
+            case "createIndex":
+                return withCollection(param, collection -> {
+                    CreateIndexParam index = (CreateIndexParam) param;
+                    collection.createIndex(index.getFieldName(), String.valueOf(index.getIndexType()),
+                            String.valueOf(index.getMetricType()));
+                    return success();
+                });
+            case "describeCollection":
+                return withCollection(param, collection -> R.success(collection.describe()));
+            case "describeIndex":
+                return withCollection(param, collection -> R.success(collection.describeIndex()));
+            case "loadCollection":
+                return withCollection(param, collection -> {
+                    collection.setLoaded(true);
+                    return success();
+                });
+            case "releaseCollection":
+                return withCollection(param, collection -> {
+                    collection.setLoaded(false);
+                    return success();
+                });
+            case "getLoadState":
+                return withCollection(param, collection -> R.success(GetLoadStateResponse.newBuilder()
+                        .setState(collection.isLoaded() ? LoadState.LoadStateLoaded : LoadState.LoadStateNotLoad)
+                        .build()));
+            case "getCollectionStatistics":
+                return withCollection(param, collection -> R.success(GetCollectionStatisticsResponse.newBuilder()
+                        .addStats(KeyValuePair.newBuilder().setKey("row_count").setValue(Long.toString(collection.size())))
+                        .build()));
+            case "showCollections":
+                return R.success(ShowCollectionsResponse.newBuilder().addAllCollectionNames(collections.keySet()).build());
+            case "insert":
+                return insertLocal((InsertParam) param);
+            case "insertAsync":
+                return Futures.immediateFuture(insertLocal((InsertParam) param));
+            case "delete":
+                return withCollection(param, collection -> {
+                    long deleted = collection.delete(MilvusFilterExpression.parse(((DeleteParam) param).getExpr()));
+                    return R.success(MutationResult.newBuilder().setDeleteCnt(deleted).build());
+                });
+            case "search":
+                return withCollection(param, collection -> searchLocal(collection, (SearchParam) param));
+            case "hybridSearch":
+                return withCollection(param, collection -> hybridSearchLocal(collection, (HybridSearchParam) param));
+            case "query":
+                return withCollection(param, collection -> {
+                    QueryParam query = (QueryParam) param;
+                    return R.success(collection.query(MilvusFilterExpression.parse(query.getExpr()),
+                            query.getOutFields(), query.getLimit()));
+                });
+            default:
+                if (R.class.isAssignableFrom(method.getReturnType())) {
+                    return R.failed(new UnsupportedOperationException("嵌入式索引不支持: " + method.getName()));
+                }
+                throw new UnsupportedOperationException("嵌入式索引不支持: " + method.getName());
+        }
+    }
+
+    private R<RpcStatus> createLocal(CreateCollectionParam param) {
+        List<FieldType> fieldTypes = param.getSchema() != null ? param.getSchema().getFieldTypes() : param.getFieldTypes();
+        List<EmbeddedCollection.Field> fields = new ArrayList<>();
+        fieldTypes.forEach(type -> fields.add(EmbeddedCollection.Field.of(type)));
+        try {
+            EmbeddedCollection collection = newCollection(param.getCollectionName(), fields);
+            if (collections.putIfAbsent(param.getCollectionName(), collection) != null) {
+                return R.failed(new IllegalArgumentException("集合已存在: " + param.getCollectionName()));
+            }
+            return success();
+        } catch (IllegalArgumentException e) {
+            return R.failed(e);
+        }
+    }
+
+    private void dropLocal(String name) {
+        ready.remove(name);
+        collections.remove(name);
+        try {
+            EmbeddedCollection.deleteSnapshot(snapshotDir, name);
+        } catch (IOException e) {
+            log.warn("删除嵌入式索引快照失败: 集合={}, 原因={}", name, e.getMessage());
+        }
+    }
+
+    private R<MutationResult> insertLocal(InsertParam param) {
+        return withCollection(param, collection -> {
+            List<Long> ids = collection.insert(param.getFields(), null);
+            return R.success(MutationResult.newBuilder()
+                    .setIDs(IDs.newBuilder().setIntId(LongArray.newBuilder().addAllData(ids)))
+                    .setInsertCnt(ids.size())
+                    .build());
+        });
+    }
+
+    private R<SearchResults> searchLocal(EmbeddedCollection collection, SearchParam param) {
+        checkSearchable(collection, param.getVectorFieldName(), param.getMetricType());
+        return R.success(collection.search(param.getVectors(), param.getTopK(), ef(param.getParams(), param.getTopK()),
+                MilvusFilterExpression.parse(param.getExpr()), param.getOutFields()));
+    }
+
+    /**
+     * 本地不保存稀疏向量，也不实现 RRF / 加权融合：只接受单路稠密向量检索，含稀疏（BM25）一路时返回失败，不静默降级为稠密检索。
+     * standalone 集合建表时不登记 sparse_vector 字段，服务层不会对其发送稀疏一路
+     */
+    private R<SearchResults> hybridSearchLocal(EmbeddedCollection collection, HybridSearchParam param) {
+        List<AnnSearchParam> requests = param.getSearchRequests();
+        for (AnnSearchParam request : requests) {
+            if (!request.getVectorFieldName().equals(collection.getVectorField())) {
+                return R.failed(new UnsupportedOperationException(
+                        "嵌入式索引不支持稀疏向量检索，混合检索请连接 Milvus: " + request.getVectorFieldName()));
+            }
+        }
+        if (requests.size() != 1) {
+            return R.failed(new UnsupportedOperationException("嵌入式索引的混合检索只支持单路稠密向量检索"));
+        }
+        AnnSearchParam request = requests.get(0);
+        checkSearchable(collection, request.getVectorFieldName(), request.getMetricType());
+        return R.success(collection.search(request.getVectors(), param.getTopK(),
+                ef(request.getParams(), param.getTopK()), MilvusFilterExpression.parse(request.getExpr()),
+                param.getOutFields()));
+    }
+
+    private void checkSearchable(EmbeddedCollection collection, String vectorField, String metricType) {
+        if (!collection.getVectorField().equals(vectorField)) {
+            throw new IllegalArgumentException("本地只索引向量字段 " + collection.getVectorField() + "，不支持: " + vectorField);
+        }
+        if (metricType != null && HnswIndex.Metric.of(metricType) != collection.getMetric()) {
+            throw new IllegalArgumentException("度量类型与本地索引不一致: " + metricType + " / " + collection.getMetric());
+        }
+    }
+
+    // ---------------------------------------------------------------- mirror
+
+    private Object invokeMirror(MilvusClient target, Method method, Object[] args, Object param) throws Throwable {
+        String name = param == null ? null : collectionNameOrNull(param);
+        if (name == null || !settings.getCollections().contains(name)) {
+            return invokeDelegate(target, method, args);
+        }
+
+        switch (method.getName()) {
+            case "search": {
+                EmbeddedCollection collection = ready.contains(name) ? collections.get(name) : null;
+                SearchParam search = (SearchParam) param;
+                boolean strong = search.getConsistencyLevel() == ConsistencyLevelEnum.STRONG;
+                if (collection != null && collection.covers(search.getOutFields()) && !(strong && pendingApplies(name) > 0)) {
+                    try {
+                        return searchLocal(collection, search);
+                    } catch (IllegalArgumentException e) {
+                        log.debug("本地索引无法处理该检索，转发给 Milvus: 集合={}, 原因={}", name, e.getMessage());
+                    }
+                }
+                return invokeDelegate(target, method, args);
+            }
+            case "insert": {
+                InsertParam insert = (InsertParam) param;
+                ApplyLane lane = lane(name);
+                ApplySlot slot = lane.reserve();
+                R<MutationResult> result = null;
+                try {
+                    @SuppressWarnings("unchecked")
+                    R<MutationResult> response = (R<MutationResult>) invokeDelegate(target, method, args);
+                    result = response;
+                    return result;
+                } finally {
+                    lane.complete(slot, insertAction(insert, result));
+                }
+            }
+            case "insertAsync": {
+                InsertParam insert = (InsertParam) param;
+                ApplyLane lane = lane(name);
+                ApplySlot slot = lane.reserve();
+                ListenableFuture<R<MutationResult>> future;
+                try {
+                    @SuppressWarnings("unchecked")
+                    ListenableFuture<R<MutationResult>> response = (ListenableFuture<R<MutationResult>>) invokeDelegate(target, method, args);
+                    future = response;
+                } catch (Throwable e) {
+                    lane.complete(slot, null);
+                    throw e;
+                }
+                ListenableFuture<R<MutationResult>> submitted = future;
+                // 回调在 gRPC 线程上执行，只登记结果，不阻塞
+                future.addListener(() -> {
+                    R<MutationResult> result = null;
+                    try {
+                        result = Futures.getDone(submitted);
+                    } catch (Exception e) {
+                        log.debug("insertAsync 失败，不同步到本地: 集合={}, 原因={}", name, e.getMessage());
+                    }
+                    lane.complete(slot, insertAction(insert, result));
+                }, MoreExecutors.directExecutor());
+                return future;
+            }
+            case "delete": {
+                DeleteParam delete = (DeleteParam) param;
+                ApplyLane lane = lane(name);
+                ApplySlot slot = lane.reserve();
+                R<MutationResult> result = null;
+                try {
+                    @SuppressWarnings("unchecked")
+                    R<MutationResult> response = (R<MutationResult>) invokeDelegate(target, method, args);
+                    result = response;
+                    return result;
+                } finally {
+                    lane.complete(slot, deleteAction(name, delete, result));
+                }
+            }
+            case "createCollection": {
+                @SuppressWarnings("unchecked")
+                R<RpcStatus> result = (R<RpcStatus>) invokeDelegate(target, method, args);
+                if (result.getStatus() == R.Status.Success.getCode() && createLocal((CreateCollectionParam) param).getStatus()
+                        == R.Status.Success.getCode()) {
+                    ready.add(name);
+                }
+                return result;
+            }
+            case "dropCollection": {
+                @SuppressWarnings("unchecked")
+                R<RpcStatus> result = (R<RpcStatus>) invokeDelegate(target, method, args);
+                if (result.getStatus() == R.Status.Success.getCode()) {
+                    dropLocal(name);
+                }
+                return result;
+            }
+            default:
+                return invokeDelegate(target, method, args);
+        }
+    }
+
+    /**
+     * Milvus 写入成功时返回本地同步动作，否则返回 null（只占位，保持后续写入的顺序）
+     */
+    private static Consumer<EmbeddedCollection> insertAction(InsertParam param, R<MutationResult> result) {
+        if (result == null || result.getStatus() != R.Status.Success.getCode()) {
+            return null;
+        }
+        List<Long> ids = result.getData().getIDs().getIntId().getDataList();
+        return collection -> collection.insert(param.getFields(), ids);
+    }
+
+    private Consumer<EmbeddedCollection> deleteAction(String name, DeleteParam param, R<MutationResult> result) {
+        if (result == null || result.getStatus() != R.Status.Success.getCode()) {
+            return null;
+        }
+        if (warming.contains(name)) {
+            deletedWhileWarming.add(name);
+        }
+        // 本地无法求值的删除条件无法确定删了哪些行，按同步失败处理，重新回填
+        return collection -> collection.delete(MilvusFilterExpression.parse(param.getExpr()));
+    }
+
+    private ApplyLane lane(String name) {
+        return lanes.computeIfAbsent(name, ApplyLane::new);
+    }
+
+    private int pendingApplies(String name) {
+        ApplyLane lane = lanes.get(name);
+        return lane == null ? 0 : lane.pending();
+    }
+
+    /**
+     * 单个集合的同步队列：调用 Milvus 前按提交顺序占位，Milvus 返回后登记结果，按占位顺序在本地执行。
+     * 占位数达到 APPLY_QUEUE_CAPACITY 时阻塞提交方（导入线程，背压），登记结果的回调不阻塞
+     */
+    private final class ApplyLane {
+        private final String name;
+        private final Deque<ApplySlot> slots = new ArrayDeque<>();
+        private final Semaphore capacity = new Semaphore(APPLY_QUEUE_CAPACITY);
+        private boolean draining;
+
+        ApplyLane(String name) {
+            this.name = name;
+        }
+
+        ApplySlot reserve() {
+            capacity.acquireUninterruptibly();
+            ApplySlot slot = new ApplySlot();
+            synchronized (this) {
+                slots.addLast(slot);
+            }
+            return slot;
+        }
+
+        void complete(ApplySlot slot, Consumer<EmbeddedCollection> action) {
+            synchronized (this) {
+                slot.action = action;
+                slot.completed = true;
+                if (draining || slots.peekFirst() == null || !slots.peekFirst().completed) {
+                    return;
+                }
+                draining = true;
+            }
+            try {
+                applier.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // 已关闭：丢弃未同步的写入并归还占位，重启时按行数校验快照并回填
+                synchronized (this) {
+                    draining = false;
+                    capacity.release(slots.size());
+                    slots.clear();
+                }
+            }
+        }
+
+        synchronized int pending() {
+            return slots.size();
+        }
+
+        private void drain() {
+            while (true) {
+                ApplySlot slot;
+                synchronized (this) {
+                    slot = slots.peekFirst();
+                    if (slot == null || !slot.completed) {
+                        draining = false;
+                        return;
+                    }
+                }
+                // 执行期间保留占位，pending() 仍计入该写入
+                try {
+                    EmbeddedCollection collection = collections.get(name);
+                    if (slot.action != null && collection != null) {
+                        slot.action.accept(collection);
+                    }
+                } catch (RuntimeException e) {
+                    invalidate(name, e);
+                } finally {
+                    synchronized (this) {
+                        slots.pollFirst();
+                    }
+                    capacity.release();
+                }
+            }
+        }
+    }
+
+    private static final class ApplySlot {
+        private Consumer<EmbeddedCollection> action;
+        private boolean completed;
+    }
+
+    private void invalidate(String name, Exception cause) {
+        log.warn("本地镜像已失效，将从 Milvus 重新回填: 集合={}, 原因={}", name, cause.getMessage());
+        dropLocal(name);
+        if (!closed.get()) {
+            scheduler.execute(() -> prepareMirror(name));
+        }
+    }
+
+    /**
+     * 快照与 Milvus 行数一致时直接使用，否则从 Milvus 回填；Milvus 暂不可用时留待下次维护重试
+     */
+    private void prepareMirror(String name) {
+        if (ready.contains(name) || warming.contains(name) || closed.get()) {
+            return;
+        }
+        try {
+            R<Boolean> exists = delegate.hasCollection(HasCollectionParam.newBuilder().withCollectionName(name).build());
+            if (exists.getStatus() != R.Status.Success.getCode() || !Boolean.TRUE.equals(exists.getData())) {
+                return;
+            }
+            long sourceRows = countRows(name);
+            if (sourceRows < 0) {
+                return;
+            }
+
+            EmbeddedCollection snapshot = loadSnapshot(name);
+            if (snapshot != null && snapshot.getSourceRowCount() == sourceRows && snapshot.size() == sourceRows) {
+                collections.put(name, snapshot);
+                ready.add(name);
+                log.info("嵌入式索引从快照恢复: 集合={}, 行数={}", name, sourceRows);
+                return;
+            }
+            if (snapshot != null) {
+                log.info("快照与 Milvus 不一致，重新回填: 集合={}, 快照行数={}, Milvus 行数={}", name, snapshot.size(), sourceRows);
+            }
+            bootstrap(name);
+        } catch (Exception e) {
+            log.warn("准备本地镜像失败，稍后重试: 集合={}, 原因={}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * 用 queryIterator 分批读出主键、向量和镜像字段。回填期间的写入同时进入本地集合，删除则触发重新回填
+     */
+    private void bootstrap(String name) throws Exception {
+        warming.add(name);
+        try {
+            long start = System.currentTimeMillis();
+            EmbeddedCollection collection;
+            do {
+                deletedWhileWarming.remove(name);
+                R<DescribeCollectionResponse> described = delegate.describeCollection(
+                        DescribeCollectionParam.newBuilder().withCollectionName(name).build());
+                if (described.getStatus() != R.Status.Success.getCode()) {
+                    throw new IllegalStateException("获取集合结构失败: " + described.getMessage());
+                }
+                List<EmbeddedCollection.Field> fields = new ArrayList<>();
+                for (FieldSchema schema : described.getData().getSchema().getFieldsList()) {
+                    fields.add(EmbeddedCollection.Field.of(schema));
+                }
+                collection = newCollection(name, fields);
+                collections.put(name, collection);
+
+                R<QueryIterator> response = delegate.queryIterator(QueryIteratorParam.newBuilder()
+                        .withCollectionName(name)
+                        .withOutFields(collection.recordFields())
+                        .withBatchSize((long) BOOTSTRAP_BATCH_SIZE)
+                        .withConsistencyLevel(ConsistencyLevelEnum.STRONG)
+                        .build());
+                if (response.getStatus() != R.Status.Success.getCode()) {
+                    throw new IllegalStateException("创建查询迭代器失败: " + response.getMessage());
+                }
+                QueryIterator iterator = response.getData();
+                try {
+                    while (!closed.get()) {
+                        List<QueryResultsWrapper.RowRecord> batch = iterator.next();
+                        if (batch.isEmpty()) {
+                            break;
+                        }
+                        for (QueryResultsWrapper.RowRecord record : batch) {
+                            collection.putRecord(record.getFieldValues());
+                        }
+                    }
+                } finally {
+                    iterator.close();
+                }
+            } while (deletedWhileWarming.contains(name) && !closed.get());
+
+            ready.add(name);
+            log.info("嵌入式索引已从 Milvus 回填: 集合={}, 行数={}, 堆外内存={}MB, 耗时={}ms", name, collection.size(),
+                    collection.offHeapBytes() / 1048576, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            collections.remove(name);
+            throw e;
+        } finally {
+            warming.remove(name);
+        }
+    }
+
+    /**
+     * count(*) 查询（强一致），失败时返回 -1
+     */
+    private long countRows(String name) {
+        R<QueryResults> response = delegate.query(QueryParam.newBuilder()
+                .withCollectionName(name)
+                .withOutFields(List.of("count(*)"))
+                .withConsistencyLevel(ConsistencyLevelEnum.STRONG)
+                .build());
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            log.debug("统计 Milvus 行数失败: 集合={}, 原因={}", name, response.getMessage());
+            return -1;
+        }
+        return response.getData().getFieldsData(0).getScalars().getLongData().getData(0);
+    }
+
+    private static Object invokeDelegate(MilvusClient target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    // ---------------------------------------------------------------- 快照
+
+    /**
+     * 定期维护：写快照；mirror 模式下重试尚未就绪的集合
+     */
+    private void maintain() {
+        snapshotAll();
+        if (delegate != null) {
+            for (String name : settings.getCollections()) {
+                prepareMirror(name);
+            }
+        }
+    }
+
+    private void snapshotAll() {
+        for (EmbeddedCollection collection : collections.values()) {
+            String name = collection.getName();
+            if ((delegate != null && !ready.contains(name)) || !collection.isDirty()) {
+                continue;
+            }
+            if (delegate != null && pendingApplies(name) > 0) {
+                // 仍有未同步的写入时快照行数必然与 Milvus 不一致，留到下一轮
+                log.debug("有未同步到本地的写入，跳过本轮快照: 集合={}", name);
+                continue;
+            }
+            try {
+                long sourceRows = delegate == null ? -1 : countRows(name);
+                if (delegate != null && sourceRows < 0) {
+                    continue;
+                }
+                long start = System.currentTimeMillis();
+                collection.save(snapshotDir, settings.getCompactDeletedRatio(), sourceRows);
+                log.info("嵌入式索引快照已写入: 集合={}, 行数={}, 耗时={}ms", name, collection.size(),
+                        System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                log.warn("写入嵌入式索引快照失败: 集合={}, 原因={}", name, e.getMessage());
+            }
+        }
+    }
+
+    private void loadAllSnapshots() {
+        if (!Files.isDirectory(snapshotDir)) {
+            return;
+        }
+        Set<String> names = new HashSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(snapshotDir, "*" + EmbeddedCollection.ROWS_SUFFIX)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                names.add(fileName.substring(0, fileName.length() - EmbeddedCollection.ROWS_SUFFIX.length()));
+            }
+        } catch (IOException e) {
+            log.warn("读取嵌入式索引快照目录失败: {}", e.getMessage());
+            return;
+        }
+        for (String name : names) {
+            EmbeddedCollection collection = loadSnapshot(name);
+            if (collection != null) {
+                collections.put(name, collection);
+                log.info("嵌入式索引从快照恢复: 集合={}, 行数={}", name, collection.size());
+            }
+        }
+    }
+
+    private EmbeddedCollection loadSnapshot(String name) {
+        if (!Files.exists(snapshotDir.resolve(name + EmbeddedCollection.ROWS_SUFFIX))) {
+            return null;
+        }
+        try {
+            return EmbeddedCollection.load(snapshotDir, name, settings.getM(), settings.getEfConstruction(), mirrorFields);
+        } catch (Exception e) {
+            log.warn("嵌入式索引快照无法加载，已忽略: 集合={}, 原因={}", name, e.getMessage());
+            return null;
+        }
+    }
+
+    private void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        scheduler.shutdownNow();
+        if (applier != null) {
+            // 等待已提交的写入同步完成；仍有未同步写入的集合在 snapshotAll 中跳过
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+            try {
+                while (lanes.values().stream().anyMatch(lane -> lane.pending() > 0) && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(50);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            applier.shutdown();
+        }
+        snapshotAll();
+    }
+
+    // ---------------------------------------------------------------- 工具
+
+    private EmbeddedCollection newCollection(String name, List<EmbeddedCollection.Field> fields) {
+        return new EmbeddedCollection(name, fields, defaultMetric, settings.getM(), settings.getEfConstruction(),
+                mirrorFields);
+    }
+
+    /**
+     * 检索参数中的 ef（HNSW）或 search_list（DISKANN），均没有时使用配置值；不小于 topK
+     */
+    private int ef(String params, long topK) {
+        int ef = settings.getEfSearch();
+        if (params != null && !params.isBlank()) {
+            try {
+                JsonElement parsed = JsonParser.parseString(params);
+                JsonObject json = parsed.isJsonObject() ? parsed.getAsJsonObject() : new JsonObject();
+                if (json.has("params") && json.get("params").isJsonObject()) {
+                    json = json.getAsJsonObject("params");
+                }
+                if (json.has("ef")) {
+                    ef = json.get("ef").getAsInt();
+                } else if (json.has("search_list")) {
+                    ef = json.get("search_list").getAsInt();
+                }
+            } catch (RuntimeException e) {
+                log.debug("无法解析检索参数，使用默认 ef: {}", params);
+            }
+        }
+        return (int) Math.max(ef, topK);
+    }
+
+    private <T> R<T> withCollection(Object param, Function<EmbeddedCollection, R<T>> action) {
+        String name = collectionName(param);
+        EmbeddedCollection collection = collections.get(name);
+        if (collection == null) {
+            return R.failed(new IllegalArgumentException("集合不存在: " + name));
+        }
+        try {
+            return action.apply(collection);
+        } catch (IllegalArgumentException e) {
+            return R.failed(e);
+        }
+    }
+
+    private static R<RpcStatus> success() {
+        return R.success(new RpcStatus(RpcStatus.SUCCESS_MSG));
+    }
+
+    /**
+     * 各参数类都有 getCollectionName()
+     */
+    private static String collectionName(Object param) {
+        String name = collectionNameOrNull(param);
+        if (name == null) {
+            throw new IllegalArgumentException("参数缺少集合名: " + param);
+        }
+        return name;
+    }
+
+    private static String collectionNameOrNull(Object param) {
+        try {
+            Object name = param.getClass().getMethod("getCollectionName").invoke(param);
+            return name instanceof String ? (String) name : null;
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
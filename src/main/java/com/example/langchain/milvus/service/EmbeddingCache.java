@@ -0,0 +1,202 @@
+package com.example.langchain.milvus.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 向量缓存：键为 SHA-256(模型名, 维度, 归一化文本)，内存 LRU + 内存映射磁盘两级
+ */
+@Component
+@Slf4j
+public class EmbeddingCache {
+
+    @Value("${langchain4j.community.dashscope.embedding-model.model-name:text-embedding-v4}")
+    private String modelName;
+
+    @Value("${app.milvus.vector-dimension:1024}")
+    private Integer vectorDimension;
+
+    @Value("${app.embedding.cache.enabled:true}")
+    private Boolean enabled;
+
+    @Value("${app.embedding.cache.memory-entries:10000}")
+    private Integer memoryEntries;
+
+    @Value("${app.embedding.cache.disk-dir:cache/embeddings/}")
+    private String diskDir;
+
+    @Value("${app.embedding.cache.disk-max-entries:100000}")
+    private Integer diskMaxEntries;
+
+    private Map<String, float[]> memoryCache;
+    private MappedEmbeddingStore diskStore;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        memoryCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+
+        if (!Boolean.TRUE.equals(enabled)) {
+            return;
+        }
+
+        String fileName = modelName.replaceAll("[^A-Za-z0-9._-]", "_") + "_" + vectorDimension + ".bin";
+        try {
+            diskStore = new MappedEmbeddingStore(Paths.get(diskDir, fileName), vectorDimension, diskMaxEntries);
+            log.info("向量磁盘缓存已加载: 文件={}, 条目数={}", fileName, diskStore.size());
+        } catch (Exception e) {
+            log.warn("向量磁盘缓存不可用，仅使用内存缓存: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (diskStore != null) {
+            try {
+                diskStore.close();
+            } catch (Exception e) {
+                log.warn("关闭向量磁盘缓存失败", e);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(enabled);
+    }
+
+    /**
+     * 计算缓存键
+     */
+    public byte[] key(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(modelName.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Integer.toString(vectorDimension).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(normalize(text).getBytes(StandardCharsets.UTF_8));
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public float[] get(byte[] key) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        String hex = HexFormat.of().formatHex(key);
+        float[] vector;
+        synchronized (memoryCache) {
+            vector = memoryCache.get(hex);
+        }
+        if (vector != null) {
+            memoryHits.incrementAndGet();
+            return vector;
+        }
+
+        if (diskStore != null) {
+            vector = diskStore.get(key);
+            if (vector != null) {
+                diskHits.incrementAndGet();
+                synchronized (memoryCache) {
+                    memoryCache.put(hex, vector);
+                }
+                return vector;
+            }
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(byte[] key, float[] vector) {
+        if (!isEnabled() || vector == null) {
+            return;
+        }
+
+        synchronized (memoryCache) {
+            memoryCache.put(HexFormat.of().formatHex(key), vector);
+        }
+        if (diskStore != null) {
+            diskStore.put(key, vector);
+        }
+    }
+
+    /**
+     * 命中统计
+     */
+    public Map<String, Object> stats() {
+        long hits = memoryHits.get() + diskHits.get();
+        long total = hits + misses.get();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("model_name", modelName);
+        stats.put("dimension", vectorDimension);
+        stats.put("memory_hits", memoryHits.get());
+        stats.put("disk_hits", diskHits.get());
+        stats.put("misses", misses.get());
+        stats.put("hit_rate", total == 0 ? 0.0 : (double) hits / total);
+        synchronized (memoryCache) {
+            stats.put("memory_entries", memoryCache.size());
+        }
+        stats.put("disk_entries", diskStore == null ? 0 : diskStore.size());
+        stats.put("disk_max_entries", diskStore == null ? 0 : diskStore.getMaxEntries());
+        return stats;
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int getMemoryEntries() {
+        synchronized (memoryCache) {
+            return memoryCache.size();
+        }
+    }
+
+    public int getDiskEntries() {
+        return diskStore == null ? 0 : diskStore.size();
+    }
+
+    /**
+     * 文本归一化：NFKC、去首尾空白、合并连续空白
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return Normalizer.normalize(text, Normalizer.Form.NFKC).trim().replaceAll("\\s+", " ");
+    }
+}
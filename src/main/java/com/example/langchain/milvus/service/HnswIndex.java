@@ -0,0 +1,974 @@
+package com.example.langchain.milvus.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.LongPredicate;
+
+/**
+ * 进程内 HNSW 图索引。向量和第 0 层邻接表保存在堆外分页缓冲区（每页最多 PAGE_NODES 个节点，
+ * 末页按倍数扩容，写满后追加新页），上层邻接表、标签和删除标记在堆内。
+ * 删除为标记删除：被删节点继续参与图遍历，但不出现在结果中，快照时按比例重建。
+ * <p>
+ * 快照为单个文件，加载时各页以 MapMode.PRIVATE 映射（写时复制），重启无需重建图、按需从页缓存读入。
+ * 插入、删除持写锁，检索持读锁
+ */
+public final class HnswIndex {
+
+    public enum Metric {
+        IP, COSINE, L2;
+
+        public static Metric of(String name) {
+            for (Metric metric : values()) {
+                if (metric.name().equalsIgnoreCase(name)) {
+                    return metric;
+                }
+            }
+            throw new IllegalArgumentException("嵌入式索引不支持的度量类型: " + name);
+        }
+    }
+
+    /**
+     * 检索结果：标签（主键）和与 Milvus 一致的分数（IP/COSINE 越大越近，L2 越小越近）
+     */
+    public static final class Hit {
+        private final long label;
+        private final float score;
+
+        Hit(long label, float score) {
+            this.label = label;
+            this.score = score;
+        }
+
+        public long getLabel() {
+            return label;
+        }
+
+        public float getScore() {
+            return score;
+        }
+    }
+
+    private static final int MAGIC = 0x484E5357;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SECTION_ALIGNMENT = 64;
+
+    static final int PAGE_SHIFT = 14;
+    static final int PAGE_NODES = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_NODES - 1;
+    private static final int MIN_PAGE_NODES = 256;
+    private static final int MAX_LEVEL = 16;
+    // 带过滤的图检索最多计算 ef * FILTER_VISIT_FACTOR 次距离（不少于 FILTER_MIN_VISITS），避免过滤条件很严时遍历整张图
+    private static final int FILTER_VISIT_FACTOR = 32;
+    private static final int FILTER_MIN_VISITS = 4096;
+    // 图检索命中不足 topK 时，只有活跃节点数不超过该值才退化为精确扫描
+    static final int EXACT_SCAN_LIMIT = 10_000;
+
+    private final int dimension;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final Metric metric;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+
+    // 第 0 层邻接表每个节点 maxM0 + 1 个 int：[邻居数, 邻居...]
+    private final List<ByteBuffer> vectorBytes = new ArrayList<>();
+    private final List<FloatBuffer> vectorPages = new ArrayList<>();
+    private final List<ByteBuffer> linkBytes = new ArrayList<>();
+    private final List<IntBuffer> linkPages = new ArrayList<>();
+
+    // 上层邻接表：第 l 层（l >= 1）从 (l - 1) * (m + 1) 开始
+    private int[][] upperLinks = new int[0][];
+    private long[] labels = new long[0];
+    private int[] levels = new int[0];
+    private final BitSet deleted = new BitSet();
+    private final Map<Long, Integer> nodeByLabel = new HashMap<>();
+    private int count;
+    private int deletedCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ThreadLocal<VisitedSet> visited = ThreadLocal.withInitial(VisitedSet::new);
+
+    // 只在写锁内使用
+    private final float[] scratch;
+
+    public HnswIndex(int dimension, int m, int efConstruction, Metric metric) {
+        if (dimension <= 0 || m < 2 || efConstruction < 1) {
+            throw new IllegalArgumentException("HNSW 参数无效: dim=" + dimension + ", M=" + m + ", efConstruction=" + efConstruction);
+        }
+        this.dimension = dimension;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.metric = metric;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.scratch = new float[dimension];
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public Metric getMetric() {
+        return metric;
+    }
+
+    /**
+     * 未删除的节点数
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 已删除节点占比，用于判断是否需要重建
+     */
+    public double deletedRatio() {
+        lock.readLock().lock();
+        try {
+            return count == 0 ? 0 : (double) deletedCount / count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 堆外向量和邻接表占用的字节数
+     */
+    public long offHeapBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (ByteBuffer buffer : vectorBytes) {
+                bytes += buffer.capacity();
+            }
+            for (ByteBuffer buffer : linkBytes) {
+                bytes += buffer.capacity();
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(long label) {
+        lock.readLock().lock();
+        try {
+            return nodeByLabel.containsKey(label);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 返回存储的向量（COSINE 为归一化后的向量），标签不存在时返回 null
+     */
+    public float[] getVector(long label) {
+        lock.readLock().lock();
+        try {
+            Integer node = nodeByLabel.get(label);
+            if (node == null) {
+                return null;
+            }
+            float[] vector = new float[dimension];
+            readVector(node, vector);
+            return vector;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ---------------------------------------------------------------- 写入
+
+    /**
+     * 插入向量；标签已存在时先删除旧节点
+     */
+    public void add(long label, float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("向量维度不匹配: 期望 " + dimension + "，实际 " + vector.length);
+        }
+        float[] query = prepare(vector);
+
+        lock.writeLock().lock();
+        try {
+            Integer previous = nodeByLabel.get(label);
+            if (previous != null) {
+                markDeleted(previous);
+            }
+
+            int node = count;
+            ensureCapacity(node);
+            FloatBuffer page = vectorPages.get(node >>> PAGE_SHIFT);
+            page.put((node & PAGE_MASK) * dimension, query);
+
+            int level = randomLevel();
+            labels[node] = label;
+            levels[node] = level;
+            upperLinks[node] = level > 0 ? new int[level * (m + 1)] : null;
+            setLinks(node, 0, new int[0], 0);
+            count++;
+            nodeByLabel.put(label, node);
+
+            if (entryPoint < 0) {
+                entryPoint = node;
+                maxLevel = level;
+                return;
+            }
+
+            int current = entryPoint;
+            float currentDistance = distance(query, current);
+            for (int l = maxLevel; l > level; l--) {
+                current = greedy(query, current, l);
+                currentDistance = distance(query, current);
+            }
+
+            for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+                NodeHeap found = searchLayer(query, current, currentDistance, efConstruction, l, candidate -> true,
+                        Integer.MAX_VALUE);
+                int[] sortedNodes = new int[found.size()];
+                float[] sortedDistances = new float[found.size()];
+                drainAscending(found, sortedNodes, sortedDistances);
+
+                int[] neighbours = selectNeighbours(sortedNodes, sortedDistances, sortedNodes.length, maxLinks(l));
+                setLinks(node, l, neighbours, neighbours.length);
+                for (int neighbour : neighbours) {
+                    connect(neighbour, node, l);
+                }
+                current = sortedNodes[0];
+                currentDistance = sortedDistances[0];
+            }
+
+            if (level > maxLevel) {
+                entryPoint = node;
+                maxLevel = level;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 标记删除，返回标签是否存在
+     */
+    public boolean remove(long label) {
+        lock.writeLock().lock();
+        try {
+            Integer node = nodeByLabel.get(label);
+            if (node == null) {
+                return false;
+            }
+            markDeleted(node);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void markDeleted(int node) {
+        nodeByLabel.remove(labels[node]);
+        if (!deleted.get(node)) {
+            deleted.set(node);
+            deletedCount++;
+        }
+    }
+
+    /**
+     * 标记删除 keep 不接受的标签，返回删除数
+     */
+    public int retainAll(LongPredicate keep) {
+        lock.writeLock().lock();
+        try {
+            int removed = 0;
+            for (int node = 0; node < count; node++) {
+                if (!deleted.get(node) && !keep.test(labels[node])) {
+                    markDeleted(node);
+                    removed++;
+                }
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按插入顺序把未删除节点写入新索引，回收已删除节点占用的空间
+     */
+    public HnswIndex compact() {
+        lock.readLock().lock();
+        try {
+            HnswIndex compacted = new HnswIndex(dimension, m, efConstruction, metric);
+            float[] vector = new float[dimension];
+            for (int node = 0; node < count; node++) {
+                if (!deleted.get(node)) {
+                    readVector(node, vector);
+                    compacted.add(labels[node], vector);
+                }
+            }
+            return compacted;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ---------------------------------------------------------------- 检索
+
+    /**
+     * 近似检索 topK，filter 按标签过滤（为 null 时不过滤）。带过滤时图检索的扩展次数有上限，
+     * 命中不足 topK 且索引不超过 EXACT_SCAN_LIMIT 个节点时退化为精确扫描；大索引上的严格过滤应由调用方
+     * 先确定候选标签再用 searchLabels 精确计算
+     */
+    public List<Hit> search(float[] vector, int topK, int ef, LongPredicate filter) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("向量维度不匹配: 期望 " + dimension + "，实际 " + vector.length);
+        }
+        float[] query = prepare(vector);
+
+        lock.readLock().lock();
+        try {
+            if (count - deletedCount == 0 || topK <= 0) {
+                return Collections.emptyList();
+            }
+            IntPredicate accept = node -> !deleted.get(node) && (filter == null || filter.test(labels[node]));
+
+            int current = entryPoint;
+            for (int l = maxLevel; l > 0; l--) {
+                current = greedy(query, current, l);
+            }
+            int beam = Math.max(ef, topK);
+            int maxVisits = filter == null ? Integer.MAX_VALUE : Math.max(FILTER_MIN_VISITS, beam * FILTER_VISIT_FACTOR);
+            NodeHeap found = searchLayer(query, current, distance(query, current), beam, 0, accept, maxVisits);
+            if (found.size() < topK && found.size() < count - deletedCount && count - deletedCount <= EXACT_SCAN_LIMIT) {
+                found = exactScan(query, topK, accept);
+            }
+            return toHits(found, topK);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 只在给定标签中精确计算 topK（不存在或已删除的标签忽略），用于过滤后候选很少的检索
+     */
+    public List<Hit> searchLabels(float[] vector, int topK, long[] candidates) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("向量维度不匹配: 期望 " + dimension + "，实际 " + vector.length);
+        }
+        float[] query = prepare(vector);
+
+        lock.readLock().lock();
+        try {
+            if (topK <= 0 || candidates.length == 0) {
+                return Collections.emptyList();
+            }
+            NodeHeap results = new NodeHeap(topK + 1, true);
+            for (long label : candidates) {
+                Integer node = nodeByLabel.get(label);
+                if (node == null || deleted.get(node)) {
+                    continue;
+                }
+                offer(results, topK, node, distance(query, node));
+            }
+            return toHits(results, topK);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Hit> toHits(NodeHeap found, int topK) {
+        int size = found.size();
+        int[] nodes = new int[size];
+        float[] distances = new float[size];
+        drainAscending(found, nodes, distances);
+
+        int limit = Math.min(topK, size);
+        List<Hit> hits = new ArrayList<>(limit);
+        for (int i = 0; i < limit; i++) {
+            hits.add(new Hit(labels[nodes[i]], metric == Metric.L2 ? distances[i] : -distances[i]));
+        }
+        return hits;
+    }
+
+    private void offer(NodeHeap results, int topK, int node, float d) {
+        if (results.size() < topK || d < results.peekDistance()) {
+            results.push(node, d);
+            if (results.size() > topK) {
+                results.pop();
+            }
+        }
+    }
+
+    private NodeHeap exactScan(float[] query, int topK, IntPredicate accept) {
+        NodeHeap results = new NodeHeap(topK + 1, true);
+        for (int node = 0; node < count; node++) {
+            if (!accept.test(node)) {
+                continue;
+            }
+            offer(results, topK, node, distance(query, node));
+        }
+        return results;
+    }
+
+    private int greedy(float[] query, int start, int level) {
+        int current = start;
+        float currentDistance = distance(query, current);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int node = current;
+            int size = linkCount(node, level);
+            for (int i = 0; i < size; i++) {
+                int candidate = link(node, level, i);
+                float d = distance(query, candidate);
+                if (d < currentDistance) {
+                    current = candidate;
+                    currentDistance = d;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 单层 beam search，返回最多 ef 个满足 accept 的节点（大顶堆）；不满足的节点仍用于扩展，
+     * 计算 maxVisits 次距离后停止
+     */
+    private NodeHeap searchLayer(float[] query, int entry, float entryDistance, int ef, int level, IntPredicate accept,
+                                 int maxVisits) {
+        VisitedSet visitedSet = visited.get();
+        visitedSet.reset(count);
+
+        NodeHeap candidates = new NodeHeap(ef * 2, false);
+        NodeHeap results = new NodeHeap(ef + 1, true);
+        visitedSet.visit(entry);
+        candidates.push(entry, entryDistance);
+        if (accept.test(entry)) {
+            results.push(entry, entryDistance);
+        }
+        float lowerBound = results.size() > 0 ? entryDistance : Float.MAX_VALUE;
+        int visits = 1;
+
+        while (candidates.size() > 0 && visits < maxVisits) {
+            if (candidates.peekDistance() > lowerBound && results.size() >= ef) {
+                break;
+            }
+            int current = candidates.peekNode();
+            candidates.pop();
+
+            int size = linkCount(current, level);
+            for (int i = 0; i < size; i++) {
+                int neighbour = link(current, level, i);
+                if (!visitedSet.visit(neighbour)) {
+                    continue;
+                }
+                float d = distance(query, neighbour);
+                visits++;
+                if (results.size() < ef || d < lowerBound) {
+                    candidates.push(neighbour, d);
+                    if (accept.test(neighbour)) {
+                        results.push(neighbour, d);
+                        if (results.size() > ef) {
+                            results.pop();
+                        }
+                    }
+                    if (results.size() > 0) {
+                        lowerBound = results.peekDistance();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    // ---------------------------------------------------------------- 邻接表
+
+    /**
+     * 启发式选邻居（HNSW 论文算法 4）：候选按距离升序，与已选邻居比离新节点更近时才保留，使邻居分布在不同方向
+     */
+    private int[] selectNeighbours(int[] nodes, float[] distances, int size, int max) {
+        if (size <= max) {
+            return Arrays.copyOf(nodes, size);
+        }
+        int[] selected = new int[max];
+        int selectedCount = 0;
+        float[] candidateVector = new float[dimension];
+        for (int i = 0; i < size && selectedCount < max; i++) {
+            readVector(nodes[i], candidateVector);
+            boolean keep = true;
+            for (int j = 0; j < selectedCount; j++) {
+                if (distance(candidateVector, selected[j]) < distances[i]) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[selectedCount++] = nodes[i];
+            }
+        }
+        return Arrays.copyOf(selected, selectedCount);
+    }
+
+    private void connect(int node, int neighbour, int level) {
+        int size = linkCount(node, level);
+        int max = maxLinks(level);
+        if (size < max) {
+            setLink(node, level, size, neighbour);
+            setLinkCount(node, level, size + 1);
+            return;
+        }
+
+        readVector(node, scratch);
+        NodeHeap heap = new NodeHeap(size + 2, false);
+        heap.push(neighbour, distance(scratch, neighbour));
+        for (int i = 0; i < size; i++) {
+            int existing = link(node, level, i);
+            heap.push(existing, distance(scratch, existing));
+        }
+        int[] nodes = new int[heap.size()];
+        float[] distances = new float[heap.size()];
+        for (int i = 0; heap.size() > 0; i++) {
+            nodes[i] = heap.peekNode();
+            distances[i] = heap.peekDistance();
+            heap.pop();
+        }
+        int[] selected = selectNeighbours(nodes, distances, nodes.length, max);
+        setLinks(node, level, selected, selected.length);
+    }
+
+    private int maxLinks(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private int linkCount(int node, int level) {
+        if (level == 0) {
+            return linkPages.get(node >>> PAGE_SHIFT).get((node & PAGE_MASK) * (maxM0 + 1));
+        }
+        return upperLinks[node][(level - 1) * (m + 1)];
+    }
+
+    private int link(int node, int level, int i) {
+        if (level == 0) {
+            return linkPages.get(node >>> PAGE_SHIFT).get((node & PAGE_MASK) * (maxM0 + 1) + 1 + i);
+        }
+        return upperLinks[node][(level - 1) * (m + 1) + 1 + i];
+    }
+
+    private void setLinkCount(int node, int level, int size) {
+        if (level == 0) {
+            linkPages.get(node >>> PAGE_SHIFT).put((node & PAGE_MASK) * (maxM0 + 1), size);
+        } else {
+            upperLinks[node][(level - 1) * (m + 1)] = size;
+        }
+    }
+
+    private void setLink(int node, int level, int i, int neighbour) {
+        if (level == 0) {
+            linkPages.get(node >>> PAGE_SHIFT).put((node & PAGE_MASK) * (maxM0 + 1) + 1 + i, neighbour);
+        } else {
+            upperLinks[node][(level - 1) * (m + 1) + 1 + i] = neighbour;
+        }
+    }
+
+    private void setLinks(int node, int level, int[] neighbours, int size) {
+        for (int i = 0; i < size; i++) {
+            setLink(node, level, i, neighbours[i]);
+        }
+        setLinkCount(node, level, size);
+    }
+
+    // ---------------------------------------------------------------- 存储
+
+    private void ensureCapacity(int node) {
+        if (node >= labels.length) {
+            int capacity = Math.max(MIN_PAGE_NODES, labels.length * 2);
+            labels = Arrays.copyOf(labels, capacity);
+            levels = Arrays.copyOf(levels, capacity);
+            upperLinks = Arrays.copyOf(upperLinks, capacity);
+        }
+
+        int page = node >>> PAGE_SHIFT;
+        int slot = node & PAGE_MASK;
+        if (page == vectorBytes.size()) {
+            vectorBytes.add(null);
+            linkBytes.add(null);
+            vectorPages.add(null);
+            linkPages.add(null);
+        }
+        ByteBuffer current = vectorBytes.get(page);
+        int pageNodes = current == null ? 0 : current.capacity() / (dimension * Float.BYTES);
+        if (slot < pageNodes) {
+            return;
+        }
+
+        // 末页按倍数扩容（上限 PAGE_NODES），已写满的页不再移动
+        int newPageNodes = Math.min(PAGE_NODES, Math.max(MIN_PAGE_NODES, Math.max(slot + 1, pageNodes * 2)));
+        ByteBuffer vectors = ByteBuffer.allocateDirect(newPageNodes * dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer links = ByteBuffer.allocateDirect(newPageNodes * (maxM0 + 1) * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        if (current != null) {
+            vectors.put(0, current, 0, current.capacity());
+            ByteBuffer currentLinks = linkBytes.get(page);
+            links.put(0, currentLinks, 0, currentLinks.capacity());
+        }
+        setPage(page, vectors, links);
+    }
+
+    private void setPage(int page, ByteBuffer vectors, ByteBuffer links) {
+        vectorBytes.set(page, vectors);
+        linkBytes.set(page, links);
+        vectorPages.set(page, vectors.asFloatBuffer());
+        linkPages.set(page, links.asIntBuffer());
+    }
+
+    private void readVector(int node, float[] target) {
+        vectorPages.get(node >>> PAGE_SHIFT).get((node & PAGE_MASK) * dimension, target);
+    }
+
+    /**
+     * 内部距离，越小越近：L2 为平方距离，IP/COSINE 为负内积
+     */
+    private float distance(float[] query, int node) {
+        FloatBuffer page = vectorPages.get(node >>> PAGE_SHIFT);
+        int base = (node & PAGE_MASK) * dimension;
+        float sum = 0;
+        if (metric == Metric.L2) {
+            for (int i = 0; i < dimension; i++) {
+                float diff = page.get(base + i) - query[i];
+                sum += diff * diff;
+            }
+            return sum;
+        }
+        for (int i = 0; i < dimension; i++) {
+            sum += page.get(base + i) * query[i];
+        }
+        return -sum;
+    }
+
+    private float[] prepare(float[] vector) {
+        if (metric != Metric.COSINE) {
+            return vector;
+        }
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float[] normalized = Arrays.copyOf(vector, vector.length);
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < normalized.length; i++) {
+                normalized[i] *= scale;
+            }
+        }
+        return normalized;
+    }
+
+    private int randomLevel() {
+        double r = 1 - random.nextDouble();
+        return Math.min(MAX_LEVEL, (int) (-Math.log(r) * levelMultiplier));
+    }
+
+    private static void drainAscending(NodeHeap maxHeap, int[] nodes, float[] distances) {
+        for (int i = maxHeap.size() - 1; i >= 0; i--) {
+            nodes[i] = maxHeap.peekNode();
+            distances[i] = maxHeap.peekDistance();
+            maxHeap.pop();
+        }
+    }
+
+    // ---------------------------------------------------------------- 快照
+
+    /**
+     * 写入快照文件（先写临时文件再原子替换）。持读锁，期间检索不受影响、写入等待
+     */
+    public void save(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        lock.readLock().lock();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(m).putInt(efConstruction)
+                    .putInt(metric.ordinal()).putInt(count).putInt(deletedCount).putInt(entryPoint).putInt(maxLevel);
+            header.clear();
+            writeFully(channel, header, 0);
+
+            long position = HEADER_SIZE;
+            for (int page = 0; page * PAGE_NODES < count; page++) {
+                int nodes = Math.min(PAGE_NODES, count - page * PAGE_NODES);
+                position = writeFully(channel, vectorBytes.get(page).duplicate().clear()
+                        .limit(nodes * dimension * Float.BYTES), position);
+            }
+            position = align(position);
+            for (int page = 0; page * PAGE_NODES < count; page++) {
+                int nodes = Math.min(PAGE_NODES, count - page * PAGE_NODES);
+                position = writeFully(channel, linkBytes.get(page).duplicate().clear()
+                        .limit(nodes * (maxM0 + 1) * Integer.BYTES), position);
+            }
+            position = align(position);
+
+            ByteBuffer labelBuffer = ByteBuffer.allocate(count * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            labelBuffer.asLongBuffer().put(labels, 0, count);
+            position = writeFully(channel, labelBuffer, position);
+
+            ByteBuffer levelBuffer = ByteBuffer.allocate(count * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            levelBuffer.asIntBuffer().put(levels, 0, count);
+            position = writeFully(channel, levelBuffer, position);
+
+            long[] deletedWords = Arrays.copyOf(deleted.toLongArray(), (count + 63) / 64);
+            ByteBuffer deletedBuffer = ByteBuffer.allocate(deletedWords.length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            deletedBuffer.asLongBuffer().put(deletedWords);
+            position = writeFully(channel, deletedBuffer, position);
+
+            for (int node = 0; node < count; node++) {
+                if (levels[node] > 0) {
+                    ByteBuffer upper = ByteBuffer.allocate(upperLinks[node].length * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                    upper.asIntBuffer().put(upperLinks[node]);
+                    position = writeFully(channel, upper, position);
+                }
+            }
+            channel.force(false);
+        } finally {
+            lock.readLock().unlock();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 从快照加载：向量和第 0 层邻接表按页映射，其余部分读入堆内
+     */
+    public static HnswIndex load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("不是有效的 HNSW 快照: " + file);
+            }
+            int dimension = header.getInt();
+            int m = header.getInt();
+            int efConstruction = header.getInt();
+            Metric metric = Metric.values()[header.getInt()];
+            HnswIndex index = new HnswIndex(dimension, m, efConstruction, metric);
+            int count = header.getInt();
+            index.count = count;
+            index.deletedCount = header.getInt();
+            index.entryPoint = header.getInt();
+            index.maxLevel = header.getInt();
+
+            int pages = (count + PAGE_NODES - 1) / PAGE_NODES;
+            long vectorOffset = HEADER_SIZE;
+            long linkOffset = align(vectorOffset + (long) count * dimension * Float.BYTES);
+            for (int page = 0; page < pages; page++) {
+                int nodes = Math.min(PAGE_NODES, count - page * PAGE_NODES);
+                long vectorPageBytes = (long) PAGE_NODES * dimension * Float.BYTES;
+                long linkPageBytes = (long) PAGE_NODES * (index.maxM0 + 1) * Integer.BYTES;
+                ByteBuffer vectors = channel.map(FileChannel.MapMode.PRIVATE, vectorOffset + page * vectorPageBytes,
+                        (long) nodes * dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                ByteBuffer links = channel.map(FileChannel.MapMode.PRIVATE, linkOffset + page * linkPageBytes,
+                        (long) nodes * (index.maxM0 + 1) * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                index.vectorBytes.add(null);
+                index.linkBytes.add(null);
+                index.vectorPages.add(null);
+                index.linkPages.add(null);
+                index.setPage(page, vectors, links);
+            }
+
+            long position = align(linkOffset + (long) count * (index.maxM0 + 1) * Integer.BYTES);
+            int capacity = Math.max(MIN_PAGE_NODES, count);
+            index.labels = new long[capacity];
+            index.levels = new int[capacity];
+            index.upperLinks = new int[capacity][];
+
+            ByteBuffer labelBuffer = ByteBuffer.allocate(count * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            position = readFully(channel, labelBuffer, position);
+            labelBuffer.flip();
+            labelBuffer.asLongBuffer().get(index.labels, 0, count);
+
+            ByteBuffer levelBuffer = ByteBuffer.allocate(count * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            position = readFully(channel, levelBuffer, position);
+            levelBuffer.flip();
+            levelBuffer.asIntBuffer().get(index.levels, 0, count);
+
+            long[] deletedWords = new long[(count + 63) / 64];
+            ByteBuffer deletedBuffer = ByteBuffer.allocate(deletedWords.length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            position = readFully(channel, deletedBuffer, position);
+            deletedBuffer.flip();
+            deletedBuffer.asLongBuffer().get(deletedWords);
+            index.deleted.or(BitSet.valueOf(deletedWords));
+
+            for (int node = 0; node < count; node++) {
+                if (index.levels[node] > 0) {
+                    int[] upper = new int[index.levels[node] * (m + 1)];
+                    ByteBuffer upperBuffer = ByteBuffer.allocate(upper.length * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                    position = readFully(channel, upperBuffer, position);
+                    upperBuffer.flip();
+                    upperBuffer.asIntBuffer().get(upper);
+                    index.upperLinks[node] = upper;
+                }
+                if (!index.deleted.get(node)) {
+                    index.nodeByLabel.put(index.labels[node], node);
+                }
+            }
+            return index;
+        }
+    }
+
+    private static long align(long position) {
+        return (position + SECTION_ALIGNMENT - 1) / SECTION_ALIGNMENT * SECTION_ALIGNMENT;
+    }
+
+    private static long writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return position;
+    }
+
+    private static long readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("HNSW 快照文件不完整");
+            }
+            position += read;
+        }
+        return position;
+    }
+
+    // ---------------------------------------------------------------- 辅助结构
+
+    /**
+     * 按距离排序的二叉堆（max 为 true 时堆顶最远），节点和距离存放在并列数组中，避免装箱
+     */
+    private static final class NodeHeap {
+        private int[] nodes;
+        private float[] distances;
+        private int size;
+        private final boolean max;
+
+        NodeHeap(int capacity, boolean max) {
+            this.nodes = new int[Math.max(capacity, 4)];
+            this.distances = new float[nodes.length];
+            this.max = max;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int peekNode() {
+            return nodes[0];
+        }
+
+        float peekDistance() {
+            return distances[0];
+        }
+
+        void push(int node, float distance) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(distance, distances[parent])) {
+                    break;
+                }
+                nodes[i] = nodes[parent];
+                distances[i] = distances[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            distances[i] = distance;
+        }
+
+        void pop() {
+            size--;
+            if (size == 0) {
+                return;
+            }
+            int node = nodes[size];
+            float distance = distances[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && before(distances[child + 1], distances[child])) {
+                    child++;
+                }
+                if (!before(distances[child], distance)) {
+                    break;
+                }
+                nodes[i] = nodes[child];
+                distances[i] = distances[child];
+                i = child;
+            }
+            nodes[i] = node;
+            distances[i] = distance;
+        }
+
+        private boolean before(float a, float b) {
+            return max ? a > b : a < b;
+        }
+    }
+
+    /**
+     * 每线程复用的访问标记：按轮次编号判断，不必每次清零
+     */
+    private static final class VisitedSet {
+        private int[] marks = new int[0];
+        private int epoch;
+
+        void reset(int size) {
+            if (marks.length < size) {
+                marks = new int[Math.max(size, marks.length * 2)];
+                epoch = 0;
+            }
+            epoch++;
+            if (epoch == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        boolean visit(int node) {
+            if (marks[node] == epoch) {
+                return false;
+            }
+            marks[node] = epoch;
+            return true;
+        }
+    }
+}
@@ -1,93 +1,143 @@
 package com.example.langchain.milvus.service;
 
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.xwpf.usermodel.XWPFDocument;
-import org.apache.poi.xwpf.usermodel.XWPFParagraph;
-import org.apache.poi.xwpf.usermodel.XWPFPicture;
 import org.apache.poi.xwpf.usermodel.XWPFPictureData;
-import org.apache.poi.xwpf.usermodel.XWPFRun;
 import org.springframework.stereotype.Component;
-import org.springframework.web.multipart.MultipartFile;
 
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Component
 @Slf4j
 public class ImageExtractorWithPosition {
 
-    public List<DocumentParserWithStructure.ImageInfo> extractImages(MultipartFile file, String outputDir) throws Exception {
-        String fileName = file.getOriginalFilename().toLowerCase();
+    /**
+     * 保存已打开文档中的所有图片，按内容哈希去重：内容相同的图片只保存、只记录一次。
+     * 图片字节从包内直接流式写盘，返回的 ImageInfo 只是句柄（哈希、大小、格式、路径）
+     */
+    public ImageIndex saveDocumentImages(XWPFDocument doc, String outputDir) throws Exception {
+        ImageIndex imageIndex = new ImageIndex();
+        Path dir = Paths.get(outputDir);
+        Files.createDirectories(dir);
 
-        if (fileName.endsWith(".docx")) {
-            return extractImagesFromDocx(file, outputDir);
-        }
-        return Collections.emptyList();
-    }
+        List<XWPFPictureData> pictureDataList = doc.getAllPictures();
+        for (XWPFPictureData pictureData : pictureDataList) {
+            String format = pictureData.suggestFileExtension();
 
-    private List<DocumentParserWithStructure.ImageInfo> extractImagesFromDocx(MultipartFile file, String outputDir) throws Exception {
-        List<DocumentParserWithStructure.ImageInfo> images = new ArrayList<>();
+            DocumentParserWithStructure.ImageInfo stored;
+            try (InputStream in = pictureData.getPackagePart().getInputStream()) {
+                stored = storeImage(in, dir, format);
+            }
 
-        try (XWPFDocument doc = new XWPFDocument(file.getInputStream())) {
-            int imageIndex = 0;
+            DocumentParserWithStructure.ImageInfo existing = imageIndex.byHash.get(stored.getContentHash());
+            if (existing != null) {
+                imageIndex.byPicture.put(pictureData, existing);
+                continue;
+            }
 
-            // 1. 提取文档中的图片
-            List<XWPFPictureData> pictureDataList = doc.getAllPictures();
-            for (XWPFPictureData pictureData : pictureDataList) {
-                String imageName = "image_" + imageIndex + "." + pictureData.suggestFileExtension();
-                Path imagePath = Paths.get(outputDir, imageName);
+            stored.setIndex(imageIndex.images.size());
+            imageIndex.images.add(stored);
+            imageIndex.byHash.put(stored.getContentHash(), stored);
+            imageIndex.byPicture.put(pictureData, stored);
+        }
 
-                // 保存图片
-                try (FileOutputStream fos = new FileOutputStream(imagePath.toFile())) {
-                    fos.write(pictureData.getData());
-                }
+        if (imageIndex.images.size() < pictureDataList.size()) {
+            log.info("图片去重: 原始 {} 张, 去重后 {} 张", pictureDataList.size(), imageIndex.images.size());
+        }
+        return imageIndex;
+    }
 
-                DocumentParserWithStructure.ImageInfo imageInfo = new DocumentParserWithStructure.ImageInfo();
-                imageInfo.setIndex(imageIndex);
-                imageInfo.setFileName(imageName);
-                imageInfo.setFilePath(imagePath.toString());
-                imageInfo.setFormat(pictureData.suggestFileExtension());
-                imageInfo.setData(pictureData.getData());
+    /**
+     * 记录一张嵌入图片在文档中的位置，重复出现的图片保留首次出现的位置
+     */
+    public void recordImagePosition(ImageIndex imageIndex,
+                                    XWPFPictureData pictureData,
+                                    int paraIndex, int runIndex, String paragraphText) {
+        // 找到对应的ImageInfo
+        DocumentParserWithStructure.ImageInfo imageInfo = imageIndex.handleOf(pictureData);
 
-                images.add(imageInfo);
-                imageIndex++;
+        if (imageInfo != null && imageInfo.getPosition() == null) {
+            DocumentParserWithStructure.ImagePosition position = new DocumentParserWithStructure.ImagePosition();
+            position.setParagraphIndex(paraIndex);
+            position.setRunIndex(runIndex);
+            position.setParagraphText(paragraphText);
+            imageInfo.setPosition(position);
+        }
+    }
+
+    /**
+     * 把图片字节流式写入 dir：先写临时文件并计算 SHA-256，内容哈希为 "哈希_大小"，
+     * 文件名取其前 32 位加扩展名，同名文件已存在时不再覆盖。DOM 与流式解析共用，保证图片命名和去重键一致。
+     * 返回的句柄未设置 index 和 position
+     */
+    public static DocumentParserWithStructure.ImageInfo storeImage(InputStream in, Path dir, String format) throws IOException {
+        Path tempFile = Files.createTempFile(dir, "img_", ".tmp");
+        try {
+            MessageDigest digest = newDigest();
+            long size;
+            try (InputStream digesting = new DigestInputStream(in, digest);
+                 OutputStream out = Files.newOutputStream(tempFile)) {
+                size = digesting.transferTo(out);
             }
+            String contentHash = HexFormat.of().formatHex(digest.digest()) + "_" + size;
 
-            // 2. 记录图片在文档中的位置
-            int paraIndex = 0;
-            for (XWPFParagraph para : doc.getParagraphs()) {
-                for (XWPFRun run : para.getRuns()) {
-                    for (XWPFPicture picture : run.getEmbeddedPictures()) {
-                        // 找到对应的ImageInfo
-                        DocumentParserWithStructure.ImageInfo imageInfo = findImageInfoByData(picture.getPictureData().getData(), images);
-                        if (imageInfo != null) {
-                            DocumentParserWithStructure.ImagePosition position = new DocumentParserWithStructure.ImagePosition();
-                            position.setParagraphIndex(paraIndex);
-//                            position.setParagraphId(para..getId());
-                            position.setRunIndex(para.getRuns().indexOf(run));
-                            position.setParagraphText(para.getText());
-                            imageInfo.setPosition(position);
-                        }
-                    }
-                }
-                paraIndex++;
+            // 以内容哈希命名，重复导入同一图片时不再重复写盘
+            String imageName = contentHash.substring(0, 32) + "." + format;
+            Path imagePath = dir.resolve(imageName);
+            if (!Files.exists(imagePath)) {
+                Files.move(tempFile, imagePath, StandardCopyOption.REPLACE_EXISTING);
             }
+
+            DocumentParserWithStructure.ImageInfo image = new DocumentParserWithStructure.ImageInfo();
+            image.setFileName(imageName);
+            image.setFilePath(imagePath.toString());
+            image.setFormat(format);
+            image.setContentHash(contentHash);
+            image.setSize(size);
+            return image;
+        } finally {
+            Files.deleteIfExists(tempFile);
         }
+    }
 
-        return images;
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
-    private DocumentParserWithStructure.ImageInfo findImageInfoByData(byte[] data, List<DocumentParserWithStructure.ImageInfo> images) {
-        for (DocumentParserWithStructure.ImageInfo image : images) {
-            if (Arrays.equals(data, image.getData())) {
-                return image;
-            }
+    /**
+     * 单个文档的图片索引：内容哈希 → 图片，POI 图片对象 → 图片
+     */
+    public static class ImageIndex {
+        @Getter
+        private final List<DocumentParserWithStructure.ImageInfo> images = new ArrayList<>();
+        private final Map<String, DocumentParserWithStructure.ImageInfo> byHash = new HashMap<>();
+        private final Map<XWPFPictureData, DocumentParserWithStructure.ImageInfo> byPicture = new IdentityHashMap<>();
+
+        /**
+         * 已保存图片的句柄，未保存时返回 null
+         */
+        public DocumentParserWithStructure.ImageInfo handleOf(XWPFPictureData pictureData) {
+            return pictureData == null ? null : byPicture.get(pictureData);
         }
-        return null;
     }
 }
@@ -0,0 +1,189 @@
+package com.example.langchain.milvus.service;
+
+import com.example.langchain.milvus.dto.DocumentImportRequest;
+import com.example.langchain.milvus.dto.DocumentImportResult;
+import com.example.langchain.milvus.dto.ImportJobStatus;
+import com.example.langchain.milvus.dto.ImportProgress;
+import com.example.langchain.milvus.utils.TempFileMultipartFile;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步导入任务：在有界线程池中执行 importDocument，并记录各阶段进度
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ImportJobService {
+
+    private final MilvusServiceImplV2 milvusService;
+
+    @Value("${app.import.pool-size:4}")
+    private Integer poolSize;
+
+    @Value("${app.import.queue-capacity:32}")
+    private Integer queueCapacity;
+
+    @Value("${app.import.job-retention-minutes:60}")
+    private Long jobRetentionMinutes;
+
+    @Value("${app.import.temp-dir:uploads/tmp/}")
+    private String tempDir;
+
+    @Value("${app.import.max-upload-bytes:1073741824}")
+    private Long maxUploadBytes;
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor importExecutor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        importExecutor = new ThreadPoolExecutor(
+                poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> new Thread(r, "document-import-" + threadIndex.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        importExecutor.shutdown();
+    }
+
+    /**
+     * 提交导入任务，队列已满时抛出 RejectedExecutionException
+     */
+    public ImportJobStatus submit(MultipartFile file, DocumentImportRequest request) throws Exception {
+        // 请求结束后容器会清理上传文件，先复制到临时目录
+        return submitSpooled(spool(file), request);
+    }
+
+    /**
+     * 把上传文件复制到临时目录，解析器从临时文件随机访问读取
+     */
+    public TempFileMultipartFile spool(MultipartFile file) throws IOException {
+        return TempFileMultipartFile.copyOf(file, Paths.get(tempDir));
+    }
+
+    /**
+     * 把请求体直接写入临时文件（不经过 multipart 解析），超过 max-upload-bytes 时抛出异常
+     */
+    public TempFileMultipartFile spool(InputStream body, String fileName, String contentType) throws IOException {
+        return TempFileMultipartFile.fromStream(body, Paths.get(tempDir), "file", fileName, contentType, maxUploadBytes);
+    }
+
+    public long getMaxUploadBytes() {
+        return maxUploadBytes;
+    }
+
+    /**
+     * 提交已落盘的文件，任务结束（成功、失败或被拒绝）后删除临时文件
+     */
+    public ImportJobStatus submitSpooled(TempFileMultipartFile tempFile, DocumentImportRequest request) {
+        evictExpiredJobs();
+        request.setFile(tempFile);
+
+        ImportJob job = new ImportJob(UUID.randomUUID().toString(), tempFile.getOriginalFilename(), request.getCollectionName());
+        jobs.put(job.id, job);
+
+        try {
+            importExecutor.execute(() -> runJob(job, tempFile, request));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            tempFile.close();
+            throw e;
+        }
+
+        log.info("导入任务已提交: jobId={}, 文件={}", job.id, job.documentName);
+        return toStatus(job);
+    }
+
+    public ImportJobStatus getStatus(String jobId) {
+        ImportJob job = jobs.get(jobId);
+        return job == null ? null : toStatus(job);
+    }
+
+    private void runJob(ImportJob job, TempFileMultipartFile file, DocumentImportRequest request) {
+        job.status = "RUNNING";
+        job.startTime = LocalDateTime.now();
+
+        MilvusServiceImplV2.ImportContext context = milvusService.startImport(file, request, job.progress);
+        try (file) {
+            job.result = milvusService.importDocument(context);
+            job.status = "SUCCEEDED";
+        } catch (Exception e) {
+            log.error("导入任务失败: jobId={}", job.id, e);
+            // 失败的结果同样返回，带上文档 ID、错误信息和耗时
+            job.result = context.getResult();
+            job.error = e.getMessage();
+            job.status = "FAILED";
+        } finally {
+            job.endTime = LocalDateTime.now();
+        }
+    }
+
+    private void evictExpiredJobs() {
+        LocalDateTime deadline = LocalDateTime.now().minus(Duration.ofMinutes(jobRetentionMinutes));
+        jobs.values().removeIf(job -> job.endTime != null && job.endTime.isBefore(deadline));
+    }
+
+    private ImportJobStatus toStatus(ImportJob job) {
+        ImportProgress progress = job.progress;
+        return ImportJobStatus.builder()
+                .jobId(job.id)
+                .status(job.status)
+                .stage(progress.getStage())
+                .documentName(job.documentName)
+                .collectionName(job.collectionName)
+                .parsedParagraphs(progress.getParsedParagraphs())
+                .totalChunks(progress.getTotalChunks())
+                .chunksEmbedded(progress.getChunksEmbedded())
+                .rowsInserted(progress.getRowsInserted())
+                .submitTime(job.submitTime)
+                .startTime(job.startTime)
+                .endTime(job.endTime)
+                .error(job.error)
+                .result(job.result)
+                .build();
+    }
+
+    private static class ImportJob {
+        private final String id;
+        private final String documentName;
+        private final String collectionName;
+        private final LocalDateTime submitTime = LocalDateTime.now();
+        private final ImportProgress progress = new ImportProgress();
+        private volatile String status = "PENDING";
+        private volatile LocalDateTime startTime;
+        private volatile LocalDateTime endTime;
+        private volatile String error;
+        private volatile DocumentImportResult result;
+
+        private ImportJob(String id, String documentName, String collectionName) {
+            this.id = id;
+            this.documentName = documentName;
+            this.collectionName = collectionName;
+        }
+    }
+}
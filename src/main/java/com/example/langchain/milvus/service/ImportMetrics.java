@@ -0,0 +1,184 @@
+package com.example.langchain.milvus.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 导入流水线指标：各阶段耗时、分块数、文档字节数、向量化批次耗时、写入行数、按阶段统计的失败数，
+ * 以及检索耗时和查询向量缓存命中，通过 actuator 的 /actuator/prometheus 暴露
+ */
+@Component
+@RequiredArgsConstructor
+public class ImportMetrics {
+
+    private static final String TAG_COLLECTION = "collection";
+    private static final String TAG_TENANT = "tenant";
+
+    private final MeterRegistry meterRegistry;
+    private final EmbeddingCache embeddingCache;
+    private final QueryEmbeddingCache queryEmbeddingCache;
+    private final SearchResultCache searchResultCache;
+    private final SemanticQueryCache semanticQueryCache;
+    private final CollectionLoadManager collectionLoadManager;
+
+    @PostConstruct
+    public void bindEmbeddingCache() {
+        FunctionCounter.builder("embedding.cache.hits", embeddingCache, EmbeddingCache::getMemoryHits)
+                .tag("tier", "memory")
+                .description("向量缓存命中次数")
+                .register(meterRegistry);
+        FunctionCounter.builder("embedding.cache.hits", embeddingCache, EmbeddingCache::getDiskHits)
+                .tag("tier", "disk")
+                .description("向量缓存命中次数")
+                .register(meterRegistry);
+        FunctionCounter.builder("embedding.cache.misses", embeddingCache, EmbeddingCache::getMisses)
+                .description("向量缓存未命中次数")
+                .register(meterRegistry);
+        Gauge.builder("embedding.cache.entries", embeddingCache, EmbeddingCache::getMemoryEntries)
+                .tag("tier", "memory")
+                .register(meterRegistry);
+        Gauge.builder("embedding.cache.entries", embeddingCache, EmbeddingCache::getDiskEntries)
+                .tag("tier", "disk")
+                .register(meterRegistry);
+        FunctionCounter.builder("search.query.cache.hits", queryEmbeddingCache, QueryEmbeddingCache::getHits)
+                .description("查询向量缓存命中次数")
+                .register(meterRegistry);
+        FunctionCounter.builder("search.query.cache.misses", queryEmbeddingCache, QueryEmbeddingCache::getMisses)
+                .description("查询向量缓存未命中次数")
+                .register(meterRegistry);
+        FunctionCounter.builder("search.result.cache.hits", searchResultCache, SearchResultCache::getHits)
+                .description("检索结果缓存命中次数")
+                .register(meterRegistry);
+        FunctionCounter.builder("search.result.cache.misses", searchResultCache, SearchResultCache::getMisses)
+                .description("检索结果缓存未命中次数")
+                .register(meterRegistry);
+        Gauge.builder("search.result.cache.entries", searchResultCache, SearchResultCache::size)
+                .register(meterRegistry);
+        FunctionCounter.builder("search.semantic.cache.hits", semanticQueryCache, SemanticQueryCache::getHits)
+                .description("语义近似缓存命中次数")
+                .register(meterRegistry);
+        FunctionCounter.builder("search.semantic.cache.misses", semanticQueryCache, SemanticQueryCache::getMisses)
+                .description("语义近似缓存未命中次数")
+                .register(meterRegistry);
+        Gauge.builder("milvus.collections.loaded", collectionLoadManager, CollectionLoadManager::getLoadedCollections)
+                .description("已加载的集合数")
+                .register(meterRegistry);
+        Gauge.builder("milvus.collections.loaded.bytes", collectionLoadManager, CollectionLoadManager::getUsedBytes)
+                .description("已加载集合的估算内存")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录单个导入阶段耗时，stage 取 ImportProgress 的阶段常量
+     */
+    public void recordStage(String stage, String collection, String tenant, long startNanos) {
+        Timer.builder("import.stage.duration")
+                .description("文档导入各阶段耗时")
+                .tag("stage", stage)
+                .tag(TAG_COLLECTION, safe(collection))
+                .tag(TAG_TENANT, safe(tenant))
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 单个文档的分块数
+     */
+    public void recordChunks(String collection, String tenant, int chunks) {
+        DistributionSummary.builder("import.document.chunks")
+                .description("每个文档的分块数")
+                .tag(TAG_COLLECTION, safe(collection))
+                .tag(TAG_TENANT, safe(tenant))
+                .register(meterRegistry)
+                .record(chunks);
+    }
+
+    /**
+     * 单个文档的上传大小
+     */
+    public void recordDocumentBytes(String collection, String tenant, long bytes) {
+        DistributionSummary.builder("import.document.bytes")
+                .description("每个文档的大小")
+                .baseUnit("bytes")
+                .tag(TAG_COLLECTION, safe(collection))
+                .tag(TAG_TENANT, safe(tenant))
+                .register(meterRegistry)
+                .record(bytes);
+    }
+
+    /**
+     * 单个向量化批次（一次 embedAll 请求）的耗时与大小
+     */
+    public void recordEmbeddingBatch(int size, boolean success, long startNanos) {
+        Timer.builder("import.embedding.batch.duration")
+                .description("单个向量化批次的耗时")
+                .tag("outcome", success ? "success" : "failure")
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("import.embedding.batch.size")
+                .description("单个向量化批次的分块数")
+                .register(meterRegistry)
+                .record(size);
+    }
+
+    public void recordRowsInserted(String collection, String tenant, int rows) {
+        Counter.builder("import.rows.inserted")
+                .description("写入 Milvus 的行数")
+                .tag(TAG_COLLECTION, safe(collection))
+                .tag(TAG_TENANT, safe(tenant))
+                .register(meterRegistry)
+                .increment(rows);
+    }
+
+    /**
+     * 文档导入结果，失败时按失败所在阶段计数
+     */
+    public void recordDocument(String collection, String tenant, boolean success, String failedStage) {
+        Counter.builder("import.documents")
+                .description("导入的文档数")
+                .tag(TAG_COLLECTION, safe(collection))
+                .tag(TAG_TENANT, safe(tenant))
+                .tag("outcome", success ? "success" : "failure")
+                .register(meterRegistry)
+                .increment();
+
+        if (!success) {
+            Counter.builder("import.failures")
+                    .description("按阶段统计的导入失败数")
+                    .tag(TAG_COLLECTION, safe(collection))
+                    .tag(TAG_TENANT, safe(tenant))
+                    .tag("stage", safe(failedStage))
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+
+    /**
+     * 单次检索耗时，type 区分 dense、hybrid 等检索方式
+     */
+    public void recordSearch(String type, String collection, long startNanos) {
+        Timer.builder("search.duration")
+                .description("检索耗时")
+                .tag("type", type)
+                .tag(TAG_COLLECTION, safe(collection))
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static String safe(String value) {
+        return value == null || value.isEmpty() ? "unknown" : value;
+    }
+}
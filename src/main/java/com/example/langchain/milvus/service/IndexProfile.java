@@ -0,0 +1,174 @@
+package com.example.langchain.milvus.service;
+
+import io.milvus.param.IndexType;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 向量索引配置档：索引类型、建索引参数、检索参数名及调参扫描范围。
+ * <ul>
+ *     <li>low-latency：HNSW，全内存，延迟最低</li>
+ *     <li>memory-lean：IVF_SQ8，向量按 8 位标量量化，内存约为原始向量的 1/4</li>
+ *     <li>memory-lean-pq：IVF_PQ，乘积量化，内存更小、召回略低</li>
+ *     <li>disk：DISKANN，索引常驻磁盘，适合超出内存的集合</li>
+ * </ul>
+ */
+public enum IndexProfile {
+
+    LOW_LATENCY("low-latency", IndexType.HNSW, "ef", new int[]{16, 32, 64, 128, 256, 512}),
+    MEMORY_LEAN("memory-lean", IndexType.IVF_SQ8, "nprobe", new int[]{1, 2, 4, 8, 16, 32, 64, 128, 256}),
+    MEMORY_LEAN_PQ("memory-lean-pq", IndexType.IVF_PQ, "nprobe", new int[]{1, 2, 4, 8, 16, 32, 64, 128, 256}),
+    DISK("disk", IndexType.DISKANN, "search_list", new int[]{16, 32, 64, 100, 200, 400}),
+    IVF_FLAT("ivf-flat", IndexType.IVF_FLAT, "nprobe", new int[]{1, 2, 4, 8, 16, 32, 64, 128, 256}),
+    FLAT("flat", IndexType.FLAT, null, new int[0]),
+    AUTO("auto", IndexType.AUTOINDEX, null, new int[0]);
+
+    // IVF 系列的聚类中心数
+    private static final int NLIST = 1024;
+    // HNSW 每个节点的邻居数（第 0 层为 2M）
+    private static final int HNSW_M = 16;
+    // 每行的主键等附加开销
+    private static final int ROW_ID_BYTES = 8;
+
+    private final String profileName;
+    private final IndexType indexType;
+    private final String searchParamName;
+    private final int[] sweepValues;
+
+    IndexProfile(String profileName, IndexType indexType, String searchParamName, int[] sweepValues) {
+        this.profileName = profileName;
+        this.indexType = indexType;
+        this.searchParamName = searchParamName;
+        this.sweepValues = sweepValues;
+    }
+
+    public String getProfileName() {
+        return profileName;
+    }
+
+    public IndexType getIndexType() {
+        return indexType;
+    }
+
+    /**
+     * 检索参数名：ef、nprobe 或 search_list；FLAT、AUTOINDEX 为 null
+     */
+    public String getSearchParamName() {
+        return searchParamName;
+    }
+
+    /**
+     * 建索引参数
+     */
+    public Map<String, Object> buildParams(int dimension) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        switch (this) {
+            case LOW_LATENCY:
+                params.put("M", HNSW_M);
+                params.put("efConstruction", 200);
+                break;
+            case MEMORY_LEAN:
+            case IVF_FLAT:
+                params.put("nlist", NLIST);
+                break;
+            case MEMORY_LEAN_PQ:
+                params.put("nlist", NLIST);
+                params.put("m", pqSubQuantizers(dimension));
+                params.put("nbits", 8);
+                break;
+            default:
+                // DISKANN 的构建参数由服务端配置，FLAT、AUTOINDEX 无参数
+                break;
+        }
+        return params;
+    }
+
+    /**
+     * 检索参数：ef、search_list 不能小于 topK，nprobe 不能超过 nlist
+     */
+    public Map<String, Object> searchParams(int value, int topK) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        if (searchParamName == null) {
+            return params;
+        }
+        if ("nprobe".equals(searchParamName)) {
+            params.put(searchParamName, Math.max(1, Math.min(value, NLIST)));
+        } else {
+            params.put(searchParamName, Math.max(value, topK));
+        }
+        return params;
+    }
+
+    /**
+     * 调参时依次尝试的取值（从低成本到高成本）
+     */
+    public List<Integer> sweepValues(int topK) {
+        List<Integer> values = new ArrayList<>();
+        for (int value : sweepValues) {
+            if ("nprobe".equals(searchParamName) || value >= topK) {
+                values.add(value);
+            }
+        }
+        if (values.isEmpty() && searchParamName != null) {
+            values.add(topK);
+        }
+        return values;
+    }
+
+    /**
+     * 加载后每行向量索引的估算字节数：HNSW 为原始向量 + 第 0 层 2M 个邻居；IVF_SQ8 每维 1 字节；
+     * IVF_PQ 每个子空间 1 字节（nbits=8）；DISKANN 内存中只有 PQ 码（约原始向量的 1/8）。
+     * AUTOINDEX 按 HNSW 估算
+     */
+    public long indexBytesPerRow(int dimension) {
+        switch (this) {
+            case LOW_LATENCY:
+            case AUTO:
+                return dimension * 4L + HNSW_M * 2 * 4L + ROW_ID_BYTES;
+            case MEMORY_LEAN:
+                return dimension + ROW_ID_BYTES;
+            case MEMORY_LEAN_PQ:
+                return pqSubQuantizers(dimension) + ROW_ID_BYTES;
+            case DISK:
+                return dimension / 2L + ROW_ID_BYTES;
+            default:
+                return dimension * 4L + ROW_ID_BYTES;
+        }
+    }
+
+    public static IndexProfile of(String name) {
+        for (IndexProfile profile : values()) {
+            if (profile.profileName.equalsIgnoreCase(name.trim()) || profile.name().equalsIgnoreCase(name.trim())) {
+                return profile;
+            }
+        }
+        throw new IllegalArgumentException("未知的索引配置: " + name);
+    }
+
+    /**
+     * 按索引类型查找配置档，没有对应配置档时返回 null
+     */
+    public static IndexProfile forIndexType(IndexType indexType) {
+        for (IndexProfile profile : values()) {
+            if (profile.indexType == indexType) {
+                return profile;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * PQ 子空间数：须整除维度，取每个子空间 8 维左右
+     */
+    private static int pqSubQuantizers(int dimension) {
+        for (int m = Math.max(1, dimension / 8); m > 1; m--) {
+            if (dimension % m == 0) {
+                return m;
+            }
+        }
+        return 1;
+    }
+}
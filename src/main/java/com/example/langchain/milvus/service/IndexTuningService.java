@@ -0,0 +1,342 @@
+package com.example.langchain.milvus.service;
+
+import com.example.langchain.milvus.dto.IndexTuningResult;
+import com.example.langchain.milvus.utils.JsonUtils;
+import io.milvus.client.MilvusClient;
+import io.milvus.common.clientenum.ConsistencyLevelEnum;
+import io.milvus.grpc.QueryResults;
+import io.milvus.grpc.SearchResults;
+import io.milvus.orm.iterator.QueryIterator;
+import io.milvus.param.MetricType;
+import io.milvus.param.R;
+import io.milvus.param.dml.QueryIteratorParam;
+import io.milvus.param.dml.QueryParam;
+import io.milvus.param.dml.SearchParam;
+import io.milvus.response.QueryResultsWrapper;
+import io.milvus.response.SearchResultsWrapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * 检索参数调参：从集合中随机抽样已存储的向量作为查询，以全量暴力计算的真实近邻为基准（排除查询自身），
+ * 从低到高扫描 ef / nprobe / search_list，选出召回率@k 达到目标的最低成本取值。
+ * 基准需要读出集合全部向量，耗时与 行数 × 抽样数 成正比
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class IndexTuningService {
+
+    private final MilvusClient milvusClient;
+    private final MilvusServiceImplV2 milvusService;
+    private final CollectionLoadManager collectionLoadManager;
+
+    @Value("${app.milvus.metric-type:IP}")
+    private String metricType;
+
+    private static final int SCAN_BATCH_SIZE = 1000;
+
+    @Value("${app.search.tuning.max-sample-size:1000}")
+    private Integer maxSampleSize;
+
+    public IndexTuningResult tune(String collectionName, double targetRecall, int topK, int sampleSize, boolean apply)
+            throws Exception {
+        if (targetRecall <= 0 || targetRecall > 1) {
+            throw new IllegalArgumentException("目标召回率须在 (0, 1] 之间");
+        }
+        if (topK < 1 || sampleSize < 1 || sampleSize > maxSampleSize) {
+            throw new IllegalArgumentException("topK 须大于 0，抽样数须在 1 到 " + maxSampleSize + " 之间");
+        }
+
+        IndexProfile profile = milvusService.getIndexProfile(collectionName);
+        if (profile == null || profile.getSearchParamName() == null) {
+            throw new IllegalArgumentException("集合 " + collectionName + " 的索引没有可调的检索参数");
+        }
+
+        try (CollectionLoadManager.Lease ignored = collectionLoadManager.acquire(collectionName)) {
+            Map<Long, List<Float>> sample = sampleVectors(collectionName, sampleSize);
+            if (sample.isEmpty()) {
+                throw new IllegalArgumentException("集合 " + collectionName + " 没有数据，无法调参");
+            }
+            List<Long> queryIds = new ArrayList<>(sample.keySet());
+            List<List<Float>> queries = new ArrayList<>(sample.values());
+
+            List<Set<Long>> reference = groundTruth(collectionName, queryIds, queries, topK);
+
+            List<IndexTuningResult.Trial> trials = new ArrayList<>();
+            IndexTuningResult.Trial selected = null;
+            IndexTuningResult.Trial best = null;
+            for (int value : profile.sweepValues(topK)) {
+                long[] elapsed = new long[1];
+                List<Set<Long>> results = search(collectionName, queryIds, queries, topK, profile, value, elapsed);
+                IndexTuningResult.Trial trial = IndexTuningResult.Trial.builder()
+                        .value(value)
+                        .recall(recall(results, reference))
+                        .avgLatencyMs(elapsed[0] / 1_000_000.0 / queries.size())
+                        .build();
+                trials.add(trial);
+                log.info("调参: 集合={}, {}={}, recall@{}={}", collectionName, profile.getSearchParamName(),
+                        value, topK, String.format("%.4f", trial.getRecall()));
+
+                if (best == null || trial.getRecall() > best.getRecall()) {
+                    best = trial;
+                }
+                if (trial.getRecall() >= targetRecall) {
+                    selected = trial;
+                    break;
+                }
+            }
+
+            boolean targetMet = selected != null;
+            if (!targetMet) {
+                selected = best;
+                log.warn("集合 {} 在扫描范围内未达到目标召回率 {}，最高为 {}", collectionName, targetRecall, best.getRecall());
+            }
+            boolean applied = apply && targetMet;
+            if (applied) {
+                milvusService.applyTunedSearchValue(collectionName, selected.getValue());
+            }
+
+            return IndexTuningResult.builder()
+                    .collectionName(collectionName)
+                    .indexProfile(profile.getProfileName())
+                    .searchParam(profile.getSearchParamName())
+                    .targetRecall(targetRecall)
+                    .topK(topK)
+                    .sampleSize(queries.size())
+                    .selectedValue(selected.getValue())
+                    .selectedRecall(selected.getRecall())
+                    .targetMet(targetMet)
+                    .applied(applied)
+                    .trials(trials)
+                    .build();
+        }
+    }
+
+    /**
+     * 随机抽样：先用 queryIterator 只读主键做蓄水池抽样，再按主键取回向量。返回主键到向量，按抽样顺序
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Long, List<Float>> sampleVectors(String collectionName, int sampleSize) throws Exception {
+        long[] reservoir = new long[sampleSize];
+        long seen = 0;
+        Random random = ThreadLocalRandom.current();
+        QueryIterator iterator = queryIterator(collectionName, List.of(MilvusServiceImplV2.FIELD_ID));
+        try {
+            List<QueryResultsWrapper.RowRecord> batch;
+            while (!(batch = iterator.next()).isEmpty()) {
+                for (QueryResultsWrapper.RowRecord record : batch) {
+                    long id = ((Number) record.get(MilvusServiceImplV2.FIELD_ID)).longValue();
+                    if (seen < sampleSize) {
+                        reservoir[(int) seen] = id;
+                    } else {
+                        long slot = (long) (random.nextDouble() * (seen + 1));
+                        if (slot < sampleSize) {
+                            reservoir[(int) slot] = id;
+                        }
+                    }
+                    seen++;
+                }
+            }
+        } finally {
+            iterator.close();
+        }
+
+        int count = (int) Math.min(seen, sampleSize);
+        Map<Long, List<Float>> sample = new LinkedHashMap<>();
+        if (count == 0) {
+            return sample;
+        }
+        String ids = Arrays.stream(reservoir, 0, count).mapToObj(String::valueOf).collect(Collectors.joining(","));
+        R<QueryResults> response = milvusClient.query(QueryParam.newBuilder()
+                .withCollectionName(collectionName)
+                .withExpr(MilvusServiceImplV2.FIELD_ID + " in [" + ids + "]")
+                .withOutFields(List.of(MilvusServiceImplV2.FIELD_ID, MilvusServiceImplV2.FIELD_VECTOR))
+                .withConsistencyLevel(ConsistencyLevelEnum.BOUNDED)
+                .build());
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            throw new Exception("抽样向量失败: " + response.getMessage());
+        }
+
+        QueryResultsWrapper wrapper = new QueryResultsWrapper(response.getData());
+        List<?> sampledIds = wrapper.getFieldWrapper(MilvusServiceImplV2.FIELD_ID).getFieldData();
+        List<?> vectors = wrapper.getFieldWrapper(MilvusServiceImplV2.FIELD_VECTOR).getFieldData();
+        for (int i = 0; i < sampledIds.size(); i++) {
+            sample.put(((Number) sampledIds.get(i)).longValue(), (List<Float>) vectors.get(i));
+        }
+        return sample;
+    }
+
+    /**
+     * 召回基准：读出集合全部向量，按度量类型暴力计算每条查询的 topK（不含查询自身）
+     */
+    @SuppressWarnings("unchecked")
+    private List<Set<Long>> groundTruth(String collectionName, List<Long> queryIds, List<List<Float>> queries,
+                                        int topK) throws Exception {
+        MetricType metric = MetricType.valueOf(metricType.toUpperCase());
+        List<float[]> queryVectors = new ArrayList<>(queries.size());
+        List<PriorityQueue<Neighbour>> heaps = new ArrayList<>(queries.size());
+        for (List<Float> query : queries) {
+            queryVectors.add(toArray(query, metric));
+            heaps.add(new PriorityQueue<>(topK + 1, Comparator.comparingDouble((Neighbour n) -> n.similarity)));
+        }
+
+        QueryIterator iterator = queryIterator(collectionName,
+                List.of(MilvusServiceImplV2.FIELD_ID, MilvusServiceImplV2.FIELD_VECTOR));
+        try {
+            List<QueryResultsWrapper.RowRecord> batch;
+            while (!(batch = iterator.next()).isEmpty()) {
+                for (QueryResultsWrapper.RowRecord record : batch) {
+                    long id = ((Number) record.get(MilvusServiceImplV2.FIELD_ID)).longValue();
+                    float[] vector = toArray((List<Float>) record.get(MilvusServiceImplV2.FIELD_VECTOR), metric);
+                    for (int q = 0; q < queryVectors.size(); q++) {
+                        if (queryIds.get(q) == id) {
+                            continue;
+                        }
+                        double similarity = similarity(metric, queryVectors.get(q), vector);
+                        PriorityQueue<Neighbour> heap = heaps.get(q);
+                        if (heap.size() < topK || similarity > heap.peek().similarity) {
+                            heap.add(new Neighbour(id, similarity));
+                            if (heap.size() > topK) {
+                                heap.poll();
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            iterator.close();
+        }
+
+        List<Set<Long>> reference = new ArrayList<>(heaps.size());
+        for (PriorityQueue<Neighbour> heap : heaps) {
+            Set<Long> ids = new HashSet<>();
+            heap.forEach(neighbour -> ids.add(neighbour.id));
+            reference.add(ids);
+        }
+        return reference;
+    }
+
+    private QueryIterator queryIterator(String collectionName, List<String> outFields) throws Exception {
+        R<QueryIterator> response = milvusClient.queryIterator(QueryIteratorParam.newBuilder()
+                .withCollectionName(collectionName)
+                .withOutFields(outFields)
+                .withBatchSize((long) SCAN_BATCH_SIZE)
+                .withConsistencyLevel(ConsistencyLevelEnum.BOUNDED)
+                .build());
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            throw new Exception("创建查询迭代器失败: " + response.getMessage());
+        }
+        return response.getData();
+    }
+
+    /**
+     * COSINE 时预先归一化，相似度统一为越大越近
+     */
+    private static float[] toArray(List<Float> values, MetricType metric) {
+        float[] vector = new float[values.size()];
+        double norm = 0;
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = values.get(i);
+            norm += vector[i] * vector[i];
+        }
+        if (metric == MetricType.COSINE && norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    private static double similarity(MetricType metric, float[] query, float[] vector) {
+        double sum = 0;
+        if (metric == MetricType.L2) {
+            for (int i = 0; i < query.length; i++) {
+                double diff = query[i] - vector[i];
+                sum += diff * diff;
+            }
+            return -sum;
+        }
+        for (int i = 0; i < query.length; i++) {
+            sum += query[i] * vector[i];
+        }
+        return sum;
+    }
+
+    /**
+     * 批量检索（一次请求 nq 条），返回每条查询的 topK 主键；多取一条以便去掉查询自身
+     */
+    private List<Set<Long>> search(String collectionName, List<Long> queryIds, List<List<Float>> queries, int topK,
+                                   IndexProfile profile, int value, long[] elapsedNanos) throws Exception {
+        long start = System.nanoTime();
+        R<SearchResults> response = milvusClient.search(SearchParam.newBuilder()
+                .withCollectionName(collectionName)
+                .withVectorFieldName(MilvusServiceImplV2.FIELD_VECTOR)
+                .withFloatVectors(queries)
+                .withMetricType(MetricType.valueOf(metricType.toUpperCase()))
+                .withTopK(topK + 1)
+                .withParams(JsonUtils.toJson(profile.searchParams(value, topK + 1)))
+                .withConsistencyLevel(ConsistencyLevelEnum.BOUNDED)
+                .build());
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            throw new Exception("调参检索失败: " + response.getMessage());
+        }
+        if (elapsedNanos != null) {
+            elapsedNanos[0] = System.nanoTime() - start;
+        }
+
+        SearchResultsWrapper wrapper = new SearchResultsWrapper(response.getData().getResults());
+        List<Set<Long>> results = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            Set<Long> ids = new HashSet<>();
+            for (SearchResultsWrapper.IDScore score : wrapper.getIDScore(i)) {
+                if (score.getLongID() != queryIds.get(i) && ids.size() < topK) {
+                    ids.add(score.getLongID());
+                }
+            }
+            results.add(ids);
+        }
+        return results;
+    }
+
+    private static double recall(List<Set<Long>> results, List<Set<Long>> reference) {
+        long hits = 0;
+        long total = 0;
+        for (int i = 0; i < reference.size(); i++) {
+            Set<Long> expected = reference.get(i);
+            total += expected.size();
+            for (Long id : results.get(i)) {
+                if (expected.contains(id)) {
+                    hits++;
+                }
+            }
+        }
+        return total == 0 ? 1.0 : (double) hits / total;
+    }
+
+    private static final class Neighbour {
+        private final long id;
+        private final double similarity;
+
+        Neighbour(long id, double similarity) {
+            this.id = id;
+            this.similarity = similarity;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.langchain.milvus.service;
+
+import com.google.gson.JsonObject;
+import io.milvus.param.dml.InsertParam;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.SortedMap;
+import java.util.function.Function;
+
+/**
+ * 列式插入批次：追加行时一次性校验并修正每个值，向量连续存放在一个 float[] 中，
+ * 只在 toFields() 时转换为 SDK 需要的列表形式（向量列为 float[] 上的只读视图，不复制）
+ */
+public class InsertRowBatch {
+
+    private final int dimension;
+    private int rows;
+
+    private float[] vectors;
+    private long[] createTimes;
+    private final List<String> texts;
+    private final List<String> documentIds;
+    private final List<String> chunkIds;
+    private final List<String> tenantIds;
+    private final List<String> images;
+    private final List<JsonObject> metadata;
+
+    private int invalidVectors;
+
+    public InsertRowBatch(int dimension, int expectedRows) {
+        int capacity = Math.max(1, expectedRows);
+        this.dimension = dimension;
+        this.vectors = new float[capacity * dimension];
+        this.createTimes = new long[capacity];
+        this.texts = new ArrayList<>(capacity);
+        this.documentIds = new ArrayList<>(capacity);
+        this.chunkIds = new ArrayList<>(capacity);
+        this.tenantIds = new ArrayList<>(capacity);
+        this.images = new ArrayList<>(capacity);
+        this.metadata = new ArrayList<>(capacity);
+    }
+
+    /**
+     * 追加一行。向量为空或维度不符时写入零向量；字符串为空、空白或 "null" 时写入字段默认值。
+     * metadata 为调用方构建好的 JSON 对象，JSON 字段集合直接写入，不再经过字符串序列化与解析
+     */
+    public void addRow(float[] vector, String text, String documentId, String chunkId, String tenantId,
+                       String imagesJson, JsonObject metadataJson, long createTime) {
+        ensureCapacity(rows + 1);
+
+        if (vector != null && vector.length == dimension) {
+            System.arraycopy(vector, 0, vectors, rows * dimension, dimension);
+        } else {
+            // 扩容后的新区域本身为 0，无需再清零
+            invalidVectors++;
+        }
+
+        texts.add(orDefault(text, ""));
+        documentIds.add(orDefault(documentId, ""));
+        chunkIds.add(orDefault(chunkId, ""));
+        tenantIds.add(orDefault(tenantId, "default"));
+        images.add(orDefault(imagesJson, ""));
+        metadata.add(metadataJson == null ? new JsonObject() : metadataJson);
+        createTimes[rows] = createTime;
+        rows++;
+    }
+
+    public int size() {
+        return rows;
+    }
+
+    /**
+     * 维度不符或为空、已替换为零向量的行数
+     */
+    public int getInvalidVectors() {
+        return invalidVectors;
+    }
+
+    public List<InsertParam.Field> toFields() {
+        return toFields(false);
+    }
+
+    public List<InsertParam.Field> toFields(boolean jsonMetadata) {
+        return toFields(jsonMetadata, false, null);
+    }
+
+    /**
+     * 转换为 InsertParam 列数据，按集合结构决定可选列：
+     * jsonMetadata 为 true 时 metadata 列直接使用 JsonObject，否则序列化为 VARCHAR 字符串；
+     * tenantField 为 true 时写入租户分区键列；sparseEncoder 不为空时按文本生成稀疏向量列
+     */
+    public List<InsertParam.Field> toFields(boolean jsonMetadata, boolean tenantField,
+                                            Function<String, SortedMap<Long, Float>> sparseEncoder) {
+        List<List<Float>> vectorColumn = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            vectorColumn.add(new PackedVector(vectors, row * dimension, dimension));
+        }
+
+        List<Long> createTimeColumn = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            createTimeColumn.add(createTimes[row]);
+        }
+
+        List<InsertParam.Field> fields = new ArrayList<>(9);
+        fields.add(new InsertParam.Field(MilvusServiceImplV2.FIELD_VECTOR, vectorColumn));
+        fields.add(new InsertParam.Field(MilvusServiceImplV2.FIELD_TEXT, texts));
+        fields.add(new InsertParam.Field(MilvusServiceImplV2.FIELD_METADATA,
+                jsonMetadata ? metadata : toStrings(metadata)));
+        fields.add(new InsertParam.Field(MilvusServiceImplV2.FIELD_IMAGES, images));
+        fields.add(new InsertParam.Field(MilvusServiceImplV2.FIELD_DOCUMENT_ID, documentIds));
+        fields.add(new InsertParam.Field(MilvusServiceImplV2.FIELD_CHUNK_ID, chunkIds));
+        fields.add(new InsertParam.Field(MilvusServiceImplV2.FIELD_CREATE_TIME, createTimeColumn));
+
+        if (tenantField) {
+            fields.add(new InsertParam.Field(MilvusServiceImplV2.FIELD_TENANT_ID, tenantIds));
+        }
+
+        if (sparseEncoder != null) {
+            List<SortedMap<Long, Float>> sparseColumn = new ArrayList<>(rows);
+            for (String text : texts) {
+                sparseColumn.add(sparseEncoder.apply(text));
+            }
+            fields.add(new InsertParam.Field(MilvusServiceImplV2.FIELD_SPARSE_VECTOR, sparseColumn));
+        }
+        return fields;
+    }
+
+    private static List<String> toStrings(List<JsonObject> values) {
+        List<String> strings = new ArrayList<>(values.size());
+        for (JsonObject value : values) {
+            strings.add(value.toString());
+        }
+        return strings;
+    }
+
+    private void ensureCapacity(int requiredRows) {
+        if (requiredRows <= createTimes.length) {
+            return;
+        }
+        int capacity = Math.max(requiredRows, createTimes.length * 2);
+        vectors = Arrays.copyOf(vectors, capacity * dimension);
+        createTimes = Arrays.copyOf(createTimes, capacity);
+    }
+
+    private static String orDefault(String value, String defaultValue) {
+        if (value == null || value.isBlank() || "null".equalsIgnoreCase(value.trim())) {
+            return defaultValue;
+        }
+        return value;
+    }
+
+    /**
+     * packed float[] 中一行向量的只读视图，序列化时按需装箱
+     */
+    private static final class PackedVector extends AbstractList<Float> implements RandomAccess {
+        private final float[] data;
+        private final int offset;
+        private final int length;
+
+        PackedVector(float[] data, int offset, int length) {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public Float get(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+            }
+            return data[offset + index];
+        }
+
+        @Override
+        public int size() {
+            return length;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.langchain.milvus.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * 内存映射的向量磁盘存储：定长记录（32 字节键 + dimension 个 float）组成环形缓冲区，
+ * 写满后覆盖最早写入的记录，重启时扫描文件重建索引
+ */
+class MappedEmbeddingStore implements Closeable {
+
+    private static final int MAGIC = 0x454D4243;
+    private static final int HEADER_SIZE = 64;
+    static final int KEY_SIZE = 32;
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_DIMENSION = 4;
+    private static final int OFFSET_MAX_ENTRIES = 8;
+    private static final int OFFSET_WRITE_COUNT = 12;
+
+    private final int dimension;
+    private final int maxEntries;
+    private final int recordSize;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final Map<String, Integer> index = new HashMap<>();
+    private final String[] slotKeys;
+    private long writeCount;
+
+    MappedEmbeddingStore(Path file, int dimension, int maxEntries) throws IOException {
+        this.dimension = dimension;
+        this.maxEntries = maxEntries;
+        this.recordSize = KEY_SIZE + dimension * Float.BYTES;
+        this.slotKeys = new String[maxEntries];
+
+        long size = HEADER_SIZE + (long) maxEntries * recordSize;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("向量缓存文件过大，请调小最大条目数: " + maxEntries);
+        }
+
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        boolean compatible = channel.size() == size && headerMatches();
+        if (!compatible) {
+            channel.truncate(0);
+        }
+
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        if (compatible) {
+            loadIndex();
+        } else {
+            buffer.putInt(OFFSET_MAGIC, MAGIC);
+            buffer.putInt(OFFSET_DIMENSION, dimension);
+            buffer.putInt(OFFSET_MAX_ENTRIES, maxEntries);
+            buffer.putLong(OFFSET_WRITE_COUNT, 0L);
+        }
+    }
+
+    private boolean headerMatches() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        return header.getInt(OFFSET_MAGIC) == MAGIC &&
+                header.getInt(OFFSET_DIMENSION) == dimension &&
+                header.getInt(OFFSET_MAX_ENTRIES) == maxEntries;
+    }
+
+    private void loadIndex() {
+        writeCount = buffer.getLong(OFFSET_WRITE_COUNT);
+        long used = Math.min(writeCount, maxEntries);
+
+        byte[] key = new byte[KEY_SIZE];
+        for (int slot = 0; slot < used; slot++) {
+            buffer.get(recordOffset(slot), key);
+            if (isEmptyKey(key)) {
+                continue;
+            }
+            String hex = HexFormat.of().formatHex(key);
+            slotKeys[slot] = hex;
+            index.put(hex, slot);
+        }
+    }
+
+    synchronized float[] get(byte[] key) {
+        Integer slot = index.get(HexFormat.of().formatHex(key));
+        if (slot == null) {
+            return null;
+        }
+
+        float[] vector = new float[dimension];
+        buffer.slice(recordOffset(slot) + KEY_SIZE, dimension * Float.BYTES)
+                .asFloatBuffer()
+                .get(vector);
+        return vector;
+    }
+
+    synchronized void put(byte[] key, float[] vector) {
+        if (vector.length != dimension) {
+            return;
+        }
+
+        String hex = HexFormat.of().formatHex(key);
+        if (index.containsKey(hex)) {
+            return;
+        }
+
+        int slot = (int) (writeCount % maxEntries);
+        int offset = recordOffset(slot);
+
+        // 覆盖最早的记录前先移出索引
+        if (slotKeys[slot] != null) {
+            index.remove(slotKeys[slot]);
+        }
+
+        // 先清空键再写向量，最后写键，写入中途崩溃时该槽位视为空
+        buffer.put(offset, new byte[KEY_SIZE]);
+        buffer.slice(offset + KEY_SIZE, dimension * Float.BYTES)
+                .asFloatBuffer()
+                .put(vector);
+        buffer.put(offset, key);
+
+        slotKeys[slot] = hex;
+        index.put(hex, slot);
+        writeCount++;
+        buffer.putLong(OFFSET_WRITE_COUNT, writeCount);
+    }
+
+    synchronized int size() {
+        return index.size();
+    }
+
+    int getMaxEntries() {
+        return maxEntries;
+    }
+
+    private int recordOffset(int slot) {
+        return HEADER_SIZE + slot * recordSize;
+    }
+
+    private static boolean isEmptyKey(byte[] key) {
+        for (byte b : key) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+}
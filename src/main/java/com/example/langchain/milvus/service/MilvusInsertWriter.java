@@ -0,0 +1,212 @@
+package com.example.langchain.milvus.service;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gson.JsonElement;
+import io.milvus.client.MilvusClient;
+import io.milvus.grpc.MutationResult;
+import io.milvus.param.R;
+import io.milvus.param.dml.DeleteParam;
+import io.milvus.param.dml.InsertParam;
+import io.milvus.response.MutationResultWrapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+
+/**
+ * Milvus 批量写入：按估算的序列化字节数和行数切分批次，多个批次通过 insertAsync 并行在途
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class MilvusInsertWriter {
+
+    private static final int ROW_OVERHEAD_BYTES = 16;
+
+    private final MilvusClient milvusClient;
+
+    // 低于 gRPC 默认 64MB 消息上限，留出余量
+    @Value("${app.milvus.insert.max-batch-bytes:16777216}")
+    private Long maxBatchBytes;
+
+    @Value("${app.milvus.insert.max-batch-rows:1000}")
+    private Integer maxBatchRows;
+
+    @Value("${app.milvus.insert.max-in-flight:4}")
+    private Integer maxInFlight;
+
+    /**
+     * 分批写入列数据，返回与行顺序一致的主键；任一批次失败或主键数不符时回滚全部已写入的行
+     */
+    public List<Long> insert(String collectionName, List<InsertParam.Field> fields) throws Exception {
+        int rowCount = rowCount(fields);
+        if (rowCount == 0) {
+            return new ArrayList<>();
+        }
+
+        List<int[]> ranges = splitBySize(fields, rowCount);
+        Semaphore inFlight = new Semaphore(Math.max(1, maxInFlight));
+        List<ListenableFuture<R<MutationResult>>> futures = new ArrayList<>(ranges.size());
+
+        for (int[] range : ranges) {
+            inFlight.acquire();
+            try {
+                ListenableFuture<R<MutationResult>> future = milvusClient.insertAsync(
+                        InsertParam.newBuilder()
+                                .withCollectionName(collectionName)
+                                .withFields(slice(fields, range[0], range[1]))
+                                .build());
+                future.addListener(inFlight::release, MoreExecutors.directExecutor());
+                futures.add(future);
+            } catch (RuntimeException e) {
+                inFlight.release();
+                throw e;
+            }
+        }
+
+        List<Long> ids = new ArrayList<>(rowCount);
+        Exception failure = null;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                R<MutationResult> result = futures.get(i).get();
+                if (result.getStatus() != R.Status.Success.getCode()) {
+                    throw new Exception("插入Milvus失败: " + result.getMessage());
+                }
+                List<Long> batchIds = new MutationResultWrapper(result.getData()).getLongIDs();
+                ids.addAll(batchIds);
+                // 主键数与行数不符时无法确定每行对应的主键，按失败处理并回滚已写入的行
+                int batchRows = ranges.get(i)[1] - ranges.get(i)[0];
+                if (batchIds.size() != batchRows) {
+                    throw new Exception("插入Milvus返回的主键数与行数不符: 期望 " + batchRows + ", 实际 " + batchIds.size());
+                }
+            } catch (Exception e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+
+        if (failure != null) {
+            rollback(collectionName, ids);
+            throw failure;
+        }
+
+        log.info("写入Milvus完成: 集合={}, 行数={}, 批次数={}", collectionName, rowCount, ranges.size());
+        return ids;
+    }
+
+    /**
+     * 按行累计估算字节数，超过字节或行数上限时切分
+     */
+    private List<int[]> splitBySize(List<InsertParam.Field> fields, int rowCount) {
+        List<int[]> ranges = new ArrayList<>();
+        int start = 0;
+        long batchBytes = 0;
+
+        for (int row = 0; row < rowCount; row++) {
+            long rowBytes = estimateRowBytes(fields, row);
+            int batchRows = row - start;
+
+            if (batchRows > 0 && (batchRows >= maxBatchRows || batchBytes + rowBytes > maxBatchBytes)) {
+                ranges.add(new int[]{start, row});
+                start = row;
+                batchBytes = 0;
+            }
+            batchBytes += rowBytes;
+        }
+        ranges.add(new int[]{start, rowCount});
+
+        return ranges;
+    }
+
+    private long estimateRowBytes(List<InsertParam.Field> fields, int row) {
+        long bytes = ROW_OVERHEAD_BYTES;
+        for (InsertParam.Field field : fields) {
+            bytes += estimateValueBytes(field.getValues().get(row));
+        }
+        return bytes;
+    }
+
+    static long estimateValueBytes(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return utf8Length((String) value) + 4;
+        }
+        if (value instanceof List) {
+            return ((List<?>) value).size() * 4L + 4;
+        }
+        if (value instanceof Map) {
+            // 稀疏向量：每个非零项为 uint32 下标 + float 值
+            return ((Map<?, ?>) value).size() * 8L + 4;
+        }
+        if (value instanceof JsonElement) {
+            // JSON 字段按序列化后的字节数估算
+            return utf8Length(value.toString()) + 4;
+        }
+        return 8;
+    }
+
+    private static long utf8Length(String s) {
+        long length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private List<InsertParam.Field> slice(List<InsertParam.Field> fields, int from, int to) {
+        List<InsertParam.Field> sliced = new ArrayList<>(fields.size());
+        for (InsertParam.Field field : fields) {
+            sliced.add(new InsertParam.Field(field.getName(), field.getValues().subList(from, to)));
+        }
+        return sliced;
+    }
+
+    private int rowCount(List<InsertParam.Field> fields) {
+        if (fields.isEmpty() || fields.get(0).getValues() == null) {
+            return 0;
+        }
+        return fields.get(0).getValues().size();
+    }
+
+    /**
+     * 部分批次失败时删除已写入的行，保证文档要么完整写入要么不写入
+     */
+    private void rollback(String collectionName, List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        try {
+            String expr = "id in [" + ids.stream().map(String::valueOf).collect(Collectors.joining(",")) + "]";
+            R<MutationResult> result = milvusClient.delete(DeleteParam.newBuilder()
+                    .withCollectionName(collectionName)
+                    .withExpr(expr)
+                    .build());
+            if (result.getStatus() != R.Status.Success.getCode()) {
+                log.warn("回滚已写入的行失败: 集合={}, 行数={}, 原因={}", collectionName, ids.size(), result.getMessage());
+            }
+        } catch (Exception e) {
+            log.warn("回滚已写入的行失败: 集合={}, 行数={}", collectionName, ids.size(), e);
+        }
+    }
+}
@@ -2,46 +2,73 @@ package com.example.langchain.milvus.service;
 
 import com.example.langchain.milvus.dto.DocumentImportRequest;
 import com.example.langchain.milvus.dto.DocumentImportResult;
+import com.example.langchain.milvus.dto.HybridSearchRequest;
+import com.example.langchain.milvus.dto.ImportProgress;
+import com.example.langchain.milvus.dto.SearchHit;
+import com.example.langchain.milvus.dto.SearchRequest;
+import com.example.langchain.milvus.dto.SearchResult;
 import com.example.langchain.milvus.utils.JsonUtils;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import dev.langchain4j.data.embedding.Embedding;
-import dev.langchain4j.model.embedding.EmbeddingModel;
-import io.milvus.client.MilvusServiceClient;
+import com.example.langchain.milvus.utils.MilvusFilterExpression;
+import com.example.langchain.milvus.utils.MilvusFilters;
+import com.example.langchain.milvus.utils.TempFileMultipartFile;
+import com.google.gson.JsonElement;
+import io.milvus.client.MilvusClient;
+import io.milvus.common.clientenum.ConsistencyLevelEnum;
 import io.milvus.grpc.DataType;
+import io.milvus.grpc.DescribeCollectionResponse;
+import io.milvus.grpc.DescribeIndexResponse;
 import io.milvus.grpc.MutationResult;
+import io.milvus.grpc.SearchResults;
 import io.milvus.param.IndexType;
 import io.milvus.param.MetricType;
 import io.milvus.param.R;
 import io.milvus.param.RpcStatus;
 import io.milvus.param.collection.CollectionSchemaParam;
 import io.milvus.param.collection.CreateCollectionParam;
+import io.milvus.param.collection.DescribeCollectionParam;
+import io.milvus.param.collection.DropCollectionParam;
 import io.milvus.param.collection.FieldType;
 import io.milvus.param.collection.HasCollectionParam;
+import io.milvus.param.dml.AnnSearchParam;
+import io.milvus.param.dml.DeleteParam;
+import io.milvus.param.dml.HybridSearchParam;
 import io.milvus.param.dml.InsertParam;
+import io.milvus.param.dml.SearchParam;
+import io.milvus.param.dml.ranker.BaseRanker;
+import io.milvus.param.dml.ranker.RRFRanker;
+import io.milvus.param.dml.ranker.WeightedRanker;
 import io.milvus.param.index.CreateIndexParam;
+import io.milvus.param.index.DescribeIndexParam;
+import io.milvus.response.DescIndexResponseWrapper;
+import io.milvus.response.SearchResultsWrapper;
 import jakarta.annotation.PostConstruct;
+import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 /**
  * MilvusServiceImpl - 增加插入前字段深度清理，避免 null 导致 Milvus 报错
@@ -51,12 +78,17 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class MilvusServiceImplV2 {
 
-    private final MilvusServiceClient milvusClient;
+    private final MilvusClient milvusClient;
     private final DocumentParserWithStructure documentParserWithStructure;
-    private final ImageExtractorWithPosition imageExtractorWithPosition;
-
-    @Autowired
-    private EmbeddingModel embeddingModel;  // 已有的嵌入模型
+    private final BatchEmbeddingService batchEmbeddingService;
+    private final MilvusInsertWriter milvusInsertWriter;
+    private final StreamingDocxParser streamingDocxParser;
+    private final ImportMetrics importMetrics;
+    private final QueryEmbeddingCache queryEmbeddingCache;
+    private final Bm25SparseEncoder bm25SparseEncoder;
+    private final SearchResultCache searchResultCache;
+    private final SemanticQueryCache semanticQueryCache;
+    private final CollectionLoadManager collectionLoadManager;
 
     @Value("${app.milvus.vector-dimension:1024}")
     private Integer vectorDimension;
@@ -67,21 +99,97 @@ public class MilvusServiceImplV2 {
     @Value("${app.milvus.metric-type:IP}")
     private String metricType;
 
+    // 索引配置档：low-latency、memory-lean、memory-lean-pq、disk；为空时按 index-type 选择
+    @Value("${app.milvus.index-profile:}")
+    private String indexProfile;
+
     @Value("${app.milvus.default-collection:document_collection}")
     private String defaultCollection;
 
+    // 新建集合时 metadata 字段类型：json（支持服务端按键过滤）或 varchar（旧格式）
+    @Value("${app.milvus.metadata-field-type:json}")
+    private String metadataFieldType;
+
+    // metadata 上建立 JSON 路径索引的键及类型，格式 key:type，逗号分隔
+    @Value("${app.milvus.metadata-json-indexes:document_name:varchar,has_images:bool,tenant_id:varchar}")
+    private String metadataJsonIndexes;
+
+    // 新建集合时增加 BM25 稀疏向量字段，用于稠密 + 稀疏混合检索
+    @Value("${app.milvus.sparse-enabled:true}")
+    private Boolean sparseEnabled;
+
+    // 多租户模式：新建集合时增加 tenant_id 分区键字段，按租户检索时只扫描该租户所在分区
+    @Value("${app.milvus.tenant.partition-key-enabled:false}")
+    private Boolean tenantPartitionKeyEnabled;
+
+    @Value("${app.milvus.tenant.partitions:64}")
+    private Integer tenantPartitions;
+
     @Value("${app.document.image-output-dir:uploads/images/}")
     private String imageOutputDir;
 
+    // parseMode=auto 时，超过该大小的文档走流式解析
+    @Value("${app.document.streaming.threshold-bytes:10485760}")
+    private Long streamingThresholdBytes;
+
+    // 流式解析时每累计多少个分块向量化并写入一次
+    @Value("${app.document.streaming.flush-chunks:32}")
+    private Integer streamingFlushChunks;
+
+    // 检索参数：HNSW 的 ef、IVF 的 nprobe、默认一致性级别和返回字段
+    @Value("${app.search.ef:64}")
+    private Integer searchEf;
+
+    @Value("${app.search.nprobe:16}")
+    private Integer searchNprobe;
+
+    // DISKANN 的 search_list
+    @Value("${app.search.search-list:100}")
+    private Integer searchList;
+
+    @Value("${app.search.consistency-level:bounded}")
+    private String searchConsistencyLevel;
+
+    @Value("${app.search.output-fields:document_id,chunk_id,metadata}")
+    private List<String> searchOutputFields;
+
+    @Value("${app.search.max-top-k:100}")
+    private Integer searchMaxTopK;
+
+    // 混合检索时每一路的候选数 = topK * candidate-factor
+    @Value("${app.search.hybrid.candidate-factor:2}")
+    private Integer hybridCandidateFactor;
+
+    @Value("${app.search.sparse.drop-ratio-search:0.0}")
+    private Double sparseDropRatioSearch;
+
+    @Value("${app.import.temp-dir:uploads/tmp/}")
+    private String tempDir;
+
     // 字段常量
-    private static final String FIELD_ID = "id";
-    private static final String FIELD_VECTOR = "vector";
-    private static final String FIELD_TEXT = "text";
-    private static final String FIELD_DOCUMENT_ID = "document_id";
-    private static final String FIELD_CHUNK_ID = "chunk_id";
-    private static final String FIELD_IMAGES = "images";
-    private static final String FIELD_METADATA = "metadata";
-    private static final String FIELD_CREATE_TIME = "create_time";
+    static final String FIELD_ID = "id";
+    static final String FIELD_VECTOR = "vector";
+    static final String FIELD_TEXT = "text";
+    static final String FIELD_DOCUMENT_ID = "document_id";
+    static final String FIELD_CHUNK_ID = "chunk_id";
+    static final String FIELD_IMAGES = "images";
+    static final String FIELD_METADATA = "metadata";
+    static final String FIELD_CREATE_TIME = "create_time";
+    static final String FIELD_SPARSE_VECTOR = "sparse_vector";
+    static final String FIELD_TENANT_ID = "tenant_id";
+
+    // 可作为检索返回字段的列
+    private static final Set<String> OUTPUT_FIELDS = Set.of(FIELD_TEXT, FIELD_DOCUMENT_ID, FIELD_CHUNK_ID,
+            FIELD_IMAGES, FIELD_METADATA, FIELD_CREATE_TIME);
+
+    // 各集合的字段类型（按集合缓存 describeCollection 结果），用于兼容旧结构的集合
+    private final Map<String, Map<String, DataType>> fieldTypesByCollection = new ConcurrentHashMap<>();
+
+    // 各集合向量字段的索引配置档（按集合缓存 describeIndex 结果）及调参得到的检索参数值
+    private final Map<String, IndexProfile> indexProfilesByCollection = new ConcurrentHashMap<>();
+    private final Map<String, Integer> tunedSearchValues = new ConcurrentHashMap<>();
+
+    private ChunkRowMapper chunkRowMapper;
 
     @PostConstruct
     public void init() throws Exception {
@@ -91,750 +199,878 @@ public class MilvusServiceImplV2 {
         }
         // 创建图片输出目录
         new File(imageOutputDir).mkdirs();
+        chunkRowMapper = new ChunkRowMapper(imageOutputDir);
     }
 
     public DocumentImportResult importDocument(MultipartFile file,
                                                DocumentImportRequest request) throws Exception {
+        return importDocument(file, request, new ImportProgress());
+    }
 
-        DocumentImportResult result = DocumentImportResult.builder()
-                .success(false)
-                .documentName(file.getOriginalFilename())
-                .collectionName(request.getCollectionName())
-                .startTime(LocalDateTime.now())
-                .build();
+    /**
+     * 导入文档，并在各阶段更新进度（供异步任务查询）
+     */
+    public DocumentImportResult importDocument(MultipartFile file,
+                                               DocumentImportRequest request,
+                                               ImportProgress progress) throws Exception {
+        return importDocument(startImport(file, request, progress));
+    }
 
-        try {
-            String documentId = generateDocumentId(file);
-            result.setDocumentId(documentId);
+    /**
+     * 执行已开始的导入；失败时 context 中的结果已填入错误信息和结束时间
+     */
+    public DocumentImportResult importDocument(ImportContext context) throws Exception {
+        MultipartFile file = context.getFile();
+        DocumentImportRequest request = context.getRequest();
 
+        try {
             // 1. 确保集合存在
-            String collectionName = request.getCollectionName();
-            ensureCollectionExists(collectionName);
-
-            // 2. 解析文档
-            DocumentParserWithStructure.DocumentContent docContent = documentParserWithStructure.parseDocumentWithStructure(file);
+            ensureCollectionExists(request.getCollectionName());
 
-            // 3. 提取图片（并保存到 imageOutputDir）
-            List<DocumentParserWithStructure.ImageInfo> images = new ArrayList<>();
-            if (Boolean.TRUE.equals(request.getExtractImages())) {
-                images = imageExtractorWithPosition.extractImages(file, imageOutputDir);
+            // 大文档：流式解析，边解析边分块、向量化、写入
+            if (useStreamingParse(file, request)) {
+                streamingImport(context);
+                completeImport(context);
+                return context.getResult();
             }
 
-            // 4. 文档分块
-            Map<Integer, List<DocumentParserWithStructure.ImagePosition>> imagePositions = associateImagesWithDocument(
-                    docContent.getStructure(), images, docContent.getParagraphs());
-
-            // 6. 智能分块（保持文档结构）
-            List<DocumentParserWithStructure.DocumentChunk> chunks = chunkDocumentIntelligently(
-                    docContent, imagePositions, request.getChunkSize());
-
-            List<DocumentParserWithStructure.TextEmbedding> embeddings = generateEmbeddingsForChunks(chunks);
+            // 2~3. 解析文档、提取图片
+            parseStage(context);
 
-            // 8. 准备Milvus数据
-            List<InsertParam.Field> fields = prepareMilvusInsertFields(
-                    chunks, embeddings, documentId, file.getOriginalFilename());
+            // 4~6. 智能分块（保持文档结构）
+            chunkStage(context);
 
-            // 逐个字段检查（可保留调试输出）
-            for (InsertParam.Field field : fields) {
-                System.out.println("\n--- 检查字段: " + field.getName() + " ---");
-
-                List<?> values = field.getValues();
-                if (values == null) {
-                    System.out.println("⚠️ 字段值列表为 null");
-                    continue;
-                }
-
-                for (int i = 0; i < values.size(); i++) {
-                    Object value = values.get(i);
-
-                    if (value == null) {
-                        System.err.println("❌ 索引 " + i + ": NULL");
-                        continue;
-                    }
-
-                    if (value instanceof String) {
-                        String str = (String) value;
-                        if (str == null) {
-                            System.err.println("❌ 索引 " + i + ": NULL 字符串");
-                        } else if (str.isEmpty()) {
-                            System.out.println("⚠️ 索引 " + i + ": 空字符串");
-                        } else {
-                            // images 现在是逗号分隔的路径字符串（不要当作 JSON 解析）
-                            if (FIELD_IMAGES.equals(field.getName())) {
-                                // 安全打印前 200 字符以便调试（避免过长输出）
-                                int len = str.length();
-                                String sample = len > 200 ? str.substring(0, 200) + "..." : str;
-                                System.out.println("ℹ️ 索引 " + i + ": images 字符串, 长度=" + len + ", 内容示例=" + sample);
-                            }
-                            // metadata 仍然当作 JSON 字符串检查
-                            else if (FIELD_METADATA.equals(field.getName())) {
-                                try {
-                                    new ObjectMapper().readTree(str);
-                                    System.out.println("✅ 索引 " + i + ": metadata 是有效 JSON, 长度: " + str.length());
-                                } catch (Exception e) {
-                                    System.out.println("⚠️ 索引 " + i + ": metadata 非法 JSON (" + e.getMessage() + ")");
-                                }
-                            } else {
-                                // 其他普通字符串字段
-                                System.out.println("ℹ️ 索引 " + i + ": 字符串, 长度=" + str.length());
-                            }
-                        }
-                    } else if (value instanceof List) {
-                        System.out.println("📊 索引 " + i + ": List, 大小: " + ((List<?>) value).size());
-                    } else {
-                        System.out.println("📄 索引 " + i + ": " + value.getClass().getSimpleName() + " = " + value);
-                    }
-                }
-            }
+            // 7. 生成向量
+            embedStage(context);
 
-            // 修复所有字段（浅层）
-            List<InsertParam.Field> fixedFields = validateAndFixAllFields(fields);
+            // 8~9. 准备数据并插入到Milvus
+            insertStage(request.getCollectionName(), Collections.singletonList(context));
 
-            // 深度清理（特别是向量字段），避免 Milvus 客户端报错
-            sanitizeFieldsBeforeInsert(fixedFields);
+            completeImport(context);
+        } catch (Exception e) {
+            failImport(context, e);
+            throw e;
+        }
 
-            // 9. 插入到Milvus
-            R<MutationResult> insertResult = milvusClient.insert(
-                    InsertParam.newBuilder()
-                            .withCollectionName(collectionName)
-                            .withFields(fixedFields)
-                            .build()
-            );
+        return context.getResult();
+    }
 
-            if (insertResult.getStatus() != R.Status.Success.getCode()) {
-                throw new Exception("插入Milvus失败: " + insertResult.getMessage());
-            }
+    // ========== 导入阶段（单文档导入与批量流水线共用） ==========
 
+    public ImportContext startImport(MultipartFile file, DocumentImportRequest request, ImportProgress progress) {
+        DocumentImportResult result = DocumentImportResult.builder()
+                .success(false)
+                .documentName(file.getOriginalFilename())
+                .collectionName(request.getCollectionName())
+                .startTime(LocalDateTime.now())
+                .build();
 
-            // 9. 构建结果
-            result.setSuccess(true);
-            result.setChunkCount(chunks.size());
-            result.setImageCount(images.size());
-            result.setVectorCount(embeddings.size());
+        ImportContext context = new ImportContext();
+        context.setFile(file);
+        context.setRequest(request);
+        context.setProgress(progress);
+        context.setResult(result);
+        context.setDocumentId(generateDocumentId(file));
+        result.setDocumentId(context.getDocumentId());
 
+        importMetrics.recordDocumentBytes(request.getCollectionName(), request.getTenantId(), file.getSize());
+        return context;
+    }
 
-        } catch (Exception e) {
-            log.error("文档导入失败", e);
-            result.setError(e.getMessage());
-            throw e;
-        } finally {
-            result.setEndTime(LocalDateTime.now());
-            result.calculateDuration();
-        }
+    /**
+     * 解析阶段（CPU 密集）：解析文档结构并提取图片
+     */
+    public void parseStage(ImportContext context) throws Exception {
+        ImportProgress progress = context.getProgress();
+        progress.setStage(ImportProgress.STAGE_PARSING);
+        long start = System.nanoTime();
+
+        // 单次解析：段落结构与图片（保存到 imageOutputDir）共用一次 DOM 构建
+        DocumentParserWithStructure.DocumentContent docContent = documentParserWithStructure.parseDocumentWithImages(
+                context.getFile(), imageOutputDir, Boolean.TRUE.equals(context.getRequest().getExtractImages()));
+        progress.setParsedParagraphs(docContent.getParagraphs().size());
+
+        context.setDocContent(docContent);
+        context.setImages(docContent.getExtractedImages());
+        recordStage(ImportProgress.STAGE_PARSING, context, start);
+    }
 
-        return result;
+    /**
+     * 分块阶段：图片与段落关联后按请求的分块策略分块，分块文本在向量化时才从全文截取
+     */
+    public void chunkStage(ImportContext context) {
+        ImportProgress progress = context.getProgress();
+        progress.setStage(ImportProgress.STAGE_CHUNKING);
+        long start = System.nanoTime();
+
+        Map<Integer, List<DocumentParserWithStructure.ImagePosition>> imagePositions = StructuredChunker.associateImagesWithDocument(
+                context.getDocContent().getStructure(), context.getImages(), context.getDocContent().getParagraphs());
+
+        DocumentImportRequest request = context.getRequest();
+        List<DocumentParserWithStructure.DocumentChunk> chunks = StructuredChunker.chunkDocument(
+                context.getDocContent(), imagePositions, ChunkStrategy.of(request.getChunkStrategy()),
+                request.getChunkSize(), request.getOverlapSize() == null ? 0 : request.getOverlapSize());
+        progress.setTotalChunks(chunks.size());
+
+        context.setChunks(chunks);
+        recordStage(ImportProgress.STAGE_CHUNKING, context, start);
+        importMetrics.recordChunks(request.getCollectionName(), request.getTenantId(), chunks.size());
     }
 
     /**
-     * 深度清理字段：保证没有 null 的字符串/向量/嵌套 null，修复向量长度
+     * 向量化阶段（I/O 密集）
      */
-    @SuppressWarnings("unchecked")
-    private void sanitizeFieldsBeforeInsert(List<InsertParam.Field> fields) {
-        List<Float> zeroVector = Collections.nCopies(vectorDimension, 0f);
-
-        for (int fi = 0; fi < fields.size(); fi++) {
-            InsertParam.Field field = fields.get(fi);
-            String name = field.getName();
-            List<Object> values = new ArrayList<>();
-            if (field.getValues() != null) {
-                for (Object v : field.getValues()) {
-                    values.add(v);
-                }
-            }
+    public void embedStage(ImportContext context) {
+        embedStage(context, null);
+    }
 
-            // 处理向量字段（List<List<Float>>）
-            if (FIELD_VECTOR.equals(name)) {
-                List<List<Float>> newVectors = new ArrayList<>();
-                for (Object v : values) {
-                    if (v == null) {
-                        newVectors.add(new ArrayList<>(zeroVector));
-                        continue;
-                    }
-                    if (v instanceof List) {
-                        List<?> inner = (List<?>) v;
-                        boolean hasNull = inner.stream().anyMatch(Objects::isNull);
-                        // 尝试把元素转为 Float
-                        List<Float> vec = new ArrayList<>();
-                        for (Object o : inner) {
-                            if (o == null) {
-                                vec.add(0f);
-                            } else if (o instanceof Float) {
-                                vec.add((Float) o);
-                            } else if (o instanceof Double) {
-                                vec.add(((Double) o).floatValue());
-                            } else if (o instanceof Number) {
-                                vec.add(((Number) o).floatValue());
-                            } else {
-                                // 无法识别的元素，视为 0
-                                vec.add(0f);
-                            }
-                        }
-
-                        // 如果长度不对，替换为 zeroVector
-                        if (vec.size() != vectorDimension) {
-                            newVectors.add(new ArrayList<>(zeroVector));
-                        } else {
-                            newVectors.add(vec);
-                        }
-                    } else {
-                        // 非 List 类型 -> 使用 zero vector
-                        newVectors.add(new ArrayList<>(zeroVector));
-                    }
-                }
-                // 替换字段
-                fields.set(fi, new InsertParam.Field(name, (List) newVectors));
-                continue;
-            }
+    /**
+     * 向量化阶段，批次在 requestExecutor 上发送；为空时使用向量化服务的共享线程池
+     */
+    public void embedStage(ImportContext context, Executor requestExecutor) {
+        context.getProgress().setStage(ImportProgress.STAGE_EMBEDDING);
+        long start = System.nanoTime();
+        context.setEmbeddings(generateEmbeddingsForChunks(context.getChunks(), context.getProgress(), requestExecutor));
+        recordStage(ImportProgress.STAGE_EMBEDDING, context, start);
+    }
 
-            // 处理文本/JSON/路径字段，确保不为 null
-            List<Object> newVals = new ArrayList<>();
-            for (Object v : values) {
-                if (v == null) {
-                    newVals.add(getDefaultForField(name));
-                    continue;
-                }
-                if (v instanceof String) {
-                    String s = (String) v;
-                    if (s == null || s.trim().isEmpty() || "null".equalsIgnoreCase(s.trim())) {
-                        newVals.add(getDefaultForField(name));
-                    } else {
-                        newVals.add(s);
-                    }
-                    continue;
-                }
-                if (v instanceof List) {
-                    // 清理 list 中的 null
-                    List<?> list = (List<?>) v;
-                    List<Object> cleaned = new ArrayList<>();
-                    for (Object o : list) {
-                        if (o == null) continue;
-                        cleaned.add(o);
-                    }
-                    if (cleaned.isEmpty()) {
-                        newVals.add(getDefaultForField(name));
-                    } else {
-                        newVals.add(cleaned);
-                    }
-                    continue;
-                }
-                // 其他类型直接加入
-                newVals.add(v);
-            }
+    /**
+     * 插入阶段：同一集合的多个文档合并为一次插入，返回的主键按文档拆分
+     */
+    public void insertStage(String collectionName, List<ImportContext> contexts) throws Exception {
+        int totalRows = contexts.stream().mapToInt(context -> context.getChunks().size()).sum();
+
+        // 列式批次：追加时一次性校验修正，向量紧凑存放，多个文档直接追加到同一批次
+        InsertRowBatch batch = new InsertRowBatch(vectorDimension, totalRows);
+        for (ImportContext context : contexts) {
+            context.getProgress().setStage(ImportProgress.STAGE_INSERTING);
+            chunkRowMapper.appendInsertRows(batch, context.getChunks(), context.getEmbeddings(),
+                    context.getDocumentId(), context.getResult().getDocumentName(), context.getRequest());
+        }
+        if (batch.getInvalidVectors() > 0) {
+            log.warn("{} 个分块的向量为空或维度不符，已使用零向量", batch.getInvalidVectors());
+        }
 
-            // 最后替换（保证没有 null）
-            List<Object> safeVals = new ArrayList<>();
-            for (Object o : newVals) {
-                if (o == null) safeVals.add(getDefaultForField(name));
-                else safeVals.add(o);
-            }
+        List<InsertParam.Field> fields = batch.toFields(isJsonMetadata(collectionName), hasTenantPartitionKey(collectionName),
+                hasSparseVector(collectionName) ? bm25SparseEncoder::encodeDocument : null);
 
-            fields.set(fi, new InsertParam.Field(name, safeVals));
+        // 按大小分批、多批并行写入，主键按行顺序返回
+        long start = System.nanoTime();
+        List<Long> ids;
+        try {
+            ids = milvusInsertWriter.insert(collectionName, fields);
+        } finally {
+            searchResultCache.bump(collectionName);
+        }
+        importMetrics.recordStage(ImportProgress.STAGE_INSERTING, collectionName, tenantOf(contexts), start);
+        recordSparseStatistics(collectionName, fields);
+        int offset = 0;
+        for (ImportContext context : contexts) {
+            int rows = context.getChunks().size();
+            context.getResult().setVectorIds(new ArrayList<>(ids.subList(offset, offset + rows)));
+            offset += rows;
+            collectionLoadManager.onRowsInserted(collectionName, rows);
+            context.getProgress().addRowsInserted(rows);
+            importMetrics.recordRowsInserted(collectionName, context.getRequest().getTenantId(), rows);
         }
     }
 
     /**
-     * 修复所有字段（浅层）
+     * 写入成功的稀疏向量计入 BM25 文档频率
      */
-    private List<InsertParam.Field> validateAndFixAllFields(List<InsertParam.Field> fields) {
-        List<InsertParam.Field> fixedFields = new ArrayList<>();
-
+    @SuppressWarnings("unchecked")
+    private void recordSparseStatistics(String collectionName, List<InsertParam.Field> fields) {
         for (InsertParam.Field field : fields) {
-            String fieldName = field.getName();
-            List<?> originalValues = field.getValues();
-            List<Object> fixedValues = new ArrayList<>();
-
-            if (originalValues == null) {
-                // 替换为默认单值，避免 Milvus 接收 null 列表
-                fixedValues.add(getDefaultForField(fieldName));
-                fixedFields.add(new InsertParam.Field(fieldName, fixedValues));
-                continue;
-            }
-
-            for (Object value : originalValues) {
-                Object fixedValue = fixFieldValue(fieldName, value);
-                fixedValues.add(fixedValue);
+            if (FIELD_SPARSE_VECTOR.equals(field.getName())) {
+                bm25SparseEncoder.onRowsInserted(collectionName, (List<SortedMap<Long, Float>>) field.getValues());
             }
-
-            fixedFields.add(new InsertParam.Field(fieldName, fixedValues));
         }
-
-        return fixedFields;
     }
 
     /**
-     * 修复单个字段值
+     * 流式导入：段落逐个进入分块器，每累计 flush-chunks 个分块就向量化并写入，
+     * 内存占用与分块批次大小相关，与文档大小无关。中途失败时按 document_id 删除已写入的行
      */
-    private Object fixFieldValue(String fieldName, Object value) {
-        if (value == null) {
-            return getDefaultForField(fieldName);
+    private void streamingImport(ImportContext context) throws Exception {
+        ImportProgress progress = context.getProgress();
+        DocumentImportRequest request = context.getRequest();
+        progress.setStage(ImportProgress.STAGE_PARSING);
+
+        List<DocumentParserWithStructure.DocumentChunk> pending = new ArrayList<>();
+        List<Long> vectorIds = new ArrayList<>();
+        Set<DocumentParserWithStructure.ImageInfo> images = Collections.newSetFromMap(new IdentityHashMap<>());
+        int[] vectorCount = {0};
+
+        if (ChunkStrategy.of(request.getChunkStrategy()) != ChunkStrategy.SEMANTIC) {
+            throw new IllegalArgumentException("流式解析只支持 semantic 分块策略: " + request.getChunkStrategy());
         }
-
-        // 字符串字段处理
-        if (value instanceof String) {
-            String str = (String) value;
-
-            // 空字符串处理
-            if (str == null || str.isEmpty() || "null".equalsIgnoreCase(str)) {
-                return getDefaultForField(fieldName);
+        StreamingChunker chunker = new StreamingChunker(request.getChunkSize(), chunk -> {
+            pending.add(chunk);
+            images.addAll(chunk.getImages());
+            progress.setTotalChunks(chunk.getChunkId() + 1);
+            if (pending.size() >= streamingFlushChunks) {
+                vectorCount[0] += flushStreamingChunks(context, pending, vectorIds);
             }
+        });
 
-            // JSON字段特殊处理
-            if (isJsonField(fieldName)) {
-                return fixJsonStringForMilvus(str);
+        Path source = null;
+        boolean temporary = false;
+        try {
+            if (context.getFile() instanceof TempFileMultipartFile) {
+                source = ((TempFileMultipartFile) context.getFile()).getPath();
+            } else {
+                Path dir = Paths.get(tempDir);
+                Files.createDirectories(dir);
+                source = Files.createTempFile(dir, "stream_", ".docx");
+                temporary = true;
+                try (InputStream in = context.getFile().getInputStream()) {
+                    Files.copy(in, source, StandardCopyOption.REPLACE_EXISTING);
+                }
             }
 
-            return str;
-        }
-
-        // List字段处理
-        if (value instanceof List) {
-            List<?> list = (List<?>) value;
-            if (list.isEmpty()) {
-                return getDefaultForField(fieldName);
+            // 流式模式下解析与分块、向量化、写入交替进行，parsing 阶段耗时包含整个流式过程
+            long start = System.nanoTime();
+            streamingDocxParser.parse(source, imageOutputDir, Boolean.TRUE.equals(request.getExtractImages()), para -> {
+                chunker.accept(para);
+                progress.setParsedParagraphs(para.getId() + 1);
+            });
+            chunker.finish();
+            vectorCount[0] += flushStreamingChunks(context, pending, vectorIds);
+            recordStage(ImportProgress.STAGE_PARSING, context, start);
+            importMetrics.recordChunks(request.getCollectionName(), request.getTenantId(), chunker.getChunkCount());
+        } catch (Exception e) {
+            if (!vectorIds.isEmpty()) {
+                deleteDocumentRows(request.getCollectionName(), context.getDocumentId());
             }
-            if (list.contains(null)) {
-                // 清理list中的null
-                List<Object> cleaned = new ArrayList<>();
-                for (Object item : list) {
-                    if (item != null) {
-                        cleaned.add(item);
-                    }
-                }
-                if (cleaned.isEmpty()) {
-                    return getDefaultForField(fieldName);
-                }
-                return cleaned;
+            throw e;
+        } finally {
+            if (temporary) {
+                Files.deleteIfExists(source);
             }
-            return value;
         }
 
-        return value;
+        DocumentImportResult result = context.getResult();
+        result.setVectorIds(vectorIds);
+        result.setChunkCount(chunker.getChunkCount());
+        result.setImageCount(images.size());
+        result.setVectorCount(vectorCount[0]);
     }
 
-    /**
-     * 修复JSON字符串
-     */
-    private String fixJsonStringForMilvus(String jsonStr) {
-        if (jsonStr == null) {
-            return "{}";
+    private int flushStreamingChunks(ImportContext context,
+                                     List<DocumentParserWithStructure.DocumentChunk> pending,
+                                     List<Long> vectorIds) throws Exception {
+        if (pending.isEmpty()) {
+            return 0;
         }
 
-        jsonStr = jsonStr.trim();
+        context.setChunks(new ArrayList<>(pending));
+        pending.clear();
 
-        // 快速处理常见问题
-        if (jsonStr.isEmpty() ||
-                "[]".equals(jsonStr) ||
-                "null".equalsIgnoreCase(jsonStr) ||
-                "undefined".equalsIgnoreCase(jsonStr)) {
-            return "{}";
+        embedStage(context);
+        insertStage(context.getRequest().getCollectionName(), Collections.singletonList(context));
+        if (context.getResult().getVectorIds() != null) {
+            vectorIds.addAll(context.getResult().getVectorIds());
         }
 
-        // 确保是有效JSON
-        try {
-            ObjectMapper mapper = new ObjectMapper();
-
-            // 尝试解析
-            JsonNode node = mapper.readTree(jsonStr);
-
-            // 如果是数组，转换为对象
-            if (node.isArray()) {
-                ArrayNode array = (ArrayNode) node;
-                if (array.isEmpty()) {
-                    return "{}";
-                }
-
-                // 数组转为对象
-                ObjectNode obj = mapper.createObjectNode();
-                obj.set("data", array);
-                return mapper.writeValueAsString(obj);
-            }
-
-            return jsonStr;
-        } catch (Exception e) {
-            // 不是有效JSON，转为空对象
-            return "{}";
-        }
+        int vectors = context.getEmbeddings().size();
+        context.setChunks(new ArrayList<>());
+        context.setEmbeddings(new ArrayList<>());
+        context.getProgress().setStage(ImportProgress.STAGE_PARSING);
+        return vectors;
     }
 
     /**
-     * 获取字段默认值
+     * 校验导入参数：解析模式、分块策略、分块大小与重叠；流式解析只按 semantic 规则分块，
+     * 显式指定 streaming 时不接受其他分块策略
      */
-    private Object getDefaultForField(String fieldName) {
-        if (FIELD_METADATA.equals(fieldName)) {
-            return "{}";
-        } else if (FIELD_TEXT.equals(fieldName) ||
-                FIELD_DOCUMENT_ID.equals(fieldName) ||
-                FIELD_CHUNK_ID.equals(fieldName)) {
-            return "";
-        } else if (FIELD_CREATE_TIME.equals(fieldName)) {
-            return System.currentTimeMillis();
-        } else if (FIELD_VECTOR.equals(fieldName)) {
-            return new ArrayList<Float>();
-        } else if (FIELD_IMAGES.equals(fieldName)) {
-            return ""; // images 现在为字符串（逗号分隔路径），默认空字符串更合适
-        }
-        return "";
+    public void validateImportRequest(DocumentImportRequest request) {
+        ChunkStrategy strategy = ChunkStrategy.of(request.getChunkStrategy());
+        String mode = parseMode(request);
+        if (!"auto".equals(mode) && !"dom".equals(mode) && !"streaming".equals(mode)) {
+            throw new IllegalArgumentException("未知的解析模式: " + request.getParseMode());
+        }
+        if ("streaming".equals(mode) && strategy != ChunkStrategy.SEMANTIC) {
+            throw new IllegalArgumentException("流式解析只支持 semantic 分块策略: " + request.getChunkStrategy());
+        }
+        if (request.getChunkSize() == null || request.getChunkSize() <= 0) {
+            throw new IllegalArgumentException("chunkSize 必须大于 0: " + request.getChunkSize());
+        }
+        int overlap = request.getOverlapSize() == null ? 0 : request.getOverlapSize();
+        if (overlap < 0 || overlap > request.getChunkSize() / 2) {
+            throw new IllegalArgumentException("overlapSize 须在 0 到 chunkSize 的一半之间: " + overlap);
+        }
     }
 
-    private boolean isJsonField(String fieldName) {
-        return FIELD_METADATA.equals(fieldName); // 仅 metadata 保持 JSON 语义
-
+    private static String parseMode(DocumentImportRequest request) {
+        return request.getParseMode() == null ? "auto" : request.getParseMode().trim().toLowerCase();
     }
 
-    // 6. 准备Milvus插入数据
-    private List<InsertParam.Field> prepareMilvusInsertFields(
-            List<DocumentParserWithStructure.DocumentChunk> chunks,
-            List<DocumentParserWithStructure.TextEmbedding> embeddings,
-            String documentId,
-            String fileName) {
-
-        List<InsertParam.Field> fields = new ArrayList<>();
-
-        // 向量字段
-        List<List<Float>> vectors = embeddings.stream()
-                .map(DocumentParserWithStructure.TextEmbedding::getVector)
-                .collect(Collectors.toList());
-        fields.add(new InsertParam.Field(FIELD_VECTOR, vectors));
-
-        // 文本字段
-        List<String> texts = chunks.stream()
-                .map(DocumentParserWithStructure.DocumentChunk::getText)
-                .map(s -> s == null ? "" : s)
-                .collect(Collectors.toList());
-        fields.add(new InsertParam.Field(FIELD_TEXT, texts));
-
-        // 元数据字段
-        List<String> metadataList = chunks.stream()
-                .map(chunk -> convertMetadataToString(chunk, documentId, fileName))
-                .collect(Collectors.toList());
-        fields.add(new InsertParam.Field(FIELD_METADATA, metadataList));
-
-        // 4. images字段 - 现在保存为逗号分隔的文件路径字符串（兼容旧的 JSON 格式）
-        List<String> imageInfoList = new ArrayList<>();
-        for (DocumentParserWithStructure.DocumentChunk chunk : chunks) {
-            String imagePathStr = convertImagesToJson(chunk);
-            imageInfoList.add(imagePathStr);
-        }
-        fields.add(new InsertParam.Field(FIELD_IMAGES, imageInfoList));
-
-        // 文档ID字段
-        List<String> docIds = Collections.nCopies(chunks.size(), documentId == null ? "" : documentId);
-        fields.add(new InsertParam.Field(FIELD_DOCUMENT_ID, docIds));
-
-        // 分块ID字段（安全转换，避免 null.toString）
-        List<String> chunkIdStr = chunks.stream()
-                .map(chunk -> Objects.toString(chunk.getChunkId(), "0"))
-                .collect(Collectors.toList());
-        fields.add(new InsertParam.Field(FIELD_CHUNK_ID, chunkIdStr));
-
-        // 元数据字段（已添加 above）
-        // 创建时间字段
-        List<Long> createTimes = chunks.stream()
-                .map(chunk -> System.currentTimeMillis())
-                .collect(Collectors.toList());
-        fields.add(new InsertParam.Field(FIELD_CREATE_TIME, createTimes));
-
-        return fields;
+    /**
+     * 是否走流式解析：parseMode 为 streaming，或 auto 下超过阈值且使用 semantic 分块的 docx（批量流水线共用）
+     */
+    public boolean useStreamingParse(MultipartFile file, DocumentImportRequest request) {
+        String fileName = file.getOriginalFilename() == null ? "" : file.getOriginalFilename().toLowerCase();
+        if (!fileName.endsWith(".docx")) {
+            return false;
+        }
+        switch (parseMode(request)) {
+            case "streaming":
+                return true;
+            case "dom":
+                return false;
+            default:
+                // 流式解析只按 semantic 规则分块，其他分块策略回退到 DOM 解析
+                return file.getSize() > streamingThresholdBytes
+                        && ChunkStrategy.of(request.getChunkStrategy()) == ChunkStrategy.SEMANTIC;
+        }
     }
 
-    private String convertImagesToJson(DocumentParserWithStructure.DocumentChunk chunk) {
-        if (chunk == null || chunk.getImages() == null || chunk.getImages().isEmpty()) {
-            return "";  // 直接返回空对象
+    private void deleteDocumentRows(String collectionName, String documentId) {
+        try {
+            deleteDocument(collectionName, documentId);
+        } catch (Exception e) {
+            log.warn("删除已写入的分块失败: 文档={}", documentId, e);
         }
+    }
 
-        List<Map<String, Object>> imageInfoList = new ArrayList<>();
-
-        for (DocumentParserWithStructure.ImageInfo image : chunk.getImages()) {
-            if (image == null) continue;
+    // ========== 检索 ==========
 
-            Map<String, Object> imageInfo = new HashMap<>();
+    /**
+     * 向量检索：查询文本经缓存向量化后检索 vector 字段，默认不返回 text、images 长字段
+     */
+    public SearchResult search(SearchRequest request) throws Exception {
+        int topK = validateSearchRequest(request);
+
+        long start = System.nanoTime();
+        String collectionName = request.getCollectionName();
+        List<String> outputFields = resolveOutputFields(request.getOutputFields());
+        ConsistencyLevelEnum consistencyLevel = getConsistencyLevel(
+                request.getConsistencyLevel() == null ? searchConsistencyLevel : request.getConsistencyLevel());
+
+        float[] queryVector = queryEmbeddingCache.embed(request.getQuery());
+        String params = searchParams(collectionName, request, topK);
+
+        // 结果缓存：代数须在检索前读取，检索期间有写入时本次结果不会被后续命中
+        long generation = searchResultCache.generation(collectionName);
+        String scope = "dense|" + params + "|" + outputFields + "|" + consistencyLevel;
+        String filter = effectiveFilter(collectionName, request);
+        String cacheKey = searchResultCache.key(collectionName, queryVector, topK, filter, scope);
+        SearchResult cached = searchResultCache.get(collectionName, cacheKey);
+        if (cached != null) {
+            importMetrics.recordSearch("dense_cached", collectionName, start);
+            return fromCache(cached, request, start);
+        }
 
-            // 确保所有字符串字段有值
-            imageInfo.put("file_name",
-                    image.getFileName() != null ? image.getFileName() : "");
-            imageInfo.put("file_path",
-                    image.getFilePath() != null ? image.getFilePath() :
-                            (image.getFileName() != null ? Paths.get(imageOutputDir, image.getFileName()).toString() : ""));
+        // 二级缓存：措辞不同但向量足够接近的查询
+        String semanticScope = topK + "|" + filter + "|" + scope;
+        SemanticQueryCache.Match match = semanticQueryCache.get(collectionName, semanticScope, queryVector, generation);
+        if (match != null) {
+            importMetrics.recordSearch("dense_semantic_cached", collectionName, start);
+            return fromCache(match.getResult(), request, start).toBuilder()
+                    .cacheSimilarity(match.getSimilarity())
+                    .build();
+        }
 
-            imageInfo.put("format",
-                    image.getFormat() != null ? image.getFormat() : "");
+        SearchParam.Builder builder = SearchParam.newBuilder()
+                .withCollectionName(collectionName)
+                .withVectorFieldName(FIELD_VECTOR)
+                .withFloatVectors(Collections.singletonList(toFloatList(queryVector)))
+                .withMetricType(getMetricType(metricType))
+                .withTopK(topK)
+                .withParams(params)
+                .withOutFields(outputFields)
+                .withConsistencyLevel(consistencyLevel);
+        if (filter != null && !filter.isBlank()) {
+            builder.withExpr(filter);
+        }
 
-            if (image.getPosition() != null) {
-                Map<String, Object> position = new HashMap<>();
-                position.put("paragraph_index", image.getPosition().getParagraphIndex());
-                position.put("char_position", image.getPosition().getCharPosition());
+        R<SearchResults> response;
+        try (CollectionLoadManager.Lease ignored = collectionLoadManager.acquire(collectionName)) {
+            response = milvusClient.search(builder.build());
+        }
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            throw new Exception("检索失败: " + response.getMessage());
+        }
 
-                String paragraphText = image.getPosition().getParagraphText();
-                position.put("paragraph_text",
-                        paragraphText != null ? paragraphText : "");
+        List<SearchHit> hits = toSearchHits(new SearchResultsWrapper(response.getData().getResults()), outputFields);
+        long durationMs = (System.nanoTime() - start) / 1_000_000;
+        importMetrics.recordSearch("dense", collectionName, start);
+        log.debug("检索完成: 集合={}, topK={}, 命中={}, 耗时={}ms", collectionName, topK, hits.size(), durationMs);
+
+        SearchResult result = SearchResult.builder()
+                .collectionName(collectionName)
+                .query(request.getQuery())
+                .topK(topK)
+                .consistencyLevel(consistencyLevel.name())
+                .hits(hits)
+                .cached(false)
+                .durationMs(durationMs)
+                .build();
+        boolean strong = consistencyLevel == ConsistencyLevelEnum.STRONG;
+        searchResultCache.put(collectionName, cacheKey, generation, result, strong);
+        if (searchResultCache.isCacheable(collectionName, strong)) {
+            semanticQueryCache.put(collectionName, semanticScope, queryVector, generation, result);
+        }
+        return result;
+    }
 
-                imageInfo.put("position", position);
-            }
+    /**
+     * 混合检索：稠密向量与 BM25 稀疏向量两路在一次 hybridSearch 请求中检索，服务端按 RRF 或权重融合。
+     * 稀疏一路依赖确切的关键词（型号、编号），因此不使用语义近似缓存
+     */
+    public SearchResult hybridSearch(HybridSearchRequest request) throws Exception {
+        int topK = validateSearchRequest(request);
+        String collectionName = request.getCollectionName();
+        if (!hasSparseVector(collectionName)) {
+            throw new IllegalArgumentException("集合 " + collectionName + " 没有稀疏向量字段，不支持混合检索");
+        }
+        // 查询文本没有可检索的词项（如只有标点）时稀疏一路为空，只做稠密检索
+        SortedMap<Long, Float> sparseQuery = bm25SparseEncoder.encodeQuery(collectionName, request.getQuery());
+        if (sparseQuery.isEmpty()) {
+            log.debug("查询文本没有关键词，混合检索退化为稠密检索: {}", request.getQuery());
+            return search(request);
+        }
 
-            imageInfoList.add(imageInfo);
+        long start = System.nanoTime();
+        List<String> outputFields = resolveOutputFields(request.getOutputFields());
+        ConsistencyLevelEnum consistencyLevel = getConsistencyLevel(
+                request.getConsistencyLevel() == null ? searchConsistencyLevel : request.getConsistencyLevel());
+        int candidates = Math.min(topK * Math.max(1, hybridCandidateFactor), searchMaxTopK);
+
+        float[] queryVector = queryEmbeddingCache.embed(request.getQuery());
+        String params = searchParams(collectionName, request, candidates);
+
+        // 稀疏向量由查询文本决定，缓存键中带上归一化后的查询文本
+        long generation = searchResultCache.generation(collectionName);
+        String filter = effectiveFilter(collectionName, request);
+        String cacheKey = searchResultCache.key(collectionName, queryVector, topK, filter,
+                "hybrid|" + EmbeddingCache.normalize(request.getQuery()) + "|" + candidates + "|" + params
+                        + "|" + request.getRanker() + "|" + request.getRrfK()
+                        + "|" + request.getDenseWeight() + "|" + request.getSparseWeight()
+                        + "|" + outputFields + "|" + consistencyLevel);
+        SearchResult cached = searchResultCache.get(collectionName, cacheKey);
+        if (cached != null) {
+            importMetrics.recordSearch("hybrid_cached", collectionName, start);
+            return fromCache(cached, request, start);
         }
 
-        if (imageInfoList.isEmpty()) {
-            return "";
+        AnnSearchParam.Builder dense = AnnSearchParam.newBuilder()
+                .withVectorFieldName(FIELD_VECTOR)
+                .withFloatVectors(Collections.singletonList(toFloatList(queryVector)))
+                .withMetricType(getMetricType(metricType))
+                .withParams(params)
+                .withTopK(candidates);
+        AnnSearchParam.Builder sparse = AnnSearchParam.newBuilder()
+                .withVectorFieldName(FIELD_SPARSE_VECTOR)
+                .withSparseFloatVectors(Collections.singletonList(sparseQuery))
+                .withMetricType(MetricType.IP)
+                .withParams("{\"drop_ratio_search\": " + sparseDropRatioSearch + "}")
+                .withTopK(candidates);
+        if (filter != null && !filter.isBlank()) {
+            dense.withExpr(filter);
+            sparse.withExpr(filter);
         }
 
-        try {
-            return JsonUtils.toJson(imageInfoList);
-        } catch (Exception e) {
-            return "";
+        HybridSearchParam param = HybridSearchParam.newBuilder()
+                .withCollectionName(collectionName)
+                .addSearchRequest(dense.build())
+                .addSearchRequest(sparse.build())
+                .withRanker(ranker(request))
+                .withTopK(topK)
+                .withOutFields(outputFields)
+                .withConsistencyLevel(consistencyLevel)
+                .build();
+
+        R<SearchResults> response;
+        try (CollectionLoadManager.Lease ignored = collectionLoadManager.acquire(collectionName)) {
+            response = milvusClient.hybridSearch(param);
         }
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            throw new Exception("混合检索失败: " + response.getMessage());
+        }
+
+        List<SearchHit> hits = toSearchHits(new SearchResultsWrapper(response.getData().getResults()), outputFields);
+        importMetrics.recordSearch("hybrid", collectionName, start);
+
+        SearchResult result = SearchResult.builder()
+                .collectionName(collectionName)
+                .query(request.getQuery())
+                .topK(topK)
+                .consistencyLevel(consistencyLevel.name())
+                .hits(hits)
+                .cached(false)
+                .durationMs((System.nanoTime() - start) / 1_000_000)
+                .build();
+        searchResultCache.put(collectionName, cacheKey, generation, result,
+                consistencyLevel == ConsistencyLevelEnum.STRONG);
+        return result;
     }
 
-    private String convertMetadataToString(DocumentParserWithStructure.DocumentChunk chunk, String documentId, String fileName) {
-        Map<String, Object> metadata = new HashMap<>();
-        metadata.put("document_id", documentId);
-        metadata.put("document_name", fileName);
-        metadata.put("chunk_id", chunk.getChunkId());
-        metadata.put("start_para", chunk.getStartParagraphIndex());
-        metadata.put("end_para", chunk.getEndParagraphIndex());
-        metadata.put("word_count", chunk.getWordCount());
-        metadata.put("char_count", chunk.getCharCount());
-        metadata.put("has_images", chunk.getImages() != null && !chunk.getImages().isEmpty());
+    /**
+     * 缓存命中时返回副本，查询文本和耗时按本次请求填写
+     */
+    private SearchResult fromCache(SearchResult cached, SearchRequest request, long startNanos) {
+        return cached.toBuilder()
+                .query(request.getQuery())
+                .cached(true)
+                .durationMs((System.nanoTime() - startNanos) / 1_000_000)
+                .build();
+    }
 
-        if (chunk.getMetadata() != null) {
-            metadata.putAll(chunk.getMetadata());
+    private BaseRanker ranker(HybridSearchRequest request) {
+        String type = request.getRanker() == null ? "rrf" : request.getRanker().trim().toLowerCase();
+        switch (type) {
+            case "rrf":
+                return RRFRanker.newBuilder()
+                        .withK(request.getRrfK() == null ? 60 : request.getRrfK())
+                        .build();
+            case "weighted":
+                float denseWeight = request.getDenseWeight() == null ? 0.5f : request.getDenseWeight();
+                float sparseWeight = request.getSparseWeight() == null ? 0.5f : request.getSparseWeight();
+                return WeightedRanker.newBuilder()
+                        .withWeights(List.of(denseWeight, sparseWeight))
+                        .build();
+            default:
+                throw new IllegalArgumentException("未知的融合方式: " + request.getRanker());
         }
+    }
 
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            return objectMapper.writeValueAsString(metadata);
-        } catch (JsonProcessingException e) {
-            return "{}";
+    /**
+     * 校验查询内容和 topK，返回 topK
+     */
+    private int validateSearchRequest(SearchRequest request) {
+        if (request.getQuery() == null || request.getQuery().isBlank()) {
+            throw new IllegalArgumentException("查询内容不能为空");
         }
+        int topK = request.getTopK() == null ? 10 : request.getTopK();
+        if (topK < 1 || topK > searchMaxTopK) {
+            throw new IllegalArgumentException("topK 须在 1 到 " + searchMaxTopK + " 之间");
+        }
+        return topK;
     }
 
-    private List<DocumentParserWithStructure.TextEmbedding> generateEmbeddingsForChunks(List<DocumentParserWithStructure.DocumentChunk> chunks) {
-        List<DocumentParserWithStructure.TextEmbedding> embeddings = new ArrayList<>();
+    /**
+     * 按集合的索引配置档生成检索参数。取值优先级：请求参数 > 调参结果 > 配置默认值；
+     * HNSW 读取请求的 ef，IVF 系列读取 nprobe，DISKANN 的 search_list 也取请求的 ef
+     */
+    private String searchParams(String collectionName, SearchRequest request, int topK) {
+        IndexProfile profile = getIndexProfile(collectionName);
+        if (profile == null) {
+            return "{}";
+        }
 
-        for (DocumentParserWithStructure.DocumentChunk chunk : chunks) {
-            try {
-                Embedding embedding1 = embeddingModel.embed(chunk.getText()).content();
-                List<Float> vector = embedding1.vectorAsList();
+        Integer requested = "nprobe".equals(profile.getSearchParamName()) ? request.getNprobe() : request.getEf();
+        int value = requested != null ? requested
+                : tunedSearchValues.getOrDefault(collectionName, defaultSearchValue(profile));
+        return JsonUtils.toJson(profile.searchParams(value, topK));
+    }
 
-                DocumentParserWithStructure.TextEmbedding embedding = new DocumentParserWithStructure.TextEmbedding();
-                embedding.setText(chunk.getText());
-                embedding.setVector(vector);
-                embedding.setChunkId(chunk.getChunkId());
+    private int defaultSearchValue(IndexProfile profile) {
+        if ("nprobe".equals(profile.getSearchParamName())) {
+            return searchNprobe;
+        }
+        if ("search_list".equals(profile.getSearchParamName())) {
+            return searchList;
+        }
+        return searchEf;
+    }
 
-                embeddings.add(embedding);
-            } catch (Exception e) {
-                log.warn("生成向量失败: chunkId={}", chunk.getChunkId(), e);
-                // 使用零向量作为兜底
-                List<Float> zeroVector = Collections.nCopies(vectorDimension, 0f);
+    /**
+     * 集合向量字段的索引配置档，结果按集合缓存；获取失败时使用配置的索引配置档（不缓存）
+     */
+    public IndexProfile getIndexProfile(String collectionName) {
+        IndexProfile cached = indexProfilesByCollection.get(collectionName);
+        if (cached != null) {
+            return cached;
+        }
 
-                DocumentParserWithStructure.TextEmbedding embedding = new DocumentParserWithStructure.TextEmbedding();
-                embedding.setText(chunk.getText());
-                embedding.setVector(zeroVector);
-                embedding.setChunkId(chunk.getChunkId());
+        try {
+            R<DescribeIndexResponse> response = milvusClient.describeIndex(DescribeIndexParam.newBuilder()
+                    .withCollectionName(collectionName)
+                    .withFieldName(FIELD_VECTOR)
+                    .build());
+            if (response.getStatus() != R.Status.Success.getCode()) {
+                log.warn("获取索引信息失败: {}, {}", collectionName, response.getMessage());
+                return configuredIndexProfile();
+            }
 
-                embeddings.add(embedding);
+            DescIndexResponseWrapper.IndexDesc desc = new DescIndexResponseWrapper(response.getData())
+                    .getIndexDescByFieldName(FIELD_VECTOR);
+            IndexProfile profile = desc == null ? null : IndexProfile.forIndexType(desc.getIndexType());
+            if (profile == null) {
+                log.warn("集合 {} 的索引类型没有对应的配置档，检索时不传索引参数", collectionName);
+                return null;
             }
+            indexProfilesByCollection.put(collectionName, profile);
+            return profile;
+        } catch (Exception e) {
+            log.warn("获取索引信息失败: {}", collectionName, e);
+            return configuredIndexProfile();
         }
+    }
 
-        return embeddings;
+    /**
+     * 记录调参得到的检索参数值，之后该集合的检索默认使用此值
+     */
+    public void applyTunedSearchValue(String collectionName, int value) {
+        tunedSearchValues.put(collectionName, value);
+        log.info("集合 {} 的检索参数已更新为 {}", collectionName, value);
     }
 
-    // 简化版的 findImageByPosition 方法
-    private DocumentParserWithStructure.ImageInfo findImageByPosition(DocumentParserWithStructure.ImagePosition pos, List<DocumentParserWithStructure.ImageInfo> images) {
-        if (images == null || pos == null) {
-            return null;
+    /**
+     * 新建集合使用的索引配置档：优先 index-profile，否则按 index-type 对应
+     */
+    private IndexProfile configuredIndexProfile() {
+        if (indexProfile != null && !indexProfile.isBlank()) {
+            return IndexProfile.of(indexProfile);
+        }
+        IndexProfile profile = IndexProfile.forIndexType(getIndexType(indexType));
+        if (profile == null) {
+            log.warn("索引类型 {} 没有对应的配置档，使用 low-latency", indexType);
+            return IndexProfile.LOW_LATENCY;
         }
+        return profile;
+    }
 
-        // 直接遍历匹配段落索引
-        for (DocumentParserWithStructure.ImageInfo image : images) {
-            if (image.getPosition() != null &&
-                    image.getPosition().getParagraphIndex() != null &&
-                    image.getPosition().getParagraphIndex().equals(pos.getParagraphIndex())) {
-                return image;
+    private List<String> resolveOutputFields(List<String> requested) {
+        if (requested == null || requested.isEmpty()) {
+            return searchOutputFields;
+        }
+        for (String field : requested) {
+            if (!OUTPUT_FIELDS.contains(field)) {
+                throw new IllegalArgumentException("不支持的返回字段: " + field);
             }
         }
-
-        return null;
+        return requested;
     }
 
-    // 简化版的 hasHeadings 方法
-    private boolean hasHeadings(List<DocumentParserWithStructure.Paragraph> paragraphs, int startIndex, int endIndex) {
-        if (paragraphs == null || startIndex < 0 || endIndex >= paragraphs.size()) {
-            return false;
+    private List<SearchHit> toSearchHits(SearchResultsWrapper wrapper, List<String> outputFields) {
+        List<SearchHit> hits = new ArrayList<>();
+        for (SearchResultsWrapper.IDScore score : wrapper.getIDScore(0)) {
+            Map<String, Object> fields = new LinkedHashMap<>();
+            for (String field : outputFields) {
+                fields.put(field, toOutputValue(field, score.getFieldValues().get(field)));
+            }
+            hits.add(SearchHit.builder()
+                    .id(score.getLongID())
+                    .score(score.getScore())
+                    .fields(fields)
+                    .build());
         }
+        return hits;
+    }
 
-        for (int i = startIndex; i <= endIndex && i < paragraphs.size(); i++) {
-            DocumentParserWithStructure.Paragraph para = paragraphs.get(i);
-            if (para.getType() != null &&
-                    (para.getType().equals("heading") ||
-                            (para.getLevel() != null && para.getLevel() > 0))) {
-                return true;
+    /**
+     * metadata、images 无论存为 JSON 还是 VarChar，都转换为普通对象返回
+     */
+    private Object toOutputValue(String field, Object value) {
+        if (value instanceof JsonElement) {
+            return JsonUtils.fromJson(value.toString(), Object.class);
+        }
+        if ((FIELD_METADATA.equals(field) || FIELD_IMAGES.equals(field)) && value instanceof String) {
+            String json = ((String) value).trim();
+            if (json.startsWith("{") || json.startsWith("[")) {
+                return JsonUtils.fromJson(json, Object.class);
             }
         }
+        return value;
+    }
 
-        return false;
+    private static List<Float> toFloatList(float[] vector) {
+        List<Float> list = new ArrayList<>(vector.length);
+        for (float v : vector) {
+            list.add(v);
+        }
+        return list;
     }
 
-    // 4. 图片与文档关联
-    private Map<Integer, List<DocumentParserWithStructure.ImagePosition>> associateImagesWithDocument(
-            DocumentParserWithStructure.DocumentStructure structure,
-            List<DocumentParserWithStructure.ImageInfo> images,
-            List<DocumentParserWithStructure.Paragraph> paragraphs) {
+    /**
+     * 将字符串转换为一致性级别，bounded/eventually 延迟更低，strong 保证读到最新写入
+     */
+    private ConsistencyLevelEnum getConsistencyLevel(String level) {
+        switch (level.trim().toLowerCase()) {
+            case "strong":
+                return ConsistencyLevelEnum.STRONG;
+            case "session":
+                return ConsistencyLevelEnum.SESSION;
+            case "bounded":
+                return ConsistencyLevelEnum.BOUNDED;
+            case "eventually":
+            case "eventual":
+                return ConsistencyLevelEnum.EVENTUALLY;
+            default:
+                throw new IllegalArgumentException("未知的一致性级别: " + level);
+        }
+    }
 
-        Map<Integer, List<DocumentParserWithStructure.ImagePosition>> imagePositions = new HashMap<>();
+    // ========== 删除与过滤 ==========
 
-        for (DocumentParserWithStructure.ImageInfo image : images) {
-            if (image.getPosition() != null) {
-                int paraIndex = image.getPosition().getParagraphIndex();
+    /**
+     * 按过滤表达式删除，表达式由 Milvus 服务端求值，返回删除行数。
+     * 只接受 && 连接的比较条件且至少有一个 == / in 条件，拒绝 id > 0 这类可能匹配整个集合的表达式
+     */
+    public long deleteByFilter(String collectionName, String filter) throws Exception {
+        if (filter == null || filter.isBlank()) {
+            throw new IllegalArgumentException("删除条件不能为空");
+        }
+        if (!MilvusFilterExpression.parse(filter).hasEqualityCondition()) {
+            throw new IllegalArgumentException("删除条件至少需要一个 == 或 in 条件: " + filter);
+        }
 
-                if (!imagePositions.containsKey(paraIndex)) {
-                    imagePositions.put(paraIndex, new ArrayList<>());
-                }
+        // 非主键条件的删除需要先在查询节点上求值，集合须已加载
+        R<MutationResult> response;
+        try (CollectionLoadManager.Lease ignored = collectionLoadManager.acquire(collectionName)) {
+            response = milvusClient.delete(DeleteParam.newBuilder()
+                    .withCollectionName(collectionName)
+                    .withExpr(filter)
+                    .build());
+        }
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            throw new Exception("删除失败: " + response.getMessage());
+        }
 
-                // 计算图片的精确字符位置
-                DocumentParserWithStructure.ImagePosition pos = image.getPosition();
-                if (paraIndex < paragraphs.size()) {
-                    DocumentParserWithStructure.Paragraph para = paragraphs.get(paraIndex);
-                    pos.setCharPosition(calculateCharPosition(para, pos.getRunIndex()));
+        searchResultCache.bump(collectionName);
+        bm25SparseEncoder.onRowsDeleted(collectionName);
+        long deleted = response.getData().getDeleteCnt();
+        log.info("删除完成: 集合={}, 条件={}, 行数={}", collectionName, filter, deleted);
+        return deleted;
+    }
 
-                    // 获取图片上下文
-                    String context = getImageContext(paragraphs, paraIndex);
-                    pos.setContext(context);
-                }
+    /**
+     * 删除某个文档的全部分块
+     */
+    public long deleteDocument(String collectionName, String documentId) throws Exception {
+        return deleteByFilter(collectionName, MilvusFilters.fieldEquals(FIELD_DOCUMENT_ID, documentId));
+    }
 
-                imagePositions.get(paraIndex).add(pos);
-            }
-        }
+    /**
+     * 集合的 metadata 字段是否为 JSON 类型
+     */
+    public boolean isJsonMetadata(String collectionName) {
+        return fieldTypes(collectionName).get(FIELD_METADATA) == DataType.JSON;
+    }
 
-        return imagePositions;
+    /**
+     * 集合是否以 tenant_id 作为分区键
+     */
+    public boolean hasTenantPartitionKey(String collectionName) {
+        return fieldTypes(collectionName).containsKey(FIELD_TENANT_ID);
     }
 
-    private int calculateCharPosition(DocumentParserWithStructure.Paragraph para, int runIndex) {
-        // 计算图片在段落文本中的大概位置
-        if (para.getRuns() == null || para.getRuns().size() <= runIndex) {
-            return 0;
+    /**
+     * 检索的实际过滤条件：指定租户时追加租户条件。
+     * 有分区键的集合使用 tenant_id 字段，Milvus 据此只检索该租户的分区；
+     * 否则退回 JSON metadata 中的 tenant_id（只过滤、不裁剪分区）
+     */
+    private String effectiveFilter(String collectionName, SearchRequest request) {
+        String tenantId = request.getTenantId();
+        if (tenantId == null || tenantId.isBlank()) {
+            return request.getFilter();
         }
 
-        int position = 0;
-        for (int i = 0; i < runIndex; i++) {
-            if (i < para.getRuns().size()) {
-                DocumentParserWithStructure.RunInfo run = para.getRuns().get(i);
-                if (run.getText() != null) {
-                    position += run.getText().length();
-                }
-            }
+        String tenantFilter;
+        if (hasTenantPartitionKey(collectionName)) {
+            tenantFilter = MilvusFilters.fieldEquals(FIELD_TENANT_ID, tenantId);
+        } else if (isJsonMetadata(collectionName)) {
+            tenantFilter = MilvusFilters.jsonEquals(FIELD_METADATA, "tenant_id", tenantId);
+        } else {
+            throw new IllegalArgumentException("集合 " + collectionName + " 没有租户字段，不支持按租户检索");
         }
-
-        return position;
+        return MilvusFilters.and(Arrays.asList(tenantFilter, request.getFilter()));
     }
 
-    private String getImageContext(List<DocumentParserWithStructure.Paragraph> paragraphs, int paraIndex) {
-        StringBuilder context = new StringBuilder();
-        int start = Math.max(0, paraIndex - 2);
-        int end = Math.min(paragraphs.size() - 1, paraIndex + 2);
+    /**
+     * 集合是否包含 BM25 稀疏向量字段
+     */
+    public boolean hasSparseVector(String collectionName) {
+        return fieldTypes(collectionName).get(FIELD_SPARSE_VECTOR) == DataType.SparseFloatVector;
+    }
 
-        for (int i = start; i <= end; i++) {
-            context.append(paragraphs.get(i).getText()).append("\n");
+    /**
+     * 集合各字段的类型，结果按集合缓存；获取失败时返回空（不缓存）
+     */
+    private Map<String, DataType> fieldTypes(String collectionName) {
+        Map<String, DataType> cached = fieldTypesByCollection.get(collectionName);
+        if (cached != null) {
+            return cached;
         }
 
-        return context.toString();
-    }
-
-    // 5. 智能分块（保持文档结构）
-    private List<DocumentParserWithStructure.DocumentChunk> chunkDocumentIntelligently(
-            DocumentParserWithStructure.DocumentContent docContent,
-            Map<Integer, List<DocumentParserWithStructure.ImagePosition>> imagePositions,
-            int chunkSize) {
-
-        List<DocumentParserWithStructure.DocumentChunk> chunks = new ArrayList<>();
-        List<DocumentParserWithStructure.Paragraph> paragraphs = docContent.getParagraphs();
-
-        int currentChunkStart = 0;
-        StringBuilder chunkText = new StringBuilder();
-        List<DocumentParserWithStructure.ImageInfo> chunkImages = new ArrayList<>();
-        int chunkId = 0;
-
-        for (int i = 0; i < paragraphs.size(); i++) {
-            DocumentParserWithStructure.Paragraph para = paragraphs.get(i);
-            String paraText = para.getText() + "\n";
-
-            // 检查是否需要新分块
-            if (chunkText.length() + paraText.length() > chunkSize && chunkText.length() > 0) {
-                // 保存当前分块
-                DocumentParserWithStructure.DocumentChunk chunk = createDocumentChunk(
-                        chunkId++, chunkText.toString(), chunkImages,
-                        currentChunkStart, i - 1, paragraphs
-                );
-                chunks.add(chunk);
-
-                // 开始新分块
-                currentChunkStart = i;
-                chunkText = new StringBuilder();
-                chunkImages = new ArrayList<>();
+        try {
+            R<DescribeCollectionResponse> response = milvusClient.describeCollection(DescribeCollectionParam.newBuilder()
+                    .withCollectionName(collectionName)
+                    .build());
+            if (response.getStatus() != R.Status.Success.getCode()) {
+                log.warn("获取集合结构失败: {}, {}", collectionName, response.getMessage());
+                return Map.of();
             }
 
-            // 添加段落文本
-            chunkText.append(paraText);
+            Map<String, DataType> types = new HashMap<>();
+            response.getData().getSchema().getFieldsList()
+                    .forEach(field -> types.put(field.getName(), field.getDataType()));
+            fieldTypesByCollection.put(collectionName, types);
+            return types;
+        } catch (Exception e) {
+            log.warn("获取集合结构失败: {}", collectionName, e);
+            return Map.of();
+        }
+    }
 
-            // 添加关联图片
-            if (imagePositions.containsKey(i)) {
-                for (DocumentParserWithStructure.ImagePosition pos : imagePositions.get(i)) {
-                    DocumentParserWithStructure.ImageInfo image = findImageByPosition(pos, docContent.getImages());
-                    if (image != null && !chunkImages.contains(image)) {
-                        chunkImages.add(image);
-                    }
-                }
-            }
+    private void recordStage(String stage, ImportContext context, long startNanos) {
+        importMetrics.recordStage(stage, context.getRequest().getCollectionName(),
+                context.getRequest().getTenantId(), startNanos);
+    }
 
-            // 如果是标题，强制分块
-            if (para.getType().equals("heading") && para.getLevel() <= 2) {
-                if (chunkText.length() > 0) {
-                    DocumentParserWithStructure.DocumentChunk chunk = createDocumentChunk(
-                            chunkId++, chunkText.toString(), chunkImages,
-                            currentChunkStart, i, paragraphs
-                    );
-                    chunks.add(chunk);
-
-                    currentChunkStart = i + 1;
-                    chunkText = new StringBuilder();
-                    chunkImages = new ArrayList<>();
-                }
+    /**
+     * 同一批次内文档的租户相同时取该租户，否则记为 mixed
+     */
+    private static String tenantOf(List<ImportContext> contexts) {
+        String tenant = null;
+        for (ImportContext context : contexts) {
+            String current = context.getRequest().getTenantId();
+            if (tenant == null) {
+                tenant = current;
+            } else if (!tenant.equals(current)) {
+                return "mixed";
             }
         }
+        return tenant;
+    }
+
+    public void completeImport(ImportContext context) {
+        context.getProgress().setStage(ImportProgress.STAGE_DONE);
 
-        // 添加最后一个分块
-        if (chunkText.length() > 0) {
-            DocumentParserWithStructure.DocumentChunk chunk = createDocumentChunk(
-                    chunkId, chunkText.toString(), chunkImages,
-                    currentChunkStart, paragraphs.size() - 1, paragraphs
-            );
-            chunks.add(chunk);
+        DocumentImportResult result = context.getResult();
+        result.setSuccess(true);
+        if (context.getDocContent() != null) {
+            result.setChunkCount(context.getChunks().size());
+            result.setImageCount(context.getImages().size());
+            result.setVectorCount(context.getEmbeddings().size());
         }
+        result.setEndTime(LocalDateTime.now());
+        result.calculateDuration();
+
+        importMetrics.recordDocument(context.getRequest().getCollectionName(), context.getRequest().getTenantId(), true, null);
+    }
+
+    public void failImport(ImportContext context, Exception e) {
+        log.error("文档导入失败: {}", context.getResult().getDocumentName(), e);
+        importMetrics.recordDocument(context.getRequest().getCollectionName(), context.getRequest().getTenantId(),
+                false, context.getProgress().getStage());
 
-        return chunks;
+        DocumentImportResult result = context.getResult();
+        result.setError(e.getMessage());
+        result.setEndTime(LocalDateTime.now());
+        result.calculateDuration();
     }
 
-    private DocumentParserWithStructure.DocumentChunk createDocumentChunk(int chunkId, String text, List<DocumentParserWithStructure.ImageInfo> images,
-                                                                          int startParaIndex, int endParaIndex,
-                                                                          List<DocumentParserWithStructure.Paragraph> paragraphs) {
-        DocumentParserWithStructure.DocumentChunk chunk = new DocumentParserWithStructure.DocumentChunk();
-        chunk.setChunkId(chunkId);
-        chunk.setText(text.trim());
-        chunk.setImages(images);
-        chunk.setStartParagraphIndex(startParaIndex);
-        chunk.setEndParagraphIndex(endParaIndex);
-        chunk.setWordCount(countWords(text));
-        chunk.setCharCount(text.length());
-
-        // 记录分块的元数据
-        Map<String, Object> metadata = new HashMap<>();
-        metadata.put("start_paragraph_id", paragraphs.get(startParaIndex).getId());
-        metadata.put("end_paragraph_id", paragraphs.get(endParaIndex).getId());
-        metadata.put("contains_headings", hasHeadings(paragraphs, startParaIndex, endParaIndex));
-        metadata.put("image_count", images.size());
-
-        chunk.setMetadata(metadata);
-        return chunk;
+    private List<DocumentParserWithStructure.TextEmbedding> generateEmbeddingsForChunks(List<DocumentParserWithStructure.DocumentChunk> chunks,
+                                                                                       ImportProgress progress,
+                                                                                       Executor requestExecutor) {
+        // 批量 + 并发向量化，单个批次失败时只对该批次使用零向量兜底
+        if (requestExecutor == null) {
+            return batchEmbeddingService.embedChunks(chunks, progress);
+        }
+        return batchEmbeddingService.embedChunks(chunks, progress, requestExecutor);
     }
 
     /**
@@ -909,12 +1145,20 @@ public class MilvusServiceImplV2 {
                     .withMaxLength(65535)
                     .build());
 
-            // 元数据字段
-            fields.add(FieldType.newBuilder()
-                    .withName(FIELD_METADATA)
-                    .withDataType(DataType.VarChar)
-                    .withMaxLength(65535)
-                    .build());
+            // 元数据字段：JSON 类型时可按键在服务端过滤
+            boolean jsonMetadata = "json".equalsIgnoreCase(metadataFieldType);
+            if (jsonMetadata) {
+                fields.add(FieldType.newBuilder()
+                        .withName(FIELD_METADATA)
+                        .withDataType(DataType.JSON)
+                        .build());
+            } else {
+                fields.add(FieldType.newBuilder()
+                        .withName(FIELD_METADATA)
+                        .withDataType(DataType.VarChar)
+                        .withMaxLength(65535)
+                        .build());
+            }
 
             // 创建时间字段
             fields.add(FieldType.newBuilder()
@@ -922,6 +1166,26 @@ public class MilvusServiceImplV2 {
                     .withDataType(DataType.Int64)
                     .build());
 
+            // 租户分区键字段：Milvus 按哈希将租户分配到固定数量的分区
+            boolean tenantPartitionKey = Boolean.TRUE.equals(tenantPartitionKeyEnabled);
+            if (tenantPartitionKey) {
+                fields.add(FieldType.newBuilder()
+                        .withName(FIELD_TENANT_ID)
+                        .withDataType(DataType.VarChar)
+                        .withMaxLength(128)
+                        .withPartitionKey(true)
+                        .build());
+            }
+
+            // BM25 稀疏向量字段，由客户端根据分块文本计算
+            boolean sparse = Boolean.TRUE.equals(sparseEnabled);
+            if (sparse) {
+                fields.add(FieldType.newBuilder()
+                        .withName(FIELD_SPARSE_VECTOR)
+                        .withDataType(DataType.SparseFloatVector)
+                        .build());
+            }
+
             // 2. 创建 CollectionSchema
             // 注意：在 2.5.4 中，使用 CollectionSchemaParam
             CollectionSchemaParam.Builder schemaBuilder = CollectionSchemaParam.newBuilder();
@@ -937,10 +1201,13 @@ public class MilvusServiceImplV2 {
                     .build();
 
             // 3. 创建 CreateCollectionParam
-            CreateCollectionParam createParam = CreateCollectionParam.newBuilder()
+            CreateCollectionParam.Builder createBuilder = CreateCollectionParam.newBuilder()
                     .withCollectionName(collectionName)
-                    .withSchema(schemaParam)
-                    .build();
+                    .withSchema(schemaParam);
+            if (tenantPartitionKey) {
+                createBuilder.withPartitionsNum(tenantPartitions);
+            }
+            CreateCollectionParam createParam = createBuilder.build();
 
             // 4. 创建集合
             R<RpcStatus> response = milvusClient.createCollection(createParam);
@@ -951,13 +1218,14 @@ public class MilvusServiceImplV2 {
 
             log.info("集合创建成功: {}", collectionName);
 
-            // 创建索引
+            // 创建索引，参数按索引配置档生成
+            IndexProfile profile = configuredIndexProfile();
             CreateIndexParam indexParam = CreateIndexParam.newBuilder()
                     .withCollectionName(collectionName)
                     .withFieldName(FIELD_VECTOR)
-                    .withIndexType(getIndexType(indexType))
+                    .withIndexType(profile.getIndexType())
                     .withMetricType(getMetricType(metricType))
-                    .withExtraParam("{\"M\": 16, \"efConstruction\": 200}")
+                    .withExtraParam(JsonUtils.toJson(profile.buildParams(vectorDimension)))
                     .build();
 
             R<RpcStatus> indexResponse = milvusClient.createIndex(indexParam);
@@ -966,6 +1234,30 @@ public class MilvusServiceImplV2 {
                 throw new Exception("创建索引失败: " + indexResponse.getMessage());
             }
 
+            if (sparse) {
+                R<RpcStatus> sparseIndexResponse = milvusClient.createIndex(CreateIndexParam.newBuilder()
+                        .withCollectionName(collectionName)
+                        .withFieldName(FIELD_SPARSE_VECTOR)
+                        .withIndexType(IndexType.SPARSE_INVERTED_INDEX)
+                        .withMetricType(MetricType.IP)
+                        .withExtraParam("{\"drop_ratio_build\": 0.2}")
+                        .build());
+                if (sparseIndexResponse.getStatus() != R.Status.Success.getCode()) {
+                    throw new Exception("创建稀疏向量索引失败: " + sparseIndexResponse.getMessage());
+                }
+            }
+
+            if (jsonMetadata) {
+                createMetadataJsonIndexes(collectionName);
+            }
+
+            Map<String, DataType> types = new HashMap<>();
+            fields.forEach(field -> types.put(field.getName(), field.getDataType()));
+            fieldTypesByCollection.put(collectionName, types);
+            indexProfilesByCollection.put(collectionName, profile);
+            tunedSearchValues.remove(collectionName);
+            searchResultCache.bump(collectionName);
+
             return true;
 
         } catch (Exception e) {
@@ -974,6 +1266,43 @@ public class MilvusServiceImplV2 {
         }
     }
 
+    /**
+     * 在 metadata 的常用过滤键上建立 JSON 路径倒排索引（需要 Milvus 2.5.11+，失败时仅告警）
+     */
+    private void createMetadataJsonIndexes(String collectionName) {
+        if (metadataJsonIndexes == null || metadataJsonIndexes.isBlank()) {
+            return;
+        }
+
+        for (String spec : metadataJsonIndexes.split(",")) {
+            String[] parts = spec.trim().split(":");
+            if (parts.length != 2) {
+                log.warn("忽略无效的 JSON 索引配置: {}", spec);
+                continue;
+            }
+
+            String key = parts[0].trim();
+            Map<String, Object> params = new LinkedHashMap<>();
+            params.put("json_path", MilvusFilters.jsonPath(FIELD_METADATA, key));
+            params.put("json_cast_type", parts[1].trim().toLowerCase());
+
+            try {
+                R<RpcStatus> response = milvusClient.createIndex(CreateIndexParam.newBuilder()
+                        .withCollectionName(collectionName)
+                        .withFieldName(FIELD_METADATA)
+                        .withIndexName("idx_" + FIELD_METADATA + "_" + key)
+                        .withIndexType(IndexType.INVERTED)
+                        .withExtraParam(JsonUtils.toJson(params))
+                        .build());
+                if (response.getStatus() != R.Status.Success.getCode()) {
+                    log.warn("创建 JSON 路径索引失败: 集合={}, 键={}, 原因={}", collectionName, key, response.getMessage());
+                }
+            } catch (Exception e) {
+                log.warn("创建 JSON 路径索引失败: 集合={}, 键={}", collectionName, key, e);
+            }
+        }
+    }
+
     /**
      * 将字符串转换为 IndexType 枚举
      */
@@ -1051,27 +1380,61 @@ public class MilvusServiceImplV2 {
         }
     }
 
-    // ========== 私有方法 ==========
+    /**
+     * 删除集合，同时清除该集合的结构缓存、加载状态、BM25 统计，并使检索结果缓存失效
+     */
+    public Boolean dropCollection(String collectionName) throws Exception {
+        try {
+            R<RpcStatus> response = milvusClient.dropCollection(DropCollectionParam.newBuilder()
+                    .withCollectionName(collectionName)
+                    .build());
+
+            if (response.getStatus() != R.Status.Success.getCode()) {
+                throw new Exception("删除集合失败: " + response.getMessage());
+            }
+
+            log.info("集合删除成功: {}", collectionName);
+            return true;
+
+        } catch (Exception e) {
+            log.error("删除集合失败", e);
+            throw e;
+        } finally {
+            fieldTypesByCollection.remove(collectionName);
+            indexProfilesByCollection.remove(collectionName);
+            tunedSearchValues.remove(collectionName);
+            collectionLoadManager.forget(collectionName);
+            bm25SparseEncoder.clear(collectionName);
+            searchResultCache.bump(collectionName);
+        }
+    }
 
-    private void ensureCollectionExists(String collectionName) throws Exception {
+    public void ensureCollectionExists(String collectionName) throws Exception {
         if (!hasCollection(collectionName)) {
             createCollection(collectionName);
         }
     }
 
+    // ========== 私有方法 ==========
+
     private String generateDocumentId(MultipartFile file) {
         return file.getOriginalFilename() + "_" + UUID.randomUUID().toString().substring(0, 8);
     }
 
 
     /**
-     * 计算单词数
+     * 单个文档在各导入阶段之间传递的状态
      */
-    private int countWords(String text) {
-        if (text == null || text.trim().isEmpty()) {
-            return 0;
-        }
-
-        return text.trim().split("\\s+").length;
+    @Data
+    public static class ImportContext {
+        private MultipartFile file;
+        private DocumentImportRequest request;
+        private ImportProgress progress;
+        private DocumentImportResult result;
+        private String documentId;
+        private DocumentParserWithStructure.DocumentContent docContent;
+        private List<DocumentParserWithStructure.ImageInfo> images = new ArrayList<>();
+        private List<DocumentParserWithStructure.DocumentChunk> chunks = new ArrayList<>();
+        private List<DocumentParserWithStructure.TextEmbedding> embeddings = new ArrayList<>();
     }
 }
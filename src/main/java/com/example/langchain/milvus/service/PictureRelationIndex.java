@@ -0,0 +1,114 @@
+package com.example.langchain.milvus.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.ooxml.POIXMLDocumentPart;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFPictureData;
+import org.apache.xmlbeans.XmlCursor;
+
+import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 图片关系索引：关系ID → 图片序号、段落 → 引用的关系ID，
+ * 一次遍历正文建好后，图片定位只需哈希查找
+ */
+@Slf4j
+public class PictureRelationIndex {
+
+    private static final String NS_RELATIONSHIPS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+    // DrawingML 图片通过 a:blip 的 r:embed / r:link 引用，VML 图片通过 v:imagedata 的 r:id 引用
+    private static final String BLIP_PATH =
+            "declare namespace a='http://schemas.openxmlformats.org/drawingml/2006/main' .//a:blip";
+    private static final String IMAGEDATA_PATH =
+            "declare namespace v='urn:schemas-microsoft-com:vml' .//v:imagedata";
+
+    private static final QName R_EMBED = new QName(NS_RELATIONSHIPS, "embed");
+    private static final QName R_LINK = new QName(NS_RELATIONSHIPS, "link");
+    private static final QName R_ID = new QName(NS_RELATIONSHIPS, "id");
+
+    private final Map<String, Integer> pictureIndexByRelationId = new HashMap<>();
+    private final Map<XWPFParagraph, List<Integer>> picturesByParagraph = new IdentityHashMap<>();
+
+    private PictureRelationIndex() {
+    }
+
+    /**
+     * 构建索引，图片序号与 doc.getAllPictures() 的顺序一致
+     */
+    public static PictureRelationIndex build(XWPFDocument doc, List<XWPFPictureData> allPictureData) {
+        PictureRelationIndex index = new PictureRelationIndex();
+
+        Map<XWPFPictureData, Integer> pictureOrder = new IdentityHashMap<>();
+        for (int i = 0; i < allPictureData.size(); i++) {
+            pictureOrder.put(allPictureData.get(i), i);
+        }
+
+        // 1. 关系ID → 图片
+        for (POIXMLDocumentPart.RelationPart relationPart : doc.getRelationParts()) {
+            POIXMLDocumentPart part = relationPart.getDocumentPart();
+            if (part instanceof XWPFPictureData) {
+                Integer order = pictureOrder.get(part);
+                if (order != null) {
+                    index.pictureIndexByRelationId.put(relationPart.getRelationship().getId(), order);
+                }
+            }
+        }
+
+        if (index.pictureIndexByRelationId.isEmpty()) {
+            return index;
+        }
+
+        // 2. 段落 → 引用的图片
+        for (XWPFParagraph paragraph : doc.getParagraphs()) {
+            Set<Integer> pictures = new LinkedHashSet<>();
+            try {
+                index.collect(paragraph, BLIP_PATH, pictures, R_EMBED, R_LINK);
+                index.collect(paragraph, IMAGEDATA_PATH, pictures, R_ID);
+            } catch (Exception e) {
+                log.debug("索引段落图片失败: {}", e.getMessage());
+            }
+
+            if (!pictures.isEmpty()) {
+                index.picturesByParagraph.put(paragraph, new ArrayList<>(pictures));
+            }
+        }
+
+        return index;
+    }
+
+    private void collect(XWPFParagraph paragraph, String path, Set<Integer> pictures, QName... attributes) {
+        try (XmlCursor cursor = paragraph.getCTP().newCursor()) {
+            cursor.selectPath(path);
+            while (cursor.toNextSelection()) {
+                for (QName attribute : attributes) {
+                    String relationId = cursor.getAttributeText(attribute);
+                    Integer order = relationId == null ? null : pictureIndexByRelationId.get(relationId);
+                    if (order != null) {
+                        pictures.add(order);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 段落中引用的图片序号（按出现顺序）
+     */
+    public List<Integer> picturesInParagraph(XWPFParagraph paragraph) {
+        return picturesByParagraph.getOrDefault(paragraph, Collections.emptyList());
+    }
+
+    public Integer pictureIndexOf(String relationId) {
+        return pictureIndexByRelationId.get(relationId);
+    }
+}
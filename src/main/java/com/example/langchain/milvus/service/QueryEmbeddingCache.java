@@ -0,0 +1,87 @@
+package com.example.langchain.milvus.service;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 查询向量缓存：归一化后的查询文本 → 向量，内存 LRU 在前，未命中时再查分块向量缓存（含磁盘），最后请求模型
+ */
+@Component
+@Slf4j
+public class QueryEmbeddingCache {
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private EmbeddingCache embeddingCache;
+
+    @Value("${app.search.query-cache-entries:2000}")
+    private Integer maxEntries;
+
+    private Map<String, float[]> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * 获取查询文本的向量，返回的数组为缓存内共享实例，调用方不得修改
+     */
+    public float[] embed(String query) {
+        String normalized = EmbeddingCache.normalize(query);
+        synchronized (cache) {
+            float[] cached = cache.get(normalized);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+
+        byte[] key = embeddingCache.isEnabled() ? embeddingCache.key(normalized) : null;
+        float[] vector = key == null ? null : embeddingCache.get(key);
+        if (vector == null) {
+            vector = embeddingModel.embed(normalized).content().vector();
+            if (key != null) {
+                embeddingCache.put(key, vector);
+            }
+        }
+
+        synchronized (cache) {
+            cache.put(normalized, vector);
+        }
+        return vector;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.langchain.milvus.service;
+
+import com.example.langchain.milvus.dto.SearchResult;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 检索结果缓存：键为 (集合, 查询向量哈希, topK, 过滤条件, 检索参数)，LRU 按条目数淘汰。
+ * 每个集合维护一个代数，导入、删除、建删集合时递增；缓存条目的代数与集合当前代数一致时才命中，
+ * 因此写入后不会返回旧结果。非 strong 一致性的检索可能还看不到刚写入的数据，
+ * 写入后 settle-ms 内这类结果不写入缓存。代数只在本进程内维护，多实例部署时其他实例的写入不会使本地缓存失效。
+ */
+@Component
+@Slf4j
+public class SearchResultCache {
+
+    @Value("${app.search.result-cache.enabled:true}")
+    private Boolean enabled;
+
+    @Value("${app.search.result-cache.max-entries:1000}")
+    private Integer maxEntries;
+
+    // 对应 bounded 一致性的容忍延迟，写入后该时间内非 strong 检索的结果不缓存
+    @Value("${app.search.result-cache.settle-ms:5000}")
+    private Long settleMs;
+
+    private final Map<String, Generation> generations = new ConcurrentHashMap<>();
+    private Map<String, Entry> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(enabled);
+    }
+
+    /**
+     * 集合当前代数，须在发起检索前读取并随结果一起写入缓存
+     */
+    public long generation(String collectionName) {
+        return generationOf(collectionName).value.get();
+    }
+
+    /**
+     * 集合数据发生变化，使该集合已缓存的结果全部失效
+     */
+    public void bump(String collectionName) {
+        Generation state = generationOf(collectionName);
+        state.bumpedAt = System.currentTimeMillis();
+        long generation = state.value.incrementAndGet();
+        log.debug("集合代数递增: {} -> {}", collectionName, generation);
+    }
+
+    /**
+     * 缓存键：向量按字节取 SHA-256，其余参数按原文拼接
+     */
+    public String key(String collectionName, float[] queryVector, int topK, String filter, String params) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer buffer = ByteBuffer.allocate(queryVector.length * Float.BYTES);
+            buffer.asFloatBuffer().put(queryVector);
+            digest.update(buffer.array());
+            return collectionName + '\u0000' + HexFormat.of().formatHex(digest.digest()) + '\u0000' + topK
+                    + '\u0000' + (filter == null ? "" : filter) + '\u0000' + params;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public SearchResult get(String collectionName, String key) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        long current = generation(collectionName);
+        synchronized (cache) {
+            Entry entry = cache.get(key);
+            if (entry != null && entry.generation == current) {
+                hits.incrementAndGet();
+                return entry.result;
+            }
+            if (entry != null) {
+                cache.remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 写入缓存；generation 为检索前读取的代数，检索期间集合有写入时该条目不会被命中。
+     * strong 为 false 且距上次写入不足 settle-ms 时不缓存
+     */
+    public void put(String collectionName, String key, long generation, SearchResult result, boolean strong) {
+        if (!isEnabled() || !isCacheable(collectionName, strong)) {
+            return;
+        }
+        synchronized (cache) {
+            cache.put(key, new Entry(generation, result));
+        }
+    }
+
+    /**
+     * 集合最近一次写入已超过 settle-ms，或本次为 strong 一致性检索时，结果可以缓存
+     */
+    public boolean isCacheable(String collectionName, boolean strong) {
+        return strong || System.currentTimeMillis() - generationOf(collectionName).bumpedAt >= settleMs;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private Generation generationOf(String collectionName) {
+        return generations.computeIfAbsent(collectionName, name -> new Generation());
+    }
+
+    private static final class Generation {
+        private final AtomicLong value = new AtomicLong();
+        private volatile long bumpedAt;
+    }
+
+    private static final class Entry {
+        private final long generation;
+        private final SearchResult result;
+
+        Entry(long generation, SearchResult result) {
+            this.generation = generation;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.langchain.milvus.service;
+
+import com.example.langchain.milvus.dto.SearchResult;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 语义近似查询缓存（检索结果的二级缓存）：改写措辞的同一问题向量几乎相同，精确键缓存无法命中。
+ * 最近的查询向量按随机超平面 LSH 分桶（多张表），查询时只与同桶候选计算余弦相似度，
+ * 不低于阈值且集合代数一致时返回缓存的结果。
+ */
+@Component
+public class SemanticQueryCache {
+
+    @Value("${app.search.semantic-cache.enabled:false}")
+    private Boolean enabled;
+
+    @Value("${app.search.semantic-cache.threshold:0.97}")
+    private Double threshold;
+
+    @Value("${app.search.semantic-cache.max-entries:2000}")
+    private Integer maxEntries;
+
+    // LSH 表数与每张表的签名位数：表越多召回越高，位数越多每桶候选越少
+    @Value("${app.search.semantic-cache.tables:6}")
+    private Integer tables;
+
+    @Value("${app.search.semantic-cache.bits:10}")
+    private Integer bits;
+
+    @Value("${app.milvus.vector-dimension:1024}")
+    private Integer vectorDimension;
+
+    // [表][位][维度]
+    private float[][][] hyperplanes;
+    private List<Map<Integer, Set<Long>>> buckets;
+    private Map<Long, Entry> entries;
+    private long nextId;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        // 固定种子，重启后签名一致，便于排查
+        Random random = new Random(42);
+        hyperplanes = new float[tables][bits][vectorDimension];
+        buckets = new ArrayList<>(tables);
+        for (int t = 0; t < tables; t++) {
+            for (int b = 0; b < bits; b++) {
+                for (int d = 0; d < vectorDimension; d++) {
+                    hyperplanes[t][b][d] = (float) random.nextGaussian();
+                }
+            }
+            buckets.add(new HashMap<>());
+        }
+
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if (size() > maxEntries) {
+                    unindex(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(enabled);
+    }
+
+    /**
+     * 查找相似度不低于阈值的缓存结果；scope 为除查询向量外的其余检索参数，须完全一致
+     */
+    public Match get(String collectionName, String scope, float[] queryVector, long generation) {
+        if (!isEnabled() || queryVector.length != vectorDimension) {
+            return null;
+        }
+
+        float[] normalized = normalize(queryVector);
+        int[] signatures = signatures(normalized);
+
+        synchronized (this) {
+            Set<Long> candidates = new HashSet<>();
+            for (int t = 0; t < tables; t++) {
+                Set<Long> bucket = buckets.get(t).get(signatures[t]);
+                if (bucket != null) {
+                    candidates.addAll(bucket);
+                }
+            }
+
+            Entry best = null;
+            double bestSimilarity = threshold;
+            for (Long id : candidates) {
+                Entry entry = entries.get(id);
+                if (entry == null || !entry.collectionName.equals(collectionName) || !entry.scope.equals(scope)) {
+                    continue;
+                }
+                if (entry.generation != generation) {
+                    unindex(id, entry);
+                    entries.remove(id);
+                    continue;
+                }
+                double similarity = dot(normalized, entry.vector);
+                if (similarity >= bestSimilarity) {
+                    bestSimilarity = similarity;
+                    best = entry;
+                }
+            }
+
+            if (best != null) {
+                hits.incrementAndGet();
+                return new Match(best.result, (float) bestSimilarity);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String collectionName, String scope, float[] queryVector, long generation, SearchResult result) {
+        if (!isEnabled() || queryVector.length != vectorDimension) {
+            return;
+        }
+
+        float[] normalized = normalize(queryVector);
+        Entry entry = new Entry(collectionName, scope, normalized, signatures(normalized), generation, result);
+        synchronized (this) {
+            long id = nextId++;
+            for (int t = 0; t < tables; t++) {
+                buckets.get(t).computeIfAbsent(entry.signatures[t], key -> new HashSet<>()).add(id);
+            }
+            entries.put(id, entry);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void unindex(Long id, Entry entry) {
+        for (int t = 0; t < tables; t++) {
+            Set<Long> bucket = buckets.get(t).get(entry.signatures[t]);
+            if (bucket != null) {
+                bucket.remove(id);
+                if (bucket.isEmpty()) {
+                    buckets.get(t).remove(entry.signatures[t]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 每张表的签名：向量落在各超平面哪一侧
+     */
+    private int[] signatures(float[] vector) {
+        int[] signatures = new int[tables];
+        for (int t = 0; t < tables; t++) {
+            int signature = 0;
+            for (int b = 0; b < bits; b++) {
+                if (dot(vector, hyperplanes[t][b]) >= 0) {
+                    signature |= 1 << b;
+                }
+            }
+            signatures[t] = signature;
+        }
+        return signatures;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = Math.sqrt(dot(vector, vector));
+        float[] normalized = new float[vector.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * 命中结果及与缓存查询的余弦相似度
+     */
+    public static final class Match {
+        private final SearchResult result;
+        private final float similarity;
+
+        Match(SearchResult result, float similarity) {
+            this.result = result;
+            this.similarity = similarity;
+        }
+
+        public SearchResult getResult() {
+            return result;
+        }
+
+        public float getSimilarity() {
+            return similarity;
+        }
+    }
+
+    private static final class Entry {
+        private final String collectionName;
+        private final String scope;
+        private final float[] vector;
+        private final int[] signatures;
+        private final long generation;
+        private final SearchResult result;
+
+        Entry(String collectionName, String scope, float[] vector, int[] signatures, long generation, SearchResult result) {
+            this.collectionName = collectionName;
+            this.scope = scope;
+            this.vector = vector;
+            this.signatures = signatures;
+            this.generation = generation;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.langchain.milvus.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 增量分块：逐段落接收，规则与 MilvusServiceImplV2 的智能分块一致
+ * （超出分块大小切分、一二级标题强制切分），只保留当前分块的文本和图片
+ */
+public class StreamingChunker {
+
+    @FunctionalInterface
+    public interface ChunkHandler {
+        void onChunk(DocumentParserWithStructure.DocumentChunk chunk) throws Exception;
+    }
+
+    private final int chunkSize;
+    private final ChunkHandler handler;
+
+    private int chunkId = 0;
+    private int chunkStart = 0;
+    private int lastParagraph = -1;
+    private boolean containsHeadings = false;
+    private StringBuilder chunkText = new StringBuilder();
+    private List<DocumentParserWithStructure.ImageInfo> chunkImages = new ArrayList<>();
+
+    public StreamingChunker(int chunkSize, ChunkHandler handler) {
+        this.chunkSize = chunkSize;
+        this.handler = handler;
+    }
+
+    public void accept(DocumentParserWithStructure.Paragraph para) throws Exception {
+        int i = para.getId();
+        String paraText = para.getText() + "\n";
+
+        // 检查是否需要新分块
+        if (chunkText.length() + paraText.length() > chunkSize && chunkText.length() > 0) {
+            emit(lastParagraph);
+            chunkStart = i;
+        }
+
+        chunkText.append(paraText);
+        lastParagraph = i;
+
+        boolean heading = "heading".equals(para.getType());
+        if (heading || (para.getLevel() != null && para.getLevel() > 0)) {
+            containsHeadings = true;
+        }
+
+        // 添加关联图片
+        if (para.getImages() != null) {
+            for (DocumentParserWithStructure.ImageInfo image : para.getImages()) {
+                if (!chunkImages.contains(image)) {
+                    chunkImages.add(image);
+                }
+            }
+        }
+
+        // 如果是标题，强制分块
+        if (heading && para.getLevel() != null && para.getLevel() <= 2) {
+            emit(i);
+            chunkStart = i + 1;
+        }
+    }
+
+    /**
+     * 输出最后一个分块
+     */
+    public void finish() throws Exception {
+        if (chunkText.length() > 0) {
+            emit(lastParagraph);
+        }
+    }
+
+    public int getChunkCount() {
+        return chunkId;
+    }
+
+    private void emit(int endParagraph) throws Exception {
+        String text = chunkText.toString();
+
+        DocumentParserWithStructure.DocumentChunk chunk = new DocumentParserWithStructure.DocumentChunk();
+        chunk.setChunkId(chunkId++);
+        chunk.setText(text.trim());
+        chunk.setImages(chunkImages);
+        chunk.setStartParagraphIndex(chunkStart);
+        chunk.setEndParagraphIndex(endParagraph);
+        chunk.setWordCount(text.trim().isEmpty() ? 0 : text.trim().split("\\s+").length);
+        chunk.setCharCount(text.length());
+
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("start_paragraph_id", chunkStart);
+        metadata.put("end_paragraph_id", endParagraph);
+        metadata.put("contains_headings", containsHeadings);
+        metadata.put("image_count", chunkImages.size());
+        chunk.setMetadata(metadata);
+
+        chunkText = new StringBuilder();
+        chunkImages = new ArrayList<>();
+        containsHeadings = false;
+
+        handler.onChunk(chunk);
+    }
+}
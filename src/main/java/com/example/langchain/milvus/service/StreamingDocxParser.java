@@ -0,0 +1,306 @@
+package com.example.langchain.milvus.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 流式 DOCX 解析：用 StAX 直接读取包内的 word/document.xml，逐段落回调，
+ * 不构建 POI DOM，也不保留全文。图片按引用顺序从包内流式写盘，不进入堆内存
+ */
+@Component
+@Slf4j
+public class StreamingDocxParser {
+
+    private static final String DOCUMENT_PART = "word/document.xml";
+    private static final String DOCUMENT_RELS = "word/_rels/document.xml.rels";
+
+    private static final String NS_W = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+    private static final String NS_A = "http://schemas.openxmlformats.org/drawingml/2006/main";
+    private static final String NS_V = "urn:schemas-microsoft-com:vml";
+    private static final String NS_R = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String NS_PACKAGE_RELS = "http://schemas.openxmlformats.org/package/2006/relationships";
+
+    private final XMLInputFactory xmlInputFactory;
+
+    public StreamingDocxParser() {
+        xmlInputFactory = XMLInputFactory.newFactory();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    @FunctionalInterface
+    public interface ParagraphHandler {
+        void onParagraph(DocumentParserWithStructure.Paragraph paragraph) throws Exception;
+    }
+
+    /**
+     * 逐段落解析，返回段落数。同一段落内的文本框等嵌套段落并入外层段落
+     */
+    public int parse(Path docx, String imageOutputDir, boolean extractImages, ParagraphHandler handler) throws Exception {
+        try (ZipFile zip = new ZipFile(docx.toFile())) {
+            ZipEntry documentEntry = zip.getEntry(DOCUMENT_PART);
+            if (documentEntry == null) {
+                throw new Exception("无效的DOCX文件: 缺少 " + DOCUMENT_PART);
+            }
+
+            ImageSink images = new ImageSink(zip, readRelationships(zip), imageOutputDir, extractImages);
+
+            try (InputStream in = zip.getInputStream(documentEntry)) {
+                XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in, "UTF-8");
+                try {
+                    int count = parseBody(reader, images, handler);
+                    log.info("流式解析完成: 段落数={}, 图片数={}", count, images.saved.size());
+                    return count;
+                } finally {
+                    reader.close();
+                }
+            }
+        }
+    }
+
+    private int parseBody(XMLStreamReader reader, ImageSink images, ParagraphHandler handler) throws Exception {
+        int paraIndex = 0;
+        int charPosition = 0;
+
+        // 当前段落状态，只在段落内有效
+        int paragraphDepth = 0;
+        boolean inText = false;
+        String style = null;
+        int runIndex = -1;
+        StringBuilder text = new StringBuilder();
+        List<DocumentParserWithStructure.ImageInfo> paraImages = new ArrayList<>();
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String ns = reader.getNamespaceURI();
+                String name = reader.getLocalName();
+
+                if (NS_W.equals(ns)) {
+                    switch (name) {
+                        case "p":
+                            if (paragraphDepth++ == 0) {
+                                style = null;
+                                runIndex = -1;
+                                text.setLength(0);
+                                paraImages = new ArrayList<>();
+                            }
+                            break;
+                        case "pStyle":
+                            if (paragraphDepth == 1) {
+                                style = reader.getAttributeValue(NS_W, "val");
+                            }
+                            break;
+                        case "r":
+                            if (paragraphDepth == 1) {
+                                runIndex++;
+                            }
+                            break;
+                        case "t":
+                            inText = paragraphDepth > 0;
+                            break;
+                        case "tab":
+                            if (paragraphDepth > 0) {
+                                text.append('\t');
+                            }
+                            break;
+                        case "br":
+                        case "cr":
+                            if (paragraphDepth > 0) {
+                                text.append('\n');
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                } else if (paragraphDepth > 0 && NS_A.equals(ns) && "blip".equals(name)) {
+                    addImage(images, paraImages, reader.getAttributeValue(NS_R, "embed"), paraIndex, runIndex, text.length());
+                    addImage(images, paraImages, reader.getAttributeValue(NS_R, "link"), paraIndex, runIndex, text.length());
+                } else if (paragraphDepth > 0 && NS_V.equals(ns) && "imagedata".equals(name)) {
+                    addImage(images, paraImages, reader.getAttributeValue(NS_R, "id"), paraIndex, runIndex, text.length());
+                }
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                if (inText) {
+                    text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (!NS_W.equals(reader.getNamespaceURI())) {
+                    continue;
+                }
+
+                String name = reader.getLocalName();
+                if ("t".equals(name)) {
+                    inText = false;
+                } else if ("p".equals(name) && --paragraphDepth == 0) {
+                    String paraText = text.toString();
+                    String trimmed = paraText.trim();
+
+                    DocumentParserWithStructure.Paragraph para = new DocumentParserWithStructure.Paragraph();
+                    para.setId(paraIndex);
+                    para.setText(trimmed);
+                    para.setStartPos(charPosition);
+                    para.setEndPos(charPosition + trimmed.length());
+                    para.setType(DocumentParserWithStructure.detectParagraphType(style, trimmed));
+                    para.setLevel(DocumentParserWithStructure.detectHeadingLevel(style, trimmed));
+                    if (style != null) {
+                        para.getStyle().put("style_name", style);
+                    }
+
+                    for (DocumentParserWithStructure.ImageInfo image : paraImages) {
+                        if (image.getPosition() != null && image.getPosition().getParagraphText() == null
+                                && image.getPosition().getParagraphIndex() == paraIndex) {
+                            image.getPosition().setParagraphText(paraText);
+                        }
+                    }
+                    para.setImages(paraImages);
+
+                    handler.onParagraph(para);
+
+                    charPosition += trimmed.length() + 1;
+                    paraIndex++;
+                }
+            }
+        }
+
+        return paraIndex;
+    }
+
+    private void addImage(ImageSink images, List<DocumentParserWithStructure.ImageInfo> paraImages,
+                          String relationId, int paraIndex, int runIndex, int charPosition) throws Exception {
+        if (relationId == null || relationId.isEmpty()) {
+            return;
+        }
+
+        DocumentParserWithStructure.ImageInfo image = images.resolve(relationId);
+        if (image == null || paraImages.contains(image)) {
+            return;
+        }
+
+        // 重复出现的图片保留首次出现的位置
+        if (image.getPosition() == null) {
+            DocumentParserWithStructure.ImagePosition position = new DocumentParserWithStructure.ImagePosition();
+            position.setParagraphIndex(paraIndex);
+            position.setParagraphId(paraIndex);
+            position.setRunIndex(runIndex);
+            position.setCharPosition(charPosition);
+            image.setPosition(position);
+        }
+        paraImages.add(image);
+    }
+
+    /**
+     * 读取正文部件的关系：关系ID → 包内路径（仅图片等内部目标）
+     */
+    private Map<String, String> readRelationships(ZipFile zip) throws Exception {
+        Map<String, String> targets = new HashMap<>();
+        ZipEntry relsEntry = zip.getEntry(DOCUMENT_RELS);
+        if (relsEntry == null) {
+            return targets;
+        }
+
+        try (InputStream in = zip.getInputStream(relsEntry)) {
+            XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in, "UTF-8");
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT
+                            && NS_PACKAGE_RELS.equals(reader.getNamespaceURI())
+                            && "Relationship".equals(reader.getLocalName())) {
+                        if ("External".equals(reader.getAttributeValue(null, "TargetMode"))) {
+                            continue;
+                        }
+                        String id = reader.getAttributeValue(null, "Id");
+                        String target = reader.getAttributeValue(null, "Target");
+                        if (id != null && target != null) {
+                            targets.put(id, resolveTarget(target));
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return targets;
+    }
+
+    private static String resolveTarget(String target) {
+        if (target.startsWith("/")) {
+            return target.substring(1);
+        }
+        return Paths.get("word").resolve(target).normalize().toString().replace('\\', '/');
+    }
+
+    /**
+     * 图片写出：首次引用时把包内图片流式写到输出目录，按内容哈希命名并去重
+     */
+    private static class ImageSink {
+        private final ZipFile zip;
+        private final Map<String, String> relationTargets;
+        private final String outputDir;
+        private final boolean extract;
+        private final Map<String, DocumentParserWithStructure.ImageInfo> byRelationId = new HashMap<>();
+        private final Map<String, DocumentParserWithStructure.ImageInfo> byHash = new HashMap<>();
+        private final List<DocumentParserWithStructure.ImageInfo> saved = new ArrayList<>();
+
+        ImageSink(ZipFile zip, Map<String, String> relationTargets, String outputDir, boolean extract) {
+            this.zip = zip;
+            this.relationTargets = relationTargets;
+            this.outputDir = outputDir;
+            this.extract = extract;
+        }
+
+        DocumentParserWithStructure.ImageInfo resolve(String relationId) throws Exception {
+            if (!extract) {
+                return null;
+            }
+            if (byRelationId.containsKey(relationId)) {
+                return byRelationId.get(relationId);
+            }
+
+            DocumentParserWithStructure.ImageInfo image = null;
+            String target = relationTargets.get(relationId);
+            ZipEntry entry = target == null ? null : zip.getEntry(target);
+            if (entry != null) {
+                image = save(entry);
+            }
+            byRelationId.put(relationId, image);
+            return image;
+        }
+
+        private DocumentParserWithStructure.ImageInfo save(ZipEntry entry) throws Exception {
+            String entryName = entry.getName();
+            int dot = entryName.lastIndexOf('.');
+            String format = dot < 0 ? "bin" : entryName.substring(dot + 1).toLowerCase();
+
+            Path dir = Paths.get(outputDir);
+            Files.createDirectories(dir);
+            DocumentParserWithStructure.ImageInfo stored;
+            try (InputStream in = zip.getInputStream(entry)) {
+                stored = ImageExtractorWithPosition.storeImage(in, dir, format);
+            }
+
+            DocumentParserWithStructure.ImageInfo existing = byHash.get(stored.getContentHash());
+            if (existing != null) {
+                return existing;
+            }
+            stored.setIndex(saved.size());
+            saved.add(stored);
+            byHash.put(stored.getContentHash(), stored);
+            return stored;
+        }
+    }
+}
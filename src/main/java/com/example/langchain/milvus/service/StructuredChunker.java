@@ -0,0 +1,442 @@
+package com.example.langchain.milvus.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 整篇文档的结构化分块：图片按段落关联后按 ChunkStrategy 分块，分块为全文上的偏移区间。
+ * 无状态，导入流程与基准测试共用（流式导入见 StreamingChunker，按 semantic 规则分块）
+ */
+public final class StructuredChunker {
+
+    private StructuredChunker() {
+    }
+
+    // 图片与文档关联
+    public static Map<Integer, List<DocumentParserWithStructure.ImagePosition>> associateImagesWithDocument(
+            DocumentParserWithStructure.DocumentStructure structure,
+            List<DocumentParserWithStructure.ImageInfo> images,
+            List<DocumentParserWithStructure.Paragraph> paragraphs) {
+
+        Map<Integer, List<DocumentParserWithStructure.ImagePosition>> imagePositions = new HashMap<>();
+
+        for (DocumentParserWithStructure.ImageInfo image : images) {
+            if (image.getPosition() != null) {
+                int paraIndex = image.getPosition().getParagraphIndex();
+
+                if (!imagePositions.containsKey(paraIndex)) {
+                    imagePositions.put(paraIndex, new ArrayList<>());
+                }
+
+                // 计算图片的精确字符位置
+                DocumentParserWithStructure.ImagePosition pos = image.getPosition();
+                if (paraIndex < paragraphs.size()) {
+                    DocumentParserWithStructure.Paragraph para = paragraphs.get(paraIndex);
+                    pos.setCharPosition(calculateCharPosition(para, pos.getRunIndex()));
+
+                    // 获取图片上下文
+                    String context = getImageContext(paragraphs, paraIndex);
+                    pos.setContext(context);
+                }
+
+                imagePositions.get(paraIndex).add(pos);
+            }
+        }
+
+        return imagePositions;
+    }
+
+    private static int calculateCharPosition(DocumentParserWithStructure.Paragraph para, int runIndex) {
+        // 计算图片在段落文本中的大概位置
+        if (para.getRuns() == null || para.getRuns().size() <= runIndex) {
+            return 0;
+        }
+
+        int position = 0;
+        for (int i = 0; i < runIndex; i++) {
+            if (i < para.getRuns().size()) {
+                DocumentParserWithStructure.RunInfo run = para.getRuns().get(i);
+                if (run.getText() != null) {
+                    position += run.getText().length();
+                }
+            }
+        }
+
+        return position;
+    }
+
+    private static String getImageContext(List<DocumentParserWithStructure.Paragraph> paragraphs, int paraIndex) {
+        StringBuilder context = new StringBuilder();
+        int start = Math.max(0, paraIndex - 2);
+        int end = Math.min(paragraphs.size() - 1, paraIndex + 2);
+
+        for (int i = start; i <= end; i++) {
+            context.append(paragraphs.get(i).getText()).append("\n");
+        }
+
+        return context.toString();
+    }
+
+    // 智能分块（保持文档结构）
+    public static List<DocumentParserWithStructure.DocumentChunk> chunkDocumentIntelligently(
+            DocumentParserWithStructure.DocumentContent docContent,
+            Map<Integer, List<DocumentParserWithStructure.ImagePosition>> imagePositions,
+            int chunkSize) {
+        return chunkDocument(docContent, imagePositions, ChunkStrategy.SEMANTIC, chunkSize, 0);
+    }
+
+    /**
+     * 按策略分块。分块只记录在全文（DocumentContent.text）中的偏移区间，不复制文本；
+     * 相邻分块重叠 overlapSize 个字符以内（不超过 chunkSize 的一半），semantic、heading 不跨标题重叠
+     */
+    public static List<DocumentParserWithStructure.DocumentChunk> chunkDocument(
+            DocumentParserWithStructure.DocumentContent docContent,
+            Map<Integer, List<DocumentParserWithStructure.ImagePosition>> imagePositions,
+            ChunkStrategy strategy, int chunkSize, int overlapSize) {
+
+        List<DocumentParserWithStructure.Paragraph> paragraphs = docContent.getParagraphs();
+        if (paragraphs.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String text = sharedText(docContent);
+        int size = Math.max(1, chunkSize);
+        int overlap = Math.max(0, Math.min(overlapSize, (size - 1) / 2));
+
+        List<int[]> ranges = new ArrayList<>();
+        switch (strategy) {
+            case FIXED:
+                pack(text, new int[]{0, text.length()}, size, overlap, false, ranges);
+                break;
+            case SENTENCE:
+                pack(text, sentenceBounds(text, 0, text.length()), size, overlap, true, ranges);
+                break;
+            case HEADING:
+            case SEMANTIC:
+                // heading：标题段落开始新章节；semantic：标题段落结束当前分块
+                boolean startsSection = strategy == ChunkStrategy.HEADING;
+                int sectionStart = 0;
+                for (int i = 0; i < paragraphs.size(); i++) {
+                    if (isSectionHeading(paragraphs.get(i))) {
+                        int split = startsSection ? i : i + 1;
+                        if (split > sectionStart) {
+                            packParagraphs(text, paragraphs, sectionStart, split, size, overlap, ranges);
+                        }
+                        sectionStart = split;
+                    }
+                }
+                if (sectionStart < paragraphs.size()) {
+                    packParagraphs(text, paragraphs, sectionStart, paragraphs.size(), size, overlap, ranges);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("未知的分块策略: " + strategy);
+        }
+
+        return createDocumentChunks(text, ranges, docContent, imagePositions, strategy);
+    }
+
+    /**
+     * 全文与段落偏移；解析结果没有全文时按段落拼接一次
+     */
+    private static String sharedText(DocumentParserWithStructure.DocumentContent docContent) {
+        if (docContent.getText() != null) {
+            return docContent.getText();
+        }
+        StringBuilder fullText = new StringBuilder();
+        for (DocumentParserWithStructure.Paragraph para : docContent.getParagraphs()) {
+            String paraText = para.getText() == null ? "" : para.getText();
+            para.setStartPos(fullText.length());
+            para.setEndPos(fullText.length() + paraText.length());
+            fullText.append(paraText).append("\n");
+        }
+        docContent.setText(fullText.toString());
+        return docContent.getText();
+    }
+
+    private static boolean isSectionHeading(DocumentParserWithStructure.Paragraph para) {
+        return "heading".equals(para.getType()) && para.getLevel() != null && para.getLevel() <= 2;
+    }
+
+    /**
+     * 段落 [from, to) 按段落边界累积，段落含其后的换行
+     */
+    private static void packParagraphs(String text, List<DocumentParserWithStructure.Paragraph> paragraphs,
+                                       int from, int to, int chunkSize, int overlap, List<int[]> ranges) {
+        int[] bounds = new int[to - from + 1];
+        for (int i = from; i < to; i++) {
+            bounds[i - from] = paragraphs.get(i).getStartPos();
+        }
+        bounds[to - from] = to < paragraphs.size() ? paragraphs.get(to).getStartPos() : text.length();
+        pack(text, bounds, chunkSize, overlap, true, ranges);
+    }
+
+    /**
+     * 贪心累积单元 [bounds[i], bounds[i+1])，分块总长（含重叠）不超过 chunkSize，超长单元在句末或空白处切开。
+     * 每个区间为 {start, ownStart, end}：[start, ownStart) 为与上一分块的重叠，[ownStart, 下一分块 ownStart) 归属该分块。
+     * snap 为 false 时（fixed）按字符数精确切分
+     */
+    private static void pack(String text, int[] bounds, int chunkSize, int overlap, boolean snap, List<int[]> ranges) {
+        int segmentStart = bounds[0];
+        int chunkStart = segmentStart;
+        int ownStart = segmentStart;
+        int end = segmentStart;
+
+        for (int i = 1; i < bounds.length; i++) {
+            int unitEnd = bounds[i];
+            if (unitEnd - chunkStart > chunkSize && end > ownStart) {
+                ranges.add(new int[]{chunkStart, ownStart, end});
+                ownStart = end;
+                chunkStart = overlapStart(text, ownStart, overlap, segmentStart, snap);
+            }
+            while (unitEnd - chunkStart > chunkSize) {
+                int cut = cutPoint(text, ownStart, chunkStart + chunkSize, snap);
+                ranges.add(new int[]{chunkStart, ownStart, cut});
+                ownStart = cut;
+                chunkStart = overlapStart(text, ownStart, overlap, segmentStart, snap);
+            }
+            end = unitEnd;
+        }
+        if (end > ownStart) {
+            ranges.add(new int[]{chunkStart, ownStart, end});
+        }
+    }
+
+    /**
+     * 重叠部分的起点：取窗口内第一个句子开头（即尽量多的完整句子），没有时取第一个词的开头。
+     * 窗口起点恰好是句子开头时从窗口起点重叠（from - 1 为句末）
+     */
+    private static int overlapStart(String text, int ownStart, int overlap, int segmentStart, boolean snap) {
+        int from = Math.max(segmentStart, ownStart - overlap);
+        if (from >= ownStart) {
+            return ownStart;
+        }
+        if (snap) {
+            if (from == segmentStart) {
+                return from;
+            }
+            for (int i = from - 1; i < ownStart - 1; i++) {
+                if (isSentenceEnd(text, i)) {
+                    return i + 1;
+                }
+            }
+            for (int i = from - 1; i < ownStart - 1; i++) {
+                if (Character.isWhitespace(text.charAt(i))) {
+                    return i + 1;
+                }
+            }
+        }
+        return Character.isLowSurrogate(text.charAt(from)) ? from + 1 : from;
+    }
+
+    /**
+     * 超长单元的切分点 (ownStart, limit]：优先取后半段最后一个句末，其次空白，不拆开代理对
+     */
+    private static int cutPoint(String text, int ownStart, int limit, boolean snap) {
+        if (snap) {
+            int floor = ownStart + (limit - ownStart) / 2;
+            for (int i = limit - 1; i >= floor; i--) {
+                if (isSentenceEnd(text, i)) {
+                    return i + 1;
+                }
+            }
+            for (int i = limit - 1; i >= floor; i--) {
+                if (Character.isWhitespace(text.charAt(i))) {
+                    return i + 1;
+                }
+            }
+        }
+        if (limit - 1 > ownStart && Character.isHighSurrogate(text.charAt(limit - 1))) {
+            return limit - 1;
+        }
+        return limit;
+    }
+
+    /**
+     * 句子边界：[from, to) 内每个句末之后，首尾为 from、to
+     */
+    private static int[] sentenceBounds(String text, int from, int to) {
+        int[] bounds = new int[64];
+        int count = 0;
+        bounds[count++] = from;
+        for (int i = from; i < to - 1; i++) {
+            if (isSentenceEnd(text, i)) {
+                if (count == bounds.length - 1) {
+                    bounds = Arrays.copyOf(bounds, bounds.length * 2);
+                }
+                bounds[count++] = i + 1;
+            }
+        }
+        bounds[count++] = to;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    private static boolean isSentenceEnd(String text, int i) {
+        switch (text.charAt(i)) {
+            case '\n':
+            case '。':
+            case '！':
+            case '？':
+            case '；':
+            case '!':
+            case '?':
+            case ';':
+                return true;
+            case '.':
+                return i + 1 >= text.length() || Character.isWhitespace(text.charAt(i + 1));
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 区间去掉首尾空白后生成分块；段落的图片归属于包含段落起点的分块，空白分块的图片并入下一个分块
+     */
+    private static List<DocumentParserWithStructure.DocumentChunk> createDocumentChunks(
+            String text, List<int[]> ranges,
+            DocumentParserWithStructure.DocumentContent docContent,
+            Map<Integer, List<DocumentParserWithStructure.ImagePosition>> imagePositions,
+            ChunkStrategy strategy) {
+
+        List<DocumentParserWithStructure.Paragraph> paragraphs = docContent.getParagraphs();
+        List<DocumentParserWithStructure.DocumentChunk> chunks = new ArrayList<>();
+        List<DocumentParserWithStructure.ImageInfo> chunkImages = new ArrayList<>();
+        int paraIndex = 0;
+
+        for (int r = 0; r < ranges.size(); r++) {
+            int[] range = ranges.get(r);
+            int ownEnd = r + 1 < ranges.size() ? ranges.get(r + 1)[1] : Integer.MAX_VALUE;
+
+            // 添加关联图片
+            for (; paraIndex < paragraphs.size() && paragraphs.get(paraIndex).getStartPos() < ownEnd; paraIndex++) {
+                List<DocumentParserWithStructure.ImagePosition> positions = imagePositions.get(paraIndex);
+                if (positions == null) {
+                    continue;
+                }
+                for (DocumentParserWithStructure.ImagePosition pos : positions) {
+                    DocumentParserWithStructure.ImageInfo image = findImageByPosition(pos, docContent.getImages());
+                    if (image != null && !chunkImages.contains(image)) {
+                        chunkImages.add(image);
+                    }
+                }
+            }
+
+            int start = range[0];
+            int end = range[2];
+            while (start < end && Character.isWhitespace(text.charAt(start))) {
+                start++;
+            }
+            while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+                end--;
+            }
+            if (start == end && (chunkImages.isEmpty() || r + 1 < ranges.size())) {
+                continue;
+            }
+
+            chunks.add(createDocumentChunk(chunks.size(), text, start, end, chunkImages, paragraphs, strategy));
+            chunkImages = new ArrayList<>();
+        }
+
+        return chunks;
+    }
+
+    private static DocumentParserWithStructure.DocumentChunk createDocumentChunk(int chunkId, String text, int start, int end,
+                                                                                 List<DocumentParserWithStructure.ImageInfo> images,
+                                                                                 List<DocumentParserWithStructure.Paragraph> paragraphs,
+                                                                                 ChunkStrategy strategy) {
+        int startParaIndex = paragraphAt(paragraphs, start);
+        int endParaIndex = Math.max(startParaIndex, paragraphAt(paragraphs, Math.max(start, end - 1)));
+
+        DocumentParserWithStructure.DocumentChunk chunk = new DocumentParserWithStructure.DocumentChunk(text, start, end);
+        chunk.setChunkId(chunkId);
+        chunk.setImages(images);
+        chunk.setStartParagraphIndex(startParaIndex);
+        chunk.setEndParagraphIndex(endParaIndex);
+        chunk.setWordCount(countWords(text, start, end));
+        chunk.setCharCount(end - start);
+
+        // 记录分块的元数据
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("start_paragraph_id", paragraphs.get(startParaIndex).getId());
+        metadata.put("end_paragraph_id", paragraphs.get(endParaIndex).getId());
+        metadata.put("contains_headings", hasHeadings(paragraphs, startParaIndex, endParaIndex));
+        metadata.put("image_count", images.size());
+        metadata.put("chunk_strategy", strategy.getStrategyName());
+        metadata.put("start_offset", start);
+        metadata.put("end_offset", end);
+
+        chunk.setMetadata(metadata);
+        return chunk;
+    }
+
+    /**
+     * 包含偏移的段落下标（段落按 startPos 升序）
+     */
+    private static int paragraphAt(List<DocumentParserWithStructure.Paragraph> paragraphs, int offset) {
+        int low = 0;
+        int high = paragraphs.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (paragraphs.get(mid).getStartPos() <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    // 简化版的 findImageByPosition 方法
+    private static DocumentParserWithStructure.ImageInfo findImageByPosition(DocumentParserWithStructure.ImagePosition pos, List<DocumentParserWithStructure.ImageInfo> images) {
+        if (images == null || pos == null) {
+            return null;
+        }
+
+        // 直接遍历匹配段落索引
+        for (DocumentParserWithStructure.ImageInfo image : images) {
+            if (image.getPosition() != null &&
+                    image.getPosition().getParagraphIndex() != null &&
+                    image.getPosition().getParagraphIndex().equals(pos.getParagraphIndex())) {
+                return image;
+            }
+        }
+
+        return null;
+    }
+
+    // 简化版的 hasHeadings 方法
+    private static boolean hasHeadings(List<DocumentParserWithStructure.Paragraph> paragraphs, int startIndex, int endIndex) {
+        if (paragraphs == null || startIndex < 0 || endIndex >= paragraphs.size()) {
+            return false;
+        }
+
+        for (int i = startIndex; i <= endIndex && i < paragraphs.size(); i++) {
+            DocumentParserWithStructure.Paragraph para = paragraphs.get(i);
+            if (para.getType() != null &&
+                    (para.getType().equals("heading") ||
+                            (para.getLevel() != null && para.getLevel() > 0))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * 计算单词数（按空白分隔）
+     */
+    private static int countWords(String text, int start, int end) {
+        int words = 0;
+        boolean inWord = false;
+        for (int i = start; i < end; i++) {
+            boolean whitespace = Character.isWhitespace(text.charAt(i));
+            if (!whitespace && !inWord) {
+                words++;
+            }
+            inWord = !whitespace;
+        }
+        return words;
+    }
+}
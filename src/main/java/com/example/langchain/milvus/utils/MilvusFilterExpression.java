@@ -0,0 +1,264 @@
+package com.example.langchain.milvus.utils;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 在进程内求值的 Milvus 过滤表达式子集：field / json["key"] 的比较与 in，多个条件用 && 连接。
+ * 覆盖 MilvusFilters 生成的表达式；不支持的表达式在解析时抛出 IllegalArgumentException，由调用方回退到 Milvus
+ */
+public final class MilvusFilterExpression {
+
+    private static final Pattern CONDITION = Pattern.compile(
+            "^(\\w+)(?:\\[\"(\\w+)\"])?\\s*(==|!=|>=|<=|>|<|\\bin\\b)\\s*(.+)$");
+
+    private static final Pattern INTEGER = Pattern.compile("^[+-]?\\d+$");
+
+    private static final MilvusFilterExpression EMPTY = new MilvusFilterExpression(List.of());
+
+    private final List<Condition> conditions;
+
+    private MilvusFilterExpression(List<Condition> conditions) {
+        this.conditions = conditions;
+    }
+
+    public static MilvusFilterExpression parse(String expr) {
+        if (expr == null || expr.isBlank()) {
+            return EMPTY;
+        }
+        List<Condition> conditions = new ArrayList<>();
+        for (String part : splitOutsideQuotes(expr, "&&")) {
+            String term = part.trim();
+            while (term.startsWith("(") && term.endsWith(")")) {
+                term = term.substring(1, term.length() - 1).trim();
+            }
+            if (term.contains("||") || term.startsWith("not ") || term.startsWith("!")) {
+                throw new IllegalArgumentException("不支持的过滤表达式: " + term);
+            }
+            Matcher matcher = CONDITION.matcher(term);
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("不支持的过滤表达式: " + term);
+            }
+            conditions.add(new Condition(matcher.group(1), matcher.group(2), matcher.group(3),
+                    parseLiteral(matcher.group(4).trim())));
+        }
+        return new MilvusFilterExpression(conditions);
+    }
+
+    public boolean isEmpty() {
+        return conditions.isEmpty();
+    }
+
+    /**
+     * 是否包含 == / in 条件；只有范围、!= 条件的表达式可能匹配整个集合
+     */
+    public boolean hasEqualityCondition() {
+        for (Condition condition : conditions) {
+            if ("==".equals(condition.operator) || "in".equals(condition.operator)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 对某个字段（非 JSON 键）的 == / in 取值，用于按主键、document_id 直接定位行；没有这类条件时返回 null
+     */
+    public List<Object> equalityValues(String field) {
+        return equalityValues(field, null);
+    }
+
+    /**
+     * 对 JSON 字段某个键（key 为 null 时为字段本身）的 == / in 取值；没有这类条件时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object> equalityValues(String field, String key) {
+        for (Condition condition : conditions) {
+            if (!condition.field.equals(field) || !Objects.equals(condition.key, key)) {
+                continue;
+            }
+            if ("==".equals(condition.operator)) {
+                return List.of(condition.literal);
+            }
+            if ("in".equals(condition.operator) && condition.literal instanceof List) {
+                return (List<Object>) condition.literal;
+            }
+        }
+        return null;
+    }
+
+    public boolean test(Map<String, Object> row) {
+        for (Condition condition : conditions) {
+            if (!condition.test(row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Object parseLiteral(String text) {
+        if (text.startsWith("[") && text.endsWith("]")) {
+            List<Object> values = new ArrayList<>();
+            for (String item : splitList(text.substring(1, text.length() - 1))) {
+                values.add(parseLiteral(item.trim()));
+            }
+            return values;
+        }
+        if (text.startsWith("\"") && text.endsWith("\"") && text.length() >= 2) {
+            return text.substring(1, text.length() - 1).replace("\\\"", "\"").replace("\\\\", "\\");
+        }
+        if ("true".equals(text) || "false".equals(text)) {
+            return Boolean.valueOf(text);
+        }
+        try {
+            // 整数按 long 解析：自动生成的主键超过 2^53，按 double 解析会变成相邻的另一个 id
+            if (INTEGER.matcher(text).matches()) {
+                return Long.valueOf(text);
+            }
+            return Double.valueOf(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("不支持的字面量: " + text);
+        }
+    }
+
+    /**
+     * 按逗号切分列表，跳过字符串字面量中的逗号
+     */
+    private static List<String> splitList(String text) {
+        return splitOutsideQuotes(text, ",");
+    }
+
+    /**
+     * 按分隔符切分，跳过字符串字面量中的分隔符；末尾的空片段丢弃
+     */
+    private static List<String> splitOutsideQuotes(String text, String separator) {
+        List<String> items = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && quoted && i + 1 < text.length()) {
+                current.append(c).append(text.charAt(++i));
+                continue;
+            }
+            if (c == '"') {
+                quoted = !quoted;
+            }
+            if (!quoted && text.startsWith(separator, i)) {
+                items.add(current.toString());
+                current.setLength(0);
+                i += separator.length() - 1;
+            } else {
+                current.append(c);
+            }
+        }
+        if (current.length() > 0) {
+            items.add(current.toString());
+        }
+        return items;
+    }
+
+    private static final class Condition {
+        private final String field;
+        private final String key;
+        private final String operator;
+        private final Object literal;
+
+        Condition(String field, String key, String operator, Object literal) {
+            this.field = field;
+            this.key = key;
+            this.operator = operator;
+            this.literal = literal;
+        }
+
+        boolean test(Map<String, Object> row) {
+            Object value = row.get(field);
+            if (key != null) {
+                value = jsonValue(value, key);
+            }
+            if ("in".equals(operator)) {
+                if (!(literal instanceof List)) {
+                    return false;
+                }
+                for (Object item : (List<?>) literal) {
+                    Integer result = compare(value, item);
+                    if (result != null && result == 0) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            Integer result = compare(value, literal);
+            switch (operator) {
+                case "==":
+                    return result != null && result == 0;
+                case "!=":
+                    return result == null || result != 0;
+                case ">":
+                    return result != null && result > 0;
+                case ">=":
+                    return result != null && result >= 0;
+                case "<":
+                    return result != null && result < 0;
+                default:
+                    return result != null && result <= 0;
+            }
+        }
+
+        private static Object jsonValue(Object value, String key) {
+            JsonElement element;
+            if (value instanceof JsonElement) {
+                element = (JsonElement) value;
+            } else if (value instanceof String && ((String) value).trim().startsWith("{")) {
+                element = JsonParser.parseString((String) value);
+            } else {
+                return null;
+            }
+            if (!element.isJsonObject() || !element.getAsJsonObject().has(key)) {
+                return null;
+            }
+            JsonElement child = element.getAsJsonObject().get(key);
+            if (!child.isJsonPrimitive()) {
+                return child.toString();
+            }
+            if (child.getAsJsonPrimitive().isBoolean()) {
+                return child.getAsBoolean();
+            }
+            if (child.getAsJsonPrimitive().isNumber()) {
+                return INTEGER.matcher(child.getAsString()).matches() ? (Object) child.getAsLong() : (Object) child.getAsDouble();
+            }
+            return child.getAsString();
+        }
+
+        /**
+         * 整数之间按 long 精确比较，其余数值按 double 比较，非数值按字符串比较；任一侧为空时不可比较
+         */
+        private static Integer compare(Object value, Object literal) {
+            if (value == null || literal == null) {
+                return null;
+            }
+            if (isIntegral(value) && isIntegral(literal)) {
+                return Long.compare(((Number) value).longValue(), ((Number) literal).longValue());
+            }
+            if (value instanceof Number && literal instanceof Number) {
+                return Double.compare(((Number) value).doubleValue(), ((Number) literal).doubleValue());
+            }
+            if (value instanceof Boolean || literal instanceof Boolean) {
+                return value.toString().equals(literal.toString()) ? 0 : null;
+            }
+            return value.toString().compareTo(literal.toString());
+        }
+
+        private static boolean isIntegral(Object value) {
+            return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+        }
+    }
+}
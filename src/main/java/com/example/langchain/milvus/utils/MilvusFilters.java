@@ -0,0 +1,65 @@
+package com.example.langchain.milvus.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Milvus 布尔过滤表达式构造：字符串转义、元数据 JSON 路径、条件组合
+ */
+public final class MilvusFilters {
+
+    private static final Pattern KEY_PATTERN = Pattern.compile("[A-Za-z0-9_]+");
+
+    private MilvusFilters() {
+    }
+
+    /**
+     * 字符串字面量，转义反斜杠和双引号
+     */
+    public static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    public static String fieldEquals(String field, Object value) {
+        return field + " == " + literal(value);
+    }
+
+    /**
+     * JSON 字段的某个键等于给定值，例如 metadata["document_name"] == "a.docx"
+     */
+    public static String jsonEquals(String jsonField, String key, Object value) {
+        return jsonPath(jsonField, key) + " == " + literal(value);
+    }
+
+    public static String jsonPath(String jsonField, String key) {
+        if (key == null || !KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("非法的元数据键: " + key);
+        }
+        return jsonField + "[\"" + key + "\"]";
+    }
+
+    /**
+     * 组合多个条件，忽略空条件；全部为空时返回空字符串
+     */
+    public static String and(Collection<String> conditions) {
+        List<String> parts = new ArrayList<>();
+        for (String condition : conditions) {
+            if (condition != null && !condition.isBlank()) {
+                parts.add("(" + condition + ")");
+            }
+        }
+        return String.join(" && ", parts);
+    }
+
+    private static String literal(Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("过滤值不能为空");
+        }
+        if (value instanceof Boolean || value instanceof Number) {
+            return value.toString();
+        }
+        return quote(value.toString());
+    }
+}
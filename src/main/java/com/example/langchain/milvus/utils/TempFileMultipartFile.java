@@ -0,0 +1,144 @@
+package com.example.langchain.milvus.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 基于本地临时文件的 MultipartFile，请求结束后上传文件会被容器删除，异步任务需要先落盘
+ */
+@Slf4j
+public class TempFileMultipartFile implements MultipartFile, AutoCloseable {
+
+    private static final long TRANSFER_CHUNK_BYTES = 8L * 1024 * 1024;
+
+    private final Path path;
+    private final String name;
+    private final String originalFilename;
+    private final String contentType;
+
+    public TempFileMultipartFile(Path path, String name, String originalFilename, String contentType) {
+        this.path = path;
+        this.name = name;
+        this.originalFilename = originalFilename;
+        this.contentType = contentType;
+    }
+
+    /**
+     * 将上传文件复制到临时目录
+     */
+    public static TempFileMultipartFile copyOf(MultipartFile file, Path tempDir) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return fromStream(in, tempDir, file.getName(), file.getOriginalFilename(), file.getContentType(), -1);
+        }
+    }
+
+    /**
+     * 通过 NIO 通道把输入流分段写入临时文件，堆内存占用与文件大小无关。
+     * maxBytes 小于 0 表示不限制，超出时删除临时文件并抛出异常
+     */
+    public static TempFileMultipartFile fromStream(InputStream in, Path tempDir, String name,
+                                                   String originalFilename, String contentType,
+                                                   long maxBytes) throws IOException {
+        Files.createDirectories(tempDir);
+        Path target = Files.createTempFile(tempDir, "upload_", ".tmp");
+
+        try (ReadableByteChannel source = Channels.newChannel(in);
+             FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+            long position = 0;
+            long transferred;
+            while ((transferred = channel.transferFrom(source, position, TRANSFER_CHUNK_BYTES)) > 0) {
+                position += transferred;
+                if (maxBytes >= 0 && position > maxBytes) {
+                    throw new IOException("上传文件超过大小限制: " + maxBytes + " 字节");
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+
+        return new TempFileMultipartFile(target, name, originalFilename, contentType);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getOriginalFilename() {
+        return originalFilename;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return getSize() == 0;
+    }
+
+    @Override
+    public long getSize() {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public byte[] getBytes() throws IOException {
+        return Files.readAllBytes(path);
+    }
+
+    /**
+     * 2GB 以内的文件使用内存映射读取
+     */
+    @Override
+    public InputStream getInputStream() throws IOException {
+        if (getSize() <= Integer.MAX_VALUE) {
+            return new MappedFileInputStream(path);
+        }
+        return Files.newInputStream(path);
+    }
+
+    @Override
+    public void transferTo(File dest) throws IOException {
+        Files.copy(path, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public void transferTo(Path dest) throws IOException {
+        Files.copy(path, dest, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * 删除临时文件
+     */
+    @Override
+    public void close() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("删除临时文件失败: {}", path, e);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.langchain.benchmark;
+
+import com.example.langchain.milvus.dto.DocumentImportRequest;
+import com.example.langchain.milvus.service.ChunkRowMapper;
+import com.example.langchain.milvus.service.DocumentParserWithStructure;
+import com.example.langchain.milvus.service.ImageExtractorWithPosition;
+import com.example.langchain.milvus.service.InsertRowBatch;
+import com.example.langchain.milvus.service.StructuredChunker;
+import io.milvus.param.dml.InsertParam;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.FileSystemUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 导入热点路径：DOCX 解析 → 结构化分块 → 分块转插入行（图片 / 元数据 JSON）→ 列式批次转 InsertParam 列
+ * <p>
+ * 输入为 SyntheticDocx 生成的文档，段落数、图片数可用 -p 覆盖，例如
+ * {@code -p paragraphs=20000 -p images=1000}。运行 main 或 mvn -Pbenchmark 时附带 GC profiler，
+ * 吞吐量看 ops/s，分配看 gc.alloc.rate（MB/s）与 gc.alloc.rate.norm（每次操作字节数）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class IngestionBenchmark {
+
+    private static final int DIMENSION = 1024;
+
+    @Param({"500", "3000"})
+    private int paragraphs;
+
+    @Param({"0", "100"})
+    private int images;
+
+    @Param({"5000"})
+    private int chunkSize;
+
+    private DocumentParserWithStructure parser;
+    private MockMultipartFile file;
+    private Path imageDir;
+
+    private DocumentParserWithStructure.DocumentContent docContent;
+    private List<DocumentParserWithStructure.DocumentChunk> chunks;
+    private List<DocumentParserWithStructure.TextEmbedding> embeddings;
+    private ChunkRowMapper rowMapper;
+    private DocumentImportRequest request;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        parser = new DocumentParserWithStructure(new ImageExtractorWithPosition());
+        file = SyntheticDocx.multipartFile("benchmark.docx", SyntheticDocx.generate(paragraphs, images));
+        imageDir = Files.createTempDirectory("ingestion-benchmark");
+
+        // 分块及之后的阶段使用带图片位置的解析结果，与导入流程一致
+        docContent = parser.parseDocumentWithImages(file, imageDir.toString(), true);
+        chunks = chunk();
+
+        Random random = new Random(42);
+        embeddings = new ArrayList<>(chunks.size());
+        for (DocumentParserWithStructure.DocumentChunk chunk : chunks) {
+            float[] vector = new float[DIMENSION];
+            for (int d = 0; d < DIMENSION; d++) {
+                vector[d] = random.nextFloat();
+            }
+            embeddings.add(new DocumentParserWithStructure.TextEmbedding(chunk.getText(), vector, chunk.getChunkId()));
+        }
+
+        rowMapper = new ChunkRowMapper(imageDir.toString());
+        request = new DocumentImportRequest();
+        request.setChunkSize(chunkSize);
+        request.setMetadata(Map.of("source", "benchmark", "department", "finance"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        FileSystemUtils.deleteRecursively(imageDir);
+    }
+
+    /**
+     * 段落结构解析（不落盘图片）
+     */
+    @Benchmark
+    public DocumentParserWithStructure.DocumentContent parseDocumentWithStructure() throws Exception {
+        return parser.parseDocumentWithStructure(file);
+    }
+
+    /**
+     * 图片与段落关联 + 智能分块
+     */
+    @Benchmark
+    public List<DocumentParserWithStructure.DocumentChunk> chunkDocumentIntelligently() {
+        return chunk();
+    }
+
+    /**
+     * 每个分块的图片列表与元数据序列化
+     */
+    @Benchmark
+    public void convertImagesAndMetadata(Blackhole blackhole) {
+        for (DocumentParserWithStructure.DocumentChunk chunk : chunks) {
+            blackhole.consume(rowMapper.convertImagesToJson(chunk));
+            blackhole.consume(rowMapper.convertMetadataToJson(chunk, "doc_1", "benchmark.docx", request));
+        }
+    }
+
+    /**
+     * 插入行准备：追加行时的校验修正 + 转换为 JSON metadata 集合的 InsertParam 列
+     */
+    @Benchmark
+    public List<InsertParam.Field> buildInsertFields() {
+        InsertRowBatch batch = new InsertRowBatch(DIMENSION, chunks.size());
+        rowMapper.appendInsertRows(batch, chunks, embeddings, "doc_1", "benchmark.docx", request);
+        return batch.toFields(true);
+    }
+
+    private List<DocumentParserWithStructure.DocumentChunk> chunk() {
+        Map<Integer, List<DocumentParserWithStructure.ImagePosition>> imagePositions = StructuredChunker.associateImagesWithDocument(
+                docContent.getStructure(), docContent.getExtractedImages(), docContent.getParagraphs());
+        return StructuredChunker.chunkDocumentIntelligently(docContent, imagePositions, chunkSize);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(IngestionBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.langchain.benchmark;
+
+import com.example.langchain.milvus.service.InsertRowBatch;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.milvus.param.dml.InsertParam;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 插入前数据准备：原三遍复制（prepare → validateAndFix → sanitize）vs 列式批次
+ * <p>
+ * 运行 main 时附带 GC profiler，每个分块的分配量 = gc.alloc.rate.norm / chunks
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class InsertBatchBenchmark {
+
+    private static final int DIMENSION = 1024;
+
+    @Param({"100", "1000"})
+    private int chunks;
+
+    private float[][] vectors;
+    private List<String> texts;
+    private List<String> metadata;
+    private List<JsonObject> metadataObjects;
+    private List<String> images;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        vectors = new float[chunks][DIMENSION];
+        texts = new ArrayList<>(chunks);
+        metadata = new ArrayList<>(chunks);
+        metadataObjects = new ArrayList<>(chunks);
+        images = new ArrayList<>(chunks);
+
+        for (int i = 0; i < chunks; i++) {
+            for (int d = 0; d < DIMENSION; d++) {
+                vectors[i][d] = random.nextFloat();
+            }
+            texts.add("第" + i + "段 操作步骤：检查设备状态，确认参数设置后启动。".repeat(20));
+            metadata.add("{\"document_id\":\"doc_1\",\"chunk_id\":" + i + ",\"start_para\":" + i
+                    + ",\"end_para\":" + (i + 3) + ",\"word_count\":120,\"has_images\":false}");
+            metadataObjects.add(JsonParser.parseString(metadata.get(i)).getAsJsonObject());
+            images.add(i % 5 == 0 ? "[{\"file_name\":\"a.png\",\"file_path\":\"uploads/images/a.png\"}]" : "");
+        }
+    }
+
+    /**
+     * 原实现：向量装箱为 List&lt;Float&gt;，再经过三遍逐列复制，metadata 每遍都重新解析
+     */
+    @Benchmark
+    public List<InsertParam.Field> legacyThreePass() {
+        List<List<Float>> boxed = new ArrayList<>(chunks);
+        for (float[] vector : vectors) {
+            List<Float> list = new ArrayList<>(vector.length);
+            for (float v : vector) {
+                list.add(v);
+            }
+            boxed.add(list);
+        }
+
+        List<InsertParam.Field> fields = LegacyInsertPath.prepare(boxed, texts, metadata, images, "doc_1");
+        List<InsertParam.Field> fixed = LegacyInsertPath.validateAndFixAllFields(fields);
+        LegacyInsertPath.sanitize(fixed, DIMENSION);
+        return fixed;
+    }
+
+    /**
+     * 新实现：追加时一次校验，向量拷贝进 packed float[]，metadata 由行映射阶段构建为 JsonObject
+     */
+    @Benchmark
+    public List<InsertParam.Field> columnarBatch() {
+        InsertRowBatch batch = new InsertRowBatch(DIMENSION, chunks);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < chunks; i++) {
+            batch.addRow(vectors[i], texts.get(i), "doc_1", Integer.toString(i), "default", images.get(i), metadataObjects.get(i), now);
+        }
+        return batch.toFields();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(InsertBatchBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+
+    /**
+     * 原 MilvusServiceImplV2 插入前处理的等价实现，仅作基准对照
+     */
+    static final class LegacyInsertPath {
+
+        private static final String FIELD_VECTOR = "vector";
+        private static final String FIELD_METADATA = "metadata";
+
+        static List<InsertParam.Field> prepare(List<List<Float>> vectors, List<String> texts,
+                                               List<String> metadata, List<String> images, String documentId) {
+            List<InsertParam.Field> fields = new ArrayList<>();
+            fields.add(new InsertParam.Field(FIELD_VECTOR, new ArrayList<>(vectors)));
+            fields.add(new InsertParam.Field("text", new ArrayList<>(texts)));
+            fields.add(new InsertParam.Field(FIELD_METADATA, new ArrayList<>(metadata)));
+            fields.add(new InsertParam.Field("images", new ArrayList<>(images)));
+            fields.add(new InsertParam.Field("document_id", Collections.nCopies(texts.size(), documentId)));
+            List<String> chunkIds = new ArrayList<>();
+            List<Long> createTimes = new ArrayList<>();
+            for (int i = 0; i < texts.size(); i++) {
+                chunkIds.add(Objects.toString(i, "0"));
+                createTimes.add(System.currentTimeMillis());
+            }
+            fields.add(new InsertParam.Field("chunk_id", chunkIds));
+            fields.add(new InsertParam.Field("create_time", createTimes));
+            return fields;
+        }
+
+        static List<InsertParam.Field> validateAndFixAllFields(List<InsertParam.Field> fields) {
+            List<InsertParam.Field> fixedFields = new ArrayList<>();
+            for (InsertParam.Field field : fields) {
+                List<Object> fixedValues = new ArrayList<>();
+                for (Object value : field.getValues()) {
+                    fixedValues.add(fixFieldValue(field.getName(), value));
+                }
+                fixedFields.add(new InsertParam.Field(field.getName(), fixedValues));
+            }
+            return fixedFields;
+        }
+
+        private static Object fixFieldValue(String fieldName, Object value) {
+            if (value == null) {
+                return defaultFor(fieldName);
+            }
+            if (value instanceof String) {
+                String str = (String) value;
+                if (str.isEmpty() || "null".equalsIgnoreCase(str)) {
+                    return defaultFor(fieldName);
+                }
+                return FIELD_METADATA.equals(fieldName) ? fixJson(str) : str;
+            }
+            if (value instanceof List) {
+                List<?> list = (List<?>) value;
+                if (list.isEmpty()) {
+                    return defaultFor(fieldName);
+                }
+                if (list.contains(null)) {
+                    List<Object> cleaned = new ArrayList<>();
+                    for (Object item : list) {
+                        if (item != null) {
+                            cleaned.add(item);
+                        }
+                    }
+                    return cleaned;
+                }
+            }
+            return value;
+        }
+
+        private static String fixJson(String jsonStr) {
+            try {
+                ObjectMapper mapper = new ObjectMapper();
+                JsonNode node = mapper.readTree(jsonStr.trim());
+                if (node.isArray()) {
+                    ObjectNode obj = mapper.createObjectNode();
+                    obj.set("data", (ArrayNode) node);
+                    return mapper.writeValueAsString(obj);
+                }
+                return jsonStr;
+            } catch (Exception e) {
+                return "{}";
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        static void sanitize(List<InsertParam.Field> fields, int dimension) {
+            for (int fi = 0; fi < fields.size(); fi++) {
+                InsertParam.Field field = fields.get(fi);
+                List<Object> values = new ArrayList<>(field.getValues());
+
+                if (FIELD_VECTOR.equals(field.getName())) {
+                    List<List<Float>> newVectors = new ArrayList<>();
+                    for (Object v : values) {
+                        List<Float> vec = new ArrayList<>();
+                        for (Object o : (List<?>) v) {
+                            vec.add(o == null ? 0f : ((Number) o).floatValue());
+                        }
+                        newVectors.add(vec.size() == dimension ? vec : new ArrayList<>(Collections.nCopies(dimension, 0f)));
+                    }
+                    fields.set(fi, new InsertParam.Field(field.getName(), (List) newVectors));
+                    continue;
+                }
+
+                List<Object> newVals = new ArrayList<>();
+                for (Object v : values) {
+                    if (v instanceof String && (((String) v).trim().isEmpty() || "null".equalsIgnoreCase(((String) v).trim()))) {
+                        newVals.add(defaultFor(field.getName()));
+                    } else {
+                        newVals.add(v == null ? defaultFor(field.getName()) : v);
+                    }
+                }
+                List<Object> safeVals = new ArrayList<>(newVals);
+                fields.set(fi, new InsertParam.Field(field.getName(), safeVals));
+            }
+        }
+
+        private static Object defaultFor(String fieldName) {
+            if (FIELD_METADATA.equals(fieldName)) {
+                return "{}";
+            }
+            if ("create_time".equals(fieldName)) {
+                return System.currentTimeMillis();
+            }
+            return "";
+        }
+    }
+}
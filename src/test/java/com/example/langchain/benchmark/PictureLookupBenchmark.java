@@ -0,0 +1,116 @@
+package com.example.langchain.benchmark;
+
+import com.example.langchain.milvus.service.PictureRelationIndex;
+import org.apache.poi.ooxml.POIXMLDocumentPart;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFPictureData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 图片定位：逐段落 × 逐图片序列化 CTP 后字符串查找 vs 关系ID索引
+ * <p>
+ * 运行：在 IDE 中执行 main，或 mvn test-compile 后以 test classpath 启动
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class PictureLookupBenchmark {
+
+    @Param({"500", "3000"})
+    private int paragraphs;
+
+    @Param({"50", "300"})
+    private int images;
+
+    private XWPFDocument doc;
+    private List<XWPFPictureData> pictures;
+    private Map<XWPFPictureData, String> relationIds;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        doc = new XWPFDocument(new ByteArrayInputStream(SyntheticDocx.generate(paragraphs, images)));
+        pictures = doc.getAllPictures();
+
+        relationIds = new IdentityHashMap<>();
+        for (POIXMLDocumentPart.RelationPart relationPart : doc.getRelationParts()) {
+            if (relationPart.getDocumentPart() instanceof XWPFPictureData) {
+                relationIds.put(relationPart.getDocumentPart(), relationPart.getRelationship().getId());
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        doc.close();
+    }
+
+    /**
+     * 原实现：每个段落 × 每张图片都把 CTP 序列化为字符串再 contains
+     */
+    @Benchmark
+    public int xmlStringScan(Blackhole blackhole) {
+        int found = 0;
+        for (XWPFParagraph paragraph : doc.getParagraphs()) {
+            for (XWPFPictureData picture : pictures) {
+                String relationId = relationIds.get(picture);
+                String xml = paragraph.getCTP().toString();
+                if (xml.contains("r:embed=\"" + relationId + "\"") ||
+                        xml.contains("r:link=\"" + relationId + "\"") ||
+                        xml.contains("r:id=\"" + relationId + "\"")) {
+                    found++;
+                    blackhole.consume(picture);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 新实现：一次遍历建立索引，之后按段落哈希查找
+     */
+    @Benchmark
+    public int relationIndex(Blackhole blackhole) {
+        PictureRelationIndex index = PictureRelationIndex.build(doc, pictures);
+
+        int found = 0;
+        for (XWPFParagraph paragraph : doc.getParagraphs()) {
+            for (Integer picture : index.picturesInParagraph(paragraph)) {
+                found++;
+                blackhole.consume(picture);
+            }
+        }
+        return found;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(PictureLookupBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.langchain.benchmark;
+
+import org.apache.poi.util.Units;
+import org.apache.poi.xwpf.usermodel.Document;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.springframework.mock.web.MockMultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+/**
+ * 基准测试用的合成 DOCX：指定段落数和图片数，图片均匀分布在段落中
+ */
+public final class SyntheticDocx {
+
+    public static final String CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+
+    private static final String[] SENTENCES = {
+            "支付登记查询操作流程说明，请按照系统提示逐步完成录入。",
+            "The operator confirms the payment record and submits it for review.",
+            "若审批未通过，系统将退回至经办人并记录退回原因。",
+            "Part number PN-2024-0815 must match the value printed on the label.",
+            "每日日终前需核对当日登记笔数与金额，确保账实相符。"
+    };
+
+    private SyntheticDocx() {
+    }
+
+    public static byte[] generate(int paragraphs, int images) throws Exception {
+        return generate(paragraphs, images, 42);
+    }
+
+    /**
+     * 不同种子生成的段落内容不同，用于构造互不重复的文档集合
+     */
+    public static byte[] generate(int paragraphs, int images, long seed) throws Exception {
+        Random random = new Random(seed);
+        int imageEvery = images > 0 ? Math.max(1, paragraphs / images) : Integer.MAX_VALUE;
+        int placed = 0;
+
+        try (XWPFDocument doc = new XWPFDocument();
+             ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+
+            for (int i = 0; i < paragraphs; i++) {
+                XWPFParagraph paragraph = doc.createParagraph();
+                XWPFRun run = paragraph.createRun();
+
+                if (i % 40 == 0) {
+                    run.setText((i / 40 + 1) + ".1 操作步骤：");
+                } else {
+                    StringBuilder text = new StringBuilder();
+                    int sentences = 1 + random.nextInt(4);
+                    for (int s = 0; s < sentences; s++) {
+                        text.append(SENTENCES[random.nextInt(SENTENCES.length)]);
+                    }
+                    run.setText(text.toString());
+                }
+
+                if (placed < images && i % imageEvery == 0) {
+                    XWPFRun pictureRun = paragraph.createRun();
+                    pictureRun.addPicture(new ByteArrayInputStream(png(placed)), Document.PICTURE_TYPE_PNG,
+                            "figure_" + placed + ".png", Units.toEMU(64), Units.toEMU(64));
+                    placed++;
+                }
+            }
+
+            doc.write(out);
+            return out.toByteArray();
+        }
+    }
+
+    public static MockMultipartFile multipartFile(String fileName, byte[] content) {
+        return new MockMultipartFile("file", fileName, CONTENT_TYPE, content);
+    }
+
+    /**
+     * 生成内容各不相同的小 PNG
+     */
+    static byte[] png(int seed) throws Exception {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < 16; x++) {
+            for (int y = 0; y < 16; y++) {
+                image.setRGB(x, y, random.nextInt(0xFFFFFF));
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
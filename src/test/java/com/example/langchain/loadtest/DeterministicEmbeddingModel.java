@@ -0,0 +1,110 @@
+package com.example.langchain.loadtest;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 压测用的本地向量模型：文本按相邻二字切分，每个二字哈希到若干维度（带符号）累加后归一化。
+ * 同一文本得到同一向量，用词相近的文本向量相近；每次调用按配置的延迟休眠以模拟远程接口
+ */
+public class DeterministicEmbeddingModel implements EmbeddingModel {
+
+    // 每个二字写入的维度数
+    private static final int PROBES = 4;
+
+    private final int dimension;
+    private final long latencyMs;
+    private final long latencyPerSegmentMicros;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong segments = new AtomicLong();
+
+    public DeterministicEmbeddingModel(int dimension, long latencyMs, long latencyPerSegmentMicros) {
+        this.dimension = dimension;
+        this.latencyMs = latencyMs;
+        this.latencyPerSegmentMicros = latencyPerSegmentMicros;
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        calls.incrementAndGet();
+        segments.addAndGet(textSegments.size());
+        sleep(latencyMs * 1000 + latencyPerSegmentMicros * textSegments.size());
+
+        List<Embedding> embeddings = new ArrayList<>(textSegments.size());
+        for (TextSegment segment : textSegments) {
+            embeddings.add(Embedding.from(vector(segment.text())));
+        }
+        return Response.from(embeddings);
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getSegments() {
+        return segments.get();
+    }
+
+    float[] vector(String text) {
+        float[] vector = new float[dimension];
+        String normalized = text == null ? "" : text.toLowerCase();
+        for (int i = 0; i + 1 < normalized.length(); i++) {
+            long hash = fnv(normalized.charAt(i), normalized.charAt(i + 1));
+            for (int p = 0; p < PROBES; p++) {
+                long probe = hash * (2 * p + 1) + p;
+                int index = (int) Long.remainderUnsigned(probe >>> 1, dimension);
+                vector[index] += (probe & 1) == 0 ? 1f : -1f;
+            }
+        }
+
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm == 0) {
+            // 空文本也返回单位向量，避免余弦、内积出现 NaN
+            vector[0] = 1f;
+            return vector;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    /**
+     * FNV-1a 64 位哈希（按 UTF-16 码元），不分配对象
+     */
+    private static long fnv(char first, char second) {
+        long hash = 0xcbf29ce484222325L;
+        hash ^= first;
+        hash *= 0x100000001b3L;
+        hash ^= second;
+        hash *= 0x100000001b3L;
+        return hash;
+    }
+
+    private static void sleep(long micros) {
+        if (micros <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(micros / 1000, (int) (micros % 1000) * 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
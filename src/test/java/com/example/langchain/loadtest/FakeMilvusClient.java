@@ -0,0 +1,542 @@
+package com.example.langchain.loadtest;
+
+import com.example.langchain.milvus.utils.MilvusFilterExpression;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import io.milvus.client.MilvusClient;
+import io.milvus.grpc.CollectionSchema;
+import io.milvus.grpc.DataType;
+import io.milvus.grpc.DescribeCollectionResponse;
+import io.milvus.grpc.DescribeIndexResponse;
+import io.milvus.grpc.FieldData;
+import io.milvus.grpc.FieldSchema;
+import io.milvus.grpc.FloatArray;
+import io.milvus.grpc.GetCollectionStatisticsResponse;
+import io.milvus.grpc.GetLoadStateResponse;
+import io.milvus.grpc.IDs;
+import io.milvus.grpc.IndexDescription;
+import io.milvus.grpc.JSONArray;
+import io.milvus.grpc.KeyValuePair;
+import io.milvus.grpc.LoadState;
+import io.milvus.grpc.LongArray;
+import io.milvus.grpc.MutationResult;
+import io.milvus.grpc.QueryResults;
+import io.milvus.grpc.ScalarField;
+import io.milvus.grpc.SearchResultData;
+import io.milvus.grpc.SearchResults;
+import io.milvus.grpc.ShowCollectionsResponse;
+import io.milvus.grpc.StringArray;
+import io.milvus.grpc.VectorField;
+import io.milvus.param.IndexType;
+import io.milvus.param.R;
+import io.milvus.param.RpcStatus;
+import io.milvus.param.collection.CreateCollectionParam;
+import io.milvus.param.collection.FieldType;
+import io.milvus.param.dml.AnnSearchParam;
+import io.milvus.param.dml.DeleteParam;
+import io.milvus.param.dml.HybridSearchParam;
+import io.milvus.param.dml.InsertParam;
+import io.milvus.param.dml.QueryParam;
+import io.milvus.param.dml.SearchParam;
+import io.milvus.param.index.CreateIndexParam;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * 压测用的进程内 Milvus：以动态代理实现 MilvusClient，只支持导入、检索链路用到的接口，
+ * 其余接口返回失败。插入的行保存在内存中，检索为暴力计算（混合检索只计算稠密向量一路）。
+ * 过滤表达式由 MilvusFilterExpression 求值（field / json["key"] 的比较与 in，多个条件用 && 连接）
+ */
+public final class FakeMilvusClient implements InvocationHandler {
+
+    private final Map<String, FakeCollection> collections = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final AtomicLong insertCalls = new AtomicLong();
+    private final AtomicLong searchCalls = new AtomicLong();
+
+    // 模拟一次写入 RPC 的耗时，insertAsync 在独立线程上完成
+    private final long insertLatencyMs;
+    private final ListeningExecutorService executor = MoreExecutors.listeningDecorator(
+            Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "fake-milvus");
+                thread.setDaemon(true);
+                return thread;
+            }));
+
+    private final MilvusClient client;
+
+    public FakeMilvusClient(long insertLatencyMs) {
+        this.insertLatencyMs = insertLatencyMs;
+        this.client = (MilvusClient) Proxy.newProxyInstance(MilvusClient.class.getClassLoader(),
+                new Class<?>[]{MilvusClient.class}, this);
+    }
+
+    public MilvusClient asClient() {
+        return client;
+    }
+
+    public long getInsertCalls() {
+        return insertCalls.get();
+    }
+
+    public long getSearchCalls() {
+        return searchCalls.get();
+    }
+
+    public long getRowCount() {
+        return collections.values().stream().mapToLong(FakeCollection::size).sum();
+    }
+
+    /**
+     * 已保存向量的字节数（压测报告中的堆峰值包含这部分）
+     */
+    public long getVectorBytes() {
+        return collections.values().stream().mapToLong(collection -> collection.size() * collection.dimension * 4L).sum();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        Object param = args == null || args.length == 0 ? null : args[0];
+        switch (method.getName()) {
+            case "hasCollection":
+                return R.success(collections.containsKey(collectionName(param)));
+            case "createCollection":
+                return createCollection((CreateCollectionParam) param);
+            case "dropCollection":
+                collections.remove(collectionName(param));
+                return success();
+            case "createIndex":
+                return createIndex((CreateIndexParam) param);
+            case "describeCollection":
+                return withCollection(param, this::describeCollection);
+            case "describeIndex":
+                return withCollection(param, this::describeIndex);
+            case "loadCollection":
+                return withCollection(param, collection -> {
+                    collection.loaded = true;
+                    return success();
+                });
+            case "releaseCollection":
+                return withCollection(param, collection -> {
+                    collection.loaded = false;
+                    return success();
+                });
+            case "getLoadState":
+                return withCollection(param, collection -> R.success(GetLoadStateResponse.newBuilder()
+                        .setState(collection.loaded ? LoadState.LoadStateLoaded : LoadState.LoadStateNotLoad)
+                        .build()));
+            case "getCollectionStatistics":
+                return withCollection(param, collection -> R.success(GetCollectionStatisticsResponse.newBuilder()
+                        .addStats(KeyValuePair.newBuilder().setKey("row_count").setValue(Long.toString(collection.size())))
+                        .build()));
+            case "showCollections":
+                return R.success(ShowCollectionsResponse.newBuilder().addAllCollectionNames(collections.keySet()).build());
+            case "insert":
+                return insert((InsertParam) param);
+            case "insertAsync":
+                return executor.submit(() -> insert((InsertParam) param));
+            case "delete":
+                return delete((DeleteParam) param);
+            case "search":
+                return search((SearchParam) param);
+            case "hybridSearch":
+                return hybridSearch((HybridSearchParam) param);
+            case "query":
+                return query((QueryParam) param);
+            case "close":
+                return null;
+            case "toString":
+                return "FakeMilvusClient";
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == param;
+            default:
+                if (MilvusClient.class.isAssignableFrom(method.getReturnType())) {
+                    // withTimeout、withRetry 等返回客户端自身
+                    return proxy;
+                }
+                if (R.class.isAssignableFrom(method.getReturnType())) {
+                    return R.failed(new UnsupportedOperationException("FakeMilvusClient 不支持: " + method.getName()));
+                }
+                throw new UnsupportedOperationException("FakeMilvusClient 不支持: " + method.getName());
+        }
+    }
+
+    private R<RpcStatus> createCollection(CreateCollectionParam param) {
+        List<FieldType> fieldTypes = param.getSchema() != null ? param.getSchema().getFieldTypes() : param.getFieldTypes();
+        if (collections.putIfAbsent(param.getCollectionName(), new FakeCollection(fieldTypes)) != null) {
+            return R.failed(new IllegalArgumentException("集合已存在: " + param.getCollectionName()));
+        }
+        return success();
+    }
+
+    private R<RpcStatus> createIndex(CreateIndexParam param) {
+        return withCollection(param, collection -> {
+            collection.indexTypes.put(param.getFieldName(), param.getIndexType());
+            return success();
+        });
+    }
+
+    private R<DescribeCollectionResponse> describeCollection(FakeCollection collection) {
+        CollectionSchema.Builder schema = CollectionSchema.newBuilder();
+        for (FieldType field : collection.fields.values()) {
+            FieldSchema.Builder builder = FieldSchema.newBuilder()
+                    .setName(field.getName())
+                    .setDataType(field.getDataType())
+                    .setIsPrimaryKey(field.isPrimaryKey())
+                    .setAutoID(field.isAutoID())
+                    .setIsPartitionKey(field.isPartitionKey());
+            if (field.getDimension() != null) {
+                builder.addTypeParams(KeyValuePair.newBuilder().setKey("dim").setValue(field.getDimension().toString()));
+            }
+            schema.addFields(builder);
+        }
+        return R.success(DescribeCollectionResponse.newBuilder().setSchema(schema).build());
+    }
+
+    private R<DescribeIndexResponse> describeIndex(FakeCollection collection) {
+        DescribeIndexResponse.Builder response = DescribeIndexResponse.newBuilder();
+        for (Map.Entry<String, IndexType> entry : collection.indexTypes.entrySet()) {
+            response.addIndexDescriptions(IndexDescription.newBuilder()
+                    .setIndexName(entry.getKey())
+                    .setFieldName(entry.getKey())
+                    .addParams(KeyValuePair.newBuilder().setKey("index_type").setValue(entry.getValue().name())));
+        }
+        return R.success(response.build());
+    }
+
+    private R<MutationResult> insert(InsertParam param) throws InterruptedException {
+        FakeCollection collection = collections.get(param.getCollectionName());
+        if (collection == null) {
+            return R.failed(new IllegalArgumentException("集合不存在: " + param.getCollectionName()));
+        }
+        if (insertLatencyMs > 0) {
+            Thread.sleep(insertLatencyMs);
+        }
+        insertCalls.incrementAndGet();
+
+        List<InsertParam.Field> fields = param.getFields();
+        int rows = fields.isEmpty() ? 0 : fields.get(0).getValues().size();
+        List<Long> ids = new ArrayList<>(rows);
+        List<Map<String, Object>> newRows = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            long id = nextId.getAndIncrement();
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put(collection.primaryKey, id);
+            for (InsertParam.Field field : fields) {
+                Object value = field.getValues().get(row);
+                values.put(field.getName(), field.getName().equals(collection.vectorField) ? toFloatArray(value) : value);
+            }
+            newRows.add(values);
+            ids.add(id);
+        }
+        collection.insert(newRows);
+
+        return R.success(MutationResult.newBuilder()
+                .setIDs(IDs.newBuilder().setIntId(LongArray.newBuilder().addAllData(ids)))
+                .setInsertCnt(rows)
+                .build());
+    }
+
+    private R<MutationResult> delete(DeleteParam param) {
+        return withCollection(param, collection -> {
+            long deleted = collection.delete(MilvusFilterExpression.parse(param.getExpr()));
+            return R.success(MutationResult.newBuilder().setDeleteCnt(deleted).build());
+        });
+    }
+
+    private R<SearchResults> search(SearchParam param) {
+        return withCollection(param, collection -> {
+            searchCalls.incrementAndGet();
+            return R.success(collection.search(param.getVectors(), param.getMetricType(), param.getTopK(),
+                    MilvusFilterExpression.parse(param.getExpr()), param.getOutFields()));
+        });
+    }
+
+    /**
+     * 混合检索只按稠密向量一路暴力计算，忽略稀疏一路和重排策略
+     */
+    private R<SearchResults> hybridSearch(HybridSearchParam param) {
+        return withCollection(param, collection -> {
+            searchCalls.incrementAndGet();
+            for (AnnSearchParam request : param.getSearchRequests()) {
+                if (request.getVectorFieldName().equals(collection.vectorField)) {
+                    return R.success(collection.search(request.getVectors(), request.getMetricType(), param.getTopK(),
+                            MilvusFilterExpression.parse(request.getExpr()), param.getOutFields()));
+                }
+            }
+            return R.failed(new IllegalArgumentException("混合检索缺少稠密向量检索请求"));
+        });
+    }
+
+    private R<QueryResults> query(QueryParam param) {
+        return withCollection(param, collection -> R.success(collection.query(MilvusFilterExpression.parse(param.getExpr()),
+                param.getOutFields(), param.getLimit())));
+    }
+
+    private <T> R<T> withCollection(Object param, Function<FakeCollection, R<T>> action) {
+        String name = collectionName(param);
+        FakeCollection collection = collections.get(name);
+        if (collection == null) {
+            return R.failed(new IllegalArgumentException("集合不存在: " + name));
+        }
+        try {
+            return action.apply(collection);
+        } catch (IllegalArgumentException e) {
+            return R.failed(e);
+        }
+    }
+
+    private static R<RpcStatus> success() {
+        return R.success(new RpcStatus(RpcStatus.SUCCESS_MSG));
+    }
+
+    /**
+     * 各参数类都有 getCollectionName()
+     */
+    private static String collectionName(Object param) {
+        try {
+            return (String) param.getClass().getMethod("getCollectionName").invoke(param);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("参数缺少集合名: " + param, e);
+        }
+    }
+
+    private static float[] toFloatArray(Object value) {
+        List<?> list = (List<?>) value;
+        float[] vector = new float[list.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = ((Number) list.get(i)).floatValue();
+        }
+        return vector;
+    }
+
+    // ---------------------------------------------------------------- 集合
+
+    private static final class FakeCollection {
+        private final Map<String, FieldType> fields = new LinkedHashMap<>();
+        private final Map<String, IndexType> indexTypes = new ConcurrentHashMap<>();
+        private final List<Map<String, Object>> rows = new ArrayList<>();
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final String primaryKey;
+        private final String vectorField;
+        private final int dimension;
+        private volatile boolean loaded;
+
+        FakeCollection(List<FieldType> fieldTypes) {
+            String pk = "id";
+            String vector = null;
+            int dim = 0;
+            for (FieldType field : fieldTypes) {
+                fields.put(field.getName(), field);
+                if (field.isPrimaryKey()) {
+                    pk = field.getName();
+                }
+                if (field.getDataType() == DataType.FloatVector && vector == null) {
+                    vector = field.getName();
+                    dim = field.getDimension();
+                }
+            }
+            this.primaryKey = pk;
+            this.vectorField = vector;
+            this.dimension = dim;
+        }
+
+        long size() {
+            lock.readLock().lock();
+            try {
+                return rows.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void insert(List<Map<String, Object>> newRows) {
+            lock.writeLock().lock();
+            try {
+                rows.addAll(newRows);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        long delete(MilvusFilterExpression filter) {
+            lock.writeLock().lock();
+            try {
+                int before = rows.size();
+                rows.removeIf(filter::test);
+                return before - rows.size();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        SearchResults search(List<?> queries, String metricType, long topK, MilvusFilterExpression filter,
+                             List<String> outFields) {
+            boolean distance = "L2".equalsIgnoreCase(metricType);
+            boolean cosine = "COSINE".equalsIgnoreCase(metricType);
+
+            List<Map<String, Object>> hits = new ArrayList<>();
+            List<Float> scores = new ArrayList<>();
+            List<Long> topks = new ArrayList<>();
+
+            lock.readLock().lock();
+            try {
+                for (Object query : queries) {
+                    float[] vector = toFloatArray(query);
+                    List<Scored> scored = new ArrayList<>();
+                    for (Map<String, Object> row : rows) {
+                        if (filter.test(row)) {
+                            scored.add(new Scored(row, score((float[]) row.get(vectorField), vector, distance, cosine)));
+                        }
+                    }
+                    Comparator<Scored> order = Comparator.comparingDouble(s -> s.score);
+                    scored.sort(distance ? order : order.reversed());
+
+                    int count = (int) Math.min(topK, scored.size());
+                    for (int i = 0; i < count; i++) {
+                        hits.add(scored.get(i).row);
+                        scores.add(scored.get(i).score);
+                    }
+                    topks.add((long) count);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            List<Long> ids = new ArrayList<>(hits.size());
+            hits.forEach(row -> ids.add((Long) row.get(primaryKey)));
+            List<String> outputFields = outFields == null ? List.of() : outFields;
+            return SearchResults.newBuilder()
+                    .setResults(SearchResultData.newBuilder()
+                            .setNumQueries(queries.size())
+                            .setTopK(topK)
+                            .setIds(IDs.newBuilder().setIntId(LongArray.newBuilder().addAllData(ids)))
+                            .addAllScores(scores)
+                            .addAllTopks(topks)
+                            .addAllFieldsData(fieldsData(hits, outputFields))
+                            .addAllOutputFields(outputFields))
+                    .build();
+        }
+
+        QueryResults query(MilvusFilterExpression filter, List<String> outFields, long limit) {
+            List<Map<String, Object>> matched = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                for (Map<String, Object> row : rows) {
+                    if (limit > 0 && matched.size() >= limit) {
+                        break;
+                    }
+                    if (filter.test(row)) {
+                        matched.add(row);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            List<String> outputFields = new ArrayList<>(outFields == null ? List.of() : outFields);
+            if (!outputFields.contains(primaryKey)) {
+                outputFields.add(primaryKey);
+            }
+            return QueryResults.newBuilder()
+                    .addAllFieldsData(fieldsData(matched, outputFields))
+                    .addAllOutputFields(outputFields)
+                    .build();
+        }
+
+        /**
+         * 按字段类型生成列数据；稀疏向量等未实现的类型不返回
+         */
+        private List<FieldData> fieldsData(List<Map<String, Object>> rows, List<String> outFields) {
+            List<FieldData> data = new ArrayList<>();
+            for (String name : outFields) {
+                FieldType field = fields.get(name);
+                if (field == null) {
+                    continue;
+                }
+                FieldData.Builder builder = FieldData.newBuilder().setFieldName(name).setType(field.getDataType());
+                switch (field.getDataType()) {
+                    case Int64: {
+                        LongArray.Builder values = LongArray.newBuilder();
+                        rows.forEach(row -> values.addData(((Number) row.get(name)).longValue()));
+                        builder.setScalars(ScalarField.newBuilder().setLongData(values));
+                        break;
+                    }
+                    case VarChar: {
+                        StringArray.Builder values = StringArray.newBuilder();
+                        rows.forEach(row -> values.addData(String.valueOf(row.get(name))));
+                        builder.setScalars(ScalarField.newBuilder().setStringData(values));
+                        break;
+                    }
+                    case JSON: {
+                        JSONArray.Builder values = JSONArray.newBuilder();
+                        rows.forEach(row -> values.addData(ByteString.copyFromUtf8(String.valueOf(row.get(name)))));
+                        builder.setScalars(ScalarField.newBuilder().setJsonData(values));
+                        break;
+                    }
+                    case FloatVector: {
+                        FloatArray.Builder values = FloatArray.newBuilder();
+                        for (Map<String, Object> row : rows) {
+                            for (float v : (float[]) row.get(name)) {
+                                values.addData(v);
+                            }
+                        }
+                        builder.setVectors(VectorField.newBuilder().setDim(dimension).setFloatVector(values));
+                        break;
+                    }
+                    default:
+                        continue;
+                }
+                data.add(builder.build());
+            }
+            return data;
+        }
+
+        private static float score(float[] stored, float[] query, boolean distance, boolean cosine) {
+            double dot = 0;
+            double storedNorm = 0;
+            double queryNorm = 0;
+            double l2 = 0;
+            for (int i = 0; i < query.length && i < stored.length; i++) {
+                dot += stored[i] * query[i];
+                storedNorm += stored[i] * stored[i];
+                queryNorm += query[i] * query[i];
+                double diff = stored[i] - query[i];
+                l2 += diff * diff;
+            }
+            if (distance) {
+                return (float) l2;
+            }
+            if (cosine) {
+                return storedNorm == 0 || queryNorm == 0 ? 0f : (float) (dot / Math.sqrt(storedNorm * queryNorm));
+            }
+            return (float) dot;
+        }
+    }
+
+    private static final class Scored {
+        private final Map<String, Object> row;
+        private final float score;
+
+        Scored(Map<String, Object> row, float score) {
+            this.row = row;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.langchain.loadtest;
+
+import com.example.langchain.LangChainApplication;
+import com.example.langchain.benchmark.SyntheticDocx;
+import com.example.langchain.milvus.controller.DocumentController;
+import com.example.langchain.milvus.dto.DocumentImportResult;
+import com.example.langchain.milvus.utils.TempFileMultipartFile;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.http.ResponseEntity;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 导入压测：以 loadtest profile 启动应用（进程内 Milvus + 本地向量模型），
+ * 生成合成文档集合后按配置的并发数调用 DocumentController 的同步导入接口，
+ * 输出 docs/sec、导入耗时 p50/p90/p99 和堆内存峰值。
+ * <p>
+ * 参数见 application-loadtest.yml，可用命令行覆盖，例如 --app.loadtest.documents=500 --app.loadtest.concurrency=16
+ */
+public class ImportLoadTest {
+
+    private final DocumentController controller;
+    private final FakeMilvusClient milvus;
+    private final DeterministicEmbeddingModel embeddingModel;
+    private final Environment env;
+
+    ImportLoadTest(ConfigurableApplicationContext context) {
+        this.controller = context.getBean(DocumentController.class);
+        this.milvus = context.getBean(FakeMilvusClient.class);
+        this.embeddingModel = context.getBean(DeterministicEmbeddingModel.class);
+        this.env = context.getEnvironment();
+    }
+
+    public static void main(String[] args) throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(LangChainApplication.class)
+                .profiles("loadtest")
+                .run(args);
+        try {
+            new ImportLoadTest(context).run();
+        } finally {
+            context.close();
+        }
+    }
+
+    void run() throws Exception {
+        int documents = env.getProperty("app.loadtest.documents", Integer.class, 100);
+        int concurrency = env.getProperty("app.loadtest.concurrency", Integer.class, 8);
+        int warmup = env.getProperty("app.loadtest.warmup-documents", Integer.class, 4);
+        long heapSampleIntervalMs = env.getProperty("app.loadtest.heap-sample-interval-ms", Long.class, 20L);
+        String collection = env.getProperty("app.milvus.default-collection", "loadtest_collection");
+        if (documents < 1 || concurrency < 1 || warmup < 0) {
+            throw new IllegalArgumentException("文档数、并发数须大于 0");
+        }
+
+        List<Path> corpus = SyntheticCorpus.generate(
+                Paths.get(env.getProperty("app.loadtest.corpus-dir", "loadtest/corpus/")),
+                warmup + documents,
+                env.getProperty("app.loadtest.min-paragraphs", Integer.class, 50),
+                env.getProperty("app.loadtest.max-paragraphs", Integer.class, 3000),
+                env.getProperty("app.loadtest.images-per-hundred-paragraphs", Integer.class, 5),
+                env.getProperty("app.loadtest.seed", Long.class, 42L));
+
+        // 预热：JIT 编译、线程池创建等不计入结果
+        for (Path file : corpus.subList(0, warmup)) {
+            importOne(file, collection);
+        }
+
+        // 各内存池的峰值出现在不同时刻，相加会高估；定期采样整个堆的已用量取最大值
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        AtomicLong heapPeak = new AtomicLong();
+        ScheduledExecutorService heapSampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "heap-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heapSampler.scheduleAtFixedRate(() -> heapPeak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                0, heapSampleIntervalMs, TimeUnit.MILLISECONDS);
+        long embedCallsBefore = embeddingModel.getCalls();
+        long insertCallsBefore = milvus.getInsertCalls();
+
+        List<Path> measured = corpus.subList(warmup, corpus.size());
+        long[] latencies = new long[measured.size()];
+        AtomicInteger failures = new AtomicInteger();
+        AtomicLong chunks = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>(measured.size());
+            for (int i = 0; i < measured.size(); i++) {
+                int index = i;
+                futures.add(executor.submit(() -> {
+                    long begin = System.nanoTime();
+                    DocumentImportResult result = importOne(measured.get(index), collection);
+                    latencies[index] = System.nanoTime() - begin;
+                    if (result == null || !Boolean.TRUE.equals(result.getSuccess())) {
+                        failures.incrementAndGet();
+                    } else if (result.getChunkCount() != null) {
+                        chunks.addAndGet(result.getChunkCount());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            heapSampler.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+        heapSampler.awaitTermination(1, TimeUnit.SECONDS);
+        heapPeak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+
+        double seconds = elapsed / 1e9;
+        Arrays.sort(latencies);
+        System.out.println();
+        System.out.println("==================== 导入压测结果 ====================");
+        System.out.printf("文档数 %d（失败 %d），并发 %d，总耗时 %.2fs%n", measured.size(), failures.get(), concurrency, seconds);
+        System.out.printf("吞吐量 %.2f docs/sec，%.1f chunks/sec%n", measured.size() / seconds, chunks.get() / seconds);
+        System.out.printf("导入耗时 p50=%.0fms p90=%.0fms p99=%.0fms max=%.0fms%n",
+                percentileMs(latencies, 0.50), percentileMs(latencies, 0.90),
+                percentileMs(latencies, 0.99), latencies[latencies.length - 1] / 1e6);
+        System.out.printf("堆内存峰值 %.1fMB（每 %dms 采样的堆已用量最大值，含进程内 Milvus 保存的向量 %.1fMB）%n",
+                heapPeak.get() / 1048576.0, heapSampleIntervalMs, milvus.getVectorBytes() / 1048576.0);
+        System.out.printf("向量化调用 %d 次，Milvus 写入调用 %d 次，集合行数 %d%n",
+                embeddingModel.getCalls() - embedCallsBefore, milvus.getInsertCalls() - insertCallsBefore, milvus.getRowCount());
+        System.out.println("======================================================");
+    }
+
+    private DocumentImportResult importOne(Path file, String collection) {
+        // 直接引用磁盘上的文件，相当于 multipart 已落盘的上传（控制器会再复制一份到临时目录）
+        TempFileMultipartFile upload = new TempFileMultipartFile(file, "file", file.getFileName().toString(),
+                SyntheticDocx.CONTENT_TYPE);
+        ResponseEntity<DocumentImportResult> response = controller.importDocument(
+                upload, collection, true, "auto", "semantic", 5000, 200, "default");
+        return response.getBody();
+    }
+
+    /**
+     * 最近秩法百分位
+     */
+    private static double percentileMs(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+}
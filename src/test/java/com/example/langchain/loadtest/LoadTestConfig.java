@@ -0,0 +1,45 @@
+package com.example.langchain.loadtest;
+
+import io.milvus.client.MilvusClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * loadtest profile：用进程内 Milvus 和本地向量模型替换外部依赖（MilvusConfig 在该 profile 下不生效）
+ */
+@Configuration
+@Profile("loadtest")
+public class LoadTestConfig {
+
+    @Value("${app.loadtest.milvus.insert-latency-ms:5}")
+    private Long insertLatencyMs;
+
+    @Value("${app.milvus.vector-dimension:1024}")
+    private Integer vectorDimension;
+
+    // 每次 embedAll 的固定延迟 + 每个分块的延迟，模拟远程向量化接口
+    @Value("${app.loadtest.embedding.latency-ms:80}")
+    private Long embeddingLatencyMs;
+
+    @Value("${app.loadtest.embedding.latency-per-segment-micros:2000}")
+    private Long embeddingLatencyPerSegmentMicros;
+
+    @Bean
+    public FakeMilvusClient fakeMilvusClient() {
+        return new FakeMilvusClient(insertLatencyMs);
+    }
+
+    @Bean
+    public MilvusClient milvusClient(FakeMilvusClient fakeMilvusClient) {
+        return fakeMilvusClient.asClient();
+    }
+
+    @Bean
+    @Primary
+    public DeterministicEmbeddingModel deterministicEmbeddingModel() {
+        return new DeterministicEmbeddingModel(vectorDimension, embeddingLatencyMs, embeddingLatencyPerSegmentMicros);
+    }
+}
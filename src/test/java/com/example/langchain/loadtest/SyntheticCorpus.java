@@ -0,0 +1,42 @@
+package com.example.langchain.loadtest;
+
+import com.example.langchain.benchmark.SyntheticDocx;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 压测文档集合：段落数在 [minParagraphs, maxParagraphs] 内按对数均匀分布（小文档多、大文档少），
+ * 图片数按每百段落的比例生成。文档写入磁盘，压测时按文件读取，不占用堆内存
+ */
+public final class SyntheticCorpus {
+
+    private SyntheticCorpus() {
+    }
+
+    public static List<Path> generate(Path dir, int documents, int minParagraphs, int maxParagraphs,
+                                      int imagesPerHundredParagraphs, long seed) throws Exception {
+        if (minParagraphs < 1 || maxParagraphs < minParagraphs) {
+            throw new IllegalArgumentException("段落数范围无效: " + minParagraphs + ".." + maxParagraphs);
+        }
+
+        Files.createDirectories(dir);
+        Random random = new Random(seed);
+        double logMin = Math.log(minParagraphs);
+        double logMax = Math.log(maxParagraphs);
+
+        List<Path> files = new ArrayList<>(documents);
+        for (int i = 0; i < documents; i++) {
+            int paragraphs = (int) Math.round(Math.exp(logMin + random.nextDouble() * (logMax - logMin)));
+            int images = paragraphs * imagesPerHundredParagraphs / 100;
+
+            Path file = dir.resolve(String.format("doc_%05d_%dp_%di.docx", i, paragraphs, images));
+            Files.write(file, SyntheticDocx.generate(paragraphs, images, seed + i));
+            files.add(file);
+        }
+        return files;
+    }
+}
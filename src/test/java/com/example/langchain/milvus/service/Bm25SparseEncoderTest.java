@@ -0,0 +1,110 @@
+package com.example.langchain.milvus.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Bm25SparseEncoderTest {
+
+    private Bm25SparseEncoder encoder;
+
+    @BeforeEach
+    void setUp() {
+        // 不连接 Milvus：统计读取失败时按等权重查询
+        encoder = new Bm25SparseEncoder(null);
+        ReflectionTestUtils.setField(encoder, "k1", 1.2);
+        ReflectionTestUtils.setField(encoder, "b", 0.75);
+        ReflectionTestUtils.setField(encoder, "avgDocLength", 4.0);
+        ReflectionTestUtils.setField(encoder, "statsRefreshIntervalMs", 1800000L);
+        ReflectionTestUtils.setField(encoder, "statsMinRefreshIntervalMs", 60000L);
+    }
+
+    @Test
+    void modelNumbersAndIdentifiersStayWhole() {
+        assertEquals(List.of("gpt-4.5", "sku_1029", "v2", "a/b"),
+                Bm25SparseEncoder.tokenize("GPT-4.5, SKU_1029 (v2) a/b."));
+    }
+
+    @Test
+    void cjkTextIsSplitIntoUnigramsAndBigrams() {
+        assertEquals(List.of("向", "向量", "量", "量检", "检", "检索", "索"), Bm25SparseEncoder.tokenize("向量检索"));
+        assertEquals(List.of("hnsw", "索", "索引", "引"), Bm25SparseEncoder.tokenize("HNSW索引"));
+    }
+
+    @Test
+    void accentedLatinAndCyrillicAreKept() {
+        assertEquals(List.of("cafe", "creme", "brulee"), Bm25SparseEncoder.tokenize("Café crème brûlée"));
+        assertEquals(Bm25SparseEncoder.tokenize("resume"), Bm25SparseEncoder.tokenize("RÉSUMÉ"));
+        assertEquals(List.of("привет", "мир", "йод"), Bm25SparseEncoder.tokenize("Привет, мир! Йод"));
+        assertEquals(List.of("straße"), Bm25SparseEncoder.tokenize("Straße"));
+    }
+
+    @Test
+    void punctuationOnlyTextHasNoTokens() {
+        assertTrue(Bm25SparseEncoder.tokenize(" -- ... ！？").isEmpty());
+        assertTrue(Bm25SparseEncoder.tokenize(null).isEmpty());
+    }
+
+    @Test
+    void documentWeightsFollowBm25TermFrequencySaturation() {
+        // 文档长度等于平均长度时 norm = k1：w(tf) = tf * (k1 + 1) / (tf + k1)
+        SortedMap<Long, Float> vector = encoder.encodeDocument("alpha alpha beta gamma");
+
+        assertEquals(3, vector.size());
+        assertEquals(2 * 2.2f / 3.2f, vector.get(Bm25SparseEncoder.termIndex("alpha")), 1e-6);
+        assertEquals(1f, vector.get(Bm25SparseEncoder.termIndex("beta")), 1e-6);
+
+        // 更长的文档中同样的词频权重更低
+        SortedMap<Long, Float> longer = encoder.encodeDocument("alpha alpha beta gamma delta epsilon zeta eta");
+        assertTrue(longer.get(Bm25SparseEncoder.termIndex("alpha")) < vector.get(Bm25SparseEncoder.termIndex("alpha")));
+    }
+
+    @Test
+    void emptyDocumentGetsPlaceholderDimension() {
+        SortedMap<Long, Float> vector = encoder.encodeDocument("  ...  ");
+
+        assertEquals(Set.of(Bm25SparseEncoder.EMPTY_DOCUMENT_INDEX), vector.keySet());
+        assertTrue(vector.get(Bm25SparseEncoder.EMPTY_DOCUMENT_INDEX) > 0);
+    }
+
+    @Test
+    void emptyQueryEncodesToEmptyVector() {
+        assertTrue(encoder.encodeQuery("docs", "?!").isEmpty());
+
+        SortedMap<Long, Float> query = encoder.encodeQuery("docs", "beta beta alpha");
+        assertEquals(2f, query.get(Bm25SparseEncoder.termIndex("beta")), 1e-6);
+        assertEquals(1f, query.get(Bm25SparseEncoder.termIndex("alpha")), 1e-6);
+    }
+
+    @Test
+    void idfUsesDocumentFrequenciesAndIgnoresPlaceholder() {
+        Bm25SparseEncoder.TermStatistics statistics = new Bm25SparseEncoder.TermStatistics();
+        long alpha = Bm25SparseEncoder.termIndex("alpha");
+        long beta = Bm25SparseEncoder.termIndex("beta");
+        statistics.add(encoder.encodeDocument("alpha beta").keySet());
+        statistics.add(encoder.encodeDocument("alpha").keySet());
+        statistics.add(encoder.encodeDocument("").keySet());
+
+        // idf = ln(1 + (N - df + 0.5) / (df + 0.5))，N = 3
+        assertEquals((float) Math.log(1 + 1.5 / 2.5), statistics.idf(alpha), 1e-6);
+        assertEquals((float) Math.log(1 + 2.5 / 1.5), statistics.idf(beta), 1e-6);
+        assertEquals((float) Math.log(1 + 3.5 / 0.5), statistics.idf(Bm25SparseEncoder.EMPTY_DOCUMENT_INDEX), 1e-6);
+        assertTrue(statistics.idf(beta) > statistics.idf(alpha));
+    }
+
+    @Test
+    void termIndexNeverCollidesWithPlaceholder() {
+        for (Map.Entry<Long, Float> entry : encoder.encodeDocument("a b c d e f g h i j").entrySet()) {
+            assertTrue(entry.getKey() < Bm25SparseEncoder.EMPTY_DOCUMENT_INDEX);
+        }
+        assertEquals(0x811C9DC5L, Bm25SparseEncoder.termIndex(""));
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.langchain.milvus.service;
+
+import com.example.langchain.milvus.utils.MilvusFilterExpression;
+import io.milvus.grpc.DataType;
+import io.milvus.grpc.SearchResults;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddedCollectionTest {
+
+    private static final String NAME = "chunks";
+    private static final int DIMENSION = 16;
+    // Milvus 自动主键的量级（超过 2^53），相邻主键转成 double 后相同
+    private static final long LARGE_ID = 449876543210123457L;
+
+    @TempDir
+    Path tempDir;
+
+    private final Random random = new Random(7);
+
+    @Test
+    void deleteByLargePrimaryKeyRemovesExactlyThatRow() {
+        EmbeddedCollection collection = newCollection();
+        collection.putRecord(record(LARGE_ID, "doc-1", "acme"));
+        collection.putRecord(record(LARGE_ID + 1, "doc-1", "acme"));
+
+        long deleted = collection.delete(MilvusFilterExpression.parse("id in [" + LARGE_ID + "]"));
+
+        assertEquals(1, deleted);
+        assertEquals(List.of(LARGE_ID + 1), queryIds(collection, "id > 0"));
+    }
+
+    @Test
+    void deleteByDocumentIdUsesPostingsAndAppliesOtherConditions() {
+        EmbeddedCollection collection = newCollection();
+        collection.putRecord(record(LARGE_ID, "doc-1", "acme"));
+        collection.putRecord(record(LARGE_ID + 1, "doc-1", "globex"));
+        collection.putRecord(record(LARGE_ID + 2, "doc-2", "acme"));
+
+        long deleted = collection.delete(MilvusFilterExpression.parse(
+                "document_id == \"doc-1\" && tenant_id == \"acme\""));
+
+        assertEquals(1, deleted);
+        assertEquals(2, collection.size());
+        assertEquals(List.of(LARGE_ID + 1), queryIds(collection, "document_id == \"doc-1\""));
+    }
+
+    @Test
+    void tenantFilteredSearchReturnsOnlyThatTenant() {
+        EmbeddedCollection collection = newCollection();
+        for (int i = 0; i < 2000; i++) {
+            collection.putRecord(record(LARGE_ID + i, "doc-" + i / 10, i % 100 == 0 ? "small" : "big"));
+        }
+
+        for (String filter : List.of("tenant_id == \"small\"", "metadata[\"tenant_id\"] == \"small\"")) {
+            List<Long> ids = searchIds(collection, vector(), 5, filter);
+            assertEquals(5, ids.size(), filter);
+            for (Long id : ids) {
+                assertEquals(0, (id - LARGE_ID) % 100, filter);
+            }
+        }
+        assertTrue(searchIds(collection, vector(), 5, "tenant_id == \"missing\"").isEmpty());
+    }
+
+    @Test
+    void snapshotRoundTripRestoresRowsGraphAndPostings() throws IOException {
+        EmbeddedCollection collection = newCollection();
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Map<String, Object> record = record(LARGE_ID + i, "doc-" + i % 5, i % 2 == 0 ? "acme" : "globex");
+            vectors.add((float[]) record.get("vector"));
+            collection.putRecord(record);
+        }
+        collection.delete(MilvusFilterExpression.parse("id == " + (LARGE_ID + 3)));
+        collection.save(tempDir, 0.5, 49);
+        assertFalse(collection.isDirty());
+
+        EmbeddedCollection loaded = EmbeddedCollection.load(tempDir, NAME, 16, 100, null);
+
+        assertEquals(49, loaded.size());
+        assertEquals(49, loaded.getSourceRowCount());
+        assertFalse(loaded.isDirty());
+        assertEquals(List.of(LARGE_ID + 10), searchIds(loaded, vectors.get(10), 1, ""));
+        assertTrue(searchIds(loaded, vectors.get(3), 49, "").stream().noneMatch(id -> id == LARGE_ID + 3));
+        assertEquals(List.of(LARGE_ID + 5, LARGE_ID + 15, LARGE_ID + 25, LARGE_ID + 35, LARGE_ID + 45),
+                queryIds(loaded, "document_id == \"doc-0\" && tenant_id == \"globex\""));
+        assertEquals(5, loaded.delete(MilvusFilterExpression.parse("document_id == \"doc-0\" && tenant_id == \"globex\"")));
+    }
+
+    @Test
+    void graphNewerThanRowsDropsOrphanNodesOnLoad() throws IOException {
+        EmbeddedCollection collection = newCollection();
+        for (int i = 0; i < 20; i++) {
+            collection.putRecord(record(LARGE_ID + i, "doc-1", "acme"));
+        }
+        collection.save(tempDir, 0.5, 20);
+
+        // 模拟保存中途失败：图已写入新节点，行文件仍是上一版
+        Map<String, Object> orphan = record(LARGE_ID + 100, "doc-2", "acme");
+        collection.putRecord(orphan);
+        Path newer = Files.createDirectories(tempDir.resolve("newer"));
+        collection.save(newer, 0.5, 21);
+        Files.copy(newer.resolve(NAME + EmbeddedCollection.GRAPH_SUFFIX),
+                tempDir.resolve(NAME + EmbeddedCollection.GRAPH_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+
+        EmbeddedCollection loaded = EmbeddedCollection.load(tempDir, NAME, 16, 100, null);
+
+        assertEquals(20, loaded.size());
+        assertTrue(searchIds(loaded, (float[]) orphan.get("vector"), 21, "").stream()
+                .noneMatch(id -> id == LARGE_ID + 100));
+        assertTrue(queryIds(loaded, "document_id == \"doc-2\"").isEmpty());
+    }
+
+    @Test
+    void sparseVectorFieldIsNotRegisteredLocally() {
+        List<EmbeddedCollection.Field> fields = new ArrayList<>(fields());
+        fields.add(new EmbeddedCollection.Field("sparse_vector", DataType.SparseFloatVector, false, false, false, 0));
+        EmbeddedCollection collection = new EmbeddedCollection(NAME, fields, HnswIndex.Metric.COSINE, 16, 100, null);
+        collection.createIndex("sparse_vector", "SPARSE_INVERTED_INDEX", "IP");
+
+        // describe 不返回稀疏字段，服务层不会对本地集合发送 BM25 一路
+        assertTrue(collection.describe().getSchema().getFieldsList().stream()
+                .noneMatch(field -> field.getDataType() == DataType.SparseFloatVector));
+        assertTrue(collection.describeIndex().getIndexDescriptionsList().isEmpty());
+
+        Map<String, Object> record = record(LARGE_ID, "doc-1", "acme");
+        record.put("sparse_vector", Map.of(1L, 0.5f));
+        collection.putRecord(record);
+        assertEquals(List.of(LARGE_ID), queryIds(collection, "document_id == \"doc-1\""));
+    }
+
+    private EmbeddedCollection newCollection() {
+        return new EmbeddedCollection(NAME, fields(), HnswIndex.Metric.COSINE, 16, 100, null);
+    }
+
+    private static List<EmbeddedCollection.Field> fields() {
+        return List.of(
+                new EmbeddedCollection.Field("id", DataType.Int64, true, true, false, 0),
+                new EmbeddedCollection.Field("vector", DataType.FloatVector, false, false, false, DIMENSION),
+                new EmbeddedCollection.Field("document_id", DataType.VarChar, false, false, false, 0),
+                new EmbeddedCollection.Field("tenant_id", DataType.VarChar, false, false, true, 0),
+                new EmbeddedCollection.Field("metadata", DataType.JSON, false, false, false, 0));
+    }
+
+    private Map<String, Object> record(long id, String documentId, String tenant) {
+        Map<String, Object> record = new HashMap<>();
+        record.put("id", id);
+        record.put("vector", vector());
+        record.put("document_id", documentId);
+        record.put("tenant_id", tenant);
+        record.put("metadata", "{\"tenant_id\":\"" + tenant + "\"}");
+        return record;
+    }
+
+    private float[] vector() {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static List<Long> searchIds(EmbeddedCollection collection, float[] query, int topK, String filter) {
+        SearchResults results = collection.search(List.of(query), topK, 64, MilvusFilterExpression.parse(filter), null);
+        return results.getResults().getIds().getIntId().getDataList();
+    }
+
+    private static List<Long> queryIds(EmbeddedCollection collection, String filter) {
+        return collection.query(MilvusFilterExpression.parse(filter), List.of("id"), 0)
+                .getFieldsData(0).getScalars().getLongData().getDataList().stream().sorted().toList();
+    }
+}
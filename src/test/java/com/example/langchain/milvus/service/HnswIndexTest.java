@@ -0,0 +1,271 @@
+package com.example.langchain.milvus.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.LongPredicate;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HnswIndexTest {
+
+    private static final int DIMENSION = 32;
+    private static final int ROWS = 3000;
+    private static final int QUERIES = 50;
+    private static final int TOP_K = 10;
+    private static final int EF = 100;
+    // 标签从 Milvus 自动主键的量级开始（超过 2^53）
+    private static final long BASE_LABEL = 449876543210000000L;
+
+    @TempDir
+    Path tempDir;
+
+    private final Random random = new Random(42);
+    private final List<float[]> vectors = new ArrayList<>();
+
+    @Test
+    void recallAgainstBruteForce() {
+        for (HnswIndex.Metric metric : HnswIndex.Metric.values()) {
+            HnswIndex index = build(metric);
+
+            double recall = recall(index, null);
+
+            assertTrue(recall >= 0.95, metric + " recall@" + TOP_K + " = " + recall);
+            assertEquals(ROWS, index.size());
+        }
+    }
+
+    @Test
+    void scoresFollowMilvusConventions() {
+        HnswIndex l2 = new HnswIndex(2, 16, 100, HnswIndex.Metric.L2);
+        l2.add(1, new float[]{0, 0});
+        l2.add(2, new float[]{3, 4});
+        List<HnswIndex.Hit> l2Hits = l2.search(new float[]{0, 0}, 2, EF, null);
+        assertEquals(List.of(1L, 2L), labels(l2Hits));
+        assertEquals(25f, l2Hits.get(1).getScore(), 1e-5);
+
+        HnswIndex cosine = new HnswIndex(2, 16, 100, HnswIndex.Metric.COSINE);
+        cosine.add(1, new float[]{10, 0});
+        cosine.add(2, new float[]{0, 5});
+        List<HnswIndex.Hit> cosineHits = cosine.search(new float[]{2, 0}, 2, EF, null);
+        assertEquals(List.of(1L, 2L), labels(cosineHits));
+        assertEquals(1f, cosineHits.get(0).getScore(), 1e-5);
+        assertEquals(0f, cosineHits.get(1).getScore(), 1e-5);
+    }
+
+    @Test
+    void deletedLabelsAreHiddenAndDroppedByCompaction() {
+        HnswIndex index = build(HnswIndex.Metric.COSINE);
+        for (int i = 0; i < ROWS; i += 2) {
+            assertTrue(index.remove(BASE_LABEL + i));
+        }
+        assertFalse(index.remove(BASE_LABEL));
+        assertEquals(ROWS / 2, index.size());
+        assertEquals(0.5, index.deletedRatio(), 1e-9);
+        LongPredicate live = label -> (label - BASE_LABEL) % 2 == 1;
+
+        for (int q = 0; q < QUERIES; q++) {
+            for (HnswIndex.Hit hit : index.search(query(q), TOP_K, EF, null)) {
+                assertTrue(live.test(hit.getLabel()), "已删除的标签出现在结果中: " + hit.getLabel());
+            }
+        }
+        assertTrue(recall(index, live) >= 0.9);
+
+        HnswIndex compacted = index.compact();
+        assertEquals(ROWS / 2, compacted.size());
+        assertEquals(0.0, compacted.deletedRatio(), 1e-9);
+        assertTrue(compacted.offHeapBytes() <= index.offHeapBytes());
+        assertFalse(compacted.contains(BASE_LABEL));
+        assertArrayEquals(index.getVector(BASE_LABEL + 1), compacted.getVector(BASE_LABEL + 1));
+        assertTrue(recall(compacted, live) >= 0.95);
+    }
+
+    @Test
+    void reinsertedLabelReplacesOldVector() {
+        HnswIndex index = build(HnswIndex.Metric.L2);
+        float[] replacement = vector();
+
+        index.add(BASE_LABEL + 7, replacement);
+
+        assertEquals(ROWS, index.size());
+        assertArrayEquals(replacement, index.getVector(BASE_LABEL + 7));
+        assertEquals(BASE_LABEL + 7, index.search(replacement, 1, EF, null).get(0).getLabel());
+    }
+
+    @Test
+    void snapshotRoundTrip() throws IOException {
+        HnswIndex index = build(HnswIndex.Metric.COSINE);
+        for (int i = 0; i < 100; i++) {
+            index.remove(BASE_LABEL + i * 3);
+        }
+        Path file = tempDir.resolve("chunks.hnsw");
+        index.save(file);
+
+        HnswIndex loaded = HnswIndex.load(file);
+
+        assertEquals(index.size(), loaded.size());
+        assertEquals(index.getMetric(), loaded.getMetric());
+        assertEquals(DIMENSION, loaded.getDimension());
+        assertEquals(index.deletedRatio(), loaded.deletedRatio(), 1e-9);
+        assertFalse(loaded.contains(BASE_LABEL));
+        assertArrayEquals(index.getVector(BASE_LABEL + 1), loaded.getVector(BASE_LABEL + 1));
+        for (int q = 0; q < QUERIES; q++) {
+            assertEquals(labels(index.search(query(q), TOP_K, EF, null)), labels(loaded.search(query(q), TOP_K, EF, null)));
+        }
+
+        // 映射为写时复制：加载后继续写入不影响快照文件
+        float[] added = vector();
+        loaded.add(BASE_LABEL + ROWS, added);
+        assertEquals(BASE_LABEL + ROWS, loaded.search(added, 1, EF, null).get(0).getLabel());
+        assertFalse(HnswIndex.load(file).contains(BASE_LABEL + ROWS));
+    }
+
+    @Test
+    void retainAllRemovesOrphanNodesAfterLoad() throws IOException {
+        HnswIndex index = build(HnswIndex.Metric.IP);
+        Path file = tempDir.resolve("orphans.hnsw");
+        index.save(file);
+        HnswIndex loaded = HnswIndex.load(file);
+
+        // 行文件只有前一半标签时，图中多出的节点作为孤儿删除
+        int removed = loaded.retainAll(label -> label < BASE_LABEL + ROWS / 2);
+
+        assertEquals(ROWS - ROWS / 2, removed);
+        assertEquals(ROWS / 2, loaded.size());
+        assertNull(loaded.getVector(BASE_LABEL + ROWS - 1));
+        for (int q = 0; q < QUERIES; q++) {
+            for (HnswIndex.Hit hit : loaded.search(query(q), TOP_K, EF, null)) {
+                assertTrue(hit.getLabel() < BASE_LABEL + ROWS / 2);
+            }
+        }
+    }
+
+    @Test
+    void filteredSearchMatchesBruteForceOverAcceptedLabels() {
+        HnswIndex index = build(HnswIndex.Metric.COSINE);
+        // 约 2% 的行属于该租户
+        LongPredicate tenant = label -> (label - BASE_LABEL) % 50 == 3;
+
+        for (int q = 0; q < QUERIES; q++) {
+            List<HnswIndex.Hit> hits = index.search(query(q), TOP_K, EF, tenant);
+            assertEquals(TOP_K, hits.size());
+            assertEquals(bruteForce(index, query(q), tenant), labels(hits));
+        }
+        assertTrue(index.search(query(0), TOP_K, EF, label -> false).isEmpty());
+    }
+
+    @Test
+    void searchLabelsScoresOnlyGivenCandidates() {
+        HnswIndex index = build(HnswIndex.Metric.L2);
+        LongPredicate tenant = label -> (label - BASE_LABEL) % 100 == 9;
+        long[] candidates = new long[ROWS / 100 + 2];
+        for (int i = 0; i < ROWS / 100; i++) {
+            candidates[i] = BASE_LABEL + i * 100 + 9;
+        }
+        // 不存在和已删除的标签被忽略
+        candidates[ROWS / 100] = BASE_LABEL + ROWS + 1;
+        candidates[ROWS / 100 + 1] = BASE_LABEL + 109;
+        index.remove(BASE_LABEL + 109);
+        LongPredicate live = label -> tenant.test(label) && label != BASE_LABEL + 109;
+
+        for (int q = 0; q < QUERIES; q++) {
+            List<HnswIndex.Hit> hits = index.searchLabels(query(q), TOP_K, candidates);
+            assertEquals(bruteForce(index, query(q), live), labels(hits));
+        }
+        assertEquals(ROWS / 100 - 1, index.searchLabels(query(0), ROWS, candidates).size());
+        assertTrue(index.searchLabels(query(0), TOP_K, new long[0]).isEmpty());
+    }
+
+    private HnswIndex build(HnswIndex.Metric metric) {
+        HnswIndex index = new HnswIndex(DIMENSION, 16, 200, metric);
+        while (vectors.size() < ROWS + QUERIES) {
+            vectors.add(vector());
+        }
+        for (int i = 0; i < ROWS; i++) {
+            index.add(BASE_LABEL + i, vectors.get(i));
+        }
+        return index;
+    }
+
+    private float[] query(int q) {
+        return vectors.get(ROWS + q);
+    }
+
+    private float[] vector() {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private double recall(HnswIndex index, LongPredicate live) {
+        int found = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            Set<Long> expected = new HashSet<>(bruteForce(index, query(q), live));
+            for (HnswIndex.Hit hit : index.search(query(q), TOP_K, EF, null)) {
+                if (expected.contains(hit.getLabel())) {
+                    found++;
+                }
+            }
+        }
+        return (double) found / (QUERIES * TOP_K);
+    }
+
+    /**
+     * 按度量精确计算 topK，用索引中保存的向量（COSINE 已归一化）
+     */
+    private List<Long> bruteForce(HnswIndex index, float[] query, LongPredicate accept) {
+        float[] q = query.clone();
+        if (index.getMetric() == HnswIndex.Metric.COSINE) {
+            double norm = 0;
+            for (float v : q) {
+                norm += v * v;
+            }
+            for (int i = 0; i < q.length; i++) {
+                q[i] /= (float) Math.sqrt(norm);
+            }
+        }
+        List<long[]> scored = new ArrayList<>();
+        List<Float> distances = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            long label = BASE_LABEL + i;
+            float[] vector = index.getVector(label);
+            if (vector == null || (accept != null && !accept.test(label))) {
+                continue;
+            }
+            scored.add(new long[]{label, distances.size()});
+            distances.add(distance(index.getMetric(), q, vector));
+        }
+        return scored.stream()
+                .sorted(Comparator.comparingDouble(entry -> distances.get((int) entry[1])))
+                .limit(TOP_K)
+                .map(entry -> entry[0])
+                .collect(Collectors.toList());
+    }
+
+    private static float distance(HnswIndex.Metric metric, float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += metric == HnswIndex.Metric.L2 ? (a[i] - b[i]) * (a[i] - b[i]) : -a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static List<Long> labels(List<HnswIndex.Hit> hits) {
+        return hits.stream().map(HnswIndex.Hit::getLabel).collect(Collectors.toList());
+    }
+}
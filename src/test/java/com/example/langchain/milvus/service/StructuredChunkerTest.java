@@ -0,0 +1,265 @@
+package com.example.langchain.milvus.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StructuredChunkerTest {
+
+    @Test
+    void fixedCutsExactRangesWithFullOverlap() {
+        DocumentParserWithStructure.DocumentContent content = content(para("0123456789".repeat(10)));
+
+        List<DocumentParserWithStructure.DocumentChunk> chunks = chunk(content, ChunkStrategy.FIXED, 30, 10);
+
+        assertEquals(List.of("0-30", "20-50", "40-70", "60-90", "80-100"), ranges(chunks));
+        assertChunks(content, chunks, 30, 10);
+        for (int i = 1; i < chunks.size(); i++) {
+            assertEquals(10, overlap(chunks.get(i - 1), chunks.get(i)));
+        }
+    }
+
+    @Test
+    void fixedNeverSplitsSurrogatePairs() {
+        DocumentParserWithStructure.DocumentContent content = content(para("😀".repeat(20)));
+
+        List<DocumentParserWithStructure.DocumentChunk> chunks = chunk(content, ChunkStrategy.FIXED, 7, 3);
+
+        assertChunks(content, chunks, 7, 3);
+        for (DocumentParserWithStructure.DocumentChunk chunk : chunks) {
+            assertFalse(Character.isLowSurrogate(chunk.getText().charAt(0)), ranges(chunks).toString());
+            assertFalse(Character.isHighSurrogate(chunk.getText().charAt(chunk.getText().length() - 1)));
+        }
+    }
+
+    @Test
+    void sentenceOverlapIsWholeSentences() {
+        DocumentParserWithStructure.DocumentContent content = content(para("One two. Three four. Five six. Seven eight."));
+
+        List<DocumentParserWithStructure.DocumentChunk> chunks = chunk(content, ChunkStrategy.SENTENCE, 25, 12);
+
+        assertEquals(List.of("One two. Three four.", "Three four. Five six.", "Five six. Seven eight."), texts(chunks));
+        assertEquals(List.of("0-20", "9-30", "21-43"), ranges(chunks));
+        assertEquals("Three four.".length(), overlap(chunks.get(0), chunks.get(1)));
+        assertEquals("Five six.".length(), overlap(chunks.get(1), chunks.get(2)));
+        assertChunks(content, chunks, 25, 12);
+    }
+
+    @Test
+    void sentenceWithoutOverlapPartitionsText() {
+        DocumentParserWithStructure.DocumentContent content = content(para("One two. Three four. Five six. Seven eight."));
+
+        List<DocumentParserWithStructure.DocumentChunk> chunks = chunk(content, ChunkStrategy.SENTENCE, 25, 0);
+
+        assertEquals(List.of("One two. Three four.", "Five six. Seven eight."), texts(chunks));
+        assertChunks(content, chunks, 25, 0);
+    }
+
+    @Test
+    void headingStartsSectionsAndOverlapStopsAtHeading() {
+        DocumentParserWithStructure.DocumentContent content = content(
+                heading("Intro"), para("Alpha beta gamma."),
+                heading("Usage"), para("Delta epsilon."), para("Zeta eta theta."));
+        Map<Integer, List<DocumentParserWithStructure.ImagePosition>> images = images(content, 1, 3);
+
+        List<DocumentParserWithStructure.DocumentChunk> chunks = StructuredChunker.chunkDocument(
+                content, images, ChunkStrategy.HEADING, 100, 10);
+
+        assertEquals(List.of("Intro\nAlpha beta gamma.", "Usage\nDelta epsilon.\nZeta eta theta."), texts(chunks));
+        assertEquals(List.of("0-23", "24-60"), ranges(chunks));
+        assertEquals(List.of(1), imageParagraphs(chunks.get(0)));
+        assertEquals(List.of(3), imageParagraphs(chunks.get(1)));
+        assertEquals(2, chunks.get(1).getStartParagraphIndex());
+        assertEquals(4, chunks.get(1).getEndParagraphIndex());
+        assertChunks(content, chunks, 100, 10);
+    }
+
+    @Test
+    void headingSectionLongerThanChunkSizeOverlapsOnlyInsideSection() {
+        DocumentParserWithStructure.DocumentContent content = content(
+                heading("Intro"), para("Alpha beta gamma."), para("Delta epsilon."),
+                heading("Usage"), para("Zeta eta."), para("Iota kappa."));
+        Map<Integer, List<DocumentParserWithStructure.ImagePosition>> images = images(content, 2, 5);
+
+        List<DocumentParserWithStructure.DocumentChunk> chunks = StructuredChunker.chunkDocument(
+                content, images, ChunkStrategy.HEADING, 24, 11);
+
+        // 放不进重叠窗口的句子不重叠；第二章节的第一个分块从标题开始，不与上一章节重叠
+        assertEquals(List.of("Intro\nAlpha beta gamma.", "Delta epsilon.",
+                "Usage\nZeta eta.", "Zeta eta.\nIota kappa."), texts(chunks));
+        assertEquals(0, overlap(chunks.get(0), chunks.get(1)));
+        assertEquals(content.getParagraphs().get(3).getStartPos(), chunks.get(2).getStartOffset());
+        assertEquals("Zeta eta.".length(), overlap(chunks.get(2), chunks.get(3)));
+        assertEquals(List.of(2), imageParagraphs(chunks.get(1)));
+        assertEquals(List.of(5), imageParagraphs(chunks.get(3)));
+        assertTrue(imageParagraphs(chunks.get(0)).isEmpty());
+        assertChunks(content, chunks, 24, 11);
+    }
+
+    @Test
+    void semanticHeadingEndsCurrentChunk() {
+        DocumentParserWithStructure.DocumentContent content = content(
+                heading("Intro"), para("Alpha beta gamma."),
+                heading("Usage"), para("Delta epsilon."), para("Zeta eta theta."));
+        Map<Integer, List<DocumentParserWithStructure.ImagePosition>> images = images(content, 0, 4);
+
+        List<DocumentParserWithStructure.DocumentChunk> chunks = StructuredChunker.chunkDocument(
+                content, images, ChunkStrategy.SEMANTIC, 100, 10);
+
+        assertEquals(List.of("Intro", "Alpha beta gamma.\nUsage", "Delta epsilon.\nZeta eta theta."), texts(chunks));
+        assertEquals(List.of(0), imageParagraphs(chunks.get(0)));
+        assertTrue(imageParagraphs(chunks.get(1)).isEmpty());
+        assertEquals(List.of(4), imageParagraphs(chunks.get(2)));
+        assertEquals(Boolean.TRUE, chunks.get(1).getMetadata().get("contains_headings"));
+        assertEquals(Boolean.FALSE, chunks.get(2).getMetadata().get("contains_headings"));
+        assertChunks(content, chunks, 100, 10);
+    }
+
+    @Test
+    void semanticCutsLongParagraphAtSentenceOrWordBoundaries() {
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < 60; i++) {
+            words.append("word").append(i).append(i % 7 == 6 ? ". " : " ");
+        }
+        DocumentParserWithStructure.DocumentContent content = content(
+                para("Short intro."), para(words.toString().trim()), para("Tail."));
+        Map<Integer, List<DocumentParserWithStructure.ImagePosition>> images = images(content, 2);
+
+        for (ChunkStrategy strategy : List.of(ChunkStrategy.SEMANTIC, ChunkStrategy.SENTENCE)) {
+            List<DocumentParserWithStructure.DocumentChunk> chunks = StructuredChunker.chunkDocument(
+                    content, images, strategy, 40, 8);
+
+            assertTrue(chunks.size() > 10, strategy + ": " + ranges(chunks));
+            assertChunks(content, chunks, 40, 8);
+            String text = content.getText();
+            for (DocumentParserWithStructure.DocumentChunk chunk : chunks) {
+                // 切分点和重叠起点都落在词边界上
+                assertTrue(chunk.getStartOffset() == 0 || Character.isWhitespace(text.charAt(chunk.getStartOffset() - 1)),
+                        strategy + ": " + chunk.getText());
+                assertTrue(Character.isWhitespace(text.charAt(chunk.getEndOffset())), strategy + ": " + chunk.getText());
+            }
+            DocumentParserWithStructure.DocumentChunk last = chunks.get(chunks.size() - 1);
+            assertTrue(last.getText().endsWith("Tail."));
+            assertEquals(List.of(2), imageParagraphs(last));
+        }
+    }
+
+    @Test
+    void chunkToStringAndHashCodeDoNotMaterializeText() {
+        String source = "Alpha beta gamma";
+        DocumentParserWithStructure.DocumentChunk chunk = new DocumentParserWithStructure.DocumentChunk(source, 6, 10);
+        DocumentParserWithStructure.DocumentChunk same = new DocumentParserWithStructure.DocumentChunk(source, 6, 10);
+
+        assertFalse(chunk.toString().contains("beta"));
+        assertEquals(same.hashCode(), chunk.hashCode());
+        assertEquals(same, chunk);
+        assertNull(ReflectionTestUtils.getField(chunk, "text"));
+        assertNull(ReflectionTestUtils.getField(same, "text"));
+
+        assertEquals("beta", chunk.getText());
+    }
+
+    private static List<DocumentParserWithStructure.DocumentChunk> chunk(
+            DocumentParserWithStructure.DocumentContent content, ChunkStrategy strategy, int chunkSize, int overlapSize) {
+        return StructuredChunker.chunkDocument(content, Collections.emptyMap(), strategy, chunkSize, overlapSize);
+    }
+
+    /**
+     * 通用约束：文本与偏移一致、不超过 chunkSize、按偏移递增、相邻重叠不超过 overlap、非空白字符全部被覆盖
+     */
+    private static void assertChunks(DocumentParserWithStructure.DocumentContent content,
+                                     List<DocumentParserWithStructure.DocumentChunk> chunks, int chunkSize, int overlap) {
+        String text = content.getText();
+        boolean[] covered = new boolean[text.length()];
+        for (int i = 0; i < chunks.size(); i++) {
+            DocumentParserWithStructure.DocumentChunk chunk = chunks.get(i);
+            assertEquals(i, chunk.getChunkId());
+            assertEquals(text.substring(chunk.getStartOffset(), chunk.getEndOffset()), chunk.getText());
+            assertEquals(chunk.getText().length(), chunk.getCharCount());
+            assertTrue(chunk.getText().length() <= chunkSize, "分块超长: " + chunk.getText());
+            assertEquals(chunk.getText().trim(), chunk.getText());
+            if (i > 0) {
+                DocumentParserWithStructure.DocumentChunk previous = chunks.get(i - 1);
+                assertTrue(chunk.getStartOffset() > previous.getStartOffset());
+                assertTrue(chunk.getEndOffset() > previous.getEndOffset());
+                assertTrue(overlap(previous, chunk) <= overlap, "重叠超长: " + previous.getText() + " | " + chunk.getText());
+            }
+            for (int c = chunk.getStartOffset(); c < chunk.getEndOffset(); c++) {
+                covered[c] = true;
+            }
+        }
+        for (int c = 0; c < text.length(); c++) {
+            assertTrue(covered[c] || Character.isWhitespace(text.charAt(c)), "未覆盖的偏移: " + c);
+        }
+    }
+
+    private static int overlap(DocumentParserWithStructure.DocumentChunk previous, DocumentParserWithStructure.DocumentChunk next) {
+        return Math.max(0, previous.getEndOffset() - next.getStartOffset());
+    }
+
+    private static List<String> ranges(List<DocumentParserWithStructure.DocumentChunk> chunks) {
+        return chunks.stream().map(c -> c.getStartOffset() + "-" + c.getEndOffset()).collect(Collectors.toList());
+    }
+
+    private static List<String> texts(List<DocumentParserWithStructure.DocumentChunk> chunks) {
+        return chunks.stream().map(DocumentParserWithStructure.DocumentChunk::getText).collect(Collectors.toList());
+    }
+
+    private static List<Integer> imageParagraphs(DocumentParserWithStructure.DocumentChunk chunk) {
+        return chunk.getImages().stream().map(image -> image.getPosition().getParagraphIndex()).collect(Collectors.toList());
+    }
+
+    private static DocumentParserWithStructure.DocumentContent content(DocumentParserWithStructure.Paragraph... paragraphs) {
+        List<DocumentParserWithStructure.Paragraph> list = new ArrayList<>();
+        for (int i = 0; i < paragraphs.length; i++) {
+            paragraphs[i].setId(i);
+            list.add(paragraphs[i]);
+        }
+        DocumentParserWithStructure.DocumentContent content = new DocumentParserWithStructure.DocumentContent();
+        content.setParagraphs(list);
+        content.setImages(new ArrayList<>());
+        return content;
+    }
+
+    private static DocumentParserWithStructure.Paragraph para(String text) {
+        DocumentParserWithStructure.Paragraph para = new DocumentParserWithStructure.Paragraph();
+        para.setText(text);
+        return para;
+    }
+
+    private static DocumentParserWithStructure.Paragraph heading(String text) {
+        DocumentParserWithStructure.Paragraph para = para(text);
+        para.setType("heading");
+        para.setLevel(1);
+        return para;
+    }
+
+    /**
+     * 在指定段落上各放一张图片
+     */
+    private static Map<Integer, List<DocumentParserWithStructure.ImagePosition>> images(
+            DocumentParserWithStructure.DocumentContent content, int... paragraphIndexes) {
+        Map<Integer, List<DocumentParserWithStructure.ImagePosition>> positions = new HashMap<>();
+        for (int paragraphIndex : paragraphIndexes) {
+            DocumentParserWithStructure.ImagePosition position = new DocumentParserWithStructure.ImagePosition();
+            position.setParagraphIndex(paragraphIndex);
+            DocumentParserWithStructure.ImageInfo image = new DocumentParserWithStructure.ImageInfo();
+            image.setIndex(paragraphIndex);
+            image.setPosition(position);
+            content.getImages().add(image);
+            positions.put(paragraphIndex, new ArrayList<>(List.of(position)));
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.langchain.milvus.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MilvusFilterExpressionTest {
+
+    // Milvus 自动生成的主键量级（约 4.5e17，超过 2^53）
+    private static final long LARGE_ID = 449876543210123457L;
+
+    @Test
+    void largePrimaryKeyIsParsedAndComparedExactly() {
+        MilvusFilterExpression filter = MilvusFilterExpression.parse("id in [" + LARGE_ID + ", " + (LARGE_ID + 2) + "]");
+
+        assertEquals(List.of(LARGE_ID, LARGE_ID + 2), filter.equalityValues("id"));
+        assertTrue(filter.test(row("id", LARGE_ID)));
+        assertFalse(filter.test(row("id", LARGE_ID - 1)));
+        assertFalse(filter.test(row("id", LARGE_ID + 1)));
+
+        MilvusFilterExpression equality = MilvusFilterExpression.parse("id == " + LARGE_ID);
+        assertEquals(List.of(LARGE_ID), equality.equalityValues("id"));
+        assertFalse(equality.test(row("id", LARGE_ID - 1)));
+    }
+
+    @Test
+    void integersAndDecimalsCompareNumerically() {
+        assertTrue(MilvusFilterExpression.parse("create_time >= 1700000000000").test(row("create_time", 1700000000000L)));
+        assertTrue(MilvusFilterExpression.parse("score > 0.5").test(row("score", 1)));
+        assertFalse(MilvusFilterExpression.parse("score > 1.5").test(row("score", 1L)));
+        assertTrue(MilvusFilterExpression.parse("score < 1e3").test(row("score", 999)));
+    }
+
+    @Test
+    void conjunctionSplitsOnlyOutsideStringLiterals() {
+        MilvusFilterExpression filter = MilvusFilterExpression.parse(
+                "document_name == \"R&&D 报告\" && (tenant_id == \"acme\")");
+
+        Map<String, Object> matching = row("document_name", "R&&D 报告");
+        matching.put("tenant_id", "acme");
+        assertTrue(filter.test(matching));
+
+        Map<String, Object> otherTenant = row("document_name", "R&&D 报告");
+        otherTenant.put("tenant_id", "other");
+        assertFalse(filter.test(otherTenant));
+    }
+
+    @Test
+    void inListKeepsCommasInsideStrings() {
+        MilvusFilterExpression filter = MilvusFilterExpression.parse("document_id in [\"a,b\", \"c\"]");
+
+        assertEquals(List.of("a,b", "c"), filter.equalityValues("document_id"));
+        assertTrue(filter.test(row("document_id", "a,b")));
+        assertFalse(filter.test(row("document_id", "a")));
+        assertFalse(filter.test(row("document_id", null)));
+    }
+
+    @Test
+    void jsonKeysAreEvaluatedAgainstMetadata() {
+        Map<String, Object> chunk = row("metadata",
+                "{\"tenant_id\":\"acme\",\"has_images\":true,\"page\":12,\"big\":" + LARGE_ID + "}");
+
+        assertTrue(MilvusFilterExpression.parse("metadata[\"tenant_id\"] == \"acme\"").test(chunk));
+        assertTrue(MilvusFilterExpression.parse("metadata[\"has_images\"] == true").test(chunk));
+        assertTrue(MilvusFilterExpression.parse("metadata[\"page\"] >= 10 && metadata[\"page\"] < 13").test(chunk));
+        assertTrue(MilvusFilterExpression.parse("metadata[\"big\"] == " + LARGE_ID).test(chunk));
+        assertFalse(MilvusFilterExpression.parse("metadata[\"big\"] == " + (LARGE_ID + 1)).test(chunk));
+        assertFalse(MilvusFilterExpression.parse("metadata[\"missing\"] == \"x\"").test(chunk));
+        // JSON 键上的条件不能用于按字段直接定位行
+        assertNull(MilvusFilterExpression.parse("metadata[\"tenant_id\"] == \"acme\"").equalityValues("metadata"));
+        assertEquals(List.of("acme", "globex"), MilvusFilterExpression.parse(
+                "metadata[\"tenant_id\"] in [\"acme\", \"globex\"]").equalityValues("metadata", "tenant_id"));
+    }
+
+    @Test
+    void emptyExpressionMatchesEverything() {
+        MilvusFilterExpression filter = MilvusFilterExpression.parse(" ");
+
+        assertTrue(filter.isEmpty());
+        assertTrue(filter.test(row("id", 1L)));
+    }
+
+    @Test
+    void rangeOnlyExpressionsHaveNoEqualityCondition() {
+        assertFalse(MilvusFilterExpression.parse("id > 0").hasEqualityCondition());
+        assertFalse(MilvusFilterExpression.parse("create_time >= 0 && document_id != \"x\"").hasEqualityCondition());
+        assertFalse(MilvusFilterExpression.parse("").hasEqualityCondition());
+        assertTrue(MilvusFilterExpression.parse("id > 0 && document_id == \"doc-1\"").hasEqualityCondition());
+        assertTrue(MilvusFilterExpression.parse("metadata[\"document_name\"] in [\"a.docx\"]").hasEqualityCondition());
+    }
+
+    @Test
+    void unsupportedExpressionsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> MilvusFilterExpression.parse("id == 1 || id == 2"));
+        assertThrows(IllegalArgumentException.class, () -> MilvusFilterExpression.parse("not id == 1"));
+        assertThrows(IllegalArgumentException.class, () -> MilvusFilterExpression.parse("text like \"a%\""));
+        assertThrows(IllegalArgumentException.class, () -> MilvusFilterExpression.parse("id == abc"));
+    }
+
+    private static Map<String, Object> row(String field, Object value) {
+        Map<String, Object> row = new HashMap<>();
+        row.put(field, value);
+        return row;
+    }
+}